@@ -142,6 +142,50 @@ public class OntologizerCMD
 			}
 			arguments.mcmcSteps = GlobalPreferences.getMcmcSteps();
 
+			if (cmd.hasOption(OntologizerOptions.MCMC_PRECISION))
+			{
+				try
+				{
+					double precision = Double.parseDouble(cmd.getOptionValue(OntologizerOptions.MCMC_PRECISION));
+					if (!(precision > 0 && precision < 1)) throw new Exception();
+					GlobalPreferences.setMcmcPrecision(precision);
+				} catch (Exception e)
+				{
+					System.err.println("The --" + OntologizerOptions.MCMC_PRECISION + " argument needs to be a floating point value between 0 and 1.");
+					System.exit(-1);
+				}
+			}
+			arguments.mcmcPrecision = GlobalPreferences.getMcmcPrecision();
+
+			if (cmd.hasOption(OntologizerOptions.MCMC_CHAINS))
+			{
+				try
+				{
+					int chains = Integer.parseInt(cmd.getOptionValue(OntologizerOptions.MCMC_CHAINS));
+					if (chains < 1) throw new Exception();
+					arguments.mcmcChains = chains;
+				} catch (Exception e)
+				{
+					System.err.println("The --" + OntologizerOptions.MCMC_CHAINS + " argument needs to be a positive integer.");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption(OntologizerOptions.MCMC_CHECKPOINT))
+			{
+				arguments.mcmcCheckpointDirectory = cmd.getOptionValue(OntologizerOptions.MCMC_CHECKPOINT);
+			}
+
+			if (cmd.hasOption(OntologizerOptions.RESUME))
+			{
+				if (arguments.mcmcCheckpointDirectory == null)
+				{
+					System.err.println("The --" + OntologizerOptions.RESUME + " argument requires the --" + OntologizerOptions.MCMC_CHECKPOINT + " argument.");
+					System.exit(-1);
+				}
+				arguments.resume = true;
+			}
+
 			if (cmd.hasOption(OntologizerOptions.MAX_ALPHA))
 			{
 				double alphaMax;
@@ -241,6 +285,79 @@ public class OntologizerCMD
 				}
 			}
 
+			if (cmd.hasOption(OntologizerOptions.THREADS))
+			{
+				try
+				{
+					int threads = Integer.parseInt(cmd.getOptionValue(OntologizerOptions.THREADS));
+					if (threads < 1) throw new Exception();
+					arguments.threads = threads;
+				} catch (Exception e)
+				{
+					System.err.println("The --" + OntologizerOptions.THREADS + " argument needs to be a positive integer.");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption(OntologizerOptions.PRUNE))
+			{
+				try
+				{
+					double alpha = Double.parseDouble(cmd.getOptionValue(OntologizerOptions.PRUNE));
+					if (alpha <= 0 || alpha >= 1) throw new Exception();
+					arguments.pruningAlpha = alpha;
+				} catch (Exception e)
+				{
+					System.err.println("The --" + OntologizerOptions.PRUNE + " argument needs to be a value between 0 and 1.");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption(OntologizerOptions.SEED))
+			{
+				try
+				{
+					arguments.seed = Long.parseLong(cmd.getOptionValue(OntologizerOptions.SEED));
+				} catch (Exception e)
+				{
+					System.err.println("The --" + OntologizerOptions.SEED + " argument needs to be an integer.");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption(OntologizerOptions.RESAMPLING_CACHE))
+			{
+				arguments.resamplingCacheDirectory = cmd.getOptionValue(OntologizerOptions.RESAMPLING_CACHE);
+			}
+
+			if (cmd.hasOption(OntologizerOptions.SEQUENTIAL))
+			{
+				try
+				{
+					int h = Integer.parseInt(cmd.getOptionValue(OntologizerOptions.SEQUENTIAL));
+					if (h < 1) throw new Exception();
+					arguments.sequentialExceedances = h;
+				} catch (Exception e)
+				{
+					System.err.println("The --" + OntologizerOptions.SEQUENTIAL + " argument needs to be a positive integer.");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption(OntologizerOptions.SEQUENTIAL_ALPHA))
+			{
+				try
+				{
+					double alpha = Double.parseDouble(cmd.getOptionValue(OntologizerOptions.SEQUENTIAL_ALPHA));
+					if (alpha <= 0 || alpha >= 1) throw new Exception();
+					arguments.sequentialAlpha = alpha;
+				} catch (Exception e)
+				{
+					System.err.println("The --" + OntologizerOptions.SEQUENTIAL_ALPHA + " argument needs to be a value between 0 and 1.");
+					System.exit(-1);
+				}
+			}
+
 			if (cmd.hasOption('r'))
 			{
 				try
@@ -14,8 +14,18 @@ public class OntologizerOptions
 	private Options options;
 
 	public static final String MCMC_STEPS = "mcmcSteps";
+	public static final String MCMC_CHAINS = "mcmcChains";
+	public static final String MCMC_PRECISION = "mcmcPrecision";
+	public static final String MCMC_CHECKPOINT = "mcmcCheckpoint";
+	public static final String RESUME = "resume";
 	public static final String MAX_ALPHA = "maxAlpha";
 	public static final String MAX_BETA = "maxBeta";
+	public static final String THREADS = "threads";
+	public static final String PRUNE = "prune";
+	public static final String SEED = "seed";
+	public static final String RESAMPLING_CACHE = "resamplingCache";
+	public static final String SEQUENTIAL = "sequential";
+	public static final String SEQUENTIAL_ALPHA = "sequentialAlpha";
 
 	public Options options()
 	{
@@ -107,8 +117,18 @@ public class OntologizerOptions
 		options.addOption(new Option("o","outdir",true,"Specifies the directory in which the results will be placed."));
 
 		options.addOption(Option.builder().longOpt(MCMC_STEPS).argName("steps").hasArg(true).desc("Number of sample steps for MCMC based approaches like MSGA. Defaults to " + GlobalPreferences.getMcmcSteps() + ".").build());
+		options.addOption(Option.builder().longOpt(MCMC_CHAINS).argName("chains").hasArg(true).desc("Number of independent chains that MCMC based approaches like MGSA run in parallel. The marginals are pooled and the convergence diagnostics R-hat and ESS are reported per term. Defaults to 1.").build());
+		options.addOption(Option.builder().longOpt(MCMC_PRECISION).argName("precision").hasArg(true).desc("Stop MCMC based approaches like MGSA once the standard error of each marginal is below the given precision, e.g., 0.01, and the chains agree. The number of steps given by --" + MCMC_STEPS + " is then the maximum.").build());
+		options.addOption(Option.builder().longOpt(MCMC_CHECKPOINT).argName("directory").hasArg(true).desc("Directory in which MCMC based approaches like MGSA save the state of their chains from time to time. Checkpoints are removed once a calculation has been finished.").build());
+		options.addOption(Option.builder().longOpt(RESUME).hasArg(false).desc("Resume interrupted MCMC based calculations from the checkpoints in the directory given by --" + MCMC_CHECKPOINT + ". The results are the same as if the calculations had not been interrupted.").build());
 		options.addOption(Option.builder().longOpt(MAX_ALPHA).argName("alpha").hasArg(true).desc("Upper bound for alpha that is inferred in MGSA. Defaults to " + GlobalPreferences.getAlpha() + ".").build());
 		options.addOption(Option.builder().longOpt(MAX_BETA).argName("beta").hasArg(true).desc("Upper bound for beta that is inferred in MGSA. Defaults to " + GlobalPreferences.getBeta() + ".").build());
+		options.addOption(Option.builder().longOpt(THREADS).argName("threads").hasArg(true).desc("Number of threads used to calculate the p-values of the terms and the random samples of resampling based MTCs. Defaults to 1.").build());
+		options.addOption(Option.builder().longOpt(PRUNE).argName("alpha").hasArg(true).desc("Prune terms that cannot become significant at the given level (Tarone's method). Pruned terms are not tested and not counted by the MTC.").build());
+		options.addOption(Option.builder().longOpt(SEED).argName("seed").hasArg(true).desc("Seed for the random numbers of resampling based MTCs and MGSA. The results do not depend on the number of threads. Defaults to a random seed.").build());
+		options.addOption(Option.builder().longOpt(RESAMPLING_CACHE).argName("directory").hasArg(true).desc("Directory in which the random samples of resampling based MTCs are stored, so later runs with the same population, annotations, method and seed can reuse them.").build());
+		options.addOption(Option.builder().longOpt(SEQUENTIAL).argName("h").hasArg(true).desc("Stop resampling for a term once h random samples were at least as extreme as the observed one (Besag-Clifford) and stop entirely once all terms are decided. Applies to the Westfall-Young single and step-down MTCs and to FDR-By-Steffen.").build());
+		options.addOption(Option.builder().longOpt(SEQUENTIAL_ALPHA).argName("alpha").hasArg(true).desc("With --" + SEQUENTIAL + ", also stop resampling for a term once its adjusted p-value is almost certainly below alpha.").build());
 		if (resamplingBasedMTCsExists) {
 			options.addOption(new Option("r","resamplingsteps", true, "Specifies the number of steps used in resampling based MTCs"));
 			options.addOption(new Option("t","sizetolerance", true, "Specifies the percentage at which the actual study set size and " +
@@ -299,7 +299,8 @@ public class Ontologizer
 						GlobalPreferences.getNumberOfPermutations(),
 						GlobalPreferences.getAlpha(),GlobalPreferences.getUpperAlpha(),
 						GlobalPreferences.getBeta(),GlobalPreferences.getUpperBeta(),
-						GlobalPreferences.getExpectedNumber(), GlobalPreferences.getMcmcSteps());
+						GlobalPreferences.getExpectedNumber(), GlobalPreferences.getMcmcSteps(),
+						GlobalPreferences.getMcmcPrecision());
 				result.addCloseAction(new ISimpleAction(){public void act()
 				{
 					newThread.interrupt();
@@ -431,6 +432,7 @@ public class Ontologizer
 			p.put("upperBeta", Double.toString(GlobalPreferences.getUpperBeta()));
 			p.put("expectedNumberOfTerms", Integer.toString(GlobalPreferences.getExpectedNumber()));
 			p.put("mcmcSteps", Integer.toString(GlobalPreferences.getMcmcSteps()));
+			p.put("mcmcPrecision", Double.toString(GlobalPreferences.getMcmcPrecision()));
 			if (GlobalPreferences.getProxyHost() != null)
 			{
 				p.put("proxyHost",GlobalPreferences.getProxyHost());
@@ -511,6 +513,7 @@ public class Ontologizer
 				GlobalPreferences.setBeta(prefs.getBeta());
 				GlobalPreferences.setExpectedNumber(prefs.getExpectedNumberOfTerms());
 				GlobalPreferences.setMcmcSteps(prefs.getNumberOfMCMCSteps());
+				GlobalPreferences.setMcmcPrecision(prefs.getMcmcPrecision());
 			}
 		});
 
@@ -536,6 +539,7 @@ public class Ontologizer
 		GlobalPreferences.setUpperBeta(p.getDouble("upperBeta", 1));
 		GlobalPreferences.setExpectedNumber(p.getInt("expectedNumberOfTerms", -1));
 		GlobalPreferences.setMcmcSteps(p.getInt("mcmcSteps", 500000));
+		GlobalPreferences.setMcmcPrecision(p.getDouble("mcmcPrecision", 0));
 
 		/* Prepare workspace */
 		workspace = new File(ontologizer.util.Util.getAppDataDirectory("ontologizer"),"workspace");
@@ -47,7 +47,10 @@ public class PreferencesWindow extends ApplicationWindow
 	private Spinner expectedNumberSpinner;
 	private Button expectedNumberAutoButton;
 	private Spinner mcmcStepsSpinner;
+	private Spinner mcmcPrecisionSpinner;
+	private Button mcmcPrecisionButton;
 	private final static int ALPHA_BETA_DIGITS = 2;
+	private final static int PRECISION_DIGITS = 3;
 
 	/**
 	 * Constructor.
@@ -238,6 +241,29 @@ public class PreferencesWindow extends ApplicationWindow
 			mcmcStepsSpinner.setPageIncrement(100000);
 			mcmcStepsSpinner.setSelection(500000);
 			new Label(b2gComp,0);
+
+			Label mcmcPrecisionLabel = new Label(b2gComp,0);
+			mcmcPrecisionLabel.setText("Stop MCMC at precision");
+			mcmcPrecisionLabel.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_END));
+			mcmcPrecisionSpinner = new Spinner(b2gComp,SWT.BORDER);
+			mcmcPrecisionSpinner.setLayoutData(new GridData(SWT.FILL,0,true,false,1,1));
+			mcmcPrecisionSpinner.setMinimum(1);
+			mcmcPrecisionSpinner.setMaximum(100);
+			mcmcPrecisionSpinner.setSelection(10);
+			mcmcPrecisionSpinner.setDigits(PRECISION_DIGITS);
+			mcmcPrecisionSpinner.setEnabled(false);
+			mcmcPrecisionButton = new Button(b2gComp,SWT.CHECK);
+			mcmcPrecisionButton.setText("Enable");
+			mcmcPrecisionButton.setToolTipText("Stop before all steps are performed once the standard error of each marginal is below the given precision.");
+			mcmcPrecisionButton.setSelection(false);
+			mcmcPrecisionButton.addSelectionListener(new SelectionAdapter()
+			{
+				@Override
+				public void widgetSelected(SelectionEvent e)
+				{
+					mcmcPrecisionSpinner.setEnabled(mcmcPrecisionButton.getSelection());
+				}
+			});
 		}
 
 		/* Button composite */
@@ -280,6 +306,13 @@ public class PreferencesWindow extends ApplicationWindow
 			upperBetaSpinner.setSelection((int)(GlobalPreferences.getUpperBeta() * Math.pow(10, ALPHA_BETA_DIGITS) * 100 ));
 			mcmcStepsSpinner.setSelection(GlobalPreferences.getMcmcSteps());
 
+			if (GlobalPreferences.getMcmcPrecision() > 0)
+			{
+				mcmcPrecisionSpinner.setSelection((int)Math.round(GlobalPreferences.getMcmcPrecision() * Math.pow(10, PRECISION_DIGITS)));
+				mcmcPrecisionSpinner.setEnabled(true);
+				mcmcPrecisionButton.setSelection(true);
+			}
+
 			if (!Double.isNaN(GlobalPreferences.getAlpha()))
 			{
 				alphaSpinner.setSelection((int)(GlobalPreferences.getAlpha() * Math.pow(10, ALPHA_BETA_DIGITS) * 100));
@@ -451,4 +484,15 @@ public class PreferencesWindow extends ApplicationWindow
 			return mcmcStepsSpinner.getSelection();
 		return 500000;
 	}
+
+	/**
+	 * @return the precision of the marginals at which MCMC is stopped or 0
+	 *  if all steps should be performed.
+	 */
+	public double getMcmcPrecision()
+	{
+		if (mcmcPrecisionButton == null || !mcmcPrecisionButton.getSelection())
+			return 0;
+		return mcmcPrecisionSpinner.getSelection() / Math.pow(10, PRECISION_DIGITS);
+	}
 }
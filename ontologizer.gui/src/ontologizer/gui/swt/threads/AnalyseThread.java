@@ -56,11 +56,12 @@ public class AnalyseThread extends AbstractOntologizerThread
 	private double alpha, upperAlpha, beta, upperBeta;
 	private int expectedNumber;
 	private int numberOfMCMCSteps;
+	private double mcmcPrecision;
 
 	public AnalyseThread(Display display, Runnable calledWhenFinished, ResultWindow result,
 			String definitionFile, String associationsFile, String mappingFile, PopulationSet populationSet, StudySetList studySetList,
 			String methodName, String mtcName, String subsetName, String subontologyName,Collection<String> checkedEvidences,
-			int noP, double alpha, double upperAlpha, double beta, double upperBeta, int expectedNumber, int numberOfMCMCSteps)
+			int noP, double alpha, double upperAlpha, double beta, double upperBeta, int expectedNumber, int numberOfMCMCSteps, double mcmcPrecision)
 	{
 		super("Analyze Thread",calledWhenFinished,display,result);
 
@@ -82,6 +83,7 @@ public class AnalyseThread extends AbstractOntologizerThread
 		this.upperBeta = upperBeta;
 		this.expectedNumber = expectedNumber;
 		this.numberOfMCMCSteps = numberOfMCMCSteps;
+		this.mcmcPrecision = mcmcPrecision;
 
 		setPriority(Thread.MIN_PRIORITY);
 	}
@@ -191,6 +193,7 @@ public class AnalyseThread extends AbstractOntologizerThread
 				else b2g.setExpectedNumber(B2GParam.Type.MCMC);
 
 				b2g.setMcmcSteps(numberOfMCMCSteps);
+				b2g.setTargetPrecision(mcmcPrecision);
 			}
 
 			/* Set the desired test correction or set the default */
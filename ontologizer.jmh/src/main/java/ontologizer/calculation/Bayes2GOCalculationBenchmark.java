@@ -1,22 +1,65 @@
 package ontologizer.calculation;
 
-import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
 
-import ontologizer.io.obo.OBOParserException;
+import ontologizer.calculation.b2g.Bayes2GOCalculation;
+import ontologizer.internal.SyntheticOntology;
 
+/**
+ * Measures entire MGSA runs on the term links of a synthetic data set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
 public class Bayes2GOCalculationBenchmark
 {
+	@Param({"1000", "10000"})
+	public int numberOfTerms;
+
+	@Param({"5000"})
+	public int numberOfItems;
+
+	@Param({"5", "20"})
+	public int annotationsPerItem;
+
+	@Param({"100"})
+	public int studySize;
+
+	@Param({"100000"})
+	public int mcmcSteps;
+
+	private PopulationCalculationContext context;
+	private int [] studyIds;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticOntology data = new SyntheticOntology(numberOfTerms, numberOfItems, annotationsPerItem, 1);
+		context = PopulationCalculationContext.create(data.graph, data.assoc, data.population);
+		studyIds = context.getStudyIds(data.createStudySet(studySize));
+	}
+
 	@Benchmark
 	@Warmup(iterations=5)
 	@Fork(value=1)
 	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
-	public void benchmark() throws IOException, OBOParserException
+	public double [] benchmark()
 	{
+		Bayes2GOCalculation calc = new Bayes2GOCalculation();
+		calc.setSeed(1);
+		calc.setMcmcSteps(mcmcSteps);
+		return calc.calculate(context.term2Items, studyIds, context.getNumberOfItems());
 	}
 }
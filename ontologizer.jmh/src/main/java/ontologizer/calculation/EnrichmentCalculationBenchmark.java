@@ -0,0 +1,67 @@
+package ontologizer.calculation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ontologizer.internal.SyntheticOntology;
+import ontologizer.set.StudySet;
+import ontologizer.statistics.None;
+
+/**
+ * Measures the p-value based calculations on a synthetic data set without
+ * any multiple test correction. As the population dependent parts are
+ * reused by the calculations, this mostly measures the costs for one
+ * study set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EnrichmentCalculationBenchmark
+{
+	@Param({"Term-For-Term", "Parent-Child-Union", "Parent-Child-Intersection"})
+	public String calculation;
+
+	@Param({"1000", "10000"})
+	public int numberOfTerms;
+
+	@Param({"5000", "20000"})
+	public int numberOfItems;
+
+	@Param({"5", "20"})
+	public int annotationsPerItem;
+
+	@Param({"50", "500"})
+	public int studySize;
+
+	private SyntheticOntology data;
+	private StudySet study;
+	private ICalculation calc;
+
+	@Setup
+	public void setup()
+	{
+		data = new SyntheticOntology(numberOfTerms, numberOfItems, annotationsPerItem, 1);
+		study = data.createStudySet(studySize);
+		calc = CalculationRegistry.getCalculationByName(calculation);
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public EnrichedGOTermsResult calculateStudySet()
+	{
+		return calc.calculateStudySet(data.graph, data.assoc, data.population, study, new None());
+	}
+}
@@ -0,0 +1,82 @@
+package ontologizer.calculation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ontologizer.internal.SyntheticOntology;
+import ontologizer.types.ByteString;
+
+/**
+ * Measures the semantic similarity of random pairs of items. The calculation
+ * is created anew for each iteration, so its term similarity cache is
+ * filled during the iteration as it would be for a real study set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SemanticCalculationBenchmark
+{
+	private static final int NUMBER_OF_PAIRS = 1024;
+
+	@Param({"1000", "10000"})
+	public int numberOfTerms;
+
+	@Param({"5000"})
+	public int numberOfItems;
+
+	@Param({"5", "20"})
+	public int annotationsPerItem;
+
+	private SyntheticOntology data;
+	private ByteString [] first;
+	private ByteString [] second;
+	private SemanticCalculation semanticCalculation;
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(1);
+
+		data = new SyntheticOntology(numberOfTerms, numberOfItems, annotationsPerItem, 1);
+		first = new ByteString[NUMBER_OF_PAIRS];
+		second = new ByteString[NUMBER_OF_PAIRS];
+		for (int i = 0; i < NUMBER_OF_PAIRS; i++)
+		{
+			first[i] = data.items.get(rnd.nextInt(data.items.size()));
+			second[i] = data.items.get(rnd.nextInt(data.items.size()));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setupIteration()
+	{
+		semanticCalculation = new SemanticCalculation(data.graph, data.assoc);
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	@OperationsPerInvocation(NUMBER_OF_PAIRS)
+	public double sim()
+	{
+		double sum = 0;
+		for (int i = 0; i < NUMBER_OF_PAIRS; i++)
+			sum += semanticCalculation.sim(first[i], second[i]);
+		return sum;
+	}
+}
@@ -0,0 +1,100 @@
+package ontologizer.calculation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ontologizer.util.Util;
+
+/**
+ * Compares the merge walk of sorted arrays with the TermItemIndex for
+ * counting the study items of all terms.
+ *
+ * The term sizes follow the shape of real annotations: few terms cover
+ * almost the entire population, while most terms are annotated to only
+ * a handful of items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TermItemIndexBenchmark
+{
+	@Param({"5000", "20000"})
+	public int numberOfItems;
+
+	@Param({"4000"})
+	public int numberOfTerms;
+
+	@Param({"50", "500", "5000"})
+	public int studySize;
+
+	private int [][] term2Items;
+	private int [] studyIds;
+	private int [] counts;
+	private long [] itemSet;
+	private TermItemIndex index;
+
+	private static int [] randomSortedSubset(Random rnd, int numberOfItems, int size)
+	{
+		int [] subset = new int[size];
+		int j = 0;
+		for (int i = 0; i < numberOfItems && j < size; i++)
+		{
+			if (rnd.nextInt(numberOfItems - i) < size - j)
+				subset[j++] = i;
+		}
+		return subset;
+	}
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(1);
+
+		term2Items = new int[numberOfTerms][];
+		for (int i = 0; i < numberOfTerms; i++)
+		{
+			/* Sizes decay exponentially with the rank of the term */
+			int size = Math.max(1, (int)(numberOfItems * Math.exp(-i / (numberOfTerms / 50.0))));
+			size = Math.min(numberOfItems, size + rnd.nextInt(10));
+			term2Items[i] = randomSortedSubset(rnd, numberOfItems, size);
+		}
+		studyIds = randomSortedSubset(rnd, numberOfItems, Math.min(studySize, numberOfItems));
+		counts = new int[numberOfTerms];
+		index = TermItemIndex.create(term2Items, numberOfItems);
+		itemSet = index.newItemSet();
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public int [] mergeWalk()
+	{
+		for (int i = 0; i < term2Items.length; i++)
+			counts[i] = Util.commonInts(studyIds, term2Items[i]);
+		return counts;
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public int [] termItemIndex()
+	{
+		index.setItemSet(studyIds, itemSet);
+		index.countCommonItems(itemSet, counts);
+		return counts;
+	}
+}
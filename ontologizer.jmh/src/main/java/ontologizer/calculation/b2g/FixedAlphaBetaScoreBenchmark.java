@@ -0,0 +1,92 @@
+package ontologizer.calculation.b2g;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ontologizer.calculation.PopulationCalculationContext;
+import ontologizer.internal.SyntheticOntology;
+
+/**
+ * Measures single MCMC steps of the MGSA score, i.e., a proposal, the
+ * evaluation of the new score, the decision whether the proposal is
+ * accepted and the recording of the state as it is done by the
+ * Bayes2GOCalculation after the burn in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FixedAlphaBetaScoreBenchmark
+{
+	@Param({"1000", "10000"})
+	public int numberOfTerms;
+
+	@Param({"5000", "20000"})
+	public int numberOfItems;
+
+	@Param({"5", "20"})
+	public int annotationsPerItem;
+
+	/** How alpha, beta and p are handled: fixed, sampled on their grids or integrated out */
+	@Param({"fixed", "sampled", "integrated"})
+	public String parameters;
+
+	private Random rnd;
+	private FixedAlphaBetaScore fixedAlphaBetaScore;
+	private double score;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticOntology data = new SyntheticOntology(numberOfTerms, numberOfItems, annotationsPerItem, 1);
+		PopulationCalculationContext context = PopulationCalculationContext.create(data.graph, data.assoc, data.population);
+		int [] studyIds = context.getStudyIds(data.createStudySet(numberOfItems / 20));
+
+		boolean [] observedItems = new boolean[context.getNumberOfItems()];
+		for (int i = 0; i < studyIds.length; i++)
+			observedItems[studyIds[i]] = true;
+
+		rnd = new Random(1);
+		fixedAlphaBetaScore = new FixedAlphaBetaScore(rnd, context.term2Items, observedItems);
+		fixedAlphaBetaScore.setIntegrateParams(parameters.equals("integrated"));
+		if (parameters.equals("fixed"))
+		{
+			fixedAlphaBetaScore.setAlpha(0.1);
+			fixedAlphaBetaScore.setBeta(0.1);
+			fixedAlphaBetaScore.setExpectedNumberOfTerms(5);
+		}
+		score = fixedAlphaBetaScore.getScore();
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public double step()
+	{
+		long oldPossibilities = fixedAlphaBetaScore.getNeighborhoodSize();
+		fixedAlphaBetaScore.proposeNewState(rnd.nextLong());
+		double newScore = fixedAlphaBetaScore.getScore();
+		long newPossibilities = fixedAlphaBetaScore.getNeighborhoodSize();
+
+		double acceptProb = Math.exp(newScore - score)*(double)oldPossibilities/(double)newPossibilities;
+		if (rnd.nextDouble() >= acceptProb)
+			fixedAlphaBetaScore.undoProposal();
+		else
+			score = newScore;
+
+		fixedAlphaBetaScore.record();
+		return score;
+	}
+}
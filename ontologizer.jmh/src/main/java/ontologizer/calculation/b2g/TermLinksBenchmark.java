@@ -0,0 +1,146 @@
+package ontologizer.calculation.b2g;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ontologizer.calculation.PopulationCalculationContext;
+import ontologizer.calculation.util.CompressedLinks;
+import ontologizer.internal.SyntheticOntology;
+
+/**
+ * Compares the layouts of the term to gene links for the update of the
+ * hidden gene counts that is done when the state of a term is switched
+ * during MCMC, i.e., an array per term versus the compressed sparse row
+ * form that is used by Bayes2GOScoreBase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TermLinksBenchmark
+{
+	@Param({"1000", "10000"})
+	public int numberOfTerms;
+
+	@Param({"20000"})
+	public int numberOfItems;
+
+	@Param({"5", "20"})
+	public int annotationsPerItem;
+
+	private static final int NUMBER_OF_SWITCHES = 1024;
+
+	private int [][] nestedLinks;
+	private int [] offsets;
+	private int [] targets;
+
+	/** The terms to be switched, each term is switched twice so the state is the same afterwards */
+	private int [] switches;
+
+	private int [] activeHiddenGenes;
+	private int changes;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticOntology data = new SyntheticOntology(numberOfTerms, numberOfItems, annotationsPerItem, 1);
+		PopulationCalculationContext context = PopulationCalculationContext.create(data.graph, data.assoc, data.population);
+
+		nestedLinks = context.term2Items;
+		CompressedLinks links = CompressedLinks.create(nestedLinks, context.getNumberOfItems());
+		offsets = links.getOffsets();
+		targets = links.getTargets();
+
+		Random rnd = new Random(1);
+		switches = new int[NUMBER_OF_SWITCHES];
+		for (int i = 0; i < NUMBER_OF_SWITCHES / 2; i++)
+		{
+			switches[i] = rnd.nextInt(nestedLinks.length);
+			switches[NUMBER_OF_SWITCHES - i - 1] = switches[i];
+		}
+		activeHiddenGenes = new int[context.getNumberOfItems()];
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public int nested()
+	{
+		for (int s = 0; s < NUMBER_OF_SWITCHES; s++)
+		{
+			int [] geneIDs = nestedLinks[switches[s]];
+			if (s < NUMBER_OF_SWITCHES / 2)
+			{
+				for (int gid : geneIDs)
+				{
+					if (activeHiddenGenes[gid] == 0)
+					{
+						activeHiddenGenes[gid] = 1;
+						changes++;
+					} else
+					{
+						activeHiddenGenes[gid]++;
+					}
+				}
+			} else
+			{
+				for (int gid : geneIDs)
+				{
+					if (activeHiddenGenes[gid] == 1)
+					{
+						activeHiddenGenes[gid] = 0;
+						changes--;
+					} else
+					{
+						activeHiddenGenes[gid]--;
+					}
+				}
+			}
+		}
+		return changes;
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public int compressed()
+	{
+		int [] genes = targets;
+		int [] counts = activeHiddenGenes;
+
+		for (int s = 0; s < NUMBER_OF_SWITCHES; s++)
+		{
+			int term = switches[s];
+			int end = offsets[term + 1];
+			if (s < NUMBER_OF_SWITCHES / 2)
+			{
+				for (int i = offsets[term]; i < end; i++)
+				{
+					if (counts[genes[i]]++ == 0)
+						changes++;
+				}
+			} else
+			{
+				for (int i = offsets[term]; i < end; i++)
+				{
+					if (--counts[genes[i]] == 0)
+						changes--;
+				}
+			}
+		}
+		return changes;
+	}
+}
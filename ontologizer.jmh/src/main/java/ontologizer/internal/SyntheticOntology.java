@@ -0,0 +1,151 @@
+package ontologizer.internal;
+
+import static ontologizer.types.ByteString.EMPTY;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import ontologizer.association.AnnotationContext;
+import ontologizer.association.Association;
+import ontologizer.association.AssociationContainer;
+import ontologizer.ontology.Ontology;
+import ontologizer.ontology.ParentTermID;
+import ontologizer.ontology.Prefix;
+import ontologizer.ontology.RelationMeaning;
+import ontologizer.ontology.RelationType;
+import ontologizer.ontology.Term;
+import ontologizer.ontology.TermContainer;
+import ontologizer.ontology.TermID;
+import ontologizer.set.PopulationSet;
+import ontologizer.set.StudySet;
+import ontologizer.types.ByteString;
+
+/**
+ * Represents a synthetic data set of arbitrary size. It contains an ontology,
+ * the associations and the population and is derived from a seed only, i.e.,
+ * it doesn't need any external file.
+ *
+ * The ontology is a random DAG with a single root. Each term is linked to
+ * one or, less often, two terms that have been created earlier. Each item
+ * is annotated to a random number of terms that on average matches the
+ * requested density.
+ */
+public class SyntheticOntology
+{
+	/** Probability that a term has a second parent */
+	private static final double SECOND_PARENT_PROBABILITY = 0.25;
+
+	public Ontology graph;
+	public AssociationContainer assoc;
+	public PopulationSet population;
+
+	/** All items in the order of their creation */
+	public List<ByteString> items = new ArrayList<ByteString>();
+
+	/** The items that are directly annotated to a term, indexed by term */
+	private List<List<ByteString>> term2Items = new ArrayList<List<ByteString>>();
+
+	private final long seed;
+
+	/**
+	 * Constructs a new synthetic data set.
+	 *
+	 * @param numberOfTerms the number of terms including the root.
+	 * @param numberOfItems the number of items, all of them are annotated.
+	 * @param annotationsPerItem the average number of direct annotations of an item.
+	 * @param seed the seed from which everything is derived.
+	 */
+	public SyntheticOntology(int numberOfTerms, int numberOfItems, int annotationsPerItem, long seed)
+	{
+		this.seed = seed;
+
+		Random r = new Random(seed);
+		RelationType isA = new RelationType(RelationMeaning.IS_A);
+		Prefix goPrefix = new Prefix("GO");
+
+		/* Go Graph */
+		HashSet<Term> terms = new HashSet<Term>();
+		terms.add(new Term(id(1), "T1"));
+		term2Items.add(new ArrayList<ByteString>());
+
+		for (int i = 2; i <= numberOfTerms; i++)
+		{
+			int parent = r.nextInt(i - 1) + 1;
+			int secondParent = r.nextInt(i - 1) + 1;
+			Term t;
+
+			if (secondParent != parent && r.nextDouble() < SECOND_PARENT_PROBABILITY)
+			{
+				t = new Term(id(i), "T" + i,
+						new ParentTermID(new TermID(goPrefix, parent), isA),
+						new ParentTermID(new TermID(goPrefix, secondParent), isA));
+			} else
+			{
+				t = new Term(id(i), "T" + i, new ParentTermID(new TermID(goPrefix, parent), isA));
+			}
+			terms.add(t);
+			term2Items.add(new ArrayList<ByteString>());
+		}
+
+		TermContainer termContainer = new TermContainer(terms, EMPTY, EMPTY);
+		graph = Ontology.create(termContainer);
+
+		/* Associations (note that redundant associations are filtered out later) */
+		ArrayList<Association> associations = new ArrayList<Association>();
+		population = new PopulationSet("population");
+
+		for (int i = 1; i <= numberOfItems; i++)
+		{
+			int numTerms = r.nextInt(2 * annotationsPerItem - 1) + 1;
+			ByteString itemName = new ByteString("item" + i);
+
+			for (int j = 0; j < numTerms; j++)
+			{
+				int tid = r.nextInt(numberOfTerms) + 1;
+				associations.add(new Association(itemName, new TermID(goPrefix, tid)));
+				term2Items.get(tid - 1).add(itemName);
+			}
+			items.add(itemName);
+			population.addGene(itemName, "");
+		}
+
+		AnnotationContext ac = new AnnotationContext(items, new HashMap<ByteString,ByteString>(), new HashMap<ByteString,ByteString>());
+		assoc = new AssociationContainer(associations, ac);
+	}
+
+	private static String id(int i)
+	{
+		return String.format("GO:%07d", i);
+	}
+
+	/**
+	 * Creates a study set of the given size. Up to half of the items are
+	 * taken from the items that are directly annotated to a randomly
+	 * selected term, the remaining items are drawn from the entire
+	 * population. The same arguments always lead to the same study set.
+	 *
+	 * @param size the number of items of the study set.
+	 * @return the study set
+	 */
+	public StudySet createStudySet(int size)
+	{
+		Random r = new Random(seed * 31 + size);
+		HashSet<ByteString> studyItems = new HashSet<ByteString>();
+
+		List<ByteString> termItems = term2Items.get(r.nextInt(term2Items.size()));
+		for (int i = 0; i < termItems.size() && studyItems.size() < size / 2; i++)
+			studyItems.add(termItems.get(i));
+
+		size = Math.min(size, items.size());
+		while (studyItems.size() < size)
+			studyItems.add(items.get(r.nextInt(items.size())));
+
+		StudySet study = new StudySet("study");
+		for (ByteString item : studyItems)
+			study.addGene(item, "");
+		return study;
+	}
+}
@@ -0,0 +1,46 @@
+package ontologizer.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. It accepts the usual JMH command line
+ * but attaches the GC profiler to each run unless other profilers have been
+ * requested, so the allocation rate per operation is always reported
+ * alongside the timings.
+ */
+public class Main
+{
+	public static void main(String [] args) throws Exception
+	{
+		CommandLineOptions cmdOptions;
+
+		try
+		{
+			cmdOptions = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e)
+		{
+			System.err.println("Error parsing command line:");
+			System.err.println(" " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams() ||
+			cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats())
+		{
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+		if (cmdOptions.getProfilers().isEmpty())
+			builder.addProfiler(GCProfiler.class);
+
+		new Runner(builder.build()).run();
+	}
+}
@@ -0,0 +1,78 @@
+package ontologizer.statistics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the upper tail of the hypergeometric distribution for a number
+ * of terms, once term by term and once by the batch variant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HypergeometricBenchmark
+{
+	@Param({"1000", "20000"})
+	public int populationSize;
+
+	@Param({"50", "500"})
+	public int studySize;
+
+	@Param({"4000"})
+	public int numberOfTerms;
+
+	private Hypergeometric hyperg;
+	private int [] annotatedPop;
+	private int [] annotatedStudy;
+	private double [] p;
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(1);
+
+		hyperg = new Hypergeometric(populationSize);
+		annotatedPop = new int[numberOfTerms];
+		annotatedStudy = new int[numberOfTerms];
+		p = new double[numberOfTerms];
+
+		for (int i = 0; i < numberOfTerms; i++)
+		{
+			annotatedPop[i] = rnd.nextInt(populationSize / 10) + 1;
+			annotatedStudy[i] = rnd.nextInt(Math.min(annotatedPop[i], studySize) + 1);
+		}
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public double [] single()
+	{
+		for (int i = 0; i < numberOfTerms; i++)
+			p[i] = hyperg.phypergeometric(populationSize, (double)annotatedPop[i] / populationSize, studySize, annotatedStudy[i]);
+		return p;
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public double [] batch()
+	{
+		hyperg.phypergeometric(populationSize, studySize, annotatedPop, annotatedStudy, p, null, numberOfTerms);
+		return p;
+	}
+}
@@ -0,0 +1,86 @@
+package ontologizer.statistics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ontologizer.calculation.EnrichedGOTermsResult;
+import ontologizer.calculation.TermForTermCalculation;
+import ontologizer.internal.SyntheticOntology;
+import ontologizer.set.StudySet;
+
+/**
+ * Measures the cached Westfall-Young step down correction of a
+ * Term-For-Term calculation, once including the resampling and once
+ * with the resampled p-values already in the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WestfallYoungStepDownCachedBenchmark
+{
+	@Param({"1000", "5000"})
+	public int numberOfTerms;
+
+	@Param({"5000"})
+	public int numberOfItems;
+
+	@Param({"10"})
+	public int annotationsPerItem;
+
+	@Param({"100"})
+	public int studySize;
+
+	@Param({"100", "1000"})
+	public int numberOfResamplingSteps;
+
+	private SyntheticOntology data;
+	private StudySet study;
+	private TermForTermCalculation calc;
+	private WestfallYoungStepDownCached resamplingCorrection;
+	private WestfallYoungStepDownCached cachedCorrection;
+
+	@Setup
+	public void setup()
+	{
+		data = new SyntheticOntology(numberOfTerms, numberOfItems, annotationsPerItem, 1);
+		study = data.createStudySet(studySize);
+		calc = new TermForTermCalculation();
+
+		resamplingCorrection = new WestfallYoungStepDownCached();
+		resamplingCorrection.setNumberOfResamplingSteps(numberOfResamplingSteps);
+
+		cachedCorrection = new WestfallYoungStepDownCached();
+		cachedCorrection.setNumberOfResamplingSteps(numberOfResamplingSteps);
+		calc.calculateStudySet(data.graph, data.assoc, data.population, study, cachedCorrection);
+	}
+
+	@Benchmark
+	@Warmup(iterations=3)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public EnrichedGOTermsResult resampling()
+	{
+		resamplingCorrection.resetCache();
+		return calc.calculateStudySet(data.graph, data.assoc, data.population, study, resamplingCorrection);
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public EnrichedGOTermsResult cached()
+	{
+		return calc.calculateStudySet(data.graph, data.assoc, data.population, study, cachedCorrection);
+	}
+}
@@ -0,0 +1,78 @@
+package ontologizer.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the intersection of sorted int arrays. The arrays get longer
+ * with their position, which resembles the parents of a term that are
+ * ordered by their size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UtilBenchmark
+{
+	@Param({"100", "10000"})
+	public int size;
+
+	@Param({"2", "3", "5"})
+	public int numberOfArrays;
+
+	private int [][] arrays;
+	private int [] result;
+
+	private static int [] randomSortedSubset(Random rnd, int universe, int size)
+	{
+		int [] subset = new int[size];
+		int j = 0;
+		for (int i = 0; i < universe && j < size; i++)
+		{
+			if (rnd.nextInt(universe - i) < size - j)
+				subset[j++] = i;
+		}
+		return subset;
+	}
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(1);
+		int universe = size * 16;
+
+		arrays = new int[numberOfArrays][];
+		for (int i = 0; i < numberOfArrays; i++)
+			arrays[i] = randomSortedSubset(rnd, universe, size * (1 + 3 * i));
+		result = new int[size];
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public int commonInts()
+	{
+		return Util.commonInts(arrays);
+	}
+
+	@Benchmark
+	@Warmup(iterations=5)
+	@Fork(value=1)
+	@Measurement(time=2,timeUnit=TimeUnit.SECONDS)
+	public int intersect()
+	{
+		return Util.intersect(arrays, numberOfArrays, result);
+	}
+}
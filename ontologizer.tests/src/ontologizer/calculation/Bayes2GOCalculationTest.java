@@ -2,20 +2,27 @@ package ontologizer.calculation;
 
 import static ontologizer.ontology.TermID.tid;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Random;
 import java.util.Set;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import ontologizer.association.AnnotationContext;
 import ontologizer.association.AssociationContainer;
 import ontologizer.calculation.b2g.B2GParam;
 import ontologizer.calculation.b2g.Bayes2GOCalculation;
+import ontologizer.calculation.b2g.Bayes2GOCalculation.Bayes2GOCalculationProgress;
+import ontologizer.calculation.b2g.Bayes2GOEnrichedGOTermsResult;
 import ontologizer.calculation.b2g.Bayes2GOGOTermProperties;
 import ontologizer.enumeration.TermEnumerator;
 import ontologizer.internal.InternalOntology;
@@ -49,6 +56,9 @@ public class Bayes2GOCalculationTest
 		return ((Bayes2GOGOTermProperties)result.getGOTermProperties(tid(tid))).marg;
 	}
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private Ontology ontology;
 	private AssociationContainer assoc;
 
@@ -95,6 +105,112 @@ public class Bayes2GOCalculationTest
 		assertEquals(0, marg(result, "GO:0000002"), 1e-5);
 	}
 
+	@Test
+	public void testBayes2GOChains()
+	{
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.25, ontology, assoc);
+
+		Bayes2GOCalculation calc = new Bayes2GOCalculation();
+		calc.setSeed(2);
+		calc.setMcmcSteps(220000);
+		calc.setNumberOfChains(4);
+		calc.setAlpha(B2GParam.Type.MCMC);
+		calc.setBeta(B2GParam.Type.MCMC);
+		calc.setExpectedNumber(2);
+
+		EnrichedGOTermsResult result = calc.calculateStudySet(ontology, assoc, scs.pop, scs.study, new None());
+		assertEquals(1, marg(result, "GO:0000004"), 1e-5);
+		assertEquals(1, marg(result, "GO:0000010"), 1e-5);
+		assertEquals(0, marg(result, "GO:0000011"), 1e-5);
+
+		for (AbstractGOTermProperties p : result)
+		{
+			Bayes2GOGOTermProperties prop = (Bayes2GOGOTermProperties)p;
+			assertEquals(1, prop.rhat, 0.05);
+			assertTrue(prop.ess > 0);
+			assertTrue(prop.ess <= 4 * 200000);
+		}
+	}
+
+	@Test
+	public void testBayes2GOTargetPrecision()
+	{
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.25, ontology, assoc);
+
+		Bayes2GOCalculation calc = new Bayes2GOCalculation();
+		calc.setSeed(2);
+		calc.setMcmcSteps(2020000);
+		calc.setTargetPrecision(0.01);
+		calc.setAlpha(B2GParam.Type.MCMC);
+		calc.setBeta(B2GParam.Type.MCMC);
+		calc.setExpectedNumber(2);
+
+		Bayes2GOEnrichedGOTermsResult result = (Bayes2GOEnrichedGOTermsResult)calc.calculateStudySet(ontology, assoc, scs.pop, scs.study, new None());
+		assertTrue(result.getNumberOfSteps() < 2020000);
+		assertEquals(1, marg(result, "GO:0000004"), 1e-5);
+		assertEquals(1, marg(result, "GO:0000010"), 1e-5);
+		assertEquals(0, marg(result, "GO:0000011"), 1e-5);
+	}
+
+	private static Bayes2GOCalculation createResumableCalculation(File checkpointDirectory)
+	{
+		Bayes2GOCalculation calc = new Bayes2GOCalculation();
+		calc.setSeed(2);
+		calc.setMcmcSteps(420000);
+		calc.setNumberOfChains(2);
+		calc.setAlpha(B2GParam.Type.MCMC);
+		calc.setBeta(B2GParam.Type.MCMC);
+		calc.setExpectedNumber(2);
+		calc.setCheckpointDirectory(checkpointDirectory);
+		calc.setCheckpointPeriod(0);
+		calc.setResume(true);
+		return calc;
+	}
+
+	@Test
+	public void testBayes2GOResume() throws Exception
+	{
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.25, ontology, assoc);
+		File checkpointDirectory = folder.newFolder();
+
+		EnrichedGOTermsResult expected = createResumableCalculation(checkpointDirectory).calculateStudySet(ontology, assoc, scs.pop, scs.study, new None());
+		assertEquals(0, checkpointDirectory.list().length);
+
+		/* Interrupt a calculation after a checkpoint has been written */
+		Bayes2GOCalculation interrupted = createResumableCalculation(checkpointDirectory);
+		interrupted.setBayes2GOCalculationProgress(new Bayes2GOCalculationProgress()
+		{
+			public void update(int iterationNumber, int step, double acceptProb, int numAccept, double score)
+			{
+				if (step == 250000)
+					throw new IllegalStateException("Interrupted");
+			}
+		});
+		boolean wasInterrupted = false;
+		try
+		{
+			interrupted.calculateStudySet(ontology, assoc, scs.pop, scs.study, new None());
+		} catch (IllegalStateException e)
+		{
+			wasInterrupted = true;
+		}
+		assertTrue(wasInterrupted);
+		assertEquals(1, checkpointDirectory.list().length);
+
+		EnrichedGOTermsResult resumed = createResumableCalculation(checkpointDirectory).calculateStudySet(ontology, assoc, scs.pop, scs.study, new None());
+		assertEquals(0, checkpointDirectory.list().length);
+
+		for (AbstractGOTermProperties p : expected)
+		{
+			Bayes2GOGOTermProperties e = (Bayes2GOGOTermProperties)p;
+			Bayes2GOGOTermProperties r = (Bayes2GOGOTermProperties)resumed.getGOTermProperties(e.term);
+			assertEquals(e.marg, r.marg, 0);
+			assertEquals(e.rhat, r.rhat, 0);
+			assertEquals(e.ess, r.ess, 0);
+		}
+		assertFalse(Double.isNaN(marg(resumed, "GO:0000004")));
+	}
+
 	@Test
 	public void testBayes2GOSlimSimple()
 	{
@@ -0,0 +1,41 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ontologizer.calculation.util.CompressedLinks;
+
+public class CompressedLinksTest
+{
+	@Test
+	public void testCreate()
+	{
+		CompressedLinks links = CompressedLinks.create(new int[][]{{0,2,3},{},{1,3}}, 5);
+		assertEquals(3, links.getNumberOfSources());
+		assertEquals(5, links.getNumberOfTargets());
+		assertEquals(5, links.getNumberOfLinks());
+		assertArrayEquals(new int[]{0,3,3,5}, links.getOffsets());
+		assertArrayEquals(new int[]{0,2,3,1,3}, links.getTargets());
+		assertEquals(0, links.getNumberOfTargets(1));
+		assertEquals(3, links.getTarget(2, 1));
+
+		assertEquals(4, CompressedLinks.create(new int[][]{{0,2,3},{},{1,3}}).getNumberOfTargets());
+	}
+
+	@Test
+	public void testTranspose()
+	{
+		CompressedLinks links = CompressedLinks.create(new int[][]{{0,2,3},{},{1,3}}, 5);
+		CompressedLinks reverse = links.transpose();
+		assertEquals(5, reverse.getNumberOfSources());
+		assertEquals(3, reverse.getNumberOfTargets());
+		assertArrayEquals(new int[]{0,1,2,3,5,5}, reverse.getOffsets());
+		assertArrayEquals(new int[]{0,2,0,0,2}, reverse.getTargets());
+
+		CompressedLinks back = reverse.transpose();
+		assertArrayEquals(links.getOffsets(), back.getOffsets());
+		assertArrayEquals(links.getTargets(), back.getTargets());
+	}
+}
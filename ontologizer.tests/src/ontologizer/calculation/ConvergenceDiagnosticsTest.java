@@ -0,0 +1,72 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.calculation.b2g.ConvergenceDiagnostics;
+
+public class ConvergenceDiagnosticsTest
+{
+	@Test
+	public void testPotentialScaleReduction()
+	{
+		/* Sequences that agree */
+		assertEquals(1, ConvergenceDiagnostics.getPotentialScaleReduction(new double[]{0.5,0.5,0.5}, new double[]{0.25,0.25,0.25}, 1000), 1e-3);
+
+		/* Sequences that are stuck in different states */
+		assertTrue(ConvergenceDiagnostics.getPotentialScaleReduction(new double[]{0.1,0.9}, new double[]{0.09,0.09}, 1000) > 2);
+		assertEquals(Double.POSITIVE_INFINITY, ConvergenceDiagnostics.getPotentialScaleReduction(new double[]{0,1}, new double[]{0,0}, 1000), 0);
+		assertEquals(1, ConvergenceDiagnostics.getPotentialScaleReduction(new double[]{0,0}, new double[]{0,0}, 1000), 0);
+
+		assertTrue(Double.isNaN(ConvergenceDiagnostics.getPotentialScaleReduction(new double[]{0.5}, new double[]{0.25}, 1000)));
+	}
+
+	/**
+	 * Returns the batch means of an autoregressive chain with the given
+	 * correlation of subsequent samples.
+	 */
+	private static double [] batchMeans(double rho, int batches, int batchSize, Random rnd)
+	{
+		double [] means = new double[batches];
+		double x = 0;
+		for (int b = 0; b < batches; b++)
+		{
+			for (int i = 0; i < batchSize; i++)
+			{
+				x = rho * x + Math.sqrt(1 - rho * rho) * rnd.nextGaussian();
+				means[b] += x;
+			}
+			means[b] /= batchSize;
+		}
+		return means;
+	}
+
+	@Test
+	public void testEffectiveSampleSize()
+	{
+		Random rnd = new Random(1);
+
+		/* Independent samples */
+		double ess = ConvergenceDiagnostics.getEffectiveSampleSize(batchMeans(0, 50, 2000, rnd), 2000, 1);
+		assertTrue(ess > 50000);
+		assertTrue(ess <= 100000);
+
+		/* The effective sample size of an AR(1) chain is n(1-rho)/(1+rho) */
+		ess = ConvergenceDiagnostics.getEffectiveSampleSize(batchMeans(0.9, 50, 2000, rnd), 2000, 1);
+		assertEquals(100000 * 0.1 / 1.9, ess, 2000);
+
+		/* Constant chain */
+		assertEquals(100, ConvergenceDiagnostics.getEffectiveSampleSize(new double[]{0,0,0,0}, 25, 0), 0);
+	}
+
+	@Test
+	public void testBinaryVariance()
+	{
+		assertEquals(0.25 * 4 / 3, ConvergenceDiagnostics.getBinaryVariance(0.5, 4), 1e-10);
+		assertEquals(0, ConvergenceDiagnostics.getBinaryVariance(1, 4), 0);
+	}
+}
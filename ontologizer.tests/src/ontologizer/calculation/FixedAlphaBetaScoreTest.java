@@ -103,4 +103,49 @@ public class FixedAlphaBetaScoreTest
 		Assert.assertEquals(expectedMax, foundMax, 1e-10);
 	}
 
+	@Test
+	public void testScoreWithSampledParameters()
+	{
+		int [][] termLinks = new int[][]{{0,1,2,3},{2,3,4,5},{5,6,7},{0,7,8,9}};
+		boolean [] observedGenes = new boolean[]{true,true,true,false,false,false,true,false,false,true};
+
+		Random rnd = new Random(3);
+		FixedAlphaBetaScore fabs = new FixedAlphaBetaScore(rnd, termLinks, observedGenes);
+		fabs.setMaxAlpha(0.5);
+
+		for (int step = 0; step < 2000; step++)
+		{
+			fabs.proposeNewState(rnd.nextLong());
+			if (rnd.nextBoolean())
+				fabs.undoProposal();
+
+			/* Determine the counts of the current state directly */
+			boolean [] hidden = new boolean[observedGenes.length];
+			int [] active = fabs.getActiveTerms();
+			for (int t : active)
+				for (int g : termLinks[t])
+					hidden[g] = true;
+
+			int n00 = 0, n01 = 0, n10 = 0, n11 = 0;
+			for (int g = 0; g < observedGenes.length; g++)
+			{
+				if (hidden[g])
+				{
+					if (observedGenes[g]) n11++;
+					else n01++;
+				} else
+				{
+					if (observedGenes[g]) n10++;
+					else n00++;
+				}
+			}
+
+			double alpha = fabs.getAlpha();
+			double beta = fabs.getBeta();
+			double p = fabs.getP();
+			double expected = Math.log(alpha) * n10 + Math.log(1 - alpha) * n00 + Math.log(1 - beta) * n11 + Math.log(beta) * n01 +
+					Math.log(p) * active.length + Math.log(1 - p) * (termLinks.length - active.length);
+			Assert.assertEquals(expected, fabs.getScore(), 1e-10);
+		}
+	}
 }
@@ -0,0 +1,97 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RandomStudyIdSamplerTest
+{
+	@Test
+	public void testDraw()
+	{
+		/* Every third gene of the population is not annotated */
+		int [] population = new int[300];
+		for (int i = 0; i < population.length; i++)
+			population[i] = i % 3 == 0 ? -1 : i;
+
+		RandomStudyIdSampler sampler = new RandomStudyIdSampler(population);
+		Random rnd = new Random(5);
+		int [] drawn = new int[population.length];
+		int samples = 3000;
+		int size = 30;
+
+		for (int s = 0; s < samples; s++)
+		{
+			int n = sampler.draw(size, rnd);
+			int [] ids = sampler.getStudyIds();
+			assertTrue(n <= size);
+			for (int i = 0; i < n; i++)
+			{
+				assertTrue(ids[i] % 3 != 0);
+				if (i > 0) assertTrue(ids[i - 1] < ids[i]);
+				drawn[ids[i]]++;
+			}
+		}
+
+		/* Each gene is expected to be drawn samples * size / 300 = 300 times */
+		for (int i = 0; i < population.length; i++)
+		{
+			if (i % 3 == 0)
+				assertEquals(0, drawn[i]);
+			else
+				assertTrue(drawn[i] > 200 && drawn[i] < 400);
+		}
+
+		/* The population is not modified */
+		assertEquals(-1, population[0]);
+		assertEquals(1, population[1]);
+	}
+
+	@Test
+	public void testDrawEntirePopulation()
+	{
+		RandomStudyIdSampler sampler = new RandomStudyIdSampler(new int[]{4, -1, 2, 0, 3});
+		assertEquals(4, sampler.draw(10, new Random(1)));
+		for (int i = 0; i < 4; i++)
+			assertEquals(i == 0 ? 0 : i + 1, sampler.getStudyIds()[i]);
+	}
+
+	@Test
+	public void testDrawPermutation()
+	{
+		int [] population = new int[100];
+		for (int i = 0; i < population.length; i++)
+			population[i] = i % 4 == 0 ? -1 : i;
+
+		RandomStudyIdSampler sampler = new RandomStudyIdSampler(population);
+		RandomStudyIdSampler permutationSampler = new RandomStudyIdSampler(population);
+
+		/* Draws depend on the seed only, so prefixes of a permutation are the study sets */
+		for (int seed = 0; seed < 20; seed++)
+		{
+			int k = permutationSampler.drawPermutation(40, new Random(seed));
+			assertEquals(40, k);
+
+			for (int size = 1; size <= k; size += 13)
+			{
+				int n = sampler.draw(size, new Random(seed));
+				int [] prefix = new int[size];
+				int numberOfIds = 0;
+				for (int i = 0; i < size; i++)
+				{
+					if (permutationSampler.getPermutation()[i] >= 0)
+						prefix[numberOfIds++] = permutationSampler.getPermutation()[i];
+				}
+				Arrays.sort(prefix, 0, numberOfIds);
+
+				assertEquals(numberOfIds, n);
+				for (int i = 0; i < n; i++)
+					assertEquals(prefix[i], sampler.getStudyIds()[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.calculation.b2g.RestorableRandom;
+
+public class RestorableRandomTest
+{
+	@Test
+	public void testSameAsRandom()
+	{
+		Random expected = new Random(4711);
+		RestorableRandom rnd = new RestorableRandom(4711);
+
+		for (int i = 0; i < 1000; i++)
+		{
+			assertEquals(expected.nextLong(), rnd.nextLong());
+			assertEquals(expected.nextDouble(), rnd.nextDouble(), 0);
+			assertEquals(expected.nextBoolean(), rnd.nextBoolean());
+			assertEquals(expected.nextInt(17), rnd.nextInt(17));
+		}
+	}
+
+	@Test
+	public void testRestore()
+	{
+		RestorableRandom rnd = new RestorableRandom(13);
+		rnd.nextLong();
+		long state = rnd.getState();
+
+		long [] expected = new long[10];
+		for (int i = 0; i < expected.length; i++)
+			expected[i] = rnd.nextLong();
+
+		RestorableRandom restored = new RestorableRandom(0);
+		restored.setState(state);
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], restored.nextLong());
+	}
+}
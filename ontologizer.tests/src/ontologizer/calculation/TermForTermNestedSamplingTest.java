@@ -0,0 +1,110 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.internal.InternalOntology;
+import ontologizer.ontology.Ontology;
+import ontologizer.ontology.TermID;
+import ontologizer.set.StudySet;
+import ontologizer.statistics.Hypergeometric;
+import ontologizer.statistics.INestedPValueCalculation.ISizeProcessor;
+import ontologizer.statistics.PValueBuffer;
+import ontologizer.types.ByteString;
+
+public class TermForTermNestedSamplingTest
+{
+	/**
+	 * Creates a study set that consists of the first genes of the given
+	 * study set.
+	 */
+	private static StudySet createStudySet(StudySet genes, int size)
+	{
+		StudySet study = new StudySet("Study " + size);
+		for (ByteString gene : genes)
+		{
+			if (study.getGeneCount() == size)
+				break;
+			study.addGene(gene, "");
+		}
+		return study;
+	}
+
+	private static PValueBuffer copy(PValueBuffer buffer)
+	{
+		PValueBuffer copy = new PValueBuffer(buffer.size());
+		System.arraycopy(buffer.p, 0, copy.p, 0, buffer.size());
+		System.arraycopy(buffer.p_min, 0, copy.p_min, 0, buffer.size());
+		System.arraycopy(buffer.ignoreAtMTC, 0, copy.ignoreAtMTC, 0, buffer.size());
+		return copy;
+	}
+
+	@Test
+	public void testNestedEqualsSingle()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		AssociationContainer assoc = internalOntology.assoc;
+		Ontology ontology = internalOntology.graph;
+
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.0);
+
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.00, ontology, assoc);
+		PopulationCalculationContext context = PopulationCalculationContext.create(ontology, assoc, scs.pop);
+
+		int [] sizes = new int[]{1, 20, 57, 200, 500};
+		TermForTermPValueCalculation [] calcs = new TermForTermPValueCalculation[sizes.length];
+		for (int i = 0; i < sizes.length; i++)
+		{
+			calcs[i] = new TermForTermPValueCalculation(context, createStudySet(scs.pop, sizes[i]), context.getHypergeometric());
+			assertEquals(sizes[i], calcs[i].currentStudySetSize());
+			assertTrue(calcs[i].supportsNestedSampling());
+		}
+
+		final PValueBuffer [] nested = new PValueBuffer[sizes.length];
+		PValueBuffer buffer = new PValueBuffer(calcs[0].getNumberOfPValues());
+
+		for (int seed = 0; seed < 20; seed++)
+		{
+			calcs[0].calculateNestedRandomPValues(new Random(seed), sizes, buffer, new ISizeProcessor()
+			{
+				public void process(int sizeIndex, PValueBuffer randomP)
+				{
+					nested[sizeIndex] = copy(randomP);
+				}
+			}, null);
+
+			for (int i = 0; i < sizes.length; i++)
+			{
+				PValueBuffer single = new PValueBuffer(calcs[i].getNumberOfPValues());
+				calcs[i].calculateRandomPValues(new Random(seed), single, null);
+
+				assertArrayEquals("Size " + sizes[i], single.p, nested[i].p, 0);
+				assertArrayEquals("Size " + sizes[i], single.p_min, nested[i].p_min, 0);
+				for (int j = 0; j < single.size(); j++)
+					assertEquals("Size " + sizes[i], single.ignoreAtMTC[j], nested[i].ignoreAtMTC[j]);
+			}
+		}
+	}
+
+	@Test
+	public void testNoNestedSamplingWithPruning()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.0);
+
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.00, internalOntology.graph, internalOntology.assoc);
+		TermForTermPValueCalculation calc = new TermForTermPValueCalculation(internalOntology.graph, internalOntology.assoc, scs.pop, scs.study, new Hypergeometric());
+		calc.setPruningAlpha(0.05);
+		assertFalse(calc.supportsNestedSampling());
+	}
+}
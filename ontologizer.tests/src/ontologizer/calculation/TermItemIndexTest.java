@@ -0,0 +1,56 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.util.Util;
+
+public class TermItemIndexTest
+{
+	private static int [] randomSortedSubset(Random rnd, int numberOfItems, int size)
+	{
+		int [] subset = new int[size];
+		int j = 0;
+		for (int i = 0; i < numberOfItems && j < size; i++)
+		{
+			if (rnd.nextInt(numberOfItems - i) < size - j)
+				subset[j++] = i;
+		}
+		return subset;
+	}
+
+	@Test
+	public void testCountCommonItems()
+	{
+		Random rnd = new Random(3);
+		int numberOfItems = 1000;
+		int [] sizes = new int[]{0, 1, 5, 20, 31, 32, 100, 500, 999, 1000};
+		int [][] term2Items = new int[sizes.length][];
+		for (int i = 0; i < sizes.length; i++)
+			term2Items[i] = randomSortedSubset(rnd, numberOfItems, sizes[i]);
+
+		TermItemIndex index = TermItemIndex.create(term2Items, numberOfItems);
+		assertFalse(index.isDense(2));
+		assertTrue(index.isDense(sizes.length - 1));
+		for (int i = 0; i < sizes.length; i++)
+			assertEquals(sizes[i], index.getTermSize(i));
+
+		long [] itemSet = index.newItemSet();
+		int [] counts = new int[sizes.length];
+
+		for (int studySize : new int[]{0, 1, 10, 200, 1000})
+		{
+			int [] studyIds = randomSortedSubset(rnd, numberOfItems, studySize);
+			index.setItemSet(studyIds, itemSet);
+			index.countCommonItems(itemSet, counts);
+
+			for (int i = 0; i < sizes.length; i++)
+				assertEquals(Util.commonInts(studyIds, term2Items[i]), counts[i]);
+		}
+	}
+}
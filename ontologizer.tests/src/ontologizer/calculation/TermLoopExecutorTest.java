@@ -0,0 +1,55 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ontologizer.statistics.IPValueCalculationProgress;
+
+public class TermLoopExecutorTest
+{
+	private static double [] run(ITermLoopExecutor executor, int numberOfTerms, final List<Integer> updates)
+	{
+		final double [] values = new double[numberOfTerms];
+
+		executor.execute(numberOfTerms, new ITermRangeCalculation()
+		{
+			public void calculate(int from, int to)
+			{
+				for (int i = from; i < to; i++)
+					values[i] = Math.exp(-Math.sqrt(i));
+			}
+		}, new IPValueCalculationProgress()
+		{
+			public void update(int current)
+			{
+				updates.add(current);
+			}
+		});
+		return values;
+	}
+
+	@Test
+	public void testForkJoinIsIdenticalToSequential()
+	{
+		int numberOfTerms = 10007;
+
+		List<Integer> sequentialUpdates = new ArrayList<Integer>();
+		List<Integer> parallelUpdates = new ArrayList<Integer>();
+
+		double [] expected = run(new SequentialTermLoopExecutor(), numberOfTerms, sequentialUpdates);
+		double [] actual = run(new ForkJoinTermLoopExecutor(4), numberOfTerms, parallelUpdates);
+
+		assertArrayEquals(expected, actual, 0);
+
+		/* Progress must never decrease and must reach the end */
+		for (int i = 1; i < parallelUpdates.size(); i++)
+			assertTrue(parallelUpdates.get(i - 1) < parallelUpdates.get(i));
+		assertEquals(numberOfTerms, (int)parallelUpdates.get(parallelUpdates.size() - 1));
+	}
+}
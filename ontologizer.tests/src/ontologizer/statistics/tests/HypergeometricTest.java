@@ -40,4 +40,39 @@ public class HypergeometricTest
 		// drawing more white than available in total
 		assertTrue(hyper.phyper(10,8,5,12,false) == 0);
 	}
+
+	@Test
+	public void testLogfact()
+	{
+		Hypergeometric fixed = new Hypergeometric(100);
+
+		assertEquals(0, hyper.logfact(0), 0);
+		assertEquals(0, hyper.logfact(1), 0);
+		assertEquals(Math.log(120), hyper.logfact(5), 1e-12);
+
+		/* Values beyond the fixed table are calculated via lgamma */
+		for (int i = 0; i < 3000; i++)
+			assertEquals(hyper.logfact(i), fixed.logfact(i), 1e-9 * Math.max(1, hyper.logfact(i)));
+
+		assertEquals(hyper.phyper(22,1526,40,190,false), fixed.phyper(22,1526,40,190,false), 1e-12);
+	}
+
+	@Test
+	public void testBatchPhypergeometric()
+	{
+		int n = 1526;
+		int k = 190;
+		int [] annotatedPop = new int[]{40, 40, 4, 1, 1526, 200, 12};
+		int [] annotatedStudy = new int[]{22, 0, 2, 1, 190, 190, 12};
+		double [] p = new double[annotatedPop.length];
+		double [] pMin = new double[annotatedPop.length];
+
+		hyper.phypergeometric(n, k, annotatedPop, annotatedStudy, p, pMin, annotatedPop.length);
+
+		for (int i = 0; i < annotatedPop.length; i++)
+		{
+			assertEquals(hyper.phypergeometric(n, (double)annotatedPop[i] / n, k, annotatedStudy[i]), p[i], 0);
+			assertEquals(hyper.dhyper(annotatedPop[i], n, annotatedPop[i], annotatedPop[i]), pMin[i], 0);
+		}
+	}
 }
@@ -0,0 +1,155 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.statistics.BenjaminiHochberg;
+import ontologizer.statistics.IPValueCalculation;
+import ontologizer.statistics.IPValueCalculationProgress;
+import ontologizer.statistics.ITestCorrectionProgress;
+import ontologizer.statistics.IndexSorter;
+import ontologizer.statistics.PValue;
+
+public class IndexSorterTest
+{
+	/**
+	 * Sorts the indices of the keys via objects and Arrays.sort(), which
+	 * is stable.
+	 */
+	private static int [] sortViaObjects(final double [] keys)
+	{
+		PValue [] p = new PValue[keys.length];
+		for (int i = 0; i < keys.length; i++)
+		{
+			p[i] = new PValue();
+			p[i].p = keys[i];
+			p[i].p_min = i;
+		}
+		Arrays.sort(p);
+
+		int [] index = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			index[i] = (int)p[i].p_min;
+		return index;
+	}
+
+	private static void assertSortedLikeObjects(double [] keys)
+	{
+		int [] expected = sortViaObjects(keys);
+		int [] actual = IndexSorter.sort(keys);
+		for (int i = 0; i < keys.length; i++)
+			assertEquals(expected[i], actual[i]);
+	}
+
+	@Test
+	public void testSort()
+	{
+		Random rnd = new Random(11);
+
+		for (int n : new int[]{0, 1, 2, 17, 48, 49, 1000, 40000})
+		{
+			double [] keys = new double[n];
+
+			/* Uniform p-values */
+			for (int i = 0; i < n; i++)
+				keys[i] = rnd.nextDouble();
+			assertSortedLikeObjects(keys);
+
+			/* Many ties, which must keep their order */
+			for (int i = 0; i < n; i++)
+				keys[i] = rnd.nextInt(10) / 10.0;
+			assertSortedLikeObjects(keys);
+
+			/* Tiny p-values spanning many exponents */
+			for (int i = 0; i < n; i++)
+				keys[i] = Math.pow(10, -300 * rnd.nextDouble());
+			assertSortedLikeObjects(keys);
+
+			/* Negative values */
+			for (int i = 0; i < n; i++)
+				keys[i] = rnd.nextGaussian();
+			assertSortedLikeObjects(keys);
+		}
+	}
+
+	@Test
+	public void testSortRange()
+	{
+		double [] keys = new double[]{0.5, 0.1, 0.3, Double.NaN, 0.2, 0.0};
+		int [] index = new int[]{3, 0, 1, 2, 4};
+
+		IndexSorter.sort(keys, index, 4);
+		assertEquals(1, index[0]);
+		assertEquals(2, index[1]);
+		assertEquals(0, index[2]);
+		assertEquals(3, index[3]);
+		assertEquals(4, index[4]);
+	}
+
+	@Test
+	public void testBenjaminiHochberg()
+	{
+		Random rnd = new Random(3);
+		final PValue [] raw = new PValue[300];
+		for (int i = 0; i < raw.length; i++)
+		{
+			raw[i] = new PValue();
+			raw[i].p = rnd.nextInt(100) / 1000.0;
+			raw[i].ignoreAtMTC = i % 7 == 0;
+		}
+
+		PValue [] adjusted = new BenjaminiHochberg().adjustPValues(new IPValueCalculation()
+		{
+			public PValue[] calculateRawPValues(IPValueCalculationProgress progress)
+			{
+				return raw;
+			}
+
+			public PValue[] calculateRandomPValues(IPValueCalculationProgress progress)
+			{
+				return null;
+			}
+
+			public int currentStudySetSize()
+			{
+				return 0;
+			}
+
+			public int getNumberOfPValues()
+			{
+				return raw.length;
+			}
+		}, (ITestCorrectionProgress)null);
+
+		/* The adjusted p-value is the minimum of p * n / rank over all larger ranks */
+		int n = 0;
+		for (PValue p : raw)
+			if (!p.ignoreAtMTC) n++;
+
+		for (PValue p : adjusted)
+		{
+			if (p.ignoreAtMTC)
+				continue;
+
+			double expected = 1;
+			for (PValue q : raw)
+			{
+				if (q.ignoreAtMTC || q.p < p.p)
+					continue;
+
+				int qRank = 0;
+				for (PValue o : raw)
+				{
+					if (!o.ignoreAtMTC && o.p <= q.p)
+						qRank++;
+				}
+				expected = Math.min(expected, q.p * n / qRank);
+			}
+			assertEquals(expected, p.p_adjusted, 1e-12);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ontologizer.statistics.IFingerprintedPValueCalculation;
+import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueBuffer;
+import ontologizer.statistics.PvalueSetStore;
+import ontologizer.statistics.ResamplingDiskCache;
+import ontologizer.statistics.WestfallYoungSingleStepApproximate;
+import ontologizer.statistics.WestfallYoungStepDownCached;
+
+public class ResamplingDiskCacheTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	static class FingerprintedCalculation extends ResamplingExecutorTest.UniformPValueCalculation implements IFingerprintedPValueCalculation
+	{
+		private final String fingerprint;
+
+		public FingerprintedCalculation(int m, String fingerprint)
+		{
+			super(m);
+			this.fingerprint = fingerprint;
+		}
+
+		public String getFingerprint()
+		{
+			return fingerprint;
+		}
+	}
+
+	@Test
+	public void testStoreRoundTrip() throws Exception
+	{
+		PvalueSetStore store = new PvalueSetStore(2, 4);
+		PValueBuffer buffer = new PValueBuffer(4);
+		for (int i = 0; i < 3; i++)
+		{
+			for (int j = 0; j < 4; j++)
+				buffer.set(j, (i + j) / 10.0, 0, j == i);
+			store.add(buffer);
+		}
+
+		File file = folder.newFile("store.pvs");
+		store.write(file);
+		PvalueSetStore mapped = PvalueSetStore.map(file);
+
+		assertEquals(store.size(), mapped.size());
+		assertEquals(store.getSetSize(), mapped.getSetSize());
+		for (int b = 0; b < store.size(); b++)
+		{
+			assertEquals(store.getNumberOfEntries(b), mapped.getNumberOfEntries(b));
+			for (int e = 0; e < store.getNumberOfEntries(b); e++)
+			{
+				assertEquals(store.getTerm(b, e), mapped.getTerm(b, e));
+				assertEquals(store.getP(b, e), mapped.getP(b, e), 0);
+			}
+		}
+
+		/* Mapped stores can still be extended */
+		mapped.add(buffer);
+		assertEquals(store.size() + 1, mapped.size());
+	}
+
+	@Test
+	public void testWestfallYoungStepDownCached() throws Exception
+	{
+		ResamplingDiskCache cache = new ResamplingDiskCache(new File(folder.getRoot(), "samples"));
+
+		WestfallYoungStepDownCached first = new WestfallYoungStepDownCached();
+		first.setNumberOfResamplingSteps(200);
+		first.setSeed(3);
+		first.setDiskCache(cache);
+		PValue [] firstP = first.adjustPValues(new FingerprintedCalculation(15, "a"), null);
+		assertEquals(1, cache.getDirectory().list().length);
+
+		/* A new instance doesn't know the samples but finds them on disk */
+		WestfallYoungStepDownCached second = new WestfallYoungStepDownCached();
+		second.setNumberOfResamplingSteps(200);
+		second.setSeed(3);
+		second.setDiskCache(cache);
+		PValue [] secondP = second.adjustPValues(new FingerprintedCalculation(15, "a"), null);
+		assertEquals(1, cache.getDirectory().list().length);
+
+		for (int i = 0; i < firstP.length; i++)
+			assertEquals(firstP[i].p_adjusted, secondP[i].p_adjusted, 0);
+
+		/* Other fingerprints or seeds don't share samples */
+		second.setSeed(4);
+		second.resetCache();
+		second.adjustPValues(new FingerprintedCalculation(15, "a"), null);
+		second.resetCache();
+		second.adjustPValues(new FingerprintedCalculation(15, "b"), null);
+		assertEquals(3, cache.getDirectory().list().length);
+	}
+
+	@Test
+	public void testWestfallYoungSingleStepApproximate() throws Exception
+	{
+		ResamplingDiskCache cache = new ResamplingDiskCache(folder.getRoot());
+
+		WestfallYoungSingleStepApproximate first = new WestfallYoungSingleStepApproximate();
+		first.setSeed(3);
+		first.setDiskCache(cache);
+		PValue [] firstP = first.adjustPValues(new FingerprintedCalculation(15, "a"), null);
+
+		String key = ResamplingDiskCache.createKey(first, new FingerprintedCalculation(15, "a"));
+		assertEquals(1, cache.getStudySetSizesOfValues(key).length);
+		assertNotNull(cache.loadValues(key, 10));
+		assertNull(cache.loadValues(key, 11));
+
+		WestfallYoungSingleStepApproximate second = new WestfallYoungSingleStepApproximate();
+		second.setSeed(3);
+		second.setDiskCache(cache);
+		PValue [] secondP = second.adjustPValues(new FingerprintedCalculation(15, "a"), null);
+
+		for (int i = 0; i < firstP.length; i++)
+			assertEquals(firstP[i].p_adjusted, secondP[i].p_adjusted, 0);
+		assertTrue(cache.getDirectory().list().length == 1);
+	}
+}
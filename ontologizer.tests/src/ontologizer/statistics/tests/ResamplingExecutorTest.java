@@ -0,0 +1,405 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ontologizer.statistics.FDRBySteffen;
+import ontologizer.statistics.FDRBySteffenCached;
+import ontologizer.statistics.IBufferedPValueCalculation;
+import ontologizer.statistics.INestedPValueCalculation;
+import ontologizer.statistics.IPValueCalculationProgress;
+import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueBuffer;
+import ontologizer.statistics.ResamplingExecutor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
+import ontologizer.statistics.WestfallYoungSingleStep;
+import ontologizer.statistics.WestfallYoungSingleStepApproximate;
+import ontologizer.statistics.WestfallYoungStepDown;
+import ontologizer.statistics.WestfallYoungStepDownCached;
+
+public class ResamplingExecutorTest
+{
+	/**
+	 * A p-value calculation whose random p-values are uniformly distributed
+	 * and solely determined by the supplied source of randomness.
+	 */
+	static class UniformPValueCalculation implements IBufferedPValueCalculation
+	{
+		private final int m;
+
+		public UniformPValueCalculation(int m)
+		{
+			this.m = m;
+		}
+
+		public PValue[] calculateRawPValues(IPValueCalculationProgress progress)
+		{
+			PValue [] p = new PValue[m];
+			for (int i = 0; i < m; i++)
+			{
+				p[i] = new PValue();
+				p[i].p = (i + 1) / (10.0 * m);
+			}
+			return p;
+		}
+
+		public PValue[] calculateRandomPValues(IPValueCalculationProgress progress)
+		{
+			PValueBuffer buffer = new PValueBuffer(m);
+			calculateRandomPValues(new Random(), buffer, progress);
+			return buffer.toPValues();
+		}
+
+		public void calculateRandomPValues(PValueBuffer buffer, IPValueCalculationProgress progress)
+		{
+			calculateRandomPValues(new Random(), buffer, progress);
+		}
+
+		public void calculateRandomPValues(Random rnd, PValueBuffer buffer, IPValueCalculationProgress progress)
+		{
+			for (int i = 0; i < m; i++)
+				buffer.set(i, rnd.nextDouble(), 0, false);
+		}
+
+		public int currentStudySetSize()
+		{
+			return 10;
+		}
+
+		public int getNumberOfPValues()
+		{
+			return m;
+		}
+	}
+
+	/**
+	 * A p-value calculation whose random study sets are sequences of uniformly
+	 * distributed values of the length of the study set size. The p-value
+	 * of a term depends on how many values of the study set are below a
+	 * threshold of the term, so study sets of different sizes lead to
+	 * different p-values.
+	 */
+	static class NestedUniformPValueCalculation extends UniformPValueCalculation implements INestedPValueCalculation
+	{
+		private final int m;
+		private final int studySetSize;
+
+		/** The number of random study sets of a single size */
+		final AtomicInteger singleSamples = new AtomicInteger();
+
+		/** The number of random permutations from which nested study sets were derived */
+		final AtomicInteger nestedSamples = new AtomicInteger();
+
+		public NestedUniformPValueCalculation(int m, int studySetSize)
+		{
+			super(m);
+			this.m = m;
+			this.studySetSize = studySetSize;
+		}
+
+		private void calculatePValues(int [] counts, int size, PValueBuffer buffer)
+		{
+			for (int i = 0; i < m; i++)
+				buffer.set(i, (counts[i] + 1) / (size + 1.0), 0, false);
+		}
+
+		private void count(double value, int [] counts)
+		{
+			for (int i = 0; i < m; i++)
+			{
+				if (value < (i + 1) / (2.0 * m))
+					counts[i]++;
+			}
+		}
+
+		@Override
+		public void calculateRandomPValues(Random rnd, PValueBuffer buffer, IPValueCalculationProgress progress)
+		{
+			singleSamples.incrementAndGet();
+
+			int [] counts = new int[m];
+			for (int j = 0; j < studySetSize; j++)
+				count(rnd.nextDouble(), counts);
+			calculatePValues(counts, studySetSize, buffer);
+		}
+
+		public boolean supportsNestedSampling()
+		{
+			return true;
+		}
+
+		public void calculateNestedRandomPValues(Random rnd, int [] sizes, PValueBuffer buffer, ISizeProcessor processor, IPValueCalculationProgress progress)
+		{
+			nestedSamples.incrementAndGet();
+
+			int [] counts = new int[m];
+			int drawn = 0;
+			for (int i = 0; i < sizes.length; i++)
+			{
+				for (; drawn < sizes[i]; drawn++)
+					count(rnd.nextDouble(), counts);
+				calculatePValues(counts, sizes[i], buffer);
+				processor.process(i, buffer);
+			}
+		}
+
+		@Override
+		public int currentStudySetSize()
+		{
+			return studySetSize;
+		}
+	}
+
+	private static double [] sampleSums(int threads, final int samples)
+	{
+		final double [] sums = new double[samples];
+		List<ISampleProcessor> processors = new ResamplingExecutor(threads).execute(new UniformPValueCalculation(50), samples, 4711,
+			new ISampleProcessorFactory<ISampleProcessor>()
+			{
+				public ISampleProcessor create()
+				{
+					return new ISampleProcessor()
+					{
+						public void process(int sample, PValueBuffer randomP)
+						{
+							double sum = 0;
+							for (int i = 0; i < randomP.size(); i++)
+								sum += randomP.p[i];
+							sums[sample] = sum;
+						}
+					};
+				}
+			}, null);
+		assertEquals(Math.min(threads, samples), processors.size());
+		return sums;
+	}
+
+	@Test
+	public void testIndependentOfThreads()
+	{
+		double [] sequential = sampleSums(1, 200);
+		for (int i = 0; i < sequential.length; i++)
+			assertTrue(sequential[i] > 0);
+
+		double [] parallel = sampleSums(4, 200);
+		for (int i = 0; i < sequential.length; i++)
+			assertEquals(sequential[i], parallel[i], 0);
+	}
+
+	@Test
+	public void testSampleSeeds()
+	{
+		assertTrue(ResamplingExecutor.getSampleSeed(1, 0) != ResamplingExecutor.getSampleSeed(1, 1));
+		assertTrue(ResamplingExecutor.getSampleSeed(1, 0) != ResamplingExecutor.getSampleSeed(2, 0));
+		assertEquals(ResamplingExecutor.getSampleSeed(3, 5), ResamplingExecutor.getSampleSeed(3, 5));
+	}
+
+	@Test
+	public void testWestfallYoungStepDown()
+	{
+		WestfallYoungStepDown sequential = new WestfallYoungStepDown();
+		sequential.setNumberOfResamplingSteps(300);
+		sequential.setSeed(17);
+		PValue [] sequentialP = sequential.adjustPValues(new UniformPValueCalculation(20), null);
+
+		WestfallYoungStepDown parallel = new WestfallYoungStepDown();
+		parallel.setNumberOfResamplingSteps(300);
+		parallel.setSeed(17);
+		parallel.setNumberOfThreads(3);
+		PValue [] parallelP = parallel.adjustPValues(new UniformPValueCalculation(20), null);
+
+		for (int i = 0; i < sequentialP.length; i++)
+			assertEquals(sequentialP[i].p_adjusted, parallelP[i].p_adjusted, 0);
+	}
+
+	@Test
+	public void testWestfallYoungSingleStep()
+	{
+		WestfallYoungSingleStep sequential = new WestfallYoungSingleStep();
+		sequential.setSeed(17);
+		PValue [] sequentialP = sequential.adjustPValues(new UniformPValueCalculation(20), null);
+
+		WestfallYoungSingleStep parallel = new WestfallYoungSingleStep();
+		parallel.setSeed(17);
+		parallel.setNumberOfThreads(4);
+		PValue [] parallelP = parallel.adjustPValues(new UniformPValueCalculation(20), null);
+
+		for (int i = 0; i < sequentialP.length; i++)
+			assertEquals(sequentialP[i].p_adjusted, parallelP[i].p_adjusted, 0);
+	}
+
+	@Test
+	public void testWestfallYoungStepDownCached()
+	{
+		WestfallYoungStepDown uncached = new WestfallYoungStepDown();
+		uncached.setNumberOfResamplingSteps(300);
+		uncached.setSeed(17);
+		PValue [] uncachedP = uncached.adjustPValues(new UniformPValueCalculation(20), null);
+
+		WestfallYoungStepDownCached cached = new WestfallYoungStepDownCached();
+		cached.setNumberOfResamplingSteps(300);
+		cached.setSeed(17);
+		cached.setNumberOfThreads(2);
+		cached.setOffHeap(true);
+
+		/* Second run uses the cached samples */
+		for (int run = 0; run < 2; run++)
+		{
+			PValue [] cachedP = cached.adjustPValues(new UniformPValueCalculation(20), null);
+			for (int i = 0; i < uncachedP.length; i++)
+				assertEquals(uncachedP[i].p_adjusted, cachedP[i].p_adjusted, 1e-9);
+		}
+	}
+
+	@Test
+	public void testFDRBySteffen()
+	{
+		FDRBySteffen sequential = new FDRBySteffen();
+		sequential.setNumberOfResamplingSteps(300);
+		sequential.setSeed(17);
+		PValue [] sequentialP = sequential.adjustPValues(new UniformPValueCalculation(20), null);
+
+		FDRBySteffen parallel = new FDRBySteffen();
+		parallel.setNumberOfResamplingSteps(300);
+		parallel.setSeed(17);
+		parallel.setNumberOfThreads(4);
+		PValue [] parallelP = parallel.adjustPValues(new UniformPValueCalculation(20), null);
+
+		FDRBySteffenCached cached = new FDRBySteffenCached();
+		cached.setNumberOfResamplingSteps(300);
+		cached.setSeed(17);
+		cached.setNumberOfThreads(3);
+
+		/* Second run uses the cached samples */
+		for (int run = 0; run < 2; run++)
+		{
+			PValue [] cachedP = cached.adjustPValues(new UniformPValueCalculation(20), null);
+			for (int i = 0; i < sequentialP.length; i++)
+			{
+				assertEquals(sequentialP[i].p_adjusted, parallelP[i].p_adjusted, 0);
+				assertEquals(sequentialP[i].p_adjusted, cachedP[i].p_adjusted, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testWestfallYoungStepDownStreaming()
+	{
+		WestfallYoungStepDown uncached = new WestfallYoungStepDown();
+		uncached.setNumberOfResamplingSteps(300);
+		uncached.setSeed(17);
+		PValue [] uncachedP = uncached.adjustPValues(new UniformPValueCalculation(20), null);
+
+		WestfallYoungStepDownCached stored = new WestfallYoungStepDownCached();
+		stored.setNumberOfResamplingSteps(300);
+		stored.setSeed(17);
+		PValue [] storedP = stored.adjustPValues(new UniformPValueCalculation(20), null);
+
+		/* Samples that don't fit into the budget are counted without being stored */
+		WestfallYoungStepDownCached streamed = new WestfallYoungStepDownCached();
+		streamed.setNumberOfResamplingSteps(300);
+		streamed.setSeed(17);
+		streamed.setNumberOfThreads(3);
+		streamed.setMemoryBudget(0);
+		PValue [] streamedP = streamed.adjustPValues(new UniformPValueCalculation(20), null);
+
+		for (int i = 0; i < uncachedP.length; i++)
+		{
+			assertEquals(uncachedP[i].p_adjusted, streamedP[i].p_adjusted, 1e-9);
+			assertEquals(storedP[i].p_adjusted, streamedP[i].p_adjusted, 0);
+		}
+	}
+
+	@Test
+	public void testWestfallYoungStepDownStreamingPrecision()
+	{
+		/* The random p-values differ from the observed ones and from each
+		 * other below the precision of the store, some are ignored */
+		final int m = 20;
+		IBufferedPValueCalculation calc = new UniformPValueCalculation(m)
+		{
+			@Override
+			public void calculateRandomPValues(Random rnd, PValueBuffer buffer, IPValueCalculationProgress progress)
+			{
+				for (int i = 0; i < m; i++)
+				{
+					double p = (i + 1) / (10.0 * m);
+					buffer.set(i, p * (1 + rnd.nextInt(3) * 1e-12), 0, rnd.nextInt(4) == 0);
+				}
+			}
+		};
+
+		WestfallYoungStepDownCached stored = new WestfallYoungStepDownCached();
+		stored.setNumberOfResamplingSteps(100);
+		stored.setSeed(5);
+		PValue [] storedP = stored.adjustPValues(calc, null);
+
+		WestfallYoungStepDownCached streamed = new WestfallYoungStepDownCached();
+		streamed.setNumberOfResamplingSteps(100);
+		streamed.setSeed(5);
+		streamed.setMemoryBudget(0);
+		PValue [] streamedP = streamed.adjustPValues(calc, null);
+
+		for (int i = 0; i < m; i++)
+			assertEquals(storedP[i].p_adjusted, streamedP[i].p_adjusted, 0);
+	}
+
+	@Test
+	public void testWestfallYoungStepDownNested()
+	{
+		WestfallYoungStepDownCached nested = new WestfallYoungStepDownCached();
+		nested.setNumberOfResamplingSteps(300);
+		nested.setSeed(17);
+		nested.setNumberOfThreads(3);
+		nested.setStudySetSizes(Arrays.asList(20, 5, 10, 5));
+
+		/* The first study set triggers the sampling of all sizes */
+		for (int size : new int[]{10, 5, 20})
+		{
+			WestfallYoungStepDown separate = new WestfallYoungStepDown();
+			separate.setNumberOfResamplingSteps(300);
+			separate.setSeed(17);
+			PValue [] separateP = separate.adjustPValues(new NestedUniformPValueCalculation(20, size), null);
+
+			NestedUniformPValueCalculation calc = new NestedUniformPValueCalculation(20, size);
+			PValue [] nestedP = nested.adjustPValues(calc, null);
+			assertEquals(0, calc.singleSamples.get());
+			assertEquals(size == 10 ? 300 : 0, calc.nestedSamples.get());
+
+			for (int i = 0; i < separateP.length; i++)
+				assertEquals(separateP[i].p_adjusted, nestedP[i].p_adjusted, 1e-9);
+		}
+	}
+
+	@Test
+	public void testWestfallYoungSingleStepNested()
+	{
+		WestfallYoungSingleStepApproximate nested = new WestfallYoungSingleStepApproximate();
+		nested.setSeed(17);
+		nested.setNumberOfThreads(2);
+		nested.setStudySetSizes(Arrays.asList(21, 20, 40));
+
+		for (int size : new int[]{20, 21, 40})
+		{
+			/* Without announced sizes, samples of size 20 would be used for size 21 */
+			WestfallYoungSingleStepApproximate separate = new WestfallYoungSingleStepApproximate();
+			separate.setSeed(17);
+			PValue [] separateP = separate.adjustPValues(new NestedUniformPValueCalculation(20, size), null);
+
+			NestedUniformPValueCalculation calc = new NestedUniformPValueCalculation(20, size);
+			PValue [] nestedP = nested.adjustPValues(calc, null);
+			assertEquals(0, calc.singleSamples.get());
+
+			for (int i = 0; i < separateP.length; i++)
+				assertEquals(separateP[i].p_adjusted, nestedP[i].p_adjusted, 0);
+		}
+	}
+}
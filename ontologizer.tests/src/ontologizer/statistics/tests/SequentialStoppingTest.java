@@ -0,0 +1,109 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ontologizer.statistics.FDRBySteffen;
+import ontologizer.statistics.PValue;
+import ontologizer.statistics.SequentialStopping;
+import ontologizer.statistics.WestfallYoungSingleStep;
+import ontologizer.statistics.WestfallYoungStepDown;
+import ontologizer.statistics.tests.ResamplingExecutorTest.UniformPValueCalculation;
+
+public class SequentialStoppingTest
+{
+	@Test
+	public void testRule()
+	{
+		SequentialStopping stopping = new SequentialStopping(10, 0.05);
+		assertTrue(stopping.isDecided(10, 100));
+		assertFalse(stopping.isDecided(9, 100));
+		assertFalse(stopping.isDecided(0, 100));
+		assertTrue(stopping.isDecided(0, 1000));
+
+		assertFalse(new SequentialStopping(10, 0).isDecided(0, 1000));
+
+		assertTrue(stopping.isDecided(0.5, 0.1, 100));
+		assertFalse(stopping.isDecided(0.5, 0.2, 100));
+		assertFalse(stopping.isDecided(0, 0, 100));
+		assertTrue(stopping.isDecided(0, 0, 1000));
+	}
+
+	@Test
+	public void testBatchSizes()
+	{
+		SequentialStopping stopping = new SequentialStopping(10, 0);
+		assertEquals(100, stopping.getNextBatchSize(0, 1000));
+		assertEquals(100, stopping.getNextBatchSize(100, 1000));
+		assertEquals(200, stopping.getNextBatchSize(200, 1000));
+		assertEquals(200, stopping.getNextBatchSize(800, 1000));
+		assertEquals(50, stopping.getNextBatchSize(0, 50));
+	}
+
+	private static void assertStoppedEarly(PValue [] full, PValue [] sequential, int maxSamples, boolean monotone)
+	{
+		int maxUsed = 0;
+		for (int i = 0; i < full.length; i++)
+		{
+			assertEquals(maxSamples, full[i].samples);
+			assertTrue(sequential[i].samples > 0);
+			maxUsed = Math.max(maxUsed, sequential[i].samples);
+			assertEquals(full[i].p_adjusted, sequential[i].p_adjusted, 0.15);
+			if (monotone && i > 0) assertTrue(sequential[i - 1].p_adjusted <= sequential[i].p_adjusted);
+		}
+		assertTrue(maxUsed < maxSamples);
+	}
+
+	@Test
+	public void testWestfallYoungStepDown()
+	{
+		WestfallYoungStepDown wy = new WestfallYoungStepDown();
+		wy.setNumberOfResamplingSteps(2000);
+		wy.setSeed(11);
+		PValue [] full = wy.adjustPValues(new UniformPValueCalculation(20), null);
+
+		wy.setSequentialStopping(new SequentialStopping(10, 0));
+		wy.setNumberOfThreads(3);
+		PValue [] sequential = wy.adjustPValues(new UniformPValueCalculation(20), null);
+		assertStoppedEarly(full, sequential, 2000, true);
+
+		/* Decisions are made per batch, hence don't depend on the threads */
+		wy.setNumberOfThreads(1);
+		PValue [] sequential2 = wy.adjustPValues(new UniformPValueCalculation(20), null);
+		for (int i = 0; i < sequential.length; i++)
+		{
+			assertEquals(sequential[i].p_adjusted, sequential2[i].p_adjusted, 0);
+			assertEquals(sequential[i].samples, sequential2[i].samples);
+		}
+	}
+
+	@Test
+	public void testWestfallYoungSingleStep()
+	{
+		WestfallYoungSingleStep wy = new WestfallYoungSingleStep();
+		wy.setNumberOfResamplingSteps(2000);
+		wy.setSeed(11);
+		PValue [] full = wy.adjustPValues(new UniformPValueCalculation(20), null);
+
+		wy.setSequentialStopping(new SequentialStopping(10, 0));
+		PValue [] sequential = wy.adjustPValues(new UniformPValueCalculation(20), null);
+		assertStoppedEarly(full, sequential, 2000, true);
+	}
+
+	@Test
+	public void testFDRBySteffen()
+	{
+		FDRBySteffen fdr = new FDRBySteffen();
+		fdr.setNumberOfResamplingSteps(2000);
+		PValue [] full = fdr.adjustPValues(new UniformPValueCalculation(20), null);
+
+		fdr.setSequentialStopping(new SequentialStopping(10, 0));
+		PValue [] sequential = fdr.adjustPValues(new UniformPValueCalculation(20), null);
+
+		/* Raw p-values are sorted by the correction, the FDR is not monotone */
+		assertStoppedEarly(full, sequential, 2000, false);
+	}
+}
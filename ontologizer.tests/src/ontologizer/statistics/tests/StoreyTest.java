@@ -0,0 +1,141 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.statistics.AbstractTestCorrection;
+import ontologizer.statistics.IPValueCalculation;
+import ontologizer.statistics.IPValueCalculationProgress;
+import ontologizer.statistics.ITestCorrectionProgress;
+import ontologizer.statistics.PValue;
+import ontologizer.statistics.Storey;
+import ontologizer.statistics.TestCorrectionRegistry;
+
+public class StoreyTest
+{
+	/**
+	 * Creates p-values of which the given fraction comes from alternative
+	 * hypotheses and is close to 0. The others are uniformly distributed.
+	 */
+	private static double [] createPValues(int m, double alternativeFraction, Random rnd)
+	{
+		double [] p = new double[m];
+		for (int i = 0; i < m; i++)
+		{
+			if (i < m * alternativeFraction)
+				p[i] = rnd.nextDouble() * 0.001;
+			else
+				p[i] = rnd.nextDouble();
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the q-value of the largest p-value, which equals the
+	 * estimate of pi0 times the largest p-value.
+	 */
+	private static double getPi0(double [] p, double [] q)
+	{
+		int largest = 0;
+		for (int i = 1; i < p.length; i++)
+			if (p[i] > p[largest]) largest = i;
+		return q[largest] / p[largest];
+	}
+
+	@Test
+	public void testPi0()
+	{
+		Random rnd = new Random(7);
+		Storey storey = new Storey();
+
+		double [] nullP = createPValues(20000, 0, rnd);
+		assertEquals(1, getPi0(nullP, storey.correctPValues(nullP, 0.05)), 0.05);
+
+		double [] mixedP = createPValues(20000, 0.4, rnd);
+		assertEquals(0.6, getPi0(mixedP, storey.correctPValues(mixedP, 0.05)), 0.05);
+	}
+
+	@Test
+	public void testQValues()
+	{
+		double [] p = createPValues(5000, 0.2, new Random(13));
+
+		/* Some ties */
+		p[1] = p[2] = p[3];
+
+		double [] q = new Storey().correctPValues(p, 0.05);
+		double pi0 = getPi0(p, q);
+
+		for (int i = 0; i < p.length; i++)
+		{
+			/* The q-value is the minimum of pi0 * m * p / rank over all larger p-values */
+			int rank = 0;
+			for (int j = 0; j < p.length; j++)
+				if (p[j] <= p[i]) rank++;
+
+			assertTrue(q[i] <= Math.min(1, pi0 * p.length * p[i] / rank) + 1e-12);
+			for (int j = 0; j < p.length; j++)
+			{
+				if (p[j] >= p[i])
+					assertTrue(q[i] <= q[j]);
+			}
+		}
+		assertEquals(q[2], q[3], 0);
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertEquals(0, new Storey().correctPValues(new double[0], 0.05).length);
+	}
+
+	@Test
+	public void testRegistered()
+	{
+		AbstractTestCorrection storey = TestCorrectionRegistry.getCorrectionByName(new Storey().getName());
+		assertTrue(storey instanceof Storey);
+
+		final PValue [] raw = new PValue[100];
+		for (int i = 0; i < raw.length; i++)
+		{
+			raw[i] = new PValue();
+			raw[i].p = (i + 1) / 100.0;
+			raw[i].ignoreAtMTC = i % 2 == 0;
+		}
+
+		PValue [] adjusted = storey.adjustPValues(new IPValueCalculation()
+		{
+			public PValue[] calculateRawPValues(IPValueCalculationProgress progress)
+			{
+				return raw;
+			}
+
+			public PValue[] calculateRandomPValues(IPValueCalculationProgress progress)
+			{
+				return null;
+			}
+
+			public int currentStudySetSize()
+			{
+				return 0;
+			}
+
+			public int getNumberOfPValues()
+			{
+				return raw.length;
+			}
+		}, (ITestCorrectionProgress)null);
+
+		for (int i = 1; i < adjusted.length; i += 2)
+		{
+			assertTrue(adjusted[i].p_adjusted > 0);
+			assertTrue(adjusted[i].p_adjusted <= 1);
+			if (i > 1)
+				assertTrue(adjusted[i].p_adjusted >= adjusted[i - 2].p_adjusted);
+		}
+	}
+}
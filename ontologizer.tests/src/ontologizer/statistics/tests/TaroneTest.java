@@ -0,0 +1,47 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ontologizer.statistics.Hypergeometric;
+import ontologizer.statistics.Tarone;
+
+public class TaroneTest
+{
+	@Test
+	public void testThreshold()
+	{
+		/* K=1: 3 hypotheses below 0.05; K=2: 2 hypotheses below 0.025 */
+		double [] minimalPValues = new double[]{0.001, 0.01, 0.04, 0.5, 1.0};
+		assertEquals(0.05 / 2, Tarone.getThreshold(minimalPValues, 0.05), 1e-15);
+		assertTrue(Arrays.equals(new boolean[]{true, true, false, false, false}, Tarone.getTestable(minimalPValues, 0.05)));
+
+		/* Everything testable */
+		assertEquals(0.05 / 2, Tarone.getThreshold(new double[]{0.0001, 0.0001}, 0.05), 1e-15);
+
+		/* Nothing testable */
+		assertEquals(0.05, Tarone.getThreshold(new double[]{0.5, 0.5}, 0.05), 1e-15);
+		assertEquals(0.05, Tarone.getThreshold(new double[0], 0.05), 1e-15);
+	}
+
+	@Test
+	public void testMinimalAttainablePValue()
+	{
+		Hypergeometric hyper = new Hypergeometric();
+
+		int n = 500;
+		int k = 20;
+		for (int np = 1; np < 40; np++)
+		{
+			double min = 1.0;
+			for (int r = 1; r <= Math.min(np, k); r++)
+				min = Math.min(min, hyper.phypergeometric(n, (double)np / n, k, r));
+			assertEquals(min, hyper.minimalAttainablePValue(n, np, k), min * 1e-9);
+		}
+		assertEquals(1.0, hyper.minimalAttainablePValue(n, 10, n), 0);
+	}
+}
@@ -4,7 +4,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueBuffer;
 import ontologizer.statistics.PvalueSetStore;
+import ontologizer.statistics.PvalueSetStoreCache;
 
 public class PValueSetStoreTest
 {
@@ -55,4 +57,105 @@ public class PValueSetStoreTest
 		Assert.assertTrue(count == 3);
 	}
 
+	@Test
+	public void testPvalueSetStoreWithBuffer()
+	{
+		int nSets = 3;
+		int setSize = 10;
+
+		PvalueSetStore store = new PvalueSetStore(nSets,setSize);
+
+		// the same buffer is reused for all sets
+		PValueBuffer buffer = new PValueBuffer(setSize);
+		for (int i=0; i < nSets; i++) {
+			for (int j=0; j < setSize; j++) {
+				double p = (i * setSize + j) / 100.0;
+				buffer.set(j, p, p, j % 2 == 0);
+			}
+			store.add(buffer);
+		}
+
+		int i=0;
+		for (PValue[] pvals : store) {
+			Assert.assertEquals(setSize, pvals.length);
+			for (int j=0; j < setSize; j++) {
+				if (j % 2 == 0) {
+					Assert.assertTrue(pvals[j].ignoreAtMTC);
+					Assert.assertEquals(1.0, pvals[j].p, 0);
+				} else {
+					Assert.assertFalse(pvals[j].ignoreAtMTC);
+					/* p-values are stored with single precision */
+					Assert.assertEquals((float)((i * setSize + j) / 100.0), pvals[j].p, 0);
+				}
+			}
+			i++;
+		}
+		Assert.assertEquals(nSets, i);
+	}
+
+	@Test
+	public void testSortedEntries()
+	{
+		int setSize = 6;
+		PvalueSetStore store = new PvalueSetStore(1,setSize,true);
+
+		PValueBuffer buffer = new PValueBuffer(setSize);
+		double [] p = new double[]{0.3, 0.1, 0.9, 0.2, 0.1, 0.05};
+		for (int j=0; j < setSize; j++)
+			buffer.set(j, p[j], p[j], j == 2);
+
+		/* More sets than announced, the last one is sorted by the caller */
+		store.add(buffer);
+		store.add(buffer);
+		long [] sorted = new long[setSize];
+		store.addSorted(sorted, PvalueSetStore.sort(buffer, sorted));
+		store.trim();
+
+		Assert.assertEquals(3, store.size());
+		int [] expectedTerms = new int[]{5, 1, 4, 3, 0};
+		for (int b=0; b < store.size(); b++) {
+			Assert.assertEquals(expectedTerms.length, store.getNumberOfEntries(b));
+			for (int e=0; e < expectedTerms.length; e++) {
+				Assert.assertEquals(expectedTerms[e], store.getTerm(b, e));
+				Assert.assertEquals(PvalueSetStore.round(p[expectedTerms[e]]), store.getP(b, e), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCacheEviction()
+	{
+		PvalueSetStore small = new PvalueSetStore(10,10);
+		PvalueSetStore large = new PvalueSetStore(10,10);
+		PValueBuffer buffer = new PValueBuffer(10);
+		for (int j=0; j < 10; j++)
+			buffer.set(j, j / 10.0, j / 10.0, false);
+		small.add(buffer);
+		for (int i=0; i < 10; i++)
+			large.add(buffer);
+		small.trim();
+		large.trim();
+
+		PvalueSetStoreCache cache = new PvalueSetStoreCache(2 * small.getMemoryUsage());
+		cache.put(1, small);
+		cache.put(2, small);
+		Assert.assertEquals(2, cache.size());
+
+		/* Touch 1, so 2 is evicted next */
+		Assert.assertNotNull(cache.get(1));
+		cache.put(3, small);
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNotNull(cache.get(1));
+		Assert.assertNull(cache.get(2));
+		Assert.assertNotNull(cache.get(3));
+
+		/* A store that exceeds the budget is not cached */
+		cache.put(4, large);
+		Assert.assertNull(cache.get(4));
+		Assert.assertTrue(cache.getMemoryUsage() <= cache.getMemoryBudget());
+
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.getMemoryUsage());
+	}
 }
@@ -68,4 +68,51 @@ public class UtilTest
 		assertEquals(6, Util.commonIntsWithUnion(unionCardinality, a, b1, b2, b3, new int[]{7,8}));
 		assertEquals(8, unionCardinality[0]);
 	}
+
+	@Test
+	public void testIntersect()
+	{
+		int [] a = new int[]{1,2,3,4,5,6};
+		int [] b = new int[]{4,5};
+		int [] c = new int[]{4,5,6,7};
+		int [] d = new int[]{7,8,9};
+		int [] result = new int[10];
+
+		assertEquals(2, Util.intersect(new int[][]{a, c, b}, 3, result));
+		assertEquals(4, result[0]);
+		assertEquals(5, result[1]);
+		assertEquals(0, Util.intersect(new int[][]{a, b, d}, 3, result));
+		assertEquals(6, Util.intersect(new int[][]{a}, 1, result));
+		assertEquals(0, Util.intersect(new int[0][], 0, result));
+
+		assertEquals(3, Util.countCommonInts(c, c.length, a));
+		assertEquals(1, Util.countCommonInts(c, 1, a));
+
+		/* Compare with the merge walk */
+		java.util.Random rnd = new java.util.Random(7);
+		for (int t = 0; t < 200; t++)
+		{
+			int [][] arrays = new int[1 + rnd.nextInt(5)][];
+			for (int i = 0; i < arrays.length; i++)
+			{
+				int [] arr = new int[1000];
+				int len = 0;
+				int p = 1 + rnd.nextInt(100);
+				for (int j = 0; j < arr.length; j++)
+					if (rnd.nextInt(100) < p) arr[len++] = j;
+				arrays[i] = java.util.Arrays.copyOf(arr, len);
+			}
+
+			int expected = arrays[0].length;
+			int [] current = arrays[0];
+			for (int i = 1; i < arrays.length; i++)
+			{
+				Util.CommonIntSet cis = Util.commonIntsSet(current, arrays[i]);
+				current = java.util.Arrays.copyOf(cis.common, cis.numberOfCommonInts);
+				expected = current.length;
+			}
+			assertEquals(expected, Util.commonInts(arrays));
+			assertEquals(expected, Util.intersect(arrays.clone(), arrays.length, new int[1000]));
+		}
+	}
 }
@@ -14,6 +14,7 @@ public final class GlobalPreferences
 	private static int proxyPort;
 	private static int wrapColumn = 30;
 	private static int mcmcSteps = 500000;
+	private static double mcmcPrecision = 0;
 
 	private static double b2gAlpha = Double.NaN;
 	private static double b2gBeta = Double.NaN;
@@ -170,6 +171,26 @@ public final class GlobalPreferences
 		return mcmcSteps;
 	}
 
+	/**
+	 * Sets the precision of the marginals at which MCMC is stopped
+	 * before all steps are performed.
+	 *
+	 * @param mcmcPrecision the precision or 0 if all steps should be performed.
+	 */
+	public static void setMcmcPrecision(double mcmcPrecision)
+	{
+		GlobalPreferences.mcmcPrecision = mcmcPrecision;
+	}
+
+	/**
+	 * @return the precision of the marginals at which MCMC is stopped or 0
+	 *  if all steps are performed.
+	 */
+	public static double getMcmcPrecision()
+	{
+		return mcmcPrecision;
+	}
+
 	public static void setAlpha(double alpha)
 	{
 		GlobalPreferences.b2gAlpha = alpha;
@@ -4,8 +4,10 @@ import java.io.*;
 import java.util.*;
 
 import ontologizer.association.AssociationContainer;
+import ontologizer.calculation.AbstractPValueBasedCalculation;
 import ontologizer.calculation.CalculationRegistry;
 import ontologizer.calculation.EnrichedGOTermsResult;
+import ontologizer.calculation.ForkJoinTermLoopExecutor;
 import ontologizer.calculation.ICalculation;
 import ontologizer.calculation.b2g.B2GParam;
 import ontologizer.calculation.b2g.Bayes2GOCalculation;
@@ -22,6 +24,9 @@ import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.set.StudySetFactory;
 import ontologizer.set.StudySetList;
+import ontologizer.statistics.AbstractResamplingTestCorrection;
+import ontologizer.statistics.ResamplingDiskCache;
+import ontologizer.statistics.SequentialStopping;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.statistics.IResampling;
 import ontologizer.statistics.TestCorrectionRegistry;
@@ -81,6 +86,18 @@ public class OntologizerCore
 		 */
 		public int mcmcSteps;
 
+		/** Number of independent chains of a mcmc-based calculation, a value below 2 means a single chain */
+		public int mcmcChains;
+
+		/** Precision of the marginals at which a mcmc-based calculation stops early, 0 means all mcmcSteps are performed */
+		public double mcmcPrecision;
+
+		/** Directory in which the state of mcmc-based calculations is saved from time to time, might be null */
+		public String mcmcCheckpointDirectory;
+
+		/** Should mcmc-based calculations be resumed from their checkpoints? */
+		public boolean resume;
+
 		/**
 		 * Tolerance in percent for Westfall-Young-Approximate
 		 */
@@ -103,6 +120,24 @@ public class OntologizerCore
 
 		/** The maximal value alpha could have in the MGSA algorithm */
 		public double upperBeta;
+
+		/** Number of threads used for calculating p-values and random samples, a value below 2 means sequential processing */
+		public int threads;
+
+		/** Seed for random numbers of resampling based MTCs and MGSA, 0 means a random seed */
+		public long seed;
+
+		/** Significance level used to prune untestable terms, 0 disables pruning */
+		public double pruningAlpha;
+
+		/** Directory in which random samples are persisted across runs, might be null */
+		public String resamplingCacheDirectory;
+
+		/** Number of exceedances after which resampling stops for a term, 0 disables sequential stopping */
+		public int sequentialExceedances;
+
+		/** Significance level below which resampling stops for a term, 0 disables this */
+		public double sequentialAlpha;
 };
 
 	/** Contains all available GOTerms */
@@ -155,6 +190,20 @@ public class OntologizerCore
 			{
 				b2g.setMcmcSteps(args.mcmcSteps);
 			}
+			b2g.setNumberOfChains(Math.max(1, args.mcmcChains));
+			b2g.setTargetPrecision(args.mcmcPrecision);
+			if (args.mcmcCheckpointDirectory != null)
+				b2g.setCheckpointDirectory(new File(args.mcmcCheckpointDirectory));
+			b2g.setResume(args.resume);
+			b2g.setSeed(args.seed);
+		}
+		if (calculation instanceof AbstractPValueBasedCalculation) {
+			AbstractPValueBasedCalculation pValueBased = (AbstractPValueBasedCalculation) calculation;
+			if (args.threads > 1)
+			{
+				pValueBased.setTermLoopExecutor(new ForkJoinTermLoopExecutor(args.threads));
+			}
+			pValueBased.setPruningAlpha(args.pruningAlpha);
 		}
 
 		/* Set the desired test correction or set the default */
@@ -173,6 +222,18 @@ public class OntologizerCore
 				resampling.setSizeTolerance(args.sizeTolerance);
 			}
 		}
+		if (testCorrection instanceof AbstractResamplingTestCorrection) {
+			AbstractResamplingTestCorrection resampling = (AbstractResamplingTestCorrection) testCorrection;
+			resampling.setNumberOfThreads(args.threads);
+			resampling.setSeed(args.seed);
+			if (args.resamplingCacheDirectory != null)
+				resampling.setDiskCache(new ResamplingDiskCache(new File(args.resamplingCacheDirectory)));
+		}
+		if (args.sequentialExceedances > 0) {
+			SequentialStopping sequentialStopping = new SequentialStopping(args.sequentialExceedances, args.sequentialAlpha);
+			if (testCorrection instanceof AbstractResamplingTestCorrection)
+				((AbstractResamplingTestCorrection) testCorrection).setSequentialStopping(sequentialStopping);
+		}
 
 		/* Parse the gene_ontology.obo file to get information about all terms.
 		 * Transfer the information to a TermContainer object.
@@ -306,6 +367,15 @@ public class OntologizerCore
 			/* Filter out genes within the population which doesn't have an annotation */
 			populationSet.filterOutAssociationlessGenes(goAssociations);
 		}
+
+		/* Let resampling based MTCs draw the samples of all study set sizes at once */
+		if (testCorrection instanceof AbstractResamplingTestCorrection)
+		{
+			Set<Integer> studySetSizes = new HashSet<Integer>();
+			for (StudySet study : studySetList)
+				studySetSizes.add(study.getGeneCount());
+			((AbstractResamplingTestCorrection) testCorrection).setStudySetSizes(studySetSizes);
+		}
 	}
 
 	/**
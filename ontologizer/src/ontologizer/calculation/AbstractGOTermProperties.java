@@ -17,6 +17,13 @@ public abstract class AbstractGOTermProperties extends PValue
 	public int annotatedStudyGenes;
 	public int annotatedPopulationGenes;
 
+	/**
+	 * Indicates whether the term has been pruned as untestable, i.e., whether
+	 * the term could not reach the significance level for any study set.
+	 * Such terms are not tested and are ignored by the mtc.
+	 */
+	public boolean pruned;
+
 	/**
 	 * Return the number of properties.
 	 *
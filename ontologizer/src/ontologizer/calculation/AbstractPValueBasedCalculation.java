@@ -6,7 +6,6 @@ import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.statistics.Hypergeometric;
-import ontologizer.statistics.IPValueCalculation;
 import ontologizer.statistics.PValue;
 
 /**
@@ -19,20 +18,67 @@ public abstract class AbstractPValueBasedCalculation extends AbstractHypergeomet
 {
 	private ICalculationProgress calculationProgress;
 
+	/** Executes the loop over all terms of a p-value calculation, null means sequential */
+	private ITermLoopExecutor termLoopExecutor;
+
+	/** The significance level used for pruning untestable terms, 0 disables pruning */
+	private double pruningAlpha;
+
+	/** The context of the most recently used population */
+	private PopulationCalculationContext populationContext;
+
 	/**
 	 * Return a new p-value calculation instance.
 	 *
-	 * @param graph the graph
-	 * @param associations the associations.
-	 * @param populationSet the underlying population set
+	 * @param context the population context (graph, associations and population set)
 	 * @param studySet the study set
 	 * @param hyperg instance of a helper class for the hypergeometric distribution.
-	 * @return
+	 * @return the p-value calculation
 	 */
-	protected abstract IPValueCalculation newPValueCalculation(Ontology graph,
-			AssociationContainer associations, PopulationSet populationSet,
+	protected abstract AbstractPValueCalculation newPValueCalculation(PopulationCalculationContext context,
 			StudySet studySet, Hypergeometric hyperg);
 
+	/**
+	 * Returns the population context for the given arguments. The context
+	 * is reused as long as the calculation is performed against the same
+	 * population, which is the usual case when many study sets are processed.
+	 *
+	 * @param graph the graph
+	 * @param associations the associations.
+	 * @param populationSet the underlying population set
+	 * @return the context
+	 */
+	protected synchronized PopulationCalculationContext getPopulationContext(Ontology graph,
+			AssociationContainer associations, PopulationSet populationSet)
+	{
+		populationContext = PopulationCalculationContext.reuseOrCreate(populationContext, graph, associations, populationSet);
+		return populationContext;
+	}
+
+	/**
+	 * Sets the executor that runs the loop over all terms of the p-value
+	 * calculations, for instance, to process the terms in parallel.
+	 *
+	 * @param termLoopExecutor the executor or null to process the terms
+	 *  sequentially.
+	 */
+	public void setTermLoopExecutor(ITermLoopExecutor termLoopExecutor)
+	{
+		this.termLoopExecutor = termLoopExecutor;
+	}
+
+	/**
+	 * Enables the pruning of untestable terms according to Tarone's procedure.
+	 * Pruned terms are still part of the result but are flagged and are not
+	 * considered by the mtc.
+	 *
+	 * @param alpha the significance level or 0 to disable pruning.
+	 */
+	public void setPruningAlpha(double alpha)
+	{
+		this.pruningAlpha = alpha;
+	}
+
 	@Override
 	public EnrichedGOTermsResult calculateStudySet(
 			Ontology graph,
@@ -45,7 +91,10 @@ public abstract class AbstractPValueBasedCalculation extends AbstractHypergeomet
 		studySetResult.setCalculationName(this.getName());
 		studySetResult.setCorrectionName(testCorrection.getName());
 
-		IPValueCalculation pValueCalculation = newPValueCalculation(graph, associations, populationSet, studySet, hyperg);
+		PopulationCalculationContext context = getPopulationContext(graph, associations, populationSet);
+		AbstractPValueCalculation pValueCalculation = newPValueCalculation(context, studySet, context.getHypergeometric());
+		pValueCalculation.setTermLoopExecutor(termLoopExecutor);
+		pValueCalculation.setPruningAlpha(pruningAlpha);
 		PValue p[] = testCorrection.adjustPValues(pValueCalculation, CalculationProgress2TestCorrectionProgress.createUnlessNull(calculationProgress));
 
 		/* Add the results to the result list and filter out terms
@@ -1,89 +1,230 @@
 package ontologizer.calculation;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import ontologizer.association.AssociationContainer;
-import ontologizer.enumeration.TermAnnotations;
-import ontologizer.enumeration.TermEnumerator;
 import ontologizer.ontology.Ontology;
 import ontologizer.ontology.TermID;
 import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.Hypergeometric;
-import ontologizer.statistics.IPValueCalculation;
+import ontologizer.statistics.ContentHash;
+import ontologizer.statistics.IBufferedPValueCalculation;
+import ontologizer.statistics.IFingerprintedPValueCalculation;
 import ontologizer.statistics.IPValueCalculationProgress;
 import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueBuffer;
+import ontologizer.statistics.Tarone;
 import ontologizer.types.ByteString;
 import sonumina.collections.IntMapper;
 
-public abstract class AbstractPValueCalculation implements IPValueCalculation
+public abstract class AbstractPValueCalculation implements IBufferedPValueCalculation, IFingerprintedPValueCalculation
 {
-	private final AssociationContainer associations;
-	private final PopulationSet populationSet;
 	private final StudySet observedStudySet;
 	protected final Hypergeometric hyperg;
 
-	private int totalNumberOfAnnotatedTerms;
+	/** The population dependent part of the calculation that is shared among study sets */
+	protected final PopulationCalculationContext context;
 
-	protected IntMapper<ByteString> itemMapper;
-	protected IntMapper<TermID> termMapper;
-	protected int [][] term2Items;
+	protected final IntMapper<ByteString> itemMapper;
+	protected final IntMapper<TermID> termMapper;
+	protected final int [][] term2Items;
+	protected final TermItemIndex termItemIndex;
+
+	/** Executes the loop over all terms */
+	private ITermLoopExecutor termLoopExecutor = new SequentialTermLoopExecutor();
+
+	/** The significance level used for pruning untestable terms, 0 disables pruning */
+	private double pruningAlpha;
+
+	/** The terms that are testable, determined on demand */
+	private boolean [] testableTerms;
+
+	/** Source of randomness for random study sets if none is supplied */
+	private final Random defaultRandom = new Random();
+
+	/**
+	 * The arrays that are needed to calculate the p-values of a random study
+	 * set. They are reused for all study sets drawn by the same thread.
+	 */
+	private final class SamplingScratch
+	{
+		final RandomStudyIdSampler sampler = new RandomStudyIdSampler(context.getPopulationItemIds());
+		final long [] studyItemSet = termItemIndex.newItemSet();
+		final int [] annotatedStudyGeneCounts = new int[getTotalNumberOfAnnotatedTerms()];
+	}
+
+	/** Draws random study sets, one scratch for each thread */
+	private final ThreadLocal<SamplingScratch> scratch = new ThreadLocal<SamplingScratch>()
+	{
+		@Override
+		protected SamplingScratch initialValue()
+		{
+			return new SamplingScratch();
+		}
+	};
 
 	public AbstractPValueCalculation(Ontology graph,
 			AssociationContainer goAssociations, PopulationSet populationSet,
 			StudySet studySet, Hypergeometric hyperg)
 	{
-		this.associations = goAssociations;
-		this.populationSet = populationSet;
+		this(PopulationCalculationContext.create(graph, goAssociations, populationSet), studySet, hyperg);
+	}
+
+	/**
+	 * Constructs the p-value calculation for the given study set using
+	 * an already prepared population context.
+	 *
+	 * @param context the population context, may be shared with other calculations.
+	 * @param studySet the study set to be tested.
+	 * @param hyperg instance of a helper class for the hypergeometric distribution.
+	 */
+	public AbstractPValueCalculation(PopulationCalculationContext context, StudySet studySet, Hypergeometric hyperg)
+	{
+		this.context = context;
 		this.observedStudySet = studySet;
 		this.hyperg = hyperg;
 
-		initCalculationContext(graph, goAssociations, populationSet);
+		itemMapper = context.itemMapper;
+		termMapper = context.termMapper;
+		term2Items = context.term2Items;
+		termItemIndex = context.termItemIndex;
 	}
 
-	private void initCalculationContext(Ontology graph, AssociationContainer goAssociations, StudySet populationSet)
+	protected final int getTotalNumberOfAnnotatedTerms()
 	{
-		TermEnumerator populationTermEnumerator = populationSet.enumerateTerms(graph, goAssociations);
-		totalNumberOfAnnotatedTerms = 0;
-		for (TermID term : populationTermEnumerator)
-		{
-			if (!graph.isRelevantTermID(term))
-				continue;
-			totalNumberOfAnnotatedTerms++;
-		}
+		return term2Items.length;
+	}
 
-		itemMapper = IntMapper.create(populationTermEnumerator.getGenesAsList());
-		termMapper = IntMapper.create(graph.filterRelevant(populationTermEnumerator.getAllAnnotatedTermsAsList()));
+	/**
+	 * Sets the executor that is used to run the loop over all terms, for
+	 * instance, to calculate the p-values of the terms in parallel.
+	 *
+	 * @param termLoopExecutor the executor. If null, the terms are processed
+	 *  sequentially.
+	 */
+	public void setTermLoopExecutor(ITermLoopExecutor termLoopExecutor)
+	{
+		if (termLoopExecutor == null)
+			termLoopExecutor = new SequentialTermLoopExecutor();
+		this.termLoopExecutor = termLoopExecutor;
+	}
+
+	/**
+	 * @return the executor that shall be used to run the loop over all terms.
+	 */
+	protected final ITermLoopExecutor getTermLoopExecutor()
+	{
+		return termLoopExecutor;
+	}
 
-		term2Items = new int[totalNumberOfAnnotatedTerms][];
+	/**
+	 * Enables the pruning of terms that are untestable according to Tarone's
+	 * procedure for the given significance level. The p-values of such terms
+	 * are not calculated and they are ignored by the mtc, which therefore
+	 * has to consider fewer hypotheses.
+	 *
+	 * @param alpha the significance level or 0 to disable pruning.
+	 */
+	public synchronized void setPruningAlpha(double alpha)
+	{
+		this.pruningAlpha = alpha;
+		this.testableTerms = null;
+	}
 
-		int i = 0;
+	/**
+	 * Returns which terms are testable. The decision is based on the
+	 * minimal attainable p-values of the terms for the observed study set
+	 * and is used for all random study sets as well.
+	 *
+	 * @return an array that indicates for each term whether it is testable
+	 *  or null if pruning is disabled.
+	 */
+	protected final synchronized boolean [] getTestableTerms()
+	{
+		if (pruningAlpha <= 0)
+			return null;
 
-		for (TermID term : populationTermEnumerator)
+		if (testableTerms == null)
 		{
-			if (!graph.isRelevantTermID(term))
-				continue;
+			double [] minimalPValues = new double[getTotalNumberOfAnnotatedTerms()];
+			calculateMinimalAttainablePValues(context.getStudyIds(observedStudySet), minimalPValues);
+			testableTerms = Tarone.getTestable(minimalPValues, pruningAlpha);
+		}
+		return testableTerms;
+	}
 
-			TermAnnotations tag = populationTermEnumerator.getAnnotatedGenes(term);
-			int nTermItems = tag.totalAnnotated.size();
+	/**
+	 * Calculates for each term the smallest p-value that the term can attain
+	 * for a study set like the given one.
+	 *
+	 * @param studyIds the ids of the study set.
+	 * @param minimalPValues the array to which the p-values are written.
+	 */
+	protected abstract void calculateMinimalAttainablePValues(int [] studyIds, double [] minimalPValues);
 
-			term2Items[i] = new int[nTermItems];
+	/**
+	 * Creates the item set of the given study ids that can be used
+	 * to count the study items of a term via termItemIndex.
+	 *
+	 * @param studyIds the ids of the study set.
+	 * @return the item set
+	 */
+	protected final long [] createStudyItemSet(int [] studyIds)
+	{
+		return createStudyItemSet(studyIds, studyIds.length);
+	}
 
-			int j = 0;
-			for (ByteString item : tag.totalAnnotated)
-			{
-				term2Items[i][j++] = itemMapper.getIndex(item);
-			}
+	/**
+	 * Creates the item set of the first ids of the given array.
+	 *
+	 * @param studyIds the array containing the ids of the study set.
+	 * @param numberOfStudyIds the number of ids of the study set.
+	 * @return the item set
+	 */
+	protected final long [] createStudyItemSet(int [] studyIds, int numberOfStudyIds)
+	{
+		long [] studyItemSet = termItemIndex.newItemSet();
+		termItemIndex.setItemSet(studyIds, numberOfStudyIds, studyItemSet);
+		return studyItemSet;
+	}
 
-			Arrays.sort(term2Items[i]);
+	/**
+	 * Fills the item set of the current thread with the first ids of the
+	 * given array. Other than createStudyItemSet() no new item set is
+	 * created, hence the returned item set is valid only until the current
+	 * thread calls this method again.
+	 *
+	 * @param studyIds the array containing the ids of the study set.
+	 * @param numberOfStudyIds the number of ids of the study set.
+	 * @return the item set
+	 */
+	protected final long [] fillScratchStudyItemSet(int [] studyIds, int numberOfStudyIds)
+	{
+		long [] studyItemSet = scratch.get().studyItemSet;
+		termItemIndex.setItemSet(studyIds, numberOfStudyIds, studyItemSet);
+		return studyItemSet;
+	}
 
-			i++;
-		}
+	/**
+	 * @return the sampler of random study sets of the current thread.
+	 */
+	protected final RandomStudyIdSampler getRandomStudyIdSampler()
+	{
+		return scratch.get().sampler;
 	}
 
-	protected final int getTotalNumberOfAnnotatedTerms()
+	/**
+	 * Returns an array that can hold the number of study genes annotated to
+	 * each term. The array belongs to the current thread and is reused for
+	 * every study set, so its contents are undefined.
+	 *
+	 * @return the array
+	 */
+	protected final int [] getScratchAnnotatedStudyGeneCounts()
 	{
-		return totalNumberOfAnnotatedTerms;
+		return scratch.get().annotatedStudyGeneCounts;
 	}
 
 	public final int currentStudySetSize()
@@ -106,17 +247,58 @@ public abstract class AbstractPValueCalculation implements IPValueCalculation
 	 */
 	protected abstract PValue [] calculatePValues(int [] studyIds, IPValueCalculationProgress progress);
 
+	/**
+	 * Calculate the p-values for the given study set and store them into the
+	 * given buffer. Other than calculatePValues(int [], IPValueCalculationProgress)
+	 * no objects should be created for the terms.
+	 *
+	 * @param studyIds the array containing the ids of the study set. It may
+	 *  be larger than the study set.
+	 * @param numberOfStudyIds the number of ids of the study set.
+	 * @param buffer the buffer to which the p-values are written.
+	 * @param progress the progress,
+	 */
+	protected abstract void calculatePValues(int [] studyIds, int numberOfStudyIds, PValueBuffer buffer, IPValueCalculationProgress progress);
+
 	public final PValue[] calculateRawPValues(IPValueCalculationProgress progress)
 	{
-		return calculatePValues(CalculationUtils.getUniqueIDs(observedStudySet, itemMapper, associations.getMapping()), progress);
+		return calculatePValues(context.getStudyIds(observedStudySet), progress);
 	}
 
 	public final PValue[] calculateRandomPValues(IPValueCalculationProgress progress)
 	{
-		// TODO: Simply randomly draw integers
-		return calculatePValues(CalculationUtils.getUniqueIDs(populationSet.generateRandomStudySet(observedStudySet.getGeneCount()), itemMapper, associations.getMapping()), progress);
+		RandomStudyIdSampler s = scratch.get().sampler;
+		int numberOfStudyIds = s.draw(observedStudySet.getGeneCount(), defaultRandom);
+		return calculatePValues(Arrays.copyOf(s.getStudyIds(), numberOfStudyIds), progress);
 	}
 
+	public final void calculateRandomPValues(PValueBuffer buffer, IPValueCalculationProgress progress)
+	{
+		calculateRandomPValues(defaultRandom, buffer, progress);
+	}
+
+	public final void calculateRandomPValues(Random rnd, PValueBuffer buffer, IPValueCalculationProgress progress)
+	{
+		RandomStudyIdSampler s = scratch.get().sampler;
+		int numberOfStudyIds = s.draw(observedStudySet.getGeneCount(), rnd);
+		calculatePValues(s.getStudyIds(), numberOfStudyIds, buffer, progress);
+	}
+
+	public String getFingerprint()
+	{
+		ContentHash hash = new ContentHash();
+		hash.add(getClass().getName());
+		hash.add(context.getFingerprint());
+
+		boolean [] testable = getTestableTerms();
+		hash.add(testable != null);
+		if (testable != null)
+		{
+			for (int i = 0; i < testable.length; i++)
+				hash.add(testable[i]);
+		}
+		return hash.finish();
+	}
 
 	/**
 	 * Return the index of the given term.
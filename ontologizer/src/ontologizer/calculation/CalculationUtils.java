@@ -52,6 +52,48 @@ public class CalculationUtils
 		return termLinks;
 	}
 
+	/**
+	 * Get the unique id of the given item.
+	 *
+	 * @param item the item
+	 * @param itemMapper the mapper for getting unique integer ids.
+	 * @param annotationContext context of the annotations for synonyms.
+	 * @return the unique id or -1 if the item is unknown.
+	 */
+	private static int getItemIndex(ByteString item, IntMapper<ByteString> itemMapper, AnnotationContext annotationContext)
+	{
+		int index = itemMapper.getIndex(item);
+		if (index == -1)
+		{
+			/* Try synonyms etc. */
+			int id = annotationContext.mapSynonym(item);
+			if (id != Integer.MAX_VALUE)
+			{
+				index = itemMapper.getIndex(annotationContext.getSymbols()[id]);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Get the unique ids of the given items, keeping their order. Unlike
+	 * getUniqueIDs() the result contains an element for each item.
+	 *
+	 * @param items the items as an iterable
+	 * @param size the number of elements in the iterable
+	 * @param itemMapper the mapper for getting unique integer ids.
+	 * @param annotationContext context of the annotations for synonyms.
+	 * @return the ids, -1 for items that are unknown.
+	 */
+	public static int [] getIDs(Iterable<ByteString> items, int size, IntMapper<ByteString> itemMapper, AnnotationContext annotationContext)
+	{
+		int [] ids = new int[size];
+		int i = 0;
+		for (ByteString item : items)
+			ids[i++] = getItemIndex(item, itemMapper, annotationContext);
+		return ids;
+	}
+
 	/**
 	 * Get a unique id representation of the given study set.
 	 *
@@ -67,16 +109,7 @@ public class CalculationUtils
 		int mappedStudyItems = 0;
 		for (ByteString studyItem : studySet)
 		{
-			int index = itemMapper.getIndex(studyItem);
-			if (index == -1)
-			{
-				/* Try synonyms etc. */
-				int id = annotationContext.mapSynonym(studyItem);
-				if (id != Integer.MAX_VALUE)
-				{
-					index = itemMapper.getIndex(annotationContext.getSymbols()[id]);
-				}
-			}
+			int index = getItemIndex(studyItem, itemMapper, annotationContext);
 			if (index != -1)
 				studyIds[mappedStudyItems++] = index;
 		}
@@ -108,6 +108,26 @@ public class EnrichedGOTermsResult extends AbstractGOTermsResult
 		return goodTerms;
 	}
 
+	/**
+	 * Returns the set of terms that have been pruned as untestable.
+	 * These terms have not been tested and were not considered by the
+	 * multiple test correction.
+	 *
+	 * @return the set of pruned terms
+	 */
+	public HashSet<TermID> getPrunedTerms()
+	{
+		HashSet<TermID> prunedTerms = new HashSet<TermID>();
+
+		for (AbstractGOTermProperties goProp : this)
+		{
+			if (goProp.pruned)
+				prunedTerms.add(goProp.term);
+		}
+
+		return prunedTerms;
+	}
+
 	/**
 	 * Writes out a basic dot file which can be used within graphviz. All terms
 	 * of the terms parameter are included in the graph if they are within the
@@ -0,0 +1,118 @@
+package ontologizer.calculation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ontologizer.statistics.IPValueCalculationProgress;
+
+/**
+ * Executes the term loop in parallel by splitting the range of terms
+ * recursively and submitting the parts to a fork/join pool.
+ *
+ * As each term is processed by exactly one task and the results of a term
+ * are written only to the term's slot, the outcome is the same as with the
+ * sequential executor.
+ */
+public class ForkJoinTermLoopExecutor implements ITermLoopExecutor
+{
+	/** Upper bound for the number of terms processed by a single task */
+	private static final int MAX_CHUNK_SIZE = 256;
+
+	/** Lower bound for the number of terms processed by a single task */
+	private static final int MIN_CHUNK_SIZE = 16;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructs the executor.
+	 *
+	 * @param pool the pool in which the tasks are executed.
+	 */
+	public ForkJoinTermLoopExecutor(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Constructs an executor that uses a new pool with the given
+	 * parallelism.
+	 *
+	 * @param parallelism the number of threads
+	 */
+	public ForkJoinTermLoopExecutor(int parallelism)
+	{
+		this(new ForkJoinPool(parallelism));
+	}
+
+	/**
+	 * Reports the progress of all tasks of a single execution. Updates
+	 * are serialized, so the reported values never decrease.
+	 */
+	private static class Progress
+	{
+		private final IPValueCalculationProgress progress;
+		private int done;
+
+		public Progress(IPValueCalculationProgress progress)
+		{
+			this.progress = progress;
+		}
+
+		public synchronized void done(int terms)
+		{
+			done += terms;
+			progress.update(done);
+		}
+	}
+
+	private static class TermRangeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ITermRangeCalculation calculation;
+		private final Progress progress;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+
+		public TermRangeTask(ITermRangeCalculation calculation, Progress progress, int from, int to, int chunkSize)
+		{
+			this.calculation = calculation;
+			this.progress = progress;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= chunkSize)
+			{
+				calculation.calculate(from, to);
+				if (progress != null)
+				{
+					progress.done(to - from);
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new TermRangeTask(calculation, progress, from, mid, chunkSize),
+					new TermRangeTask(calculation, progress, mid, to, chunkSize));
+		}
+	}
+
+	public void execute(int numberOfTerms, ITermRangeCalculation calculation, IPValueCalculationProgress progress)
+	{
+		if (numberOfTerms == 0)
+			return;
+
+		/* Aim at a few tasks per thread so the load is balanced */
+		int chunkSize = numberOfTerms / (pool.getParallelism() * 4);
+		chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+		Progress p = progress != null ? new Progress(progress) : null;
+		pool.invoke(new TermRangeTask(calculation, p, 0, numberOfTerms, chunkSize));
+	}
+}
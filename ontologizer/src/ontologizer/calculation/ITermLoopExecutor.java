@@ -0,0 +1,21 @@
+package ontologizer.calculation;
+
+import ontologizer.statistics.IPValueCalculationProgress;
+
+/**
+ * Executes a term range calculation for all terms.
+ */
+public interface ITermLoopExecutor
+{
+	/**
+	 * Execute the given calculation for all terms. The method returns
+	 * when the calculation has been finished for all terms.
+	 *
+	 * @param numberOfTerms the number of terms, i.e., the calculation is invoked
+	 *  for the range 0 (inclusive) to numberOfTerms (exclusive).
+	 * @param calculation the calculation to perform.
+	 * @param progress the progress that is informed about the number of processed
+	 *  terms. The reported values never decrease. May be null.
+	 */
+	void execute(int numberOfTerms, ITermRangeCalculation calculation, IPValueCalculationProgress progress);
+}
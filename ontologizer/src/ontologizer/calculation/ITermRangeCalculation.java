@@ -0,0 +1,17 @@
+package ontologizer.calculation;
+
+/**
+ * A calculation that is performed for each term of a range of consecutive
+ * term indices. Implementations must be able to process disjoint ranges
+ * concurrently.
+ */
+public interface ITermRangeCalculation
+{
+	/**
+	 * Perform the calculation for the given range of terms.
+	 *
+	 * @param from the index of the first term (inclusive)
+	 * @param to the index of the last term (exclusive)
+	 */
+	void calculate(int from, int to);
+}
@@ -1,11 +1,7 @@
 package ontologizer.calculation;
 
-import ontologizer.association.AssociationContainer;
-import ontologizer.ontology.Ontology;
-import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.Hypergeometric;
-import ontologizer.statistics.IPValueCalculation;
 
 public class ParentChildCalculation extends AbstractPValueBasedCalculation implements IProgressFeedback
 {
@@ -22,10 +18,9 @@ public class ParentChildCalculation extends AbstractPValueBasedCalculation imple
 	}
 
 	@Override
-	protected IPValueCalculation newPValueCalculation(Ontology graph,
-			AssociationContainer goAssociations, PopulationSet populationSet,
+	protected AbstractPValueCalculation newPValueCalculation(PopulationCalculationContext context,
 			StudySet studySet, Hypergeometric hyperg)
 	{
-		return new ParentChildUnionPValueCalculation(graph, goAssociations, populationSet, studySet, hyperg);
+		return new ParentChildUnionPValueCalculation(context, studySet, hyperg);
 	}
 }
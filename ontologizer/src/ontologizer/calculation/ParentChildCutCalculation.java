@@ -1,11 +1,7 @@
 package ontologizer.calculation;
 
-import ontologizer.association.AssociationContainer;
-import ontologizer.ontology.Ontology;
-import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.Hypergeometric;
-import ontologizer.statistics.IPValueCalculation;
 
 public class ParentChildCutCalculation extends AbstractPValueBasedCalculation implements IProgressFeedback
 {
@@ -24,10 +20,9 @@ public class ParentChildCutCalculation extends AbstractPValueBasedCalculation im
 	}
 
 	@Override
-	protected IPValueCalculation newPValueCalculation(Ontology graph,
-			AssociationContainer goAssociations, PopulationSet populationSet,
+	protected AbstractPValueCalculation newPValueCalculation(PopulationCalculationContext context,
 			StudySet studySet, Hypergeometric hyperg)
 	{
-		return new ParentChildIntersectionPValueCalculation(graph, goAssociations,populationSet, studySet, hyperg);
+		return new ParentChildIntersectionPValueCalculation(context, studySet, hyperg);
 	}
 }
@@ -2,14 +2,12 @@ package ontologizer.calculation;
 
 import ontologizer.association.AssociationContainer;
 import ontologizer.ontology.Ontology;
-import ontologizer.ontology.TermID;
 import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.Hypergeometric;
 import ontologizer.statistics.IPValueCalculationProgress;
 import ontologizer.statistics.PValue;
-import ontologizer.util.Util;
-import sonumina.math.graph.SlimDirectedGraphView;
+import ontologizer.statistics.PValueBuffer;
 
 /**
  *
@@ -21,116 +19,185 @@ import sonumina.math.graph.SlimDirectedGraphView;
  */
 abstract class ParentChildPValuesCalculation extends AbstractPValueCalculation
 {
-	protected SlimDirectedGraphView<TermID> slimGraph;
+	/** The number of parents of each term */
+	private final int [] numberOfParents;
 
-	/**
-	 * Return value type for getCounts().
-	 *
-	 * @author Sebastian Bauer
-	 */
-	protected static class Counts
+	public ParentChildPValuesCalculation(Ontology graph,
+			AssociationContainer goAssociations, PopulationSet populationSet,
+			StudySet studySet, Hypergeometric hyperg)
 	{
-		public final int parents;
-		public final int studyFamilyCount;
-		public final int popFamilyCount;
+		super(graph, goAssociations, populationSet, studySet, hyperg);
 
-		public Counts(int parents, int studyFamilyCount, int popFamilyCount)
-		{
-			this.parents = parents;
-			this.studyFamilyCount = studyFamilyCount;
-			this.popFamilyCount = popFamilyCount;
-		}
+		numberOfParents = context.getNumberOfParents();
 	}
 
-	public ParentChildPValuesCalculation(Ontology graph,
-			AssociationContainer goAssociations, PopulationSet populationSet,
+	public ParentChildPValuesCalculation(PopulationCalculationContext context,
 			StudySet studySet, Hypergeometric hyperg)
 	{
-		super(graph, goAssociations, populationSet, studySet, hyperg);
+		super(context, studySet, hyperg);
 
-		slimGraph = graph.getOntlogyOfRelevantTerms().getTermIDSlimGraphView();
+		numberOfParents = context.getNumberOfParents();
 	}
 
-	protected PValue [] calculatePValues(int [] studyIds, IPValueCalculationProgress progress)
+	protected PValue [] calculatePValues(final int [] studyIds, IPValueCalculationProgress progress)
 	{
-		PValue p [] = new PValue[getTotalNumberOfAnnotatedTerms()];
+		final PValue p [] = new PValue[getTotalNumberOfAnnotatedTerms()];
+		final long [] studyItemSet = createStudyItemSet(studyIds);
+		final boolean [] testable = getTestableTerms();
+		final TermItemIndex familyIndex = getParentFamilyIndex();
 
-		for (int i = 0; i < termMapper.getSize(); i++)
+		getTermLoopExecutor().execute(p.length, new ITermRangeCalculation()
 		{
-			if (progress != null && (i % 256) == 0)
+			public void calculate(int from, int to)
 			{
-				progress.update(i);
+				for (int i = from; i < to; i++)
+				{
+					ParentChildGOTermProperties prop = new ParentChildGOTermProperties();
+					calculateTerm(studyIds.length, studyItemSet, familyIndex, i, testable == null || testable[i], prop, null);
+					p[i] = prop;
+				}
 			}
-
-			p[i] = calculateTerm(studyIds, i);
-		}
+		}, progress);
 
 		return p;
 	}
 
-	private ParentChildGOTermProperties calculateTerm(int [] studyIds, int termIndex)
+	protected void calculatePValues(int [] studyIds, final int numberOfStudyIds, final PValueBuffer buffer, IPValueCalculationProgress progress)
 	{
-		TermID termId = termMapper.get(termIndex);
-		// counts annotated to term
-		int studyTermCount = Util.commonInts(studyIds, term2Items[termIndex]);
-		int popTermCount = term2Items[termIndex].length;
+		final long [] studyItemSet = fillScratchStudyItemSet(studyIds, numberOfStudyIds);
+		final boolean [] testable = getTestableTerms();
+		final TermItemIndex familyIndex = getParentFamilyIndex();
 
-		// this is what we give back
-		ParentChildGOTermProperties prop = new ParentChildGOTermProperties();
-		prop.term = termId;
-		prop.annotatedPopulationGenes = popTermCount;
-		prop.annotatedStudyGenes = studyTermCount;
+		getTermLoopExecutor().execute(getTotalNumberOfAnnotatedTerms(), new ITermRangeCalculation()
+		{
+			public void calculate(int from, int to)
+			{
+				for (int i = from; i < to; i++)
+					calculateTerm(numberOfStudyIds, studyItemSet, familyIndex, i, testable == null || testable[i], null, buffer);
+			}
+		}, progress);
+	}
 
-		Counts counts = getCounts(studyIds, termId);
+	/**
+	 * Calculates the p-value of a single term.
+	 *
+	 * @param numberOfStudyIds the size of the study set
+	 * @param studyItemSet the item set of the study set
+	 * @param familyIndex the index of the parent families
+	 * @param termIndex the index of the term
+	 * @param testable whether the term is testable. If not, it is pruned.
+	 * @param prop the properties that are filled with the result. May be null.
+	 * @param buffer the buffer that is filled with the result. May be null.
+	 */
+	private void calculateTerm(int numberOfStudyIds, long [] studyItemSet, TermItemIndex familyIndex, int termIndex,
+			boolean testable, ParentChildGOTermProperties prop, PValueBuffer buffer)
+	{
+		// counts annotated to term
+		int studyTermCount = termItemIndex.countCommonItems(termIndex, studyItemSet);
+		int popTermCount = term2Items[termIndex].length;
 
-		int studyFamilyCount = counts.studyFamilyCount;
-		int popFamilyCount = counts.popFamilyCount;
+		// counts annotated to family (parents)
+		int popFamilyCount = familyIndex.getTermSize(termIndex);
+		int studyFamilyCount = getStudyFamilyCount(numberOfStudyIds, studyItemSet, familyIndex, termIndex);
 
-		prop.popFamilyGenes = popFamilyCount;
-		prop.studyFamilyGenes = studyFamilyCount;
-		prop.nparents = counts.parents;
+		boolean ignoreAtMTC;
+		double p;
+		double p_min;
 
-		if (studyTermCount != 0)
+		if (studyTermCount != 0 && popFamilyCount != popTermCount)
 		{
-			if (popFamilyCount == popTermCount)
+			if (testable)
 			{
-				prop.ignoreAtMTC = true;
-				prop.p = 1.0;
-				prop.p_adjusted = 1.0;
-				prop.p_min = 1.0;
-			} else
-			{
-				double p = hyperg.phypergeometric(
+				p = hyperg.phypergeometric(
 						popFamilyCount,
 						(double)popTermCount / (double)popFamilyCount,
 						studyFamilyCount,
 						studyTermCount);
-
-				prop.ignoreAtMTC = false;
-				prop.p = p;
-				prop.p_min = hyperg.dhyper(
-						popTermCount,
-						popFamilyCount,
-						popTermCount,
-						popTermCount);
+				ignoreAtMTC = false;
+			} else
+			{
+				/* The term was pruned, it can't become significant */
+				p = 1.0;
+				ignoreAtMTC = true;
 			}
+
+			p_min = hyperg.dhyper(
+					popTermCount,
+					popFamilyCount,
+					popTermCount,
+					popTermCount);
 		} else
 		{
-			prop.ignoreAtMTC = true;
-			prop.p = 1.0;
-			prop.p_adjusted = 1.0;
-			prop.p_min = 1.0;
+			ignoreAtMTC = true;
+			p = 1.0;
+			p_min = 1.0;
 		}
 
-		return prop;
+		if (buffer != null)
+		{
+			buffer.set(termIndex, p, p_min, ignoreAtMTC);
+		}
+
+		if (prop != null)
+		{
+			prop.term = termMapper.get(termIndex);
+			prop.annotatedPopulationGenes = popTermCount;
+			prop.annotatedStudyGenes = studyTermCount;
+			prop.popFamilyGenes = popFamilyCount;
+			prop.studyFamilyGenes = studyFamilyCount;
+			prop.nparents = numberOfParents[termIndex];
+			prop.ignoreAtMTC = ignoreAtMTC;
+			prop.p = p;
+			prop.p_min = p_min;
+			prop.pruned = !testable;
+			if (ignoreAtMTC)
+				prop.p_adjusted = 1.0;
+		}
+	}
+
+	/**
+	 * Determines the number of study items that are annotated to the parent
+	 * family of the given term.
+	 *
+	 * @param numberOfStudyIds the size of the study set
+	 * @param studyItemSet the item set of the study set
+	 * @param familyIndex the index of the parent families
+	 * @param termIndex the index of the term
+	 * @return the number of items
+	 */
+	private int getStudyFamilyCount(int numberOfStudyIds, long [] studyItemSet, TermItemIndex familyIndex, int termIndex)
+	{
+		/* A term without parents has an empty population family but the
+		 * study family consists of the entire study set */
+		if (numberOfParents[termIndex] == 0)
+			return numberOfStudyIds;
+		return familyIndex.countCommonItems(termIndex, studyItemSet);
+	}
+
+	protected void calculateMinimalAttainablePValues(int [] studyIds, double [] minimalPValues)
+	{
+		long [] studyItemSet = createStudyItemSet(studyIds);
+		TermItemIndex familyIndex = getParentFamilyIndex();
+
+		for (int i = 0; i < minimalPValues.length; i++)
+		{
+			int popTermCount = term2Items[i].length;
+			int popFamilyCount = familyIndex.getTermSize(i);
+
+			if (popFamilyCount == popTermCount)
+				minimalPValues[i] = 1.0;
+			else
+				minimalPValues[i] = hyperg.minimalAttainablePValue(popFamilyCount, popTermCount,
+						getStudyFamilyCount(studyIds.length, studyItemSet, familyIndex, i));
+		}
 	}
 
 	/**
-	 * Calculate the counts for the given study set ids for the term.
+	 * Returns the index of the items that are annotated to the parent family
+	 * of each term. The family items depend only on the population, hence
+	 * implementations should take them from the population context.
 	 *
-	 * @param studyIds the study sets
-	 * @param term the term for which the counts shall be determined.
-	 * @return the count structure.
+	 * @return the index
 	 */
-	protected abstract Counts getCounts(int[] studyIds, TermID term);
+	protected abstract TermItemIndex getParentFamilyIndex();
 };
@@ -0,0 +1,357 @@
+package ontologizer.calculation;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.calculation.util.CompressedLinks;
+import ontologizer.enumeration.TermEnumerator;
+import ontologizer.ontology.Ontology;
+import ontologizer.ontology.TermID;
+import ontologizer.set.PopulationSet;
+import ontologizer.set.StudySet;
+import ontologizer.statistics.ContentHash;
+import ontologizer.statistics.Hypergeometric;
+import ontologizer.types.ByteString;
+import ontologizer.util.Util;
+import sonumina.collections.IntMapper;
+import sonumina.math.graph.SlimDirectedGraphView;
+
+/**
+ * Holds everything of a calculation that depends only on the population,
+ * i.e., on the triple of ontology, associations and population set. It is
+ * built once and then shared by all study sets that are tested against
+ * the same population. Apart from the lazily created slim graph, parent
+ * family indices and item links, instances are never modified after
+ * construction and can be read by several threads at the same time.
+ */
+public class PopulationCalculationContext
+{
+	private final Ontology graph;
+	private final AssociationContainer associations;
+	private final PopulationSet populationSet;
+
+	/** Number of genes of the population set at construction time */
+	private final int populationGeneCount;
+
+	/** Maps the annotated items of the population to consecutive ints */
+	public final IntMapper<ByteString> itemMapper;
+
+	/** Maps the relevant annotated terms to consecutive ints */
+	public final IntMapper<TermID> termMapper;
+
+	/** Maps a term index to the sorted item indices annotated to the term */
+	public final int [][] term2Items;
+
+	/** Allows to count the items of a term that are in a given study set */
+	public final TermItemIndex termItemIndex;
+
+	/**
+	 * Helper for the hypergeometric distribution whose log factorial table
+	 * covers the entire population. It is never modified and therefore
+	 * can be used by any calculation that is based on this context.
+	 */
+	private final Hypergeometric hyperg;
+
+	/** The slim graph of the relevant terms, created on demand */
+	private SlimDirectedGraphView<TermID> relevantSlimGraph;
+
+	/** The number of parents of each term, created on demand */
+	private int [] numberOfParents;
+
+	/** The union of the items of the parents of each term, created on demand */
+	private TermItemIndex parentUnionIndex;
+
+	/** The intersection of the items of the parents of each term, created on demand */
+	private TermItemIndex parentIntersectionIndex;
+
+	/** The terms of each item, created on demand */
+	private CompressedLinks item2Terms;
+
+	/** The item index of each gene of the population, created on demand */
+	private int [] populationItemIds;
+
+	/** The hash of the content, created on demand */
+	private String fingerprint;
+
+	private PopulationCalculationContext(Ontology graph, AssociationContainer associations, PopulationSet populationSet)
+	{
+		this.graph = graph;
+		this.associations = associations;
+		this.populationSet = populationSet;
+		this.populationGeneCount = populationSet.getGeneCount();
+
+		TermEnumerator populationTermEnumerator = populationSet.enumerateTerms(graph, associations);
+		List<TermID> relevantTerms = graph.filterRelevant(populationTermEnumerator.getAllAnnotatedTermsAsList());
+
+		itemMapper = IntMapper.create(populationTermEnumerator.getGenesAsList());
+		termMapper = IntMapper.create(relevantTerms);
+		term2Items = CalculationUtils.makeTermLinks(populationTermEnumerator, termMapper, itemMapper);
+		termItemIndex = TermItemIndex.create(term2Items, itemMapper.getSize());
+		hyperg = new Hypergeometric(Math.max(itemMapper.getSize(), populationGeneCount));
+	}
+
+	/**
+	 * Create a new context for the given population.
+	 *
+	 * @param graph the ontology
+	 * @param associations the associations
+	 * @param populationSet the population
+	 * @return the new context
+	 */
+	public static PopulationCalculationContext create(Ontology graph, AssociationContainer associations, PopulationSet populationSet)
+	{
+		return new PopulationCalculationContext(graph, associations, populationSet);
+	}
+
+	/**
+	 * Determines whether this context has been created for the given
+	 * arguments and hence can be reused. Objects are compared by identity.
+	 *
+	 * @param graph the ontology
+	 * @param associations the associations
+	 * @param populationSet the population
+	 * @return whether the context can be reused for the given arguments.
+	 */
+	public boolean isFor(Ontology graph, AssociationContainer associations, PopulationSet populationSet)
+	{
+		return this.graph == graph && this.associations == associations &&
+			this.populationSet == populationSet && this.populationGeneCount == populationSet.getGeneCount();
+	}
+
+	/**
+	 * Returns a context for the given arguments, reusing the given one
+	 * if possible.
+	 *
+	 * @param context the context that should be reused if possible. May be null.
+	 * @param graph the ontology
+	 * @param associations the associations
+	 * @param populationSet the population
+	 * @return the supplied context if it matches or a newly created one.
+	 */
+	public static PopulationCalculationContext reuseOrCreate(PopulationCalculationContext context,
+			Ontology graph, AssociationContainer associations, PopulationSet populationSet)
+	{
+		if (context != null && context.isFor(graph, associations, populationSet))
+			return context;
+		return create(graph, associations, populationSet);
+	}
+
+	/**
+	 * Map the given study set to the sorted item indices of this context.
+	 *
+	 * @param studySet the study set to map.
+	 * @return the item indices.
+	 */
+	public int [] getStudyIds(StudySet studySet)
+	{
+		return CalculationUtils.getUniqueIDs(studySet, itemMapper, associations.getMapping());
+	}
+
+	/**
+	 * Returns the item index of each gene of the population in the order
+	 * of the population set. Random study sets can be drawn from this
+	 * without creating any StudySet.
+	 *
+	 * @return the item indices, -1 for genes that are not annotated.
+	 *  The array must not be modified.
+	 */
+	public synchronized int [] getPopulationItemIds()
+	{
+		if (populationItemIds == null)
+			populationItemIds = CalculationUtils.getIDs(populationSet, populationGeneCount, itemMapper, associations.getMapping());
+		return populationItemIds;
+	}
+
+	/**
+	 * Returns the terms to which each item is annotated, i.e., the reverse
+	 * of term2Items.
+	 *
+	 * @return the links from item indices to term indices.
+	 */
+	public synchronized CompressedLinks getItem2Terms()
+	{
+		if (item2Terms == null)
+			item2Terms = CompressedLinks.create(term2Items, itemMapper.getSize()).transpose();
+		return item2Terms;
+	}
+
+	/**
+	 * @return the slim graph view of the relevant terms.
+	 */
+	public synchronized SlimDirectedGraphView<TermID> getRelevantSlimGraph()
+	{
+		if (relevantSlimGraph == null)
+			relevantSlimGraph = graph.getOntlogyOfRelevantTerms().getTermIDSlimGraphView();
+		return relevantSlimGraph;
+	}
+
+	/**
+	 * Returns the indices of the parents of each term.
+	 *
+	 * @return the parents, indexed by term index.
+	 */
+	private int [][] getParents()
+	{
+		SlimDirectedGraphView<TermID> slimGraph = getRelevantSlimGraph();
+		int [][] parents = new int[term2Items.length][];
+
+		for (int i = 0; i < parents.length; i++)
+		{
+			int [] slimParents = slimGraph.vertexParents[slimGraph.getVertexIndex(termMapper.get(i))];
+			parents[i] = new int[slimParents.length];
+			for (int j = 0; j < slimParents.length; j++)
+				parents[i][j] = termMapper.getIndex(slimGraph.getVertex(slimParents[j]));
+		}
+		return parents;
+	}
+
+	/**
+	 * @return the number of parents of each term in the graph of relevant
+	 *  terms, indexed by term index.
+	 */
+	public synchronized int [] getNumberOfParents()
+	{
+		if (numberOfParents == null)
+		{
+			int [][] parents = getParents();
+			numberOfParents = new int[parents.length];
+			for (int i = 0; i < parents.length; i++)
+				numberOfParents[i] = parents[i].length;
+		}
+		return numberOfParents;
+	}
+
+	/**
+	 * Returns the index of the items that are annotated to at least one
+	 * parent of a term. The family of a term without parents is empty.
+	 *
+	 * @return the index, whose term indices are the ones of this context.
+	 */
+	public synchronized TermItemIndex getParentUnionIndex()
+	{
+		if (parentUnionIndex == null)
+		{
+			int [][] parents = getParents();
+			int [][] families = new int[parents.length][];
+
+			for (int i = 0; i < parents.length; i++)
+			{
+				int [] family = new int[0];
+				for (int j = 0; j < parents[i].length; j++)
+					family = Util.union(family, term2Items[parents[i][j]]);
+				families[i] = family;
+			}
+			parentUnionIndex = TermItemIndex.create(families, itemMapper.getSize());
+		}
+		return parentUnionIndex;
+	}
+
+	/**
+	 * Returns the index of the items that are annotated to all parents of a
+	 * term. The family of a term without parents is empty.
+	 *
+	 * @return the index, whose term indices are the ones of this context.
+	 */
+	public synchronized TermItemIndex getParentIntersectionIndex()
+	{
+		if (parentIntersectionIndex == null)
+		{
+			int [][] parents = getParents();
+			int [][] families = new int[parents.length][];
+			int [] items = new int[itemMapper.getSize()];
+
+			for (int i = 0; i < parents.length; i++)
+			{
+				int [][] parentItems = new int[parents[i].length][];
+				for (int j = 0; j < parentItems.length; j++)
+					parentItems[j] = term2Items[parents[i][j]];
+
+				if (parentItems.length == 0)
+				{
+					families[i] = new int[0];
+				} else
+				{
+					int count = Util.intersect(parentItems, parentItems.length, items);
+					families[i] = Arrays.copyOf(items, count);
+				}
+			}
+			parentIntersectionIndex = TermItemIndex.create(families, itemMapper.getSize());
+		}
+		return parentIntersectionIndex;
+	}
+
+	/**
+	 * Returns a hash of the content of this context, i.e., of the items of
+	 * the population in the order in which random study sets are drawn
+	 * from them, of the relevant terms and of their annotations and parents.
+	 *
+	 * @return the hash
+	 */
+	public synchronized String getFingerprint()
+	{
+		if (fingerprint == null)
+		{
+			ContentHash hash = new ContentHash();
+
+			hash.add(populationGeneCount);
+			for (ByteString item : populationSet)
+				hash.add(item.toString());
+
+			hash.add(itemMapper.getSize());
+			for (int i = 0; i < itemMapper.getSize(); i++)
+				hash.add(itemMapper.get(i).toString());
+
+			int [][] parents = getParents();
+			hash.add(term2Items.length);
+			for (int i = 0; i < term2Items.length; i++)
+			{
+				hash.add(termMapper.get(i).toString());
+				hash.add(term2Items[i]);
+				hash.add(parents[i]);
+			}
+			fingerprint = hash.finish();
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @return the number of relevant terms that are annotated to the population.
+	 */
+	public int getNumberOfTerms()
+	{
+		return term2Items.length;
+	}
+
+	/**
+	 * @return the number of items that are annotated.
+	 */
+	public int getNumberOfItems()
+	{
+		return itemMapper.getSize();
+	}
+
+	/**
+	 * @return the hypergeometric helper whose log factorial table has been
+	 *  precomputed for the size of the population.
+	 */
+	public Hypergeometric getHypergeometric()
+	{
+		return hyperg;
+	}
+
+	public Ontology getGraph()
+	{
+		return graph;
+	}
+
+	public AssociationContainer getAssociations()
+	{
+		return associations;
+	}
+
+	public PopulationSet getPopulationSet()
+	{
+		return populationSet;
+	}
+}
@@ -0,0 +1,156 @@
+package ontologizer.calculation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws random study sets from a population and represents them directly
+ * by the item indices of their genes. Drawing is done by a partial
+ * Fisher-Yates shuffle of a private copy of the population, so no objects
+ * are created per sample. The swaps are undone after each draw, so a drawn
+ * study set depends only on the source of randomness and not on the
+ * previous draws.
+ *
+ * As the shuffle draws the genes one after another, the study sets that are
+ * drawn from the same source of randomness are nested: a study set of a
+ * given size consists of the genes of the study set of any smaller size plus
+ * some further genes. drawPermutation() exposes the order in which the
+ * genes have been drawn, so study sets of several sizes can be derived as
+ * prefixes of a single draw.
+ *
+ * An instance must not be used by several threads at the same time.
+ */
+public class RandomStudyIdSampler
+{
+	/** The item indices of the population, in the order of the last shuffle */
+	private final int [] population;
+
+	/** The item indices of the last drawn study set */
+	private final int [] studyIds;
+
+	/** The positions with which the entries of the population were swapped */
+	private final int [] swaps;
+
+	/** The item indices of the last drawn permutation, created on demand */
+	private int [] permutation;
+
+	/**
+	 * @param populationItemIds the item index of each gene of the population,
+	 *  negative values denote genes that are not annotated.
+	 */
+	public RandomStudyIdSampler(int [] populationItemIds)
+	{
+		population = populationItemIds.clone();
+		studyIds = new int[population.length];
+		swaps = new int[population.length];
+	}
+
+	/**
+	 * Draws the given number of genes by moving them to the beginning of
+	 * the population array in the order in which they are drawn.
+	 *
+	 * @param size the number of genes to draw.
+	 * @param rnd the source of randomness
+	 * @return the number of drawn genes
+	 */
+	private int shuffle(int size, Random rnd)
+	{
+		int n = population.length;
+		int k = Math.min(size, n);
+
+		for (int i = 0; i < k; i++)
+		{
+			int j = i + rnd.nextInt(n - i);
+			int id = population[j];
+			population[j] = population[i];
+			population[i] = id;
+			swaps[i] = j;
+		}
+		return k;
+	}
+
+	/**
+	 * Undoes the swaps of the last shuffle.
+	 *
+	 * @param k the number of genes drawn by the last shuffle.
+	 */
+	private void restore(int k)
+	{
+		for (int i = k - 1; i >= 0; i--)
+		{
+			int j = swaps[i];
+			int id = population[j];
+			population[j] = population[i];
+			population[i] = id;
+		}
+	}
+
+	/**
+	 * Draws a study set of the given size. Genes of the population that are
+	 * not annotated are drawn as usual but they are not part of the result.
+	 *
+	 * @param size the number of genes to draw. If larger than the population,
+	 *  the entire population is drawn.
+	 * @param rnd the source of randomness
+	 * @return the number of item indices of the study set, which are
+	 *  stored in ascending order at the beginning of getStudyIds().
+	 */
+	public int draw(int size, Random rnd)
+	{
+		int k = shuffle(size, rnd);
+		int numberOfIds = 0;
+
+		for (int i = 0; i < k; i++)
+		{
+			if (population[i] >= 0)
+				studyIds[numberOfIds++] = population[i];
+		}
+		restore(k);
+
+		Arrays.sort(studyIds, 0, numberOfIds);
+		return numberOfIds;
+	}
+
+	/**
+	 * Draws genes like draw() but keeps them in the order in which they
+	 * have been drawn. The first k entries form the study set of size k that
+	 * draw() would have returned for the same state of the source of
+	 * randomness.
+	 *
+	 * @param size the number of genes to draw. If larger than the population,
+	 *  the entire population is drawn.
+	 * @param rnd the source of randomness
+	 * @return the number of drawn genes, which are stored at the beginning
+	 *  of getPermutation(). Unlike draw(), genes that are not annotated are
+	 *  included and denoted by negative values.
+	 */
+	public int drawPermutation(int size, Random rnd)
+	{
+		if (permutation == null)
+			permutation = new int[population.length];
+
+		int k = shuffle(size, rnd);
+		System.arraycopy(population, 0, permutation, 0, k);
+		restore(k);
+		return k;
+	}
+
+	/**
+	 * @return the array holding the item indices of the last drawn study set.
+	 *  Only the first elements as reported by draw() are valid.
+	 */
+	public int [] getStudyIds()
+	{
+		return studyIds;
+	}
+
+	/**
+	 * @return the array holding the item indices of the last drawn
+	 *  permutation. Only the first elements as reported by drawPermutation()
+	 *  are valid.
+	 */
+	public int [] getPermutation()
+	{
+		return permutation;
+	}
+}
@@ -0,0 +1,25 @@
+package ontologizer.calculation;
+
+import ontologizer.statistics.IPValueCalculationProgress;
+
+/**
+ * Executes the term loop in the calling thread.
+ */
+public class SequentialTermLoopExecutor implements ITermLoopExecutor
+{
+	/** Number of terms that are processed between two progress updates */
+	private static final int CHUNK_SIZE = 256;
+
+	public void execute(int numberOfTerms, ITermRangeCalculation calculation, IPValueCalculationProgress progress)
+	{
+		for (int from = 0; from < numberOfTerms; from += CHUNK_SIZE)
+		{
+			if (progress != null)
+			{
+				progress.update(from);
+			}
+
+			calculation.calculate(from, Math.min(numberOfTerms, from + CHUNK_SIZE));
+		}
+	}
+}
@@ -1,82 +1,260 @@
 package ontologizer.calculation;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import ontologizer.association.AssociationContainer;
+import ontologizer.calculation.util.CompressedLinks;
 import ontologizer.ontology.Ontology;
-import ontologizer.ontology.TermID;
 import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.Hypergeometric;
+import ontologizer.statistics.INestedPValueCalculation;
 import ontologizer.statistics.IPValueCalculationProgress;
 import ontologizer.statistics.PValue;
-import ontologizer.util.Util;
+import ontologizer.statistics.PValueBuffer;
 
 /**
  * A specific term-for-term p-value calculation.
  *
+ * As the p-value of a term depends only on the number of study genes that
+ * are annotated to the term, the random study sets of several sizes can be
+ * derived from a single permutation of the population, see
+ * {@link INestedPValueCalculation}.
+ *
  * @author Sebastian Bauer
  */
-public class TermForTermPValueCalculation extends AbstractPValueCalculation
+public class TermForTermPValueCalculation extends AbstractPValueCalculation implements INestedPValueCalculation
 {
+	/** The number of population genes annotated to each term */
+	private final int [] annotatedPopGeneCounts;
+
 	public TermForTermPValueCalculation(Ontology graph,
 			AssociationContainer associations, PopulationSet populationSet,
 			StudySet studySet, Hypergeometric hyperg)
 	{
 		super(graph, associations, populationSet, studySet, hyperg);
+
+		annotatedPopGeneCounts = getTermSizes(term2Items);
+	}
+
+	public TermForTermPValueCalculation(PopulationCalculationContext context,
+			StudySet studySet, Hypergeometric hyperg)
+	{
+		super(context, studySet, hyperg);
+
+		annotatedPopGeneCounts = getTermSizes(term2Items);
+	}
+
+	/**
+	 * Returns the number of items of each term.
+	 *
+	 * @param term2Items the items of each term
+	 * @return the sizes
+	 */
+	private static int [] getTermSizes(int [][] term2Items)
+	{
+		int [] sizes = new int[term2Items.length];
+		for (int i = 0; i < term2Items.length; i++)
+			sizes[i] = term2Items[i].length;
+		return sizes;
 	}
 
 	protected PValue [] calculatePValues(int [] studyIds, IPValueCalculationProgress progress)
 	{
-		PValue p [] = new PValue[getTotalNumberOfAnnotatedTerms()];
+		int numberOfTerms = getTotalNumberOfAnnotatedTerms();
+		int [] annotatedStudyGeneCounts = new int[numberOfTerms];
+		PValueBuffer buffer = new PValueBuffer(numberOfTerms);
+
+		calculatePValues(createStudyItemSet(studyIds), studyIds.length, annotatedStudyGeneCounts, buffer, progress);
+
+		boolean [] testable = getTestableTerms();
+		PValue p [] = new PValue[numberOfTerms];
+
+		for (int i = 0; i < numberOfTerms; i++)
+		{
+			TermForTermGOTermProperties myP = new TermForTermGOTermProperties();
+			myP.term = termMapper.get(i);
+			myP.annotatedStudyGenes = annotatedStudyGeneCounts[i];
+			myP.annotatedPopulationGenes = annotatedPopGeneCounts[i];
+			myP.p = buffer.p[i];
+			myP.p_min = buffer.p_min[i];
+			myP.ignoreAtMTC = buffer.ignoreAtMTC[i];
+			myP.pruned = testable != null && !testable[i];
+			p[i] = myP;
+		}
+		return p;
+	}
+
+	protected void calculatePValues(int [] studyIds, int numberOfStudyIds, PValueBuffer buffer, IPValueCalculationProgress progress)
+	{
+		calculatePValues(fillScratchStudyItemSet(studyIds, numberOfStudyIds), numberOfStudyIds,
+				getScratchAnnotatedStudyGeneCounts(), buffer, progress);
+	}
+
+	protected void calculateMinimalAttainablePValues(int [] studyIds, double [] minimalPValues)
+	{
+		int popGeneCount = itemMapper.getSize();
 
-		for (int i = 0; i < termMapper.getSize(); i++)
+		for (int i = 0; i < minimalPValues.length; i++)
+			minimalPValues[i] = hyperg.minimalAttainablePValue(popGeneCount, annotatedPopGeneCounts[i], studyIds.length);
+	}
+
+	/**
+	 * Calculates the p-values of all terms.
+	 *
+	 * @param studyItemSet the item set of the study set.
+	 * @param numberOfStudyIds the number of ids of the study set.
+	 * @param annotatedStudyGeneCounts the array to which the number of study genes
+	 *  annotated to each term is written.
+	 * @param buffer the buffer to which the p-values are written.
+	 * @param progress the progress
+	 */
+	private void calculatePValues(final long [] studyItemSet, int numberOfStudyIds, final int [] annotatedStudyGeneCounts,
+			final PValueBuffer buffer, IPValueCalculationProgress progress)
+	{
+		final int studyGeneCount = numberOfStudyIds;
+		final boolean [] testable = getTestableTerms();
+
+		getTermLoopExecutor().execute(getTotalNumberOfAnnotatedTerms(), new ITermRangeCalculation()
 		{
-			if (progress != null && (i % 256) == 0)
+			public void calculate(int from, int to)
 			{
-				progress.update(i);
+				for (int i = from; i < to; i++)
+					annotatedStudyGeneCounts[i] = termItemIndex.countCommonItems(i, studyItemSet);
+
+				calculatePValues(studyGeneCount, annotatedStudyGeneCounts, testable, buffer, from, to);
 			}
+		}, progress);
+	}
 
-			TermID term = termMapper.get(i);
-			int goidAnnotatedPopGeneCount = term2Items[i].length;
-			int popGeneCount = itemMapper.getSize();
-			int studyGeneCount = studyIds.length;
-			int goidAnnotatedStudyGeneCount = Util.commonInts(studyIds, term2Items[i]);
+	/**
+	 * Calculates the p-values of a range of terms from the annotation counts.
+	 *
+	 * @param studyGeneCount the number of study genes.
+	 * @param annotatedStudyGeneCounts the number of study genes annotated to each term.
+	 * @param testable the testable terms or null if all terms are testable.
+	 * @param buffer the buffer to which the p-values are written.
+	 * @param from the first term of the range
+	 * @param to the end of the range (exclusive)
+	 */
+	private void calculatePValues(int studyGeneCount, int [] annotatedStudyGeneCounts, boolean [] testable,
+			PValueBuffer buffer, int from, int to)
+	{
+		int popGeneCount = itemMapper.getSize();
 
-			TermForTermGOTermProperties myP = new TermForTermGOTermProperties();
-			myP.term = term;
-			myP.annotatedStudyGenes = goidAnnotatedStudyGeneCount;
-			myP.annotatedPopulationGenes = goidAnnotatedPopGeneCount;
+		/* Imagine the following...
+		 *
+		 * In an urn you put popGeneCount number of balls where a color of a
+		 * ball can be white or black. The number of balls having white color
+		 * is goidAnnontatedPopGeneCount (all genes of the population which
+		 * are annotated by the current GOID).
+		 *
+		 * You choose to draw studyGeneCount number of balls without replacement.
+		 * How big is the probability, that you got goidAnnotatedStudyGeneCount
+		 * white balls after the whole drawing process?
+		 */
+		if (testable == null)
+		{
+			hyperg.phypergeometric(popGeneCount, studyGeneCount, annotatedPopGeneCounts,
+					annotatedStudyGeneCounts, buffer.p, buffer.p_min, from, to);
+		} else
+		{
+			/* Calculate the tail only for terms that are testable */
+			hyperg.phypergeometric(popGeneCount, studyGeneCount, annotatedPopGeneCounts,
+					annotatedStudyGeneCounts, null, buffer.p_min, from, to);
+			for (int i = from; i < to; i++)
+			{
+				if (testable[i])
+					hyperg.phypergeometric(popGeneCount, studyGeneCount, annotatedPopGeneCounts,
+							annotatedStudyGeneCounts, buffer.p, null, i, i + 1);
+			}
+		}
 
-			if (goidAnnotatedStudyGeneCount != 0)
+		for (int i = from; i < to; i++)
+		{
+			if (annotatedStudyGeneCounts[i] == 0)
+			{
+				/* Mark this p value as irrelevant so it isn't considered in a mtc */
+				buffer.set(i, 1.0, 1.0, true);
+			} else if (testable != null && !testable[i])
 			{
-				/* Imagine the following...
-				 *
-				 * In an urn you put popGeneCount number of balls where a color of a
-				 * ball can be white or black. The number of balls having white color
-				 * is goidAnnontatedPopGeneCount (all genes of the population which
-				 * are annotated by the current GOID).
-				 *
-				 * You choose to draw studyGeneCount number of balls without replacement.
-				 * How big is the probability, that you got goidAnnotatedStudyGeneCount
-				 * white balls after the whole drawing process?
-				 */
-
-				myP.p = hyperg.phypergeometric(popGeneCount, (double)goidAnnotatedPopGeneCount / (double)popGeneCount,
-						studyGeneCount, goidAnnotatedStudyGeneCount);
-				myP.p_min = hyperg.dhyper(
-						goidAnnotatedPopGeneCount,
-						popGeneCount,
-						goidAnnotatedPopGeneCount,
-						goidAnnotatedPopGeneCount);
+				/* The term was pruned, it can't become significant */
+				buffer.p[i] = 1.0;
+				buffer.ignoreAtMTC[i] = true;
 			} else
 			{
-				/* Mark this p value as irrelevant so it isn't considered in a mtc */
-				myP.p = 1.0;
-				myP.ignoreAtMTC = true;
-				myP.p_min = 1.0;
+				buffer.ignoreAtMTC[i] = false;
 			}
+		}
+	}
 
-			p[i] = myP;
+	public boolean supportsNestedSampling()
+	{
+		/* Testable terms are determined for the size of the observed study set */
+		return getTestableTerms() == null;
+	}
+
+	public void calculateNestedRandomPValues(Random rnd, int [] sizes, PValueBuffer buffer, ISizeProcessor processor, IPValueCalculationProgress progress)
+	{
+		if (!supportsNestedSampling())
+			throw new UnsupportedOperationException("Nested sampling is not possible if terms are pruned");
+
+		RandomStudyIdSampler s = getRandomStudyIdSampler();
+		int numberOfDrawnGenes = s.drawPermutation(sizes[sizes.length - 1], rnd);
+		int [] permutation = s.getPermutation();
+
+		CompressedLinks item2Terms = context.getItem2Terms();
+		int [] offsets = item2Terms.getOffsets();
+		int [] terms = item2Terms.getTargets();
+
+		/* The counts of each size are the ones of the previous size plus the
+		 * terms of the genes that have been drawn in between */
+		int [] annotatedStudyGeneCounts = getScratchAnnotatedStudyGeneCounts();
+		Arrays.fill(annotatedStudyGeneCounts, 0);
+		int numberOfStudyIds = 0;
+		int position = 0;
+
+		for (int i = 0; i < sizes.length; i++)
+		{
+			int size = Math.min(sizes[i], numberOfDrawnGenes);
+			for (; position < size; position++)
+			{
+				int id = permutation[position];
+				if (id < 0)
+					continue;
+
+				numberOfStudyIds++;
+				for (int j = offsets[id]; j < offsets[id + 1]; j++)
+					annotatedStudyGeneCounts[terms[j]]++;
+			}
+
+			calculatePValuesOfCounts(annotatedStudyGeneCounts, numberOfStudyIds, buffer, progress);
+			processor.process(i, buffer);
 		}
-		return p;
+	}
+
+	/**
+	 * Calculates the p-values of a study set of which only the number of
+	 * study genes annotated to each term are known.
+	 *
+	 * @param annotatedStudyGeneCounts the number of study genes annotated to
+	 *  each term.
+	 * @param numberOfStudyIds the number of ids of the study set.
+	 * @param buffer the buffer to which the p-values are written.
+	 * @param progress the progress
+	 */
+	private void calculatePValuesOfCounts(final int [] annotatedStudyGeneCounts, final int numberOfStudyIds,
+			final PValueBuffer buffer, IPValueCalculationProgress progress)
+	{
+		final boolean [] testable = getTestableTerms();
+
+		getTermLoopExecutor().execute(getTotalNumberOfAnnotatedTerms(), new ITermRangeCalculation()
+		{
+			public void calculate(int from, int to)
+			{
+				calculatePValues(numberOfStudyIds, annotatedStudyGeneCounts, testable, buffer, from, to);
+			}
+		}, progress);
 	}
 };
@@ -0,0 +1,191 @@
+package ontologizer.calculation;
+
+/**
+ * An index of the items that are annotated to terms that allows to quickly
+ * count the number of items of a term that are also contained in a study
+ * set.
+ *
+ * For each term, the representation is chosen according to the density of
+ * the term. Terms that are annotated to many items, e.g., terms close to the
+ * root, are stored as dense bitsets over all items. The intersection
+ * with a study set, which is also represented as a bitset, is then counted
+ * word by word via Long.bitCount(). All other terms keep their sorted
+ * array of item indices and the study set bitset is probed for each
+ * item of the term. In both cases the costs no longer depend on the size of
+ * the study set as it is the case for the merge walk of two sorted arrays.
+ *
+ * The index is never modified after construction and can be used by several
+ * threads at the same time. Item sets are supplied by the caller.
+ */
+public class TermItemIndex
+{
+	/** Number of items that can be stored in one word of a bitset */
+	private static final int ITEMS_PER_WORD = 64;
+
+	/** Number of bits that an item occupies within an int array */
+	private static final int BITS_PER_ARRAY_ITEM = 32;
+
+	/** The number of items */
+	private final int numberOfItems;
+
+	/** The number of words of a bitset spanning all items */
+	private final int numberOfWords;
+
+	/** The sorted item indices for each term */
+	private final int [][] term2Items;
+
+	/** The dense representation of a term or null, if the term is sparse */
+	private final long [][] term2Bits;
+
+	private TermItemIndex(int [][] term2Items, int numberOfItems)
+	{
+		this.numberOfItems = numberOfItems;
+		this.numberOfWords = (numberOfItems + ITEMS_PER_WORD - 1) / ITEMS_PER_WORD;
+		this.term2Items = term2Items;
+		this.term2Bits = new long[term2Items.length][];
+
+		for (int i = 0; i < term2Items.length; i++)
+		{
+			/* Use a bitset only if it doesn't consume more memory than the array */
+			if ((long)term2Items[i].length * BITS_PER_ARRAY_ITEM >= numberOfItems)
+			{
+				long [] bits = new long[numberOfWords];
+				setItems(term2Items[i], term2Items[i].length, bits);
+				term2Bits[i] = bits;
+			}
+		}
+	}
+
+	/**
+	 * Create the index for the given term links.
+	 *
+	 * @param term2Items the sorted item indices of every term. The arrays
+	 *  are referenced, not copied.
+	 * @param numberOfItems the number of items, all indices are below this
+	 *  number.
+	 * @return the index
+	 */
+	public static TermItemIndex create(int [][] term2Items, int numberOfItems)
+	{
+		return new TermItemIndex(term2Items, numberOfItems);
+	}
+
+	/**
+	 * @return a new empty item set that can be used by this index.
+	 */
+	public long [] newItemSet()
+	{
+		return new long[numberOfWords];
+	}
+
+	/**
+	 * Fills the given item set with the given items. Previous contents of
+	 * the item set are removed.
+	 *
+	 * @param ids the item indices to set
+	 * @param itemSet the item set as returned by newItemSet()
+	 */
+	public void setItemSet(int [] ids, long [] itemSet)
+	{
+		setItemSet(ids, ids.length, itemSet);
+	}
+
+	/**
+	 * Fills the given item set with the first items of the given array.
+	 * Previous contents of the item set are removed.
+	 *
+	 * @param ids the item indices to set
+	 * @param numberOfIds the number of item indices to set
+	 * @param itemSet the item set as returned by newItemSet()
+	 */
+	public void setItemSet(int [] ids, int numberOfIds, long [] itemSet)
+	{
+		java.util.Arrays.fill(itemSet, 0);
+		setItems(ids, numberOfIds, itemSet);
+	}
+
+	private static void setItems(int [] ids, int numberOfIds, long [] bits)
+	{
+		for (int i = 0; i < numberOfIds; i++)
+		{
+			int id = ids[i];
+			bits[id >>> 6] |= 1L << id;
+		}
+	}
+
+	/**
+	 * Determines the number of items annotated to the given term that are
+	 * also contained in the item set.
+	 *
+	 * @param term the index of the term
+	 * @param itemSet the item set as filled by setItemSet()
+	 * @return the number of common items.
+	 */
+	public int countCommonItems(int term, long [] itemSet)
+	{
+		long [] bits = term2Bits[term];
+		int count = 0;
+
+		if (bits != null)
+		{
+			for (int i = 0; i < numberOfWords; i++)
+				count += Long.bitCount(bits[i] & itemSet[i]);
+		} else
+		{
+			int [] items = term2Items[term];
+			for (int i = 0; i < items.length; i++)
+			{
+				int id = items[i];
+				count += (int)(itemSet[id >>> 6] >>> id) & 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Determines for each term the number of annotated items that are also
+	 * contained in the item set.
+	 *
+	 * @param itemSet the item set as filled by setItemSet()
+	 * @param counts the array to which the counts are written
+	 */
+	public void countCommonItems(long [] itemSet, int [] counts)
+	{
+		for (int i = 0; i < term2Items.length; i++)
+			counts[i] = countCommonItems(i, itemSet);
+	}
+
+	/**
+	 * @param term the index of the term
+	 * @return the number of items that are annotated to the term.
+	 */
+	public int getTermSize(int term)
+	{
+		return term2Items[term].length;
+	}
+
+	/**
+	 * @param term the index of the term
+	 * @return whether the term is represented as a dense bitset.
+	 */
+	public boolean isDense(int term)
+	{
+		return term2Bits[term] != null;
+	}
+
+	/**
+	 * @return the number of items.
+	 */
+	public int getNumberOfItems()
+	{
+		return numberOfItems;
+	}
+
+	/**
+	 * @return the number of terms.
+	 */
+	public int getNumberOfTerms()
+	{
+		return term2Items.length;
+	}
+}
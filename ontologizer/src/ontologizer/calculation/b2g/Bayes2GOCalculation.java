@@ -1,26 +1,38 @@
 package ontologizer.calculation.b2g;
 
 import static java.util.logging.Level.INFO;
-
-import java.util.List;
+import static java.util.logging.Level.WARNING;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.logging.Logger;
 
 import ontologizer.association.AssociationContainer;
-import ontologizer.calculation.CalculationUtils;
 import ontologizer.calculation.EnrichedGOTermsResult;
 import ontologizer.calculation.ICalculation;
 import ontologizer.calculation.ICalculationProgress;
 import ontologizer.calculation.IProgressFeedback;
 import ontologizer.calculation.ISlimCalculation;
+import ontologizer.calculation.PopulationCalculationContext;
+import ontologizer.calculation.util.CompressedLinks;
 import ontologizer.enumeration.TermEnumerator;
 import ontologizer.ontology.Ontology;
 import ontologizer.ontology.TermID;
 import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
-import ontologizer.types.ByteString;
-import sonumina.collections.IntMapper;
+import ontologizer.statistics.ContentHash;
+import ontologizer.util.Util;
 
 /**
  * This class implements a model-based analysis. The description of the entire
@@ -33,6 +45,27 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 {
 	private static Logger logger = Logger.getLogger(Bayes2GOCalculation.class.getName());
 
+	/** Number of steps that are not recorded at the beginning of a chain */
+	private static final int BURNIN = 20000;
+
+	/** Minimum number of batches into which the records of a chain are divided for the convergence diagnostics */
+	private static final int NUMBER_OF_BATCHES = 50;
+
+	/** Number of steps after which the precision is checked if a target precision has been set */
+	private static final int CHECK_INTERVAL = 10000;
+
+	/** The largest R-hat for which chains are considered to have converged */
+	private static final double MAX_POTENTIAL_SCALE_REDUCTION = 1.05;
+
+	/** Number of steps after which a checkpoint may be written if no target precision has been set */
+	private static final int CHECKPOINT_INTERVAL = 100000;
+
+	/** Identifies checkpoint files, "MGC1" */
+	private static final int CHECKPOINT_MAGIC = 0x4d474331;
+
+	/** The suffix of checkpoint files */
+	private static final String CHECKPOINT_SUFFIX = ".mgsa";
+
 	private long seed = 0;
 
 	private boolean usePrior = true;
@@ -49,10 +82,19 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 	private boolean randomStart = false;
 
 	private int mcmcSteps = 1020000;
+	private int numberOfChains = 1;
+	private double targetPrecision = 0;
 	private int updateReportTime = 1000; /* Update report time in ms */
 
+	private File checkpointDirectory;
+	private boolean resume = false;
+	private long checkpointPeriod = 60000; /* Minimum time between two checkpoints in ms */
+
 	private Bayes2GOCalculationProgress bayes2GOCalculationProgress;
 
+	/** The context of the most recently used population */
+	private PopulationCalculationContext populationContext;
+
 	/**
 	 * Provided dedicated feedback for bayes2go calculation.
 	 *
@@ -78,6 +120,11 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 		this.calculationProgress = calc.calculationProgress;
 		this.takePopulationAsReference = calc.takePopulationAsReference;
 		this.mcmcSteps = calc.mcmcSteps;
+		this.numberOfChains = calc.numberOfChains;
+		this.targetPrecision = calc.targetPrecision;
+		this.checkpointDirectory = calc.checkpointDirectory;
+		this.resume = calc.resume;
+		this.checkpointPeriod = calc.checkpointPeriod;
 	}
 
 	/**
@@ -205,6 +252,98 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 		this.mcmcSteps = mcmcSteps;
 	}
 
+	/**
+	 * Sets the number of independent chains that are run in parallel, each
+	 * on its own thread and with its own source of randomness derived from
+	 * the seed. Each chain performs the given number of mcmc steps. The
+	 * marginals are pooled over all chains.
+	 *
+	 * @param numberOfChains the number of chains, at least 1.
+	 */
+	public void setNumberOfChains(int numberOfChains)
+	{
+		if (numberOfChains < 1)
+			throw new IllegalArgumentException("At least one chain is required");
+		this.numberOfChains = numberOfChains;
+	}
+
+	/**
+	 * @return the number of independent chains.
+	 */
+	public int getNumberOfChains()
+	{
+		return numberOfChains;
+	}
+
+	/**
+	 * Sets the precision with which the marginals should be determined. If
+	 * set, the chains are stopped as soon as the Monte Carlo standard error of
+	 * each marginal, which is estimated via the effective sample size, is not
+	 * larger than the precision and the R-hat of each term doesn't exceed
+	 * 1.05. The number of mcmc steps is then the maximum number of steps.
+	 *
+	 * @param targetPrecision the precision, e.g., 0.01. A value of 0 lets
+	 *  the chains always perform all mcmc steps.
+	 */
+	public void setTargetPrecision(double targetPrecision)
+	{
+		this.targetPrecision = targetPrecision;
+	}
+
+	/**
+	 * @return the precision with which the marginals should be determined
+	 *  or 0 if all mcmc steps are performed.
+	 */
+	public double getTargetPrecision()
+	{
+		return targetPrecision;
+	}
+
+	/**
+	 * Sets the directory in which the state of the chains is saved from time
+	 * to time, such that an interrupted calculation can be resumed. Each
+	 * calculation has its own checkpoint file whose name is derived from the
+	 * input and the settings. The file is removed once the calculation has
+	 * been finished.
+	 *
+	 * @param checkpointDirectory the directory or null if no checkpoints
+	 *  should be written.
+	 */
+	public void setCheckpointDirectory(File checkpointDirectory)
+	{
+		this.checkpointDirectory = checkpointDirectory;
+	}
+
+	/**
+	 * @return the directory in which checkpoints are written or null.
+	 */
+	public File getCheckpointDirectory()
+	{
+		return checkpointDirectory;
+	}
+
+	/**
+	 * Sets whether a calculation should be resumed from its checkpoint if
+	 * there is one in the checkpoint directory. The result is the same as if
+	 * the calculation had not been interrupted.
+	 *
+	 * @param resume
+	 */
+	public void setResume(boolean resume)
+	{
+		this.resume = resume;
+	}
+
+	/**
+	 * Sets the minimum time between two checkpoints.
+	 *
+	 * @param checkpointPeriod the time in ms.
+	 */
+	public void setCheckpointPeriod(long checkpointPeriod)
+	{
+		this.checkpointPeriod = checkpointPeriod;
+	}
+
 	/**
 	 * Sets whether a random start should be used.
 	 *
@@ -247,11 +386,11 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 		Bayes2GOEnrichedGOTermsResult result = new Bayes2GOEnrichedGOTermsResult(graph,goAssociations,studySet,populationSet.getGeneCount());
 		result.setCalculationName(this.getName());
 
-		TermEnumerator populationEnumerator = populationSet.enumerateTerms(graph, goAssociations);
-		TermEnumerator studyEnumerator = studySet.enumerateTerms(graph, goAssociations);
-
 		if (valuedCalculation)
 		{
+			TermEnumerator populationEnumerator = populationSet.enumerateTerms(graph, goAssociations);
+			TermEnumerator studyEnumerator = studySet.enumerateTerms(graph, goAssociations);
+
 			if (!populationEnumerator.getGenes().containsAll(studyEnumerator.getGenes()) ||
 				!studyEnumerator.getGenes().containsAll(populationEnumerator.getGenes()))
 			{
@@ -259,19 +398,39 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 			}
 		}
 
+		PopulationCalculationContext context = getPopulationContext(graph, goAssociations, populationSet);
+		int [] studyIds = context.getStudyIds(studySet);
+
 		logger.log(INFO, "Starting calculation: expectedNumberOfTerms=" + expectedNumberOfTerms +
 				" alpha=" + alpha +
 				" beta=" + beta +
-				" numberOfPop=" + populationEnumerator.getGenes().size() +
-				" numberOfStudy=" + studyEnumerator.getGenes().size());
+				" numberOfPop=" + context.getNumberOfItems() +
+				" numberOfStudy=" + studyIds.length);
 
 		long start = System.currentTimeMillis();
-		calculateByMCMC(graph, result, populationEnumerator, studyEnumerator, populationSet, studySet, valuedCalculation);//, llr);
+		calculateByMCMC(result, context, studyIds, valuedCalculation);
 		long end = System.currentTimeMillis();
 		logger.log(INFO, (end - start) + "ms");
 		return result;
 	}
 
+	/**
+	 * Returns the population context for the given arguments. The context
+	 * is reused as long as the calculation is performed against the same
+	 * population.
+	 *
+	 * @param graph the graph
+	 * @param goAssociations the associations.
+	 * @param populationSet the underlying population set
+	 * @return the context
+	 */
+	private synchronized PopulationCalculationContext getPopulationContext(Ontology graph,
+			AssociationContainer goAssociations, PopulationSet populationSet)
+	{
+		populationContext = PopulationCalculationContext.reuseOrCreate(populationContext, graph, goAssociations, populationSet);
+		return populationContext;
+	}
+
 	public EnrichedGOTermsResult calculateStudySet(Ontology graph,
 			AssociationContainer goAssociations, PopulationSet populationSet,
 			StudySet studySet, AbstractTestCorrection testCorrection)
@@ -284,36 +443,35 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 		this.usePrior = usePrior;
 	}
 
-	private void calculateByMCMC(Ontology graph,
-			Bayes2GOEnrichedGOTermsResult result,
-			TermEnumerator populationEnumerator,
-			TermEnumerator studyEnumerator,
-			PopulationSet populationSet,
-			StudySet studySet,
+	private void calculateByMCMC(Bayes2GOEnrichedGOTermsResult result,
+			PopulationCalculationContext context,
+			int [] studyIds,
 			boolean valuedCalculation)
 	{
 		if (valuedCalculation)
 		{
 			throw new IllegalArgumentException("Valued calculation not supported at the moment!");
 		}
-		List<TermID> relevantTermList = graph.filterRelevant(populationEnumerator.getAllAnnotatedTermsAsList());
-		IntMapper<TermID> termMapper = IntMapper.create(relevantTermList);
-		IntMapper<ByteString> geneMapper = IntMapper.create(populationEnumerator.getGenesAsList());
-		int [][] termLinks = CalculationUtils.makeTermLinks(populationEnumerator, termMapper, geneMapper);
-		boolean [] observedItems = geneMapper.getDense(studyEnumerator.getGenes());
-		double [] r = calculate(termLinks, observedItems);
+		int [][] termLinks = context.term2Items;
+		boolean [] observedItems = new boolean[context.getNumberOfItems()];
+		for (int i = 0; i < studyIds.length; i++)
+			observedItems[studyIds[i]] = true;
+		ChainResult r = calculate(termLinks, observedItems);
+		result.setNumberOfSteps(r.steps);
 
-		for (int i = 0; i < r.length; i++)
+		for (int i = 0; i < termLinks.length; i++)
 		{
-			TermID tid = termMapper.get(i);
+			TermID tid = context.termMapper.get(i);
 			Bayes2GOGOTermProperties prop = new Bayes2GOGOTermProperties();
 			prop.term = tid;
-			prop.annotatedStudyGenes = studyEnumerator.getAnnotatedGenes(tid).totalAnnotatedCount();
-			prop.annotatedPopulationGenes = populationEnumerator.getAnnotatedGenes(tid).totalAnnotatedCount();
-			prop.marg = r[i];
+			prop.annotatedStudyGenes = Util.commonInts(studyIds, termLinks[i]);
+			prop.annotatedPopulationGenes = termLinks[i].length;
+			prop.marg = r.marg[i];
+			prop.rhat = r.rhat[i];
+			prop.ess = r.ess[i];
 
 			/* At the moment, we need these fields for technical reasons */
-			prop.p = 1 - r[i];
+			prop.p = 1 - r.marg[i];
 			prop.p_adjusted = prop.p;
 			prop.p_min = 0.001;
 
@@ -354,149 +512,356 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 	}
 
 	/**
-	 * Perform the calculation.
-	 *
-	 * @param term2Items
-	 * @param observedItems
-	 * @return a vector of marginal probabilities for each term.
+	 * The outcome of the chains of an MCMC run.
 	 */
-	private double[] calculate(int [][] term2Items, boolean [] observedItems)
+	private static class ChainResult
 	{
-		int numTerms = term2Items.length;
-		double [] res = new double[numTerms];
-
-		Random rnd;
-		if (seed != 0)
+		/** The marginal probability of each term, pooled over all chains */
+		double [] marg;
+
+		/** The split R-hat of each term */
+		double [] rhat;
+
+		/** The effective sample size of each term, summed over all chains */
+		double [] ess;
+
+		/** The number of steps performed by each chain */
+		int steps;
+
+		/**
+		 * Returns whether the marginals are known with the given precision,
+		 * i.e., whether the Monte Carlo standard error of each marginal is
+		 * not larger than the precision and the chains agree.
+		 *
+		 * @param precision the largest tolerated standard error
+		 * @return whether the precision is reached
+		 */
+		boolean hasPrecision(double precision)
 		{
-			rnd = new Random(seed);
-			logger.log(INFO, "Use a random seed of: " + seed);
-		} else
+			for (int t = 0; t < marg.length; t++)
+			{
+				if (!(rhat[t] <= MAX_POTENTIAL_SCALE_REDUCTION))
+					return false;
+				if (marg[t] * (1 - marg[t]) > precision * precision * ess[t])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A single Markov chain with its own score state and source of randomness.
+	 * The records of the chain are divided into batches whose term activation
+	 * counts are kept for the convergence diagnostics.
+	 */
+	private class Chain implements Runnable
+	{
+		private final int index;
+		private final RestorableRandom rnd;
+
+		private FixedAlphaBetaScore fixedAlphaBetaScore;
+		private int iteration;
+		private double expectedNumberOfTerms;
+
+		/** Number of records per batch, doubled whenever the batches are merged */
+		private int batchSize;
+
+		/** Number of completed batches */
+		private int numberOfBatches;
+
+		/** The term activation counts at the end of each batch */
+		private int [][] batchCounts = new int[2 * NUMBER_OF_BATCHES][];
+
+		/* State of the chain that is kept between successive calls of run() */
+		private int step;
+		private int endStep;
+		private double score;
+		private int numAccepts;
+		private int numRejects;
+		private double maxScore;
+		private int [] maxScoredTerms;
+		private double maxScoredAlpha;
+		private double maxScoredBeta;
+		private double maxScoredP;
+		private int maxWhenSeen;
+
+		private volatile boolean stopped;
+
+		public Chain(int index, RestorableRandom rnd)
 		{
-			long newSeed = new Random().nextLong();
-			logger.log(INFO, "Use a random seed of: " + newSeed);
-			rnd = new Random(newSeed);
+			this.index = index;
+			this.rnd = rnd;
 		}
 
-		boolean doAlphaEm = false;
-		boolean doBetaEm = false;
-		boolean doPEm = false;
+		/**
+		 * Prepares the chain for a new iteration by creating a new score state.
+		 *
+		 * @param iteration the number of the iteration
+		 * @param alpha the alpha or NaN if it should be sampled
+		 * @param beta the beta or NaN if it should be sampled
+		 * @param expectedNumberOfTerms the expected number of terms or NaN if it should be sampled
+		 * @param term2Items the term links, shared by all chains
+		 * @param observedItems the observed state of the items
+		 */
+		public void prepare(int iteration, double alpha, double beta, double expectedNumberOfTerms, CompressedLinks term2Items, boolean [] observedItems)
+		{
+			createScore(iteration, alpha, beta, expectedNumberOfTerms, term2Items, observedItems);
 
-		int maxIter;
+			logger.log(INFO, getLogPrefix() + "Score of empty set: " + fixedAlphaBetaScore.getScore());
 
-		double alpha;
-		double beta;
-		double expectedNumberOfTerms;
+			/* Provide a starting point */
+			if (randomStart)
+			{
+				int numberOfTerms = fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS[rnd.nextInt(fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS.length)];
+				double pForStart = ((double)numberOfTerms) / term2Items.getNumberOfSources();
 
-		switch (this.alpha.getType())
-		{
-			case	EM: alpha = 0.4; doAlphaEm = true; break;
-			case	MCMC: alpha = Double.NaN; break;
-			default: alpha = this.alpha.getValue(); break;
+				for (int j = 0; j < term2Items.getNumberOfSources(); j++)
+					if (rnd.nextDouble() < pForStart) fixedAlphaBetaScore.switchState(j);
+
+				logger.log(INFO, getLogPrefix() + "Starting with " + fixedAlphaBetaScore.getActiveTerms().length + " terms (p=" + pForStart + ")");
+			}
+
+			numberOfBatches = 0;
+			batchSize = 1;
+			Arrays.fill(batchCounts, null);
+
+			step = 0;
+			endStep = 0;
+			score = fixedAlphaBetaScore.getScore();
+			numAccepts = 0;
+			numRejects = 0;
+			maxScore = score;
+			maxScoredTerms = fixedAlphaBetaScore.getActiveTerms();
+			maxScoredAlpha = Double.NaN;
+			maxScoredBeta = Double.NaN;
+			maxScoredP = Double.NaN;
+			maxWhenSeen = -1;
+
+			logger.log(INFO, getLogPrefix() + "Score of initial set: " + score);
 		}
 
-		switch (this.beta.getType())
+		/**
+		 * Creates a new score state in which all terms are inactive.
+		 */
+		private void createScore(int iteration, double alpha, double beta, double expectedNumberOfTerms, CompressedLinks term2Items, boolean [] observedItems)
 		{
-			case	EM: beta = 0.4; doBetaEm = true; break;
-			case	MCMC: beta = Double.NaN; break;
-			default: beta = this.beta.getValue(); break;
+			this.iteration = iteration;
+			this.expectedNumberOfTerms = expectedNumberOfTerms;
+
+			fixedAlphaBetaScore = new FixedAlphaBetaScore(rnd, term2Items, observedItems);
+			fixedAlphaBetaScore.setIntegrateParams(integrateParams);
+			fixedAlphaBetaScore.setAlpha(alpha);
+			if (Bayes2GOCalculation.this.alpha.hasMax())
+				fixedAlphaBetaScore.setMaxAlpha(Bayes2GOCalculation.this.alpha.getMax());
+			fixedAlphaBetaScore.setBeta(beta);
+			if (Bayes2GOCalculation.this.beta.hasMax())
+				fixedAlphaBetaScore.setMaxBeta(Bayes2GOCalculation.this.beta.getMax());
+			fixedAlphaBetaScore.setExpectedNumberOfTerms(expectedNumberOfTerms);
+			fixedAlphaBetaScore.setUsePrior(usePrior);
 		}
 
+		/**
+		 * Writes the state of the chain, i.e., the state of the score, the
+		 * state of the source of randomness and everything that has been
+		 * recorded so far.
+		 *
+		 * @param out where to write the state to
+		 * @throws IOException
+		 */
+		public void writeState(DataOutput out) throws IOException
+		{
+			out.writeLong(rnd.getState());
+			fixedAlphaBetaScore.writeState(out);
+
+			out.writeInt(step);
+			out.writeDouble(score);
+			out.writeInt(numAccepts);
+			out.writeInt(numRejects);
+			out.writeDouble(maxScore);
+			out.writeInt(maxScoredTerms.length);
+			for (int t : maxScoredTerms)
+				out.writeInt(t);
+			out.writeDouble(maxScoredAlpha);
+			out.writeDouble(maxScoredBeta);
+			out.writeDouble(maxScoredP);
+			out.writeInt(maxWhenSeen);
+
+			out.writeInt(batchSize);
+			out.writeInt(numberOfBatches);
+			for (int b = 0; b < numberOfBatches; b++)
+				for (int c : batchCounts[b])
+					out.writeInt(c);
+		}
 
-		switch (this.expectedNumberOfTerms.getType())
+		/**
+		 * Prepares the chain for continuing an iteration whose state has been
+		 * written by writeState(). The arguments are those of the prepare()
+		 * call of the iteration.
+		 *
+		 * @param in where to read the state from
+		 * @throws IOException
+		 */
+		public void restore(DataInput in, int iteration, double alpha, double beta, double expectedNumberOfTerms, CompressedLinks term2Items, boolean [] observedItems) throws IOException
 		{
-			case	EM: expectedNumberOfTerms = 1; doPEm = true; break;
-			case	MCMC: expectedNumberOfTerms = Double.NaN; break;
-			default: expectedNumberOfTerms = this.expectedNumberOfTerms.getValue(); break;
+			createScore(iteration, alpha, beta, expectedNumberOfTerms, term2Items, observedItems);
+
+			rnd.setState(in.readLong());
+			fixedAlphaBetaScore.readState(in);
+
+			step = in.readInt();
+			endStep = step;
+			score = in.readDouble();
+			numAccepts = in.readInt();
+			numRejects = in.readInt();
+			maxScore = in.readDouble();
+			maxScoredTerms = new int[in.readInt()];
+			for (int i = 0; i < maxScoredTerms.length; i++)
+				maxScoredTerms[i] = in.readInt();
+			maxScoredAlpha = in.readDouble();
+			maxScoredBeta = in.readDouble();
+			maxScoredP = in.readDouble();
+			maxWhenSeen = in.readInt();
+
+			batchSize = in.readInt();
+			numberOfBatches = in.readInt();
+			if (numberOfBatches < 0 || numberOfBatches >= batchCounts.length)
+				throw new IOException("Invalid number of batches");
+			Arrays.fill(batchCounts, null);
+			for (int b = 0; b < numberOfBatches; b++)
+			{
+				batchCounts[b] = new int[term2Items.getNumberOfSources()];
+				for (int t = 0; t < batchCounts[b].length; t++)
+					batchCounts[b][t] = in.readInt();
+			}
 		}
 
-		boolean doEm = doAlphaEm || doBetaEm || doPEm;
+		/**
+		 * Sets the step before which the next call of run() stops.
+		 *
+		 * @param endStep the step
+		 */
+		public void setEndStep(int endStep)
+		{
+			this.endStep = endStep;
+		}
 
-		if (doEm) maxIter = 12;
-		else maxIter = 1;
+		/**
+		 * @return the number of steps performed so far.
+		 */
+		public int getStep()
+		{
+			return step;
+		}
 
-		for (int i=0;i<maxIter;i++)
+		/**
+		 * Records the current state and takes a snapshot of the counts at
+		 * the end of each batch. If all batches are used, pairs of
+		 * consecutive batches are merged.
+		 */
+		private void record()
 		{
-			FixedAlphaBetaScore fixedAlphaBetaScore = new FixedAlphaBetaScore(rnd, term2Items, observedItems);
-			fixedAlphaBetaScore.setIntegrateParams(integrateParams);
+			fixedAlphaBetaScore.record();
 
-			if (doEm)
-			{
-				logger.log(INFO, "EM-Iter("+i+")" + alpha + "  " + beta + "  " + expectedNumberOfTerms);
-			} else
+			if (fixedAlphaBetaScore.numRecords != (numberOfBatches + 1) * batchSize)
+				return;
+
+			batchCounts[numberOfBatches++] = fixedAlphaBetaScore.termActivationCounts.clone();
+			if (numberOfBatches == batchCounts.length)
 			{
-				logger.log(INFO, "MCMC only: " + alpha + "  " + beta + "  " + expectedNumberOfTerms);
+				/* The counts are cumulative, so merging means to keep every second snapshot */
+				for (int b = 0; b < NUMBER_OF_BATCHES; b++)
+					batchCounts[b] = batchCounts[2 * b + 1];
+				Arrays.fill(batchCounts, NUMBER_OF_BATCHES, batchCounts.length, null);
+				numberOfBatches = NUMBER_OF_BATCHES;
+				batchSize *= 2;
 			}
+		}
 
-			fixedAlphaBetaScore.setAlpha(alpha);
-			if (this.alpha.hasMax())
-				fixedAlphaBetaScore.setMaxAlpha(this.alpha.getMax());
-			fixedAlphaBetaScore.setBeta(beta);
-			if (this.beta.hasMax())
-				fixedAlphaBetaScore.setMaxBeta(this.beta.getMax());
-			fixedAlphaBetaScore.setExpectedNumberOfTerms(expectedNumberOfTerms);
-			fixedAlphaBetaScore.setUsePrior(usePrior);
-
-			logger.log(INFO, "Score of empty set: " + fixedAlphaBetaScore.getScore());
+		/**
+		 * Logs a summary of the chain.
+		 */
+		public void logSummary()
+		{
+			logger.log(INFO, getLogPrefix() + "steps=" + step + "  numAccepts=" + numAccepts + "  numRejects = " + numRejects);
 
-			/* Provide a starting point */
-			if (randomStart)
+			if (logger.isLoggable(INFO))
 			{
-				int numberOfTerms = fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS[rnd.nextInt(fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS.length)];
-				double pForStart = ((double)numberOfTerms) / term2Items.length;
-
-				for (int j = 0; j < term2Items.length; j++)
-					if (rnd.nextDouble() < pForStart) fixedAlphaBetaScore.switchState(j);
+				StringBuilder b = new StringBuilder();
 
-				logger.log(INFO, "Starting with " + fixedAlphaBetaScore.getActiveTerms().length + " terms (p=" + pForStart + ")");
+				logger.log(INFO, getLogPrefix() + "Term combination that reaches score of " + maxScore +
+							" when alpha=" + maxScoredAlpha +
+							", beta=" + maxScoredBeta +
+							", p=" + maxScoredP +
+							" at step " + maxWhenSeen);
+				b.append("Indices: ");
+				for (int t : maxScoredTerms)
+				{
+					b.append(t);
+					b.append(", ");
+				}
+				logger.log(INFO, getLogPrefix() + b.toString());
 			}
+		}
+
+		private String getLogPrefix()
+		{
+			if (numberOfChains > 1)
+				return "Chain " + index + ": ";
+			return "";
+		}
+
+		/**
+		 * Lets the chain stop as soon as possible.
+		 */
+		public void stop()
+		{
+			stopped = true;
+		}
 
-			double score = fixedAlphaBetaScore.getScore();
-			logger.log(INFO, "Score of initial set: " + score);
+		/**
+		 * Continues the chain until the end step is reached.
+		 */
+		public void run()
+		{
+			/* Only the first chain reports its progress */
+			boolean report = index == 0;
 
 			int maxSteps = mcmcSteps;
-			int burnin = 20000;
-			int numAccepts = 0;
-			int numRejects = 0;
 
-			if (calculationProgress != null)
+			if (report && step == 0 && calculationProgress != null)
 				calculationProgress.init(maxSteps);
 
-			double maxScore = score;
-			int [] maxScoredTerms = fixedAlphaBetaScore.getActiveTerms();
-			double maxScoredAlpha = Double.NaN;
-			double maxScoredBeta = Double.NaN;
-			double maxScoredP = Double.NaN;
-			int maxWhenSeen = -1;
-
 			long start = System.currentTimeMillis();
 
-			for (int t=0;t<maxSteps;t++)
+			for (;step<endStep && !stopped;step++)
 			{
+				int t = step;
+
 				/* Remember maximum score and terms */
 				if (score > maxScore)
 				{
 					maxScore = score;
 					maxScoredTerms = fixedAlphaBetaScore.getActiveTerms();
-					if (fixedAlphaBetaScore != null)
-					{
-						maxScoredAlpha = fixedAlphaBetaScore.getAlpha();
-						maxScoredBeta = fixedAlphaBetaScore.getBeta();
-						maxScoredP = fixedAlphaBetaScore.getP();
-					}
+					maxScoredAlpha = fixedAlphaBetaScore.getAlpha();
+					maxScoredBeta = fixedAlphaBetaScore.getBeta();
+					maxScoredP = fixedAlphaBetaScore.getP();
 					maxWhenSeen = t;
 				}
 
-				long now = System.currentTimeMillis();
-				if (now - start > updateReportTime)
+				if (report)
 				{
-					logger.log(INFO, (t*100/maxSteps) + "% (score=" + score +" maxScore=" + maxScore + " #terms="+fixedAlphaBetaScore.getActiveTerms().length+
-										" accept/reject=" + Double.toString((double)numAccepts / (double)numRejects) +
-										" accept/steps=" + Double.toString((double)numAccepts / (double)t) +
-										" exp=" + expectedNumberOfTerms + " usePrior=" + usePrior + ")");
-					start = now;
-
-					if (calculationProgress != null)
-						calculationProgress.update(t);
+					long now = System.currentTimeMillis();
+					if (now - start > updateReportTime)
+					{
+						logger.log(INFO, (t*100/maxSteps) + "% (score=" + score +" maxScore=" + maxScore + " #terms="+fixedAlphaBetaScore.getActiveTerms().length+
+											" accept/reject=" + Double.toString((double)numAccepts / (double)numRejects) +
+											" accept/steps=" + Double.toString((double)numAccepts / (double)t) +
+											" exp=" + expectedNumberOfTerms + " usePrior=" + usePrior + ")");
+						start = now;
+
+						if (calculationProgress != null)
+							calculationProgress.update(t);
+					}
 				}
 
 				long oldPossibilities = fixedAlphaBetaScore.getNeighborhoodSize();
@@ -518,95 +883,577 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 					numAccepts++;
 				}
 
-				if (t>burnin)
-					fixedAlphaBetaScore.record();
+				if (t>BURNIN)
+					record();
+
+				if (report && bayes2GOCalculationProgress != null)
+					bayes2GOCalculationProgress.update(iteration, t, acceptProb, numAccepts, score);
+			}
+		}
+	}
+
+	/**
+	 * The checkpoint file of a calculation. Besides the state of the chains,
+	 * it contains the state of the EM, i.e., the iteration and the parameter
+	 * values with which the chains have been prepared.
+	 */
+	private class Checkpoint
+	{
+		private final File file;
+		private final String fingerprint;
+		private long lastWriteTime = System.currentTimeMillis();
+
+		int iteration;
+		double alpha;
+		double beta;
+		double expectedNumberOfTerms;
+
+		public Checkpoint(String fingerprint)
+		{
+			this.fingerprint = fingerprint;
+			this.file = new File(checkpointDirectory, fingerprint + CHECKPOINT_SUFFIX);
+		}
+
+		public boolean exists()
+		{
+			return file.isFile();
+		}
+
+		/**
+		 * Sets the state of the EM to which the chains belong.
+		 */
+		public void setIteration(int iteration, double alpha, double beta, double expectedNumberOfTerms)
+		{
+			this.iteration = iteration;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.expectedNumberOfTerms = expectedNumberOfTerms;
+		}
+
+		/**
+		 * Writes the checkpoint if the checkpoint period has elapsed since
+		 * the last one. Failures are logged but don't stop the calculation.
+		 *
+		 * @param chains the chains whose state is written
+		 */
+		public void update(Chain [] chains)
+		{
+			long now = System.currentTimeMillis();
+			if (now - lastWriteTime < checkpointPeriod)
+				return;
 
+			try
+			{
+				write(chains);
+				logger.log(INFO, "Wrote checkpoint \"" + file + "\" at step " + chains[0].getStep());
+			} catch (IOException e)
+			{
+				logger.log(WARNING, "Unable to write checkpoint \"" + file + "\"", e);
+			}
+			lastWriteTime = System.currentTimeMillis();
+		}
 
-				if (bayes2GOCalculationProgress != null)
-					bayes2GOCalculationProgress.update(i, t, acceptProb, numAccepts, score);
+		private void write(Chain [] chains) throws IOException
+		{
+			/* Write to a temporary file first, so a crash never leaves a partial checkpoint behind */
+			File tmp = Util.createTempFile("checkpoint", checkpointDirectory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try
+			{
+				out.writeInt(CHECKPOINT_MAGIC);
+				out.writeUTF(fingerprint);
+				out.writeInt(iteration);
+				out.writeDouble(alpha);
+				out.writeDouble(beta);
+				out.writeDouble(expectedNumberOfTerms);
+				out.writeInt(chains.length);
+				for (Chain chain : chains)
+					chain.writeState(out);
+			} finally
+			{
+				out.close();
 			}
+			Util.commitTempFile(tmp, file);
+		}
 
-			if (fixedAlphaBetaScore != null)
+		/**
+		 * Restores the chains and the state of the EM from the checkpoint.
+		 *
+		 * @param chains the chains to be restored
+		 * @param term2Items the term links
+		 * @param observedItems the observed state of the items
+		 * @throws IOException
+		 */
+		public void read(Chain [] chains, CompressedLinks term2Items, boolean [] observedItems) throws IOException
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try
 			{
-				if (doAlphaEm)
-				{
-					double newAlpha = (double)fixedAlphaBetaScore.getAvgN10()/(fixedAlphaBetaScore.getAvgN00() + fixedAlphaBetaScore.getAvgN10());
-					if (newAlpha < 0.0000001) newAlpha = 0.0000001;
-					if (newAlpha > 0.9999999) newAlpha = 0.9999999;
-					logger.log(INFO, "alpha=" + alpha + "  newAlpha=" + newAlpha);
-					alpha = newAlpha;
-				}
+				if (in.readInt() != CHECKPOINT_MAGIC || !fingerprint.equals(in.readUTF()))
+					throw new IOException("\"" + file + "\" is not a checkpoint of this calculation");
+
+				iteration = in.readInt();
+				alpha = in.readDouble();
+				beta = in.readDouble();
+				expectedNumberOfTerms = in.readDouble();
+				if (in.readInt() != chains.length)
+					throw new IOException("\"" + file + "\" contains a different number of chains");
+
+				for (Chain chain : chains)
+					chain.restore(in, iteration, alpha, beta, expectedNumberOfTerms, term2Items, observedItems);
+			} finally
+			{
+				in.close();
+			}
+		}
+
+		public void delete()
+		{
+			if (file.exists() && !file.delete())
+				logger.log(WARNING, "Unable to remove checkpoint \"" + file + "\"");
+		}
+	}
+
+	/**
+	 * Returns a fingerprint of the given input and of all settings that
+	 * influence the course of the chains.
+	 *
+	 * @param term2Items the term links
+	 * @param observedItems the observed state of the items
+	 * @return the fingerprint
+	 */
+	private String getFingerprint(CompressedLinks term2Items, boolean [] observedItems)
+	{
+		ContentHash hash = new ContentHash();
+		hash.add(term2Items.getOffsets());
+		hash.add(term2Items.getTargets());
+		hash.add(observedItems.length);
+		for (boolean observed : observedItems)
+			hash.add(observed);
+		hash.add(seed);
+		hash.add(mcmcSteps);
+		hash.add(numberOfChains);
+		hash.add(targetPrecision);
+		hash.add(usePrior);
+		hash.add(integrateParams);
+		hash.add(randomStart);
+		for (DoubleParam param : new DoubleParam[]{alpha, beta})
+		{
+			hash.add(param.getType().toString());
+			hash.add(param.isFixed() ? param.getValue() : Double.NaN);
+			hash.add(param.getMin());
+			hash.add(param.getMax());
+		}
+		hash.add(expectedNumberOfTerms.getType().toString());
+		hash.add(expectedNumberOfTerms.isFixed() ? expectedNumberOfTerms.getValue() : -1);
+		return hash.finish();
+	}
 
-				if (doBetaEm)
+	/**
+	 * Runs the given chains, each on its own thread if there is more
+	 * than one.
+	 *
+	 * @param chains the chains to run
+	 */
+	private static void runChains(Chain [] chains)
+	{
+		if (chains.length == 1)
+		{
+			chains[0].run();
+			return;
+		}
+
+		final Throwable [] failure = new Throwable[1];
+		Thread [] threads = new Thread[chains.length];
+
+		for (int c = 0; c < chains.length; c++)
+		{
+			final Chain chain = chains[c];
+			threads[c] = new Thread("MGSA chain " + c)
+			{
+				@Override
+				public void run()
 				{
-					double newBeta = (double)fixedAlphaBetaScore.getAvgN01()/(fixedAlphaBetaScore.getAvgN01() + fixedAlphaBetaScore.getAvgN11());
-					if (newBeta < 0.0000001) newBeta = 0.0000001;
-					if (newBeta > 0.9999999) newBeta = 0.9999999;
-					logger.log(INFO, "beta=" + beta + "  newBeta=" + newBeta);
-					beta = newBeta;
+					try
+					{
+						chain.run();
+					} catch (Throwable t)
+					{
+						synchronized (failure)
+						{
+							if (failure[0] == null)
+								failure[0] = t;
+						}
+					}
 				}
+			};
+			threads[c].setDaemon(true);
+			threads[c].start();
+		}
+
+		try
+		{
+			for (int c = 0; c < chains.length; c++)
+				threads[c].join();
+		} catch (InterruptedException e)
+		{
+			for (int c = 0; c < chains.length; c++)
+				chains[c].stop();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while sampling", e);
+		}
+
+		if (failure[0] instanceof RuntimeException)
+			throw (RuntimeException)failure[0];
+		if (failure[0] instanceof Error)
+			throw (Error)failure[0];
+		if (failure[0] != null)
+			throw new RuntimeException(failure[0]);
+	}
 
-				if (doPEm)
+	/**
+	 * Pools the marginals of the given chains and determines the convergence
+	 * diagnostics. The R-hat is the split R-hat, i.e., each chain contributes
+	 * its two halves as separate sequences, so it is defined for a single chain
+	 * as well. The effective sample sizes are estimated by batch means. Records
+	 * after the last complete batch only contribute to the marginals.
+	 *
+	 * @param chains the chains that have been run
+	 * @param numTerms the number of terms
+	 * @return the result
+	 */
+	private static ChainResult summarize(Chain [] chains, int numTerms)
+	{
+		ChainResult result = new ChainResult();
+		result.marg = new double[numTerms];
+		result.rhat = new double[numTerms];
+		result.ess = new double[numTerms];
+
+		result.steps = chains[0].getStep();
+
+		/* All chains performed the same number of steps, so their batches are alike.
+		 * Only an even number of complete batches is considered. */
+		int batchSize = chains[0].batchSize;
+		int numberOfBatches = chains[0].numberOfBatches & ~1;
+
+		long numRecords = 0;
+		boolean diagnostics = numberOfBatches >= NUMBER_OF_BATCHES;
+		for (Chain chain : chains)
+		{
+			numRecords += chain.fixedAlphaBetaScore.numRecords;
+			diagnostics &= chain.batchSize == batchSize;
+		}
+
+		int half = numberOfBatches / 2;
+		double [] means = new double[2 * chains.length];
+		double [] variances = new double[2 * chains.length];
+		double [] batchMeans = new double[numberOfBatches];
+
+		for (int t = 0; t < numTerms; t++)
+		{
+			long count = 0;
+			for (Chain chain : chains)
+				count += chain.fixedAlphaBetaScore.termActivationCounts[t];
+			result.marg[t] = (double)count / numRecords;
+
+			if (!diagnostics)
+			{
+				result.rhat[t] = Double.NaN;
+				result.ess[t] = Double.NaN;
+				continue;
+			}
+
+			int halfSize = half * batchSize;
+			long chainSize = (long)numberOfBatches * batchSize;
+			double ess = 0;
+
+			for (int c = 0; c < chains.length; c++)
+			{
+				int [][] counts = chains[c].batchCounts;
+				int first = counts[half - 1][t];
+				int all = counts[numberOfBatches - 1][t];
+
+				means[2 * c] = (double)first / halfSize;
+				means[2 * c + 1] = (double)(all - first) / halfSize;
+				variances[2 * c] = ConvergenceDiagnostics.getBinaryVariance(means[2 * c], halfSize);
+				variances[2 * c + 1] = ConvergenceDiagnostics.getBinaryVariance(means[2 * c + 1], halfSize);
+
+				for (int b = 0; b < numberOfBatches; b++)
+					batchMeans[b] = (double)(counts[b][t] - (b > 0 ? counts[b - 1][t] : 0)) / batchSize;
+				ess += ConvergenceDiagnostics.getEffectiveSampleSize(batchMeans, batchSize,
+						ConvergenceDiagnostics.getBinaryVariance((double)all / chainSize, chainSize));
+			}
+
+			result.rhat[t] = ConvergenceDiagnostics.getPotentialScaleReduction(means, variances, halfSize);
+			result.ess[t] = ess;
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the prepared or restored chains. If a target precision has been
+	 * set, the chains are run in rounds of CHECK_INTERVAL steps until the
+	 * precision is reached or the maximum number of steps has been performed.
+	 * If a checkpoint is given, it is updated between the rounds, which
+	 * last CHECKPOINT_INTERVAL steps if no target precision has been set.
+	 *
+	 * @param chains the chains
+	 * @param numTerms the number of terms
+	 * @param checkpoint the checkpoint or null.
+	 * @return the result of the chains
+	 */
+	private ChainResult run(Chain [] chains, int numTerms, Checkpoint checkpoint)
+	{
+		int round = mcmcSteps;
+		if (targetPrecision > 0) round = CHECK_INTERVAL;
+		else if (checkpoint != null) round = CHECKPOINT_INTERVAL;
+
+		ChainResult result = null;
+		boolean reachedPrecision = false;
+		int step = chains[0].getStep();
+		for (;;)
+		{
+			step = (int)Math.min(mcmcSteps, (long)step + round);
+			for (Chain chain : chains)
+				chain.setEndStep(step);
+			runChains(chains);
+
+			if (targetPrecision > 0)
+			{
+				result = summarize(chains, numTerms);
+				if (step > BURNIN && result.hasPrecision(targetPrecision))
 				{
-					double newExpectedNumberOfTerms = (double)fixedAlphaBetaScore.getAvgT();
-					if (newExpectedNumberOfTerms < 0.0000001) newExpectedNumberOfTerms = 0.0000001;
-					logger.log(INFO, "expectedNumberOfTerms=" + expectedNumberOfTerms + "  newExpectedNumberOfTerms=" + newExpectedNumberOfTerms);
-					expectedNumberOfTerms = newExpectedNumberOfTerms;
+					reachedPrecision = true;
+					break;
 				}
 			}
+			if (step >= mcmcSteps)
+				break;
 
-			if (i==maxIter - 1)
+			if (checkpoint != null)
+				checkpoint.update(chains);
+		}
+
+		if (targetPrecision <= 0)
+			return summarize(chains, numTerms);
+
+		if (reachedPrecision)
+			logger.log(INFO, "Reached a precision of " + targetPrecision + " after " + step + " steps");
+		else
+			logger.log(INFO, "Did not reach a precision of " + targetPrecision + " within " + step + " steps");
+		return result;
+	}
+
+	/**
+	 * Perform the calculation.
+	 *
+	 * @param term2Items
+	 * @param observedItems
+	 * @return the marginal probabilities and convergence diagnostics for each term.
+	 */
+	private ChainResult calculate(int [][] term2Items, boolean [] observedItems)
+	{
+		int numTerms = term2Items.length;
+		CompressedLinks links = CompressedLinks.create(term2Items, observedItems.length);
+		ChainResult res = null;
+
+		RestorableRandom rnd;
+		if (seed != 0)
+		{
+			rnd = new RestorableRandom(seed);
+			logger.log(INFO, "Use a random seed of: " + seed);
+		} else
+		{
+			long newSeed = new Random().nextLong();
+			logger.log(INFO, "Use a random seed of: " + newSeed);
+			rnd = new RestorableRandom(newSeed);
+		}
+
+		/* A single chain uses the master source of randomness directly,
+		 * otherwise each chain gets its own stream derived from it */
+		Chain [] chains = new Chain[numberOfChains];
+		for (int c = 0; c < numberOfChains; c++)
+			chains[c] = new Chain(c, numberOfChains == 1 ? rnd : new RestorableRandom(rnd.nextLong()));
+
+		boolean doAlphaEm = false;
+		boolean doBetaEm = false;
+		boolean doPEm = false;
+
+		int maxIter;
+
+		double alpha;
+		double beta;
+		double expectedNumberOfTerms;
+
+		switch (this.alpha.getType())
+		{
+			case	EM: alpha = 0.4; doAlphaEm = true; break;
+			case	MCMC: alpha = Double.NaN; break;
+			default: alpha = this.alpha.getValue(); break;
+		}
+
+		switch (this.beta.getType())
+		{
+			case	EM: beta = 0.4; doBetaEm = true; break;
+			case	MCMC: beta = Double.NaN; break;
+			default: beta = this.beta.getValue(); break;
+		}
+
+
+		switch (this.expectedNumberOfTerms.getType())
+		{
+			case	EM: expectedNumberOfTerms = 1; doPEm = true; break;
+			case	MCMC: expectedNumberOfTerms = Double.NaN; break;
+			default: expectedNumberOfTerms = this.expectedNumberOfTerms.getValue(); break;
+		}
+
+		boolean doEm = doAlphaEm || doBetaEm || doPEm;
+
+		if (doEm) maxIter = 12;
+		else maxIter = 1;
+
+		Checkpoint checkpoint = null;
+		int firstIteration = 0;
+		boolean restored = false;
+
+		if (checkpointDirectory != null)
+		{
+			checkpoint = new Checkpoint(getFingerprint(links, observedItems));
+			if (resume && checkpoint.exists())
 			{
-				for (int t = 0; t < numTerms; t++)
+				try
+				{
+					checkpoint.read(chains, links, observedItems);
+				} catch (IOException e)
 				{
-					res[t] = (double)fixedAlphaBetaScore.termActivationCounts[t] / fixedAlphaBetaScore.numRecords;
+					throw new RuntimeException("Unable to resume from checkpoint", e);
 				}
+				firstIteration = checkpoint.iteration;
+				alpha = checkpoint.alpha;
+				beta = checkpoint.beta;
+				expectedNumberOfTerms = checkpoint.expectedNumberOfTerms;
+				restored = true;
+				logger.log(INFO, "Resuming iteration " + firstIteration + " at step " + chains[0].getStep());
+			}
+		}
+
+		for (int i=firstIteration;i<maxIter;i++)
+		{
+			if (doEm)
+			{
+				logger.log(INFO, "EM-Iter("+i+")" + alpha + "  " + beta + "  " + expectedNumberOfTerms);
+			} else
+			{
+				logger.log(INFO, "MCMC only: " + alpha + "  " + beta + "  " + expectedNumberOfTerms);
 			}
 
-			if (fixedAlphaBetaScore != null)
+			if (!restored || i != firstIteration)
+			{
+				for (Chain chain : chains)
+					chain.prepare(i, alpha, beta, expectedNumberOfTerms, links, observedItems);
+			}
+
+			if (checkpoint != null)
+				checkpoint.setIteration(i, alpha, beta, expectedNumberOfTerms);
+
+			ChainResult iterationResult = run(chains, numTerms, checkpoint);
+
+			for (Chain chain : chains)
+				chain.logSummary();
+
+			/* The averages of the chains are pooled, all chains have the same number of records */
+			double avgN00 = 0, avgN01 = 0, avgN10 = 0, avgN11 = 0, avgT = 0;
+			int numRecords = 0;
+			for (Chain chain : chains)
 			{
-				if (Double.isNaN(alpha))
+				avgN00 += chain.fixedAlphaBetaScore.getAvgN00() / numberOfChains;
+				avgN01 += chain.fixedAlphaBetaScore.getAvgN01() / numberOfChains;
+				avgN10 += chain.fixedAlphaBetaScore.getAvgN10() / numberOfChains;
+				avgN11 += chain.fixedAlphaBetaScore.getAvgN11() / numberOfChains;
+				avgT += chain.fixedAlphaBetaScore.getAvgT() / numberOfChains;
+				numRecords += chain.fixedAlphaBetaScore.numRecords;
+			}
+
+			if (doAlphaEm)
+			{
+				double newAlpha = avgN10/(avgN00 + avgN10);
+				if (newAlpha < 0.0000001) newAlpha = 0.0000001;
+				if (newAlpha > 0.9999999) newAlpha = 0.9999999;
+				logger.log(INFO, "alpha=" + alpha + "  newAlpha=" + newAlpha);
+				alpha = newAlpha;
+			}
+
+			if (doBetaEm)
+			{
+				double newBeta = avgN01/(avgN01 + avgN11);
+				if (newBeta < 0.0000001) newBeta = 0.0000001;
+				if (newBeta > 0.9999999) newBeta = 0.9999999;
+				logger.log(INFO, "beta=" + beta + "  newBeta=" + newBeta);
+				beta = newBeta;
+			}
+
+			if (doPEm)
+			{
+				double newExpectedNumberOfTerms = avgT;
+				if (newExpectedNumberOfTerms < 0.0000001) newExpectedNumberOfTerms = 0.0000001;
+				logger.log(INFO, "expectedNumberOfTerms=" + expectedNumberOfTerms + "  newExpectedNumberOfTerms=" + newExpectedNumberOfTerms);
+				expectedNumberOfTerms = newExpectedNumberOfTerms;
+			}
+
+			if (i==maxIter - 1)
+				res = iterationResult;
+
+			FixedAlphaBetaScore first = chains[0].fixedAlphaBetaScore;
+
+			if (Double.isNaN(alpha))
+			{
+				for (int j=0;j<first.totalAlpha.length;j++)
 				{
-					for (int j=0;j<fixedAlphaBetaScore.totalAlpha.length;j++)
-						logger.log(INFO, "alpha(" + fixedAlphaBetaScore.ALPHA[j] + ")=" + (double)fixedAlphaBetaScore.totalAlpha[j] / fixedAlphaBetaScore.numRecords);
+					long total = 0;
+					for (Chain chain : chains)
+						total += chain.fixedAlphaBetaScore.totalAlpha[j];
+					logger.log(INFO, "alpha(" + first.ALPHA[j] + ")=" + (double)total / numRecords);
 				}
+			}
 
-				if (Double.isNaN(beta))
+			if (Double.isNaN(beta))
+			{
+				for (int j=0;j<first.totalBeta.length;j++)
 				{
-					for (int j=0;j<fixedAlphaBetaScore.totalBeta.length;j++)
-						logger.log(INFO, "beta(" + fixedAlphaBetaScore.BETA[j] + ")=" + (double)fixedAlphaBetaScore.totalBeta[j] / fixedAlphaBetaScore.numRecords);
+					long total = 0;
+					for (Chain chain : chains)
+						total += chain.fixedAlphaBetaScore.totalBeta[j];
+					logger.log(INFO, "beta(" + first.BETA[j] + ")=" + (double)total / numRecords);
 				}
+			}
 
-				if (Double.isNaN(expectedNumberOfTerms))
+			if (Double.isNaN(expectedNumberOfTerms))
+			{
+				for (int j=0;j<first.totalExp.length;j++)
 				{
-					for (int j=0;j<fixedAlphaBetaScore.totalExp.length;j++)
-						logger.log(INFO, "exp(" + fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS[j] + ")=" + (double)fixedAlphaBetaScore.totalExp[j] / fixedAlphaBetaScore.numRecords);
-
+					long total = 0;
+					for (Chain chain : chains)
+						total += chain.fixedAlphaBetaScore.totalExp[j];
+					logger.log(INFO, "exp(" + first.EXPECTED_NUMBER_OF_TERMS[j] + ")=" + (double)total / numRecords);
 				}
 			}
+		}
 
-			logger.log(INFO, "numAccepts=" + numAccepts + "  numRejects = " + numRejects);
+		if (checkpoint != null)
+			checkpoint.delete();
 
-			if (logger.isLoggable(INFO))
+		if (logger.isLoggable(INFO))
+		{
+			double maxRhat = Double.NaN;
+			double minEss = Double.NaN;
+			for (int t = 0; t < numTerms; t++)
 			{
-				StringBuilder b = new StringBuilder();
-
-				logger.log(INFO, "Term combination that reaches score of " + maxScore +
-							" when alpha=" + maxScoredAlpha +
-							", beta=" + maxScoredBeta +
-							", p=" + maxScoredP +
-							" at step " + maxWhenSeen);
-				b.append("Indices: ");
-				for (int t : maxScoredTerms)
-				{
-					b.append(t);
-					b.append(", ");
-				}
-				logger.log(INFO, b.toString());
+				if (Double.isNaN(maxRhat) || res.rhat[t] > maxRhat) maxRhat = res.rhat[t];
+				if (Double.isNaN(minEss) || res.ess[t] < minEss) minEss = res.ess[t];
 			}
+			logger.log(INFO, numberOfChains + " chain(s): max R-hat=" + maxRhat + "  min ESS=" + minEss);
 		}
 		return res;
-
 	}
 
 	@Override
@@ -615,6 +1462,6 @@ public class Bayes2GOCalculation implements ICalculation, ISlimCalculation, IPro
 		boolean [] observedItems = new boolean[numItems];
 		for (int i = 0; i < studyIds.length; i++)
 			observedItems[studyIds[i]] = true;
-		return calculate(term2Items, observedItems);
+		return calculate(term2Items, observedItems).marg;
 	}
 }
@@ -20,6 +20,9 @@ public class Bayes2GOEnrichedGOTermsResult extends EnrichedGOTermsResult
 	/* FIXME: Remove this */
 	private IntMapper<TermID> termMapper;
 
+	/** Number of MCMC steps performed by each chain */
+	private int numberOfSteps;
+
 	public Bayes2GOEnrichedGOTermsResult(Ontology go,
 			AssociationContainer associations, StudySet studySet,
 			int populationGeneCount)
@@ -46,4 +49,18 @@ public class Bayes2GOEnrichedGOTermsResult extends EnrichedGOTermsResult
 	{
 		return termMapper;
 	}
+
+	public void setNumberOfSteps(int numberOfSteps)
+	{
+		this.numberOfSteps = numberOfSteps;
+	}
+
+	/**
+	 * @return the number of MCMC steps that were performed by each chain,
+	 *  which may be less than requested if a target precision was reached.
+	 */
+	public int getNumberOfSteps()
+	{
+		return numberOfSteps;
+	}
 }
@@ -11,11 +11,17 @@ import ontologizer.calculation.AbstractGOTermProperties;
 public class Bayes2GOGOTermProperties extends AbstractGOTermProperties
 {
 	private static final String [] propertyNames = new String[]{
-		"ID","Pop.total","Pop.term","Study.total","Study.term","marg"
+		"ID","Pop.total","Pop.term","Study.total","Study.term","marg","rhat","ess"
 		};
 
 	public double marg;
 
+	/** The potential scale reduction factor (split R-hat) of the marginal, NaN if unknown */
+	public double rhat = Double.NaN;
+
+	/** The effective sample size of the marginal summed over all chains, NaN if unknown */
+	public double ess = Double.NaN;
+
 	@Override
 	public int getNumberOfProperties()
 	{
@@ -39,6 +45,8 @@ public class Bayes2GOGOTermProperties extends AbstractGOTermProperties
 			case	3: return null; /* study gene count */
 			case 	4: return Integer.toString(annotatedStudyGenes);
 			case	5: return Double.toString(marg);
+			case	6: return Double.toString(rhat);
+			case	7: return Double.toString(ess);
 		}
 		return null;
 	}
@@ -1,7 +1,12 @@
 package ontologizer.calculation.b2g;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
+import ontologizer.calculation.util.CompressedLinks;
+
 /**
  * Extends Bayes2GOScoreBase with p prior and the ability to count term activations.
  *
@@ -54,6 +59,11 @@ public abstract class Bayes2GOScore extends Bayes2GOScoreBase
 	}
 
 	public Bayes2GOScore(Random rnd, int [][] termLinks, int numGenes, IGeneValueProvider geneValueProvider)
+	{
+		this(rnd, CompressedLinks.create(termLinks, numGenes), numGenes, geneValueProvider);
+	}
+
+	public Bayes2GOScore(Random rnd, CompressedLinks termLinks, int numGenes, IGeneValueProvider geneValueProvider)
 	{
 		super(termLinks, numGenes);
 
@@ -83,6 +93,18 @@ public abstract class Bayes2GOScore extends Bayes2GOScoreBase
 	 * @param observedGenes state of each gene whether it is observed or not.
 	 */
 	public Bayes2GOScore(Random rnd, int [][] termLinks, final boolean [] observedGenes)
+	{
+		this(rnd, CompressedLinks.create(termLinks, observedGenes.length), observedGenes);
+	}
+
+	/**
+	 * Constructs a class for calculating the Bayes2GO score suitable for an MCMC algorithm.
+	 *
+	 * @param rnd Random source for proposing states.
+	 * @param termLinks terms to genes, may be shared with other instances.
+	 * @param observedGenes state of each gene whether it is observed or not.
+	 */
+	public Bayes2GOScore(Random rnd, CompressedLinks termLinks, final boolean [] observedGenes)
 	{
 		/* Here a gene value provider is constructed that maps the boolean observed state back
 		 * to values some values. A gene, that is observed gets a -1, a gene that is not observed
@@ -210,6 +232,26 @@ public abstract class Bayes2GOScore extends Bayes2GOScoreBase
 		numRecords++;
 	}
 
+	@Override
+	public void writeState(DataOutput out) throws IOException
+	{
+		super.writeState(out);
+
+		out.writeInt(numRecords);
+		for (int i = 0; i < numTerms; i++)
+			out.writeInt(termActivationCounts[i]);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException
+	{
+		super.readState(in);
+
+		numRecords = in.readInt();
+		for (int i = 0; i < numTerms; i++)
+			termActivationCounts[i] = in.readInt();
+	}
+
 	/**
 	 * @return the terms that are currently activated
 	 */
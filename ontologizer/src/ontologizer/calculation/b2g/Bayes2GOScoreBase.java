@@ -1,12 +1,24 @@
 package ontologizer.calculation.b2g;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ontologizer.calculation.util.CompressedLinks;
+
 public abstract class Bayes2GOScoreBase
 {
 	/** Indicates the activation state of a term */
 	private boolean [] isActive;
 
 	/** Maps a term id to the ids of the genes to that the term is annotated */
-	private int [][] termLinks;
+	private final CompressedLinks termLinks;
+
+	/** The offsets of the genes of each term within linkedGenes, taken from termLinks */
+	private final int [] linkOffsets;
+
+	/** The genes of all terms back to back, taken from termLinks */
+	private final int [] linkedGenes;
 
 	/**
 	 * Contains indices to terms of termsArray.
@@ -35,17 +47,29 @@ public abstract class Bayes2GOScoreBase
 
 	public Bayes2GOScoreBase(int [][] termLinks, int numItems)
 	{
-		this.termLinks = termLinks;
+		this(CompressedLinks.create(termLinks, numItems), numItems);
+	}
 
-		numTerms = termLinks.length;
-		numInactiveTerms = termLinks.length;
-		isActive = new boolean[termLinks.length];
-		termPartition = new int[termLinks.length];
-		positionOfTermInPartition = new int[termLinks.length];
+	/**
+	 * @param termLinks the links from terms to genes. They are not modified,
+	 *  so they can be shared among several instances.
+	 * @param numItems the number of genes.
+	 */
+	public Bayes2GOScoreBase(CompressedLinks termLinks, int numItems)
+	{
+		this.termLinks = termLinks;
+		this.linkOffsets = termLinks.getOffsets();
+		this.linkedGenes = termLinks.getTargets();
+
+		numTerms = termLinks.getNumberOfSources();
+		numInactiveTerms = numTerms;
+		isActive = new boolean[numTerms];
+		termPartition = new int[numTerms];
+		positionOfTermInPartition = new int[numTerms];
 		observedGenes = new boolean[numItems];
 		activeHiddenGenes = new int[numItems];
 
-		for (int i=0; i < termLinks.length; i++)
+		for (int i=0; i < numTerms; i++)
 		{
 			termPartition[i] = i;
 			positionOfTermInPartition[i] = i;
@@ -59,22 +83,20 @@ public abstract class Bayes2GOScoreBase
 	 */
 	public void switchState(int toSwitch)
 	{
-		int [] geneIDs = termLinks[toSwitch];
+		int [] genes = linkedGenes;
+		int [] counts = activeHiddenGenes;
+		int start = linkOffsets[toSwitch];
+		int end = linkOffsets[toSwitch + 1];
 
 		isActive[toSwitch] = !isActive[toSwitch];
 		if (isActive[toSwitch])
 		{
 			/* A term was added, activate/deactivate genes */
-			for (int gid : geneIDs)
+			for (int i = start; i < end; i++)
 			{
-				if (activeHiddenGenes[gid] == 0)
-				{
-					activeHiddenGenes[gid] = 1;
+				int gid = genes[i];
+				if (counts[gid]++ == 0)
 					hiddenGeneActivated(gid);
-				} else
-				{
-					activeHiddenGenes[gid]++;
-				}
 			}
 
 			/* Move the added set from the 0 partition to the 1 partition (it essentially becomes the
@@ -96,16 +118,11 @@ public abstract class Bayes2GOScoreBase
 		} else
 		{
 			/* Update hiddenActiveGenes */
-			for (int gid : geneIDs)
+			for (int i = start; i < end; i++)
 			{
-				if (activeHiddenGenes[gid] == 1)
-				{
-					activeHiddenGenes[gid] = 0;
+				int gid = genes[i];
+				if (--counts[gid] == 0)
 					hiddenGeneDeactivated(gid);
-				} else
-				{
-					activeHiddenGenes[gid]--;
-				}
 			}
 
 			/* Converse of above. Here the removed set, which belonged to the 1 partition,
@@ -125,6 +142,64 @@ public abstract class Bayes2GOScoreBase
 		}
 	}
 
+	/**
+	 * Writes the activation state of the terms including the order of the
+	 * terms within the partition, on which the proposals depend.
+	 *
+	 * @param out where to write the state to
+	 * @throws IOException
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		out.writeInt(numTerms);
+		out.writeInt(numInactiveTerms);
+		for (int i = 0; i < numTerms; i++)
+			out.writeInt(termPartition[i]);
+	}
+
+	/**
+	 * Restores the activation state of the terms that has been written by
+	 * writeState(). All terms must be inactive before.
+	 *
+	 * @param in where to read the state from
+	 * @throws IOException if the state doesn't fit.
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		if (numInactiveTerms != numTerms)
+			throw new IllegalStateException("The state can be only restored if all terms are inactive");
+		if (in.readInt() != numTerms)
+			throw new IOException("The state doesn't match the number of terms");
+
+		int newNumInactiveTerms = in.readInt();
+		int [] newTermPartition = new int[numTerms];
+		for (int i = 0; i < numTerms; i++)
+		{
+			newTermPartition[i] = in.readInt();
+			if (newTermPartition[i] < 0 || newTermPartition[i] >= numTerms)
+				throw new IOException("The state contains an invalid term");
+		}
+		if (newNumInactiveTerms < 0 || newNumInactiveTerms > numTerms)
+			throw new IOException("The state contains an invalid number of inactive terms");
+
+		/* Activate the terms, this updates the genes, and then bring the partition in the saved order */
+		for (int i = newNumInactiveTerms; i < numTerms; i++)
+			switchState(newTermPartition[i]);
+
+		termPartition = newTermPartition;
+		for (int i = 0; i < numTerms; i++)
+			positionOfTermInPartition[termPartition[i]] = i;
+	}
+
+	/**
+	 * @return the links from terms to genes. The gene to term links can be
+	 *  obtained via CompressedLinks.transpose().
+	 */
+	public CompressedLinks getTermLinks()
+	{
+		return termLinks;
+	}
+
 	/**
 	 * The given gene is now activated
 	 *
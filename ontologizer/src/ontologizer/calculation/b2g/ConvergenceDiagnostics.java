@@ -0,0 +1,105 @@
+package ontologizer.calculation.b2g;
+
+/**
+ * Diagnostics that tell whether the samples of Markov chains can be trusted.
+ */
+public class ConvergenceDiagnostics
+{
+	private ConvergenceDiagnostics()
+	{
+	}
+
+	/**
+	 * Returns the potential scale reduction factor (R-hat) of Gelman and Rubin
+	 * for sequences of equal length. Values close to 1 indicate that the
+	 * sequences sample from the same distribution. Splitting each chain into
+	 * two halves and passing them as separate sequences gives the split R-hat,
+	 * which also detects chains that did not yet reach their stationary
+	 * distribution.
+	 *
+	 * @param means the mean of each sequence.
+	 * @param variances the (unbiased) sample variance of each sequence.
+	 * @param n the number of samples per sequence.
+	 * @return the factor or NaN if there are less than two sequences or
+	 *  less than two samples per sequence.
+	 */
+	public static double getPotentialScaleReduction(double [] means, double [] variances, int n)
+	{
+		int m = means.length;
+		if (m < 2 || n < 2)
+			return Double.NaN;
+
+		double grandMean = 0;
+		double w = 0;
+		for (int i = 0; i < m; i++)
+		{
+			grandMean += means[i];
+			w += variances[i];
+		}
+		grandMean /= m;
+		w /= m;
+
+		double b = 0;
+		for (int i = 0; i < m; i++)
+			b += (means[i] - grandMean) * (means[i] - grandMean);
+		b = b * n / (m - 1);
+
+		/* No variance within the sequences, they agree only if they are constant */
+		if (w <= 0)
+			return b <= 0 ? 1 : Double.POSITIVE_INFINITY;
+
+		double varPlus = (n - 1.0) / n * w + b / n;
+		return Math.sqrt(varPlus / w);
+	}
+
+	/**
+	 * Returns the effective sample size of a single chain that is estimated
+	 * by the method of batch means, i.e., the asymptotic variance of the mean
+	 * is estimated from the variance of the means of consecutive batches.
+	 * The result is limited to the number of samples.
+	 *
+	 * @param batchMeans the means of the consecutive batches of the chain.
+	 * @param batchSize the number of samples per batch.
+	 * @param variance the sample variance of the samples of the chain.
+	 * @return the effective sample size or NaN if there are less than two
+	 *  batches.
+	 */
+	public static double getEffectiveSampleSize(double [] batchMeans, int batchSize, double variance)
+	{
+		int numberOfBatches = batchMeans.length;
+		if (numberOfBatches < 2)
+			return Double.NaN;
+
+		double n = (double)numberOfBatches * batchSize;
+
+		double mean = 0;
+		for (int i = 0; i < numberOfBatches; i++)
+			mean += batchMeans[i];
+		mean /= numberOfBatches;
+
+		double varianceOfBatchMeans = 0;
+		for (int i = 0; i < numberOfBatches; i++)
+			varianceOfBatchMeans += (batchMeans[i] - mean) * (batchMeans[i] - mean);
+		varianceOfBatchMeans /= numberOfBatches - 1;
+
+		double asymptoticVariance = batchSize * varianceOfBatchMeans;
+		if (asymptoticVariance <= 0)
+			return n;
+		return Math.min(n, n * variance / asymptoticVariance);
+	}
+
+	/**
+	 * Returns the unbiased sample variance of n binary samples of which
+	 * the given fraction is 1.
+	 *
+	 * @param p the fraction of samples that are 1.
+	 * @param n the number of samples.
+	 * @return the variance.
+	 */
+	public static double getBinaryVariance(double p, long n)
+	{
+		if (n < 2)
+			return 0;
+		return n / (n - 1.0) * p * (1 - p);
+	}
+}
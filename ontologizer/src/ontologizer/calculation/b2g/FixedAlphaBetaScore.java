@@ -1,7 +1,11 @@
 package ontologizer.calculation.b2g;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
+import ontologizer.calculation.util.CompressedLinks;
 import ontologizer.calculation.util.Gamma;
 
 /**
@@ -38,6 +42,28 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	protected double alpha = Double.NaN;
 	protected double beta = Double.NaN;
 
+	/* Logarithms of the grids and of the fixed values, so scoring needs no Math.log() */
+	private double [] logAlphaGrid;
+	private double [] logOneMinusAlphaGrid;
+	private double fixedLogAlpha;
+	private double fixedLogOneMinusAlpha;
+
+	private double [] logBetaGrid;
+	private double [] logOneMinusBetaGrid;
+	private double fixedLogBeta;
+	private double fixedLogOneMinusBeta;
+
+	private double [] logPGrid;
+	private double [] logOneMinusPGrid;
+	private double fixedLogP;
+	private double fixedLogOneMinusP;
+
+	/** Size of the table of log gamma values */
+	private static final int LOG_GAMMA_TABLE_SIZE = 20000;
+
+	/** Log gamma values for small integer arguments, shared by all instances */
+	private static final double [] LOG_GAMMA = createLogGammaTable(LOG_GAMMA_TABLE_SIZE);
+
 	/** True negative count */
 	private int n00;
 
@@ -65,6 +91,8 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	{
 		this.alpha = alpha;
 		doAlphaMCMC = Double.isNaN(alpha);
+		fixedLogAlpha = Math.log(alpha);
+		fixedLogOneMinusAlpha = Math.log(1 - alpha);
 	}
 
 	/**
@@ -76,6 +104,8 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	{
 		this.beta = beta;
 		doBetaMCMC = Double.isNaN(beta);
+		fixedLogBeta = Math.log(beta);
+		fixedLogOneMinusBeta = Math.log(1 - beta);
 	}
 
 	@Override
@@ -83,6 +113,8 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	{
 		super.setExpectedNumberOfTerms(terms);
 		doExpMCMC = Double.isNaN(terms);
+		fixedLogP = Math.log(p);
+		fixedLogOneMinusP = Math.log(1 - p);
 	}
 
 	public void setMaxAlpha(double maxAlpha)
@@ -101,6 +133,9 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		ALPHA[0] = 0.0000001;
 		for (int i=1;i<20;i++)
 			ALPHA[i] = i * maxAlpha / span;
+
+		logAlphaGrid = log(ALPHA, false);
+		logOneMinusAlphaGrid = log(ALPHA, true);
 	}
 
 	public void setMaxBeta(double maxBeta)
@@ -120,6 +155,23 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		for (int i=1;i<20;i++)
 			BETA[i] = i * maxBeta / span;
 
+		logBetaGrid = log(BETA, false);
+		logOneMinusBetaGrid = log(BETA, true);
+	}
+
+	/**
+	 * Returns the logarithms of the given values or of their complements.
+	 *
+	 * @param values the values
+	 * @param complement whether log(1-x) rather than log(x) should be returned
+	 * @return the logarithms
+	 */
+	private static double [] log(double [] values, boolean complement)
+	{
+		double [] logs = new double[values.length];
+		for (int i = 0; i < values.length; i++)
+			logs[i] = Math.log(complement ? 1 - values[i] : values[i]);
+		return logs;
 	}
 
 	/**
@@ -134,12 +186,28 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	}
 
 	public FixedAlphaBetaScore(Random rnd,  int [][] termLinks, boolean [] observedGenes)
+	{
+		this(rnd, CompressedLinks.create(termLinks, observedGenes.length), observedGenes);
+	}
+
+	/**
+	 * @param rnd the source of randomness for proposals
+	 * @param termLinks the links from terms to genes, may be shared with other instances
+	 * @param observedGenes the observed state of each gene
+	 */
+	public FixedAlphaBetaScore(Random rnd, CompressedLinks termLinks, boolean [] observedGenes)
 	{
 		super(rnd, termLinks, observedGenes);
 
 		setMaxAlpha(1.);
 		setMaxBeta(1.);
 
+		double [] grid = new double[EXPECTED_NUMBER_OF_TERMS.length];
+		for (int i = 0; i < grid.length; i++)
+			grid[i] = (double)EXPECTED_NUMBER_OF_TERMS[i] / numTerms;
+		logPGrid = log(grid, false);
+		logOneMinusPGrid = log(grid, true);
+
 		/* At this state, all terms are inactive, hence all observed genes are false positive */
 		for (int i=0; i < observedGenes.length; i++)
 		{
@@ -298,26 +366,28 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		return p;
 	}
 
-	private final double [] lGamma = new double[20000];
-
-	private double logGamma(int a)
+	/**
+	 * Creates a table of log gamma values.
+	 *
+	 * @param size the size of the table
+	 * @return the table whose positive entries are lgamma of the index
+	 */
+	private static double [] createLogGammaTable(int size)
 	{
-		if (a == 1 || a == 2) return 0.0;
+		double [] table = new double[size];
+		for (int a = 3; a < size; a++)
+			table[a] = Gamma.lgamma(a);
+		return table;
+	}
 
-		if (a < lGamma.length)
-		{
-			double lg = lGamma[a];
-			if (lg == 0.0)
-			{
-				lg = Gamma.lgamma(a);
-				lGamma[a] = lg;
-			}
-			return lg;
-		}
+	private static double logGamma(int a)
+	{
+		if (a < LOG_GAMMA.length)
+			return LOG_GAMMA[a];
 		return Gamma.lgamma(a);
 	}
 
-	private double logBeta(int a, int b)
+	private static double logBeta(int a, int b)
 	{
 		return logGamma(a) + logGamma(b) - logGamma(a+b);
 	}
@@ -329,18 +399,36 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 
 		if (!integrateParams)
 		{
-			double alpha;
-			double beta;
-			double p;
+			double la, l1a;
+			double lb, l1b;
+
+			if (doAlphaMCMC)
+			{
+				la = logAlphaGrid[alphaIdx];
+				l1a = logOneMinusAlphaGrid[alphaIdx];
+			} else
+			{
+				la = fixedLogAlpha;
+				l1a = fixedLogOneMinusAlpha;
+			}
 
-			alpha = getAlpha();
-			beta = getBeta();
-			p = getP();
+			if (doBetaMCMC)
+			{
+				lb = logBetaGrid[betaIdx];
+				l1b = logOneMinusBetaGrid[betaIdx];
+			} else
+			{
+				lb = fixedLogBeta;
+				l1b = fixedLogOneMinusBeta;
+			}
 
-			newScore2 = Math.log(alpha) * n10 + Math.log(1-alpha)*n00 + Math.log(1-beta)*n11 + Math.log(beta)*n01;
+			newScore2 = la * n10 + l1a * n00 + l1b * n11 + lb * n01;
 
 			if (usePrior)
-				newScore2 += Math.log(p)*(numTerms - numInactiveTerms) + Math.log(1-p)*numInactiveTerms;
+			{
+				if (doExpMCMC) newScore2 += logPGrid[expIdx]*(numTerms - numInactiveTerms) + logOneMinusPGrid[expIdx]*numInactiveTerms;
+				else newScore2 += fixedLogP*(numTerms - numInactiveTerms) + fixedLogOneMinusP*numInactiveTerms;
+			}
 		} else
 		{
 			/* Prior */
@@ -396,6 +484,74 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		totalT += (numTerms - numInactiveTerms);
 	}
 
+	/**
+	 * Writes the state including the indices of the current alpha, beta, and
+	 * p values and all accumulated counts. The settings, e.g., the fixed
+	 * values or the maximum alpha, are not part of the state.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException
+	{
+		super.writeState(out);
+
+		out.writeInt(alphaIdx);
+		out.writeInt(betaIdx);
+		out.writeInt(expIdx);
+		writeCounts(out, totalAlpha);
+		writeCounts(out, totalBeta);
+		writeCounts(out, totalExp);
+		out.writeLong(totalN00);
+		out.writeLong(totalN01);
+		out.writeLong(totalN10);
+		out.writeLong(totalN11);
+		out.writeLong(totalT);
+	}
+
+	/**
+	 * Restores the state written by writeState() of a score with the same
+	 * settings.
+	 */
+	@Override
+	public void readState(DataInput in) throws IOException
+	{
+		super.readState(in);
+
+		alphaIdx = readIndex(in, ALPHA.length);
+		betaIdx = readIndex(in, BETA.length);
+		expIdx = readIndex(in, EXPECTED_NUMBER_OF_TERMS.length);
+		readCounts(in, totalAlpha);
+		readCounts(in, totalBeta);
+		readCounts(in, totalExp);
+		totalN00 = in.readLong();
+		totalN01 = in.readLong();
+		totalN10 = in.readLong();
+		totalN11 = in.readLong();
+		totalT = in.readLong();
+	}
+
+	private static void writeCounts(DataOutput out, int [] counts) throws IOException
+	{
+		out.writeInt(counts.length);
+		for (int c : counts)
+			out.writeInt(c);
+	}
+
+	private static void readCounts(DataInput in, int [] counts) throws IOException
+	{
+		if (in.readInt() != counts.length)
+			throw new IOException("The state doesn't match the parameter grid");
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = in.readInt();
+	}
+
+	private static int readIndex(DataInput in, int length) throws IOException
+	{
+		int idx = in.readInt();
+		if (idx < 0 || idx >= length)
+			throw new IOException("The state contains an invalid parameter index");
+		return idx;
+	}
+
 	public double getAvgN00()
 	{
 		return (double)totalN00 / numRecords;
@@ -0,0 +1,65 @@
+package ontologizer.calculation.b2g;
+
+import java.util.Random;
+
+/**
+ * A source of randomness whose state can be saved and restored. It produces
+ * exactly the same sequences as java.util.Random with the same seed, as it
+ * implements the same linear congruential generator on which all methods of
+ * java.util.Random are based. Unlike java.util.Random, it must not be
+ * shared by several threads.
+ */
+public class RestorableRandom extends Random
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	/** The state of the generator, set by the super constructor via setSeed() */
+	private long state;
+
+	/**
+	 * @param seed the initial seed.
+	 */
+	public RestorableRandom(long seed)
+	{
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed)
+	{
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int)(state >>> (48 - bits));
+	}
+
+	/**
+	 * Returns the current state. Unlike the seed passed to setSeed(), it
+	 * is not scrambled when passed to setState().
+	 *
+	 * @return the state
+	 */
+	public long getState()
+	{
+		return state;
+	}
+
+	/**
+	 * Restores the state previously returned by getState(). Note that the
+	 * cached value of nextGaussian() is not part of the state.
+	 *
+	 * @param state the state
+	 */
+	public void setState(long state)
+	{
+		this.state = state & MASK;
+	}
+}
@@ -0,0 +1,163 @@
+package ontologizer.calculation.util;
+
+/**
+ * Links from sources, e.g., terms, to targets, e.g., genes, in compressed
+ * sparse row form. The targets of all sources are stored back to back in a
+ * single array and the targets of source i can be found at the positions
+ * from offsets[i] (inclusive) to offsets[i+1] (exclusive). Compared to an
+ * array of arrays, iterating over the targets of a source touches only
+ * consecutive memory and no array headers.
+ *
+ * Instances are never modified after construction and can be shared by
+ * several threads.
+ */
+public final class CompressedLinks
+{
+	/** The start of the targets of each source, the last element is the total number of links */
+	private final int [] offsets;
+
+	/** The targets of all sources */
+	private final int [] targets;
+
+	private final int numberOfTargets;
+
+	private CompressedLinks(int [] offsets, int [] targets, int numberOfTargets)
+	{
+		this.offsets = offsets;
+		this.targets = targets;
+		this.numberOfTargets = numberOfTargets;
+	}
+
+	/**
+	 * Creates the compressed form of the given links.
+	 *
+	 * @param links the targets of each source.
+	 * @param numberOfTargets the number of targets, all targets are below this number.
+	 * @return the links
+	 */
+	public static CompressedLinks create(int [][] links, int numberOfTargets)
+	{
+		int [] offsets = new int[links.length + 1];
+		for (int i = 0; i < links.length; i++)
+			offsets[i + 1] = offsets[i] + links[i].length;
+
+		int [] targets = new int[offsets[links.length]];
+		for (int i = 0; i < links.length; i++)
+			System.arraycopy(links[i], 0, targets, offsets[i], links[i].length);
+
+		return new CompressedLinks(offsets, targets, numberOfTargets);
+	}
+
+	/**
+	 * Creates the compressed form of the given links. The number of
+	 * targets is determined by the largest target.
+	 *
+	 * @param links the targets of each source.
+	 * @return the links
+	 */
+	public static CompressedLinks create(int [][] links)
+	{
+		int max = -1;
+		for (int [] l : links)
+			for (int t : l)
+				if (t > max) max = t;
+		return create(links, max + 1);
+	}
+
+	/**
+	 * Returns the reverse links, i.e., the links from the targets to the
+	 * sources. The sources of each target are in ascending order.
+	 *
+	 * @return the reverse links
+	 */
+	public CompressedLinks transpose()
+	{
+		int numberOfSources = getNumberOfSources();
+		int [] reverseOffsets = new int[numberOfTargets + 1];
+
+		for (int i = 0; i < targets.length; i++)
+			reverseOffsets[targets[i] + 1]++;
+		for (int t = 0; t < numberOfTargets; t++)
+			reverseOffsets[t + 1] += reverseOffsets[t];
+
+		int [] sources = new int[targets.length];
+		int [] next = new int[numberOfTargets];
+		System.arraycopy(reverseOffsets, 0, next, 0, numberOfTargets);
+
+		for (int s = 0; s < numberOfSources; s++)
+			for (int i = offsets[s]; i < offsets[s + 1]; i++)
+				sources[next[targets[i]]++] = s;
+
+		return new CompressedLinks(reverseOffsets, sources, numberOfSources);
+	}
+
+	/**
+	 * @return the number of sources.
+	 */
+	public int getNumberOfSources()
+	{
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @return the number of targets.
+	 */
+	public int getNumberOfTargets()
+	{
+		return numberOfTargets;
+	}
+
+	/**
+	 * @return the total number of links.
+	 */
+	public int getNumberOfLinks()
+	{
+		return targets.length;
+	}
+
+	/**
+	 * Returns the offsets into the array returned by getTargets(). The
+	 * array must not be modified.
+	 *
+	 * @return the offsets of the targets of each source followed by the
+	 *  total number of links.
+	 */
+	public int [] getOffsets()
+	{
+		return offsets;
+	}
+
+	/**
+	 * Returns the targets of all sources back to back. The array must not
+	 * be modified.
+	 *
+	 * @return the targets
+	 */
+	public int [] getTargets()
+	{
+		return targets;
+	}
+
+	/**
+	 * Returns the number of targets of the given source.
+	 *
+	 * @param source the source
+	 * @return the number of targets
+	 */
+	public int getNumberOfTargets(int source)
+	{
+		return offsets[source + 1] - offsets[source];
+	}
+
+	/**
+	 * Returns the given target of the given source.
+	 *
+	 * @param source the source
+	 * @param i the index of the target within the source
+	 * @return the target
+	 */
+	public int getTarget(int source, int i)
+	{
+		return targets[offsets[source] + i];
+	}
+}
@@ -1,5 +1,16 @@
 package ontologizer.statistics;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import ontologizer.statistics.ResamplingExecutor.INestedSampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.INestedSampleProcessorFactory;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
+import ontologizer.statistics.ResamplingExecutor.ISampleProgress;
+
 public abstract class AbstractResamplingTestCorrection extends AbstractTestCorrection
 	implements IResampling
 {
@@ -9,6 +20,21 @@ public abstract class AbstractResamplingTestCorrection extends AbstractTestCorre
 	/** Used for progress update */
 	private IResamplingProgress progress;
 
+	/** The master seed of the samples, 0 means that a random one is chosen */
+	private long seed;
+
+	/** Number of threads used for resampling */
+	private int numberOfThreads = 1;
+
+	/** Where samples are persisted across runs, may be null */
+	private ResamplingDiskCache diskCache;
+
+	/** Decides when resampling can be stopped early, may be null */
+	protected SequentialStopping sequentialStopping;
+
+	/** The sizes of the study sets that are going to be corrected, in ascending order */
+	private int [] studySetSizes = new int[0];
+
 	/**
 	 * Set the number of resampling steps.
 	 */
@@ -25,6 +51,216 @@ public abstract class AbstractResamplingTestCorrection extends AbstractTestCorre
 		return numberOfResamplingSteps;
 	}
 
+	/**
+	 * Set the seed from which the random samples are derived. Given the
+	 * same seed, the same samples are drawn regardless of the number of
+	 * threads.
+	 *
+	 * @param seed the seed or 0 if a random seed should be chosen for each
+	 *  resampling.
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the seed or 0 if a random seed is chosen for each resampling.
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * Set the number of threads that are used for resampling.
+	 *
+	 * @param numberOfThreads the number of threads, a value below 2 means
+	 *  that the samples are calculated by the calling thread.
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * @return the number of threads that are used for resampling.
+	 */
+	public int getNumberOfThreads()
+	{
+		return numberOfThreads;
+	}
+
+	/**
+	 * Enables the sequential stopping of the resampling. Corrections that
+	 * support it draw samples in batches and stop as soon as the adjusted
+	 * p-values of all terms are decided. The number of samples of each term
+	 * is reported as PValue.samples. Other corrections ignore the setting.
+	 *
+	 * @param sequentialStopping the rule or null to always draw
+	 *  numberOfResamplingSteps samples.
+	 */
+	public void setSequentialStopping(SequentialStopping sequentialStopping)
+	{
+		this.sequentialStopping = sequentialStopping;
+	}
+
+	/**
+	 * @return the rule for stopping early or null.
+	 */
+	public SequentialStopping getSequentialStopping()
+	{
+		return sequentialStopping;
+	}
+
+	/**
+	 * Set the cache in which corrections that keep their samples persist
+	 * them, so later runs can skip the resampling. Samples are only reused
+	 * if the seed, the number of resampling steps and the fingerprint of
+	 * the p-value calculation are the same.
+	 *
+	 * @param diskCache the cache or null if samples should not be persisted.
+	 */
+	public void setDiskCache(ResamplingDiskCache diskCache)
+	{
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * @return the cache in which samples are persisted, or null.
+	 */
+	public ResamplingDiskCache getDiskCache()
+	{
+		return diskCache;
+	}
+
+	/**
+	 * Announces the sizes of the study sets that are going to be corrected.
+	 * Corrections that keep samples for each study set size use this to
+	 * draw the samples of several sizes in a single pass, provided that the
+	 * p-value calculation supports nested sampling. Other corrections
+	 * ignore the sizes.
+	 *
+	 * @param sizes the sizes of the study sets, duplicates are ignored.
+	 */
+	public void setStudySetSizes(Collection<Integer> sizes)
+	{
+		TreeSet<Integer> sortedSizes = new TreeSet<Integer>(sizes);
+		studySetSizes = new int[sortedSizes.size()];
+		int i = 0;
+		for (int size : sortedSizes)
+			studySetSizes[i++] = size;
+	}
+
+	/**
+	 * @return the announced sizes of the study sets in ascending order. The
+	 *  array must not be modified.
+	 */
+	public int [] getStudySetSizes()
+	{
+		return studySetSizes;
+	}
+
+	/**
+	 * Returns whether random study sets of several sizes can be drawn
+	 * together for the given calculation.
+	 *
+	 * @param pValueCalculation the p-value calculation
+	 * @return whether resampleNested() can be called for the calculation.
+	 */
+	protected static boolean supportsNestedSampling(IPValueCalculation pValueCalculation)
+	{
+		return pValueCalculation instanceof INestedPValueCalculation &&
+			((INestedPValueCalculation)pValueCalculation).supportsNestedSampling();
+	}
+
+	/**
+	 * Returns the key under which the samples for the given calculation
+	 * are persisted.
+	 *
+	 * @param pValueCalculation the calculation
+	 * @return the key or null if samples are not persisted.
+	 */
+	protected String getDiskCacheKey(IPValueCalculation pValueCalculation)
+	{
+		if (diskCache == null)
+			return null;
+		return ResamplingDiskCache.createKey(this, pValueCalculation);
+	}
+
+	/**
+	 * Calculates the p-values of numberOfResamplingSteps random samples
+	 * and passes them to processors. The progress is updated accordingly.
+	 *
+	 * @param pValueCalculation the p-value calculation
+	 * @param factory creates the processors, one for each thread.
+	 * @return the processors whose results need to be merged by the caller.
+	 */
+	protected <T extends ISampleProcessor> List<T> resample(IPValueCalculation pValueCalculation, ISampleProcessorFactory<T> factory)
+	{
+		initProgress(numberOfResamplingSteps);
+		return resample(pValueCalculation, 0, numberOfResamplingSteps, createMasterSeed(), factory);
+	}
+
+	/**
+	 * Calculates the p-values of a range of random samples and passes them
+	 * to processors. The progress is updated but not initialized.
+	 *
+	 * @param pValueCalculation the p-value calculation
+	 * @param firstSample the index of the first sample
+	 * @param numberOfSamples the number of samples
+	 * @param masterSeed the master seed, which must be the same for all
+	 *  ranges of a resampling.
+	 * @param factory creates the processors, one for each thread.
+	 * @return the processors whose results need to be merged by the caller.
+	 */
+	protected <T extends ISampleProcessor> List<T> resample(IPValueCalculation pValueCalculation, final int firstSample, int numberOfSamples,
+			long masterSeed, ISampleProcessorFactory<T> factory)
+	{
+		ResamplingExecutor executor = new ResamplingExecutor(numberOfThreads);
+		return executor.execute(pValueCalculation, firstSample, numberOfSamples, masterSeed, factory, new ISampleProgress()
+		{
+			public void update(int processedSamples)
+			{
+				updateProgress(firstSample + processedSamples);
+			}
+		});
+	}
+
+	/**
+	 * Calculates the p-values of numberOfResamplingSteps random samples for
+	 * each of the given study set sizes and passes them to processors. The
+	 * study sets of a sample are nested, i.e., derived from the same random
+	 * permutation of the population. The progress is updated accordingly.
+	 *
+	 * @param pValueCalculation the p-value calculation, which must support
+	 *  nested sampling.
+	 * @param sizes the study set sizes in ascending order.
+	 * @param factory creates the processors, one for each thread.
+	 * @return the processors whose results need to be merged by the caller.
+	 */
+	protected <T extends INestedSampleProcessor> List<T> resampleNested(IPValueCalculation pValueCalculation, int [] sizes,
+			INestedSampleProcessorFactory<T> factory)
+	{
+		initProgress(numberOfResamplingSteps);
+		ResamplingExecutor executor = new ResamplingExecutor(numberOfThreads);
+		return executor.executeNested((INestedPValueCalculation)pValueCalculation, sizes, numberOfResamplingSteps, createMasterSeed(), factory, new ISampleProgress()
+		{
+			public void update(int processedSamples)
+			{
+				updateProgress(processedSamples);
+			}
+		});
+	}
+
+	/**
+	 * @return the master seed for a new resampling.
+	 */
+	protected long createMasterSeed()
+	{
+		return seed != 0 ? seed : new Random().nextLong();
+	}
+
 	/**
 	 * Sets the progress update instance used for
 	 * progress notifications.
@@ -87,6 +87,52 @@ public abstract class AbstractTestCorrection
 		return filteredP;
 	}
 
+	/**
+	 * Returns the indices of all raw p values that don't have the
+	 * ignoreAtMTC attribute set in ascending order of the p values.
+	 * Indices of equal p values retain their order.
+	 *
+	 * @param p array of p values
+	 * @return the indices into p of the relevant p values, sorted.
+	 */
+	protected static int [] getSortedRelevantIndices(PValue [] p)
+	{
+		double [] keys = new double[p.length];
+		int pvalsCount = 0;
+
+		for (int i=0;i<p.length;i++)
+		{
+			keys[i] = p[i].p;
+			if (!p[i].ignoreAtMTC) pvalsCount++;
+		}
+
+		int [] order = new int[pvalsCount];
+		for (int i=0,j=0;i<p.length;i++)
+			if (!p[i].ignoreAtMTC) order[j++] = i;
+
+		IndexSorter.sort(keys, order, pvalsCount);
+		return order;
+	}
+
+	/**
+	 * Calculates the p-values of a random data set and stores them in the
+	 * given buffer. If supported by the p-value calculation, no PValue
+	 * objects are created.
+	 *
+	 * @param pValueCalculation the p-value calculation
+	 * @param buffer the buffer to which the p-values are written
+	 */
+	protected static void calculateRandomPValues(IPValueCalculation pValueCalculation, PValueBuffer buffer)
+	{
+		if (pValueCalculation instanceof IBufferedPValueCalculation)
+		{
+			((IBufferedPValueCalculation)pValueCalculation).calculateRandomPValues(buffer, null);
+		} else
+		{
+			buffer.set(pValueCalculation.calculateRandomPValues(null));
+		}
+	}
+
 	/**
 	 * Enforce monotony constrains of the p values (i.e. that
 	 * adjusted p values of increasing p values is increasing
@@ -107,4 +153,26 @@ public abstract class AbstractTestCorrection
 		for (int i=m-2;i>=0;i--)
 			p[i].p_adjusted = Math.min(p[i].p_adjusted,p[i+1].p_adjusted);
 	}
+
+	/**
+	 * Enforce monotony constrains of the p values like
+	 * enforcePValueMonotony(PValue []) but for p values that are
+	 * sorted via an index.
+	 *
+	 * @param p specifies the p values array.
+	 * @param order the indices into p in ascending order of the p
+	 *        values, as returned by getSortedRelevantIndices().
+	 */
+	public static void enforcePValueMonotony(PValue [] p, int [] order)
+	{
+		int m = order.length;
+
+		/* Do nothing if there are not enough pvalues */
+		if (m<2) return;
+
+		p[order[m-1]].p_adjusted = Math.min(p[order[m-1]].p_adjusted,1);
+
+		for (int i=m-2;i>=0;i--)
+			p[order[i]].p_adjusted = Math.min(p[order[i]].p_adjusted,p[order[i+1]].p_adjusted);
+	}
 }
@@ -1,7 +1,5 @@
 package ontologizer.statistics;
 
-import java.util.Arrays;
-
 /**
  *
  * This class implements the BenjaminiHochberg multiple test
@@ -24,18 +22,18 @@ public class BenjaminiHochberg extends AbstractSimpleTestCorrection
 	public PValue[] adjustPValues(IPValueCalculation pValueCalculation, IPValueCalculationProgress progress)
 	{
 		PValue [] p = pValueCalculation.calculateRawPValues(progress);
-		PValue [] relevantP = getRelevantRawPValues(p);
-		Arrays.sort(relevantP);
-		int n = relevantP.length;
+		int [] order = getSortedRelevantIndices(p);
+		int n = order.length;
 
-		/* Adjust the p values according to BH. Note that all object
-		 * within relevantP also are objects within p!
+		/* Adjust the p values according to BH. Note that order
+		 * contains the indices of the relevant p values in ascending order.
 		 */
 		for (int r=0;r<n;r++)
 		{
-			relevantP[r].p_adjusted = relevantP[r].p * n / (r + 1);
+			PValue q = p[order[r]];
+			q.p_adjusted = q.p * n / (r + 1);
 		}
-		enforcePValueMonotony(relevantP);
+		enforcePValueMonotony(p, order);
 		return p;
 	}
 
@@ -1,7 +1,5 @@
 package ontologizer.statistics;
 
-import java.util.Arrays;
-
 /**
  *
  * This class implements the Benjamini-Yekutieli multiple test
@@ -17,22 +15,22 @@ public class BenjaminiYekutieli extends AbstractSimpleTestCorrection
 	public PValue[] adjustPValues(IPValueCalculation pValueCalculation, IPValueCalculationProgress progress)
 	{
 		PValue [] p = pValueCalculation.calculateRawPValues(progress);
-		PValue [] relevantP = getRelevantRawPValues(p);
-		Arrays.sort(relevantP);
-		int n = relevantP.length;
+		int [] order = getSortedRelevantIndices(p);
+		int n = order.length;
 
 		double h = 0.0;
 		for (int l = 1;l<=n;l++)
 			h += 1.0/l;
 
-		/* Adjust the p values according to BY. Note that all object
-		 * within relevantP also are objects within p!
+		/* Adjust the p values according to BY. Note that order
+		 * contains the indices of the relevant p values in ascending order.
 		 */
 		for (int r=0;r<n;r++)
 		{
-			relevantP[r].p_adjusted = relevantP[r].p * n * h / (r + 1);
+			PValue q = p[order[r]];
+			q.p_adjusted = q.p * n * h / (r + 1);
 		}
-		enforcePValueMonotony(relevantP);
+		enforcePValueMonotony(p, order);
 		return p;
 	}
 
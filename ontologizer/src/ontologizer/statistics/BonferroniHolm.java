@@ -6,8 +6,6 @@
  */
 package ontologizer.statistics;
 
-import java.util.Arrays;
-
 /**
  * This class implements the Bonferroni-Holm (or step down) multiple test
  * correction.
@@ -24,17 +22,17 @@ public class BonferroniHolm extends AbstractSimpleTestCorrection
 	public PValue[] adjustPValues(IPValueCalculation pValueCalculation, IPValueCalculationProgress progress)
 	{
 		PValue [] p = pValueCalculation.calculateRawPValues(progress);
-		PValue [] relevantP = getRelevantRawPValues(p);
-		Arrays.sort(relevantP);
+		int [] order = getSortedRelevantIndices(p);
 
-		/* Adjust the p values. Note that all object within relevantP
-		 * also are objects within p!
+		/* Adjust the p values. Note that order contains the indices
+		 * of the relevant p values in ascending order.
 		 */
-		for (int i=0;i<relevantP.length;i++)
+		for (int i=0;i<order.length;i++)
 		{
-			relevantP[i].p_adjusted = relevantP[i].p * (relevantP.length - i);
+			PValue q = p[order[i]];
+			q.p_adjusted = q.p * (order.length - i);
 		}
-		enforcePValueMonotony(relevantP);
+		enforcePValueMonotony(p, order);
 		return p;
 	}
 
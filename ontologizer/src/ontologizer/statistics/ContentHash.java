@@ -0,0 +1,108 @@
+package ontologizer.statistics;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Builds a hash over a sequence of primitive values and strings. Two
+ * sequences that differ are very unlikely to get the same hash, hence the
+ * hash can be used as a key for data that is derived from the sequence.
+ */
+public class ContentHash
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final char [] HEX = "0123456789abcdef".toCharArray();
+
+	private final MessageDigest digest;
+
+	private final byte [] buf = new byte[8];
+
+	public ContentHash()
+	{
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public ContentHash add(long v)
+	{
+		for (int i = 0; i < 8; i++)
+			buf[i] = (byte)(v >>> (56 - 8 * i));
+		digest.update(buf, 0, 8);
+		return this;
+	}
+
+	public ContentHash add(int v)
+	{
+		for (int i = 0; i < 4; i++)
+			buf[i] = (byte)(v >>> (24 - 8 * i));
+		digest.update(buf, 0, 4);
+		return this;
+	}
+
+	public ContentHash add(double v)
+	{
+		return add(Double.doubleToLongBits(v));
+	}
+
+	public ContentHash add(boolean v)
+	{
+		digest.update((byte)(v ? 1 : 0));
+		return this;
+	}
+
+	/**
+	 * Adds the given string. The length is added as well, so the strings
+	 * "ab", "c" lead to a different hash than "a", "bc".
+	 *
+	 * @param s the string to add, may be null.
+	 * @return this object
+	 */
+	public ContentHash add(String s)
+	{
+		if (s == null)
+			return add(-1);
+
+		byte [] bytes = s.getBytes(UTF8);
+		add(bytes.length);
+		digest.update(bytes);
+		return this;
+	}
+
+	/**
+	 * Adds the given array including its length.
+	 *
+	 * @param v the array to add
+	 * @return this object
+	 */
+	public ContentHash add(int [] v)
+	{
+		add(v.length);
+		for (int i = 0; i < v.length; i++)
+			add(v[i]);
+		return this;
+	}
+
+	/**
+	 * Finishes the hash. The object must not be used afterwards.
+	 *
+	 * @return the hash as a string of hexadecimal digits.
+	 */
+	public String finish()
+	{
+		byte [] hash = digest.digest();
+		char [] str = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++)
+		{
+			str[2 * i] = HEX[(hash[i] >>> 4) & 0xf];
+			str[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(str);
+	}
+}
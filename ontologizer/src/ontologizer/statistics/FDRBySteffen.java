@@ -2,16 +2,23 @@ package ontologizer.statistics;
 
 import java.util.Arrays;
 
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
+
 /**
+ * The FDR controlling MTC as proposed by Sharan/Yekutieli. The p-values of
+ * the samples of a batch are pooled into a single array in which each sample
+ * occupies a sorted segment. The samples can be drawn by several threads.
  *
  * @author grossman
  *
  */
-public class FDRBySteffen extends AbstractTestCorrection
-						   implements IResampling
+public class FDRBySteffen extends AbstractResamplingTestCorrection
 {
-	/** Specifies the number of resampling steps */
-	private int numberOfResamplingSteps = 1000;
+	public FDRBySteffen()
+	{
+		numberOfResamplingSteps = 1000;
+	}
 
 	public String getDescription()
 	{
@@ -33,112 +40,70 @@ public class FDRBySteffen extends AbstractTestCorrection
 		Arrays.sort(rawP);
 
 		int m = rawP.length;
-
-		/* this will hold the sorted resampled p-values*/
-		double [][] pValues = new double[numberOfResamplingSteps][m];
-
-		/* create them */
-		for (int b=0; b < numberOfResamplingSteps; b++)
+		double [] sortedRawP = new double[m];
+		for (i=0; i < m; i++)
+			sortedRawP[i] = rawP[i].p;
+
+		/* this will hold the resampled p-values, each sample sorted */
+		final FDREstimator.PooledSamples samples = new FDREstimator.PooledSamples(m);
+
+		/* the estimates of the current samples, indexed like the sorted raw p-values */
+		double [] fdr = new double[m];
+		double [] standardError = new double[m];
+		boolean [] decided = new boolean[m];
+		int undecided = m;
+		int processed = 0;
+		long masterSeed = createMasterSeed();
+
+		/* Each sample is written to its own segment, so the threads need no synchronization */
+		ISampleProcessorFactory<ISampleProcessor> factory = new ISampleProcessorFactory<ISampleProcessor>()
 		{
-			/* Compute raw p values of "permuted" data */
-			PValue [] randomRawP = pvalues.calculateRandomPValues(null);
-			Arrays.sort(randomRawP);
-
-			assert(randomRawP.length == m);
-
-			for (i=0;i<m;i++)
-				pValues[b][i] = randomRawP[i].p;
-
-			System.out.print("created " + (b+1) + " samples out of " + numberOfResamplingSteps + "\r");
-		}
-		System.out.println();
-
-		/* For every P-value determine the adjusted P-value */
-
-		// we go along the sorted p-values
-		int lastObservedRejections = 0;
-		double lastPValue = rawP[0].p;
-
-		/* This will hold the number of rejected tests in the samples at the current level.
-		 * We assume that sampled p-values are sorted! */
-		int [] lastSampleRejects = new int[numberOfResamplingSteps];
-		int lastTotalSampleRejects = 0;
-		// initializing
-		for (int b=0; b < numberOfResamplingSteps; b++) {
-			lastSampleRejects[b] = 0;
-			while (pValues[b][lastSampleRejects[b]] < lastPValue) {
-				lastSampleRejects[b]++;
+			public ISampleProcessor create()
+			{
+				return new ISampleProcessor()
+				{
+					public void process(int sample, PValueBuffer randomRawP)
+					{
+						samples.set(sample, randomRawP.p);
+					}
+				};
 			}
-			lastTotalSampleRejects += lastSampleRejects[b];
-		}
-
-		double lastFDR = 0.0;
-		for (int b=0; b < numberOfResamplingSteps; b++) {
-			lastFDR +=
-				((double)lastSampleRejects[b])/(lastSampleRejects[b] + lastObservedRejections - ((double)lastTotalSampleRejects)/numberOfResamplingSteps);
-		}
-		if (Double.isNaN(lastFDR)) lastFDR = 0;
-		else lastFDR /= numberOfResamplingSteps;
+		};
 
+		System.out.println("Sampling " + numberOfResamplingSteps + " random study sets\nThis may take a while...");
+		initProgress(numberOfResamplingSteps);
 
-		i=0;
-
-		while (i < m) // we increment i++ in the loop
+		/* Without sequential stopping, all samples are drawn in a single batch */
+		while (processed < numberOfResamplingSteps && undecided > 0)
 		{
-			//System.out.println("Before: m: " + m + "\ti: " + i + "\tlast P: " + lastPValue + "\tlastObservedRejections : " + lastObservedRejections);
-			// we take old values until something happens
-			int lc = 0;
-			while (i < m && rawP[i].p <= lastPValue)
-			{
-				rawP[i].p_adjusted = lastFDR;
-				lc++;
-				i++;
-			}
+			int batch = numberOfResamplingSteps - processed;
+			if (sequentialStopping != null)
+				batch = sequentialStopping.getNextBatchSize(processed, numberOfResamplingSteps);
 
-			// we need an emergency exit...
-			if (i == m) break;
+			samples.grow(batch);
+			resample(pvalues, processed, batch, masterSeed, factory);
+			processed += batch;
 
-			// update p-value
-			lastPValue = rawP[i].p;
+			FDREstimator.estimate(sortedRawP, samples, processed, fdr, standardError);
 
-			// update counts
-			lastObservedRejections += lc;
-			lastTotalSampleRejects = 0;
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				while (pValues[b][lastSampleRejects[b]] < lastPValue) {
-					lastSampleRejects[b]++;
+			for (i=0; i < m; i++)
+			{
+				if (decided[i]) continue;
+
+				rawP[i].p_adjusted = fdr[i];
+				rawP[i].samples = processed;
+				if (sequentialStopping != null && sequentialStopping.isDecided(fdr[i], standardError[i], processed))
+				{
+					decided[i] = true;
+					undecided--;
 				}
-				lastTotalSampleRejects += lastSampleRejects[b];
 			}
-
-			// update FDR
-			lastFDR = 0.0;
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				lastFDR +=
-					(double)lastSampleRejects[b]/(lastSampleRejects[b] + lastObservedRejections - (double)lastTotalSampleRejects/numberOfResamplingSteps);
-			}
-			if (Double.isNaN(lastFDR)) lastFDR = 0;
-			else lastFDR /= numberOfResamplingSteps;
-/*			System.out.println("After: m: " + m
-					+ "\ti: " + i
-					+ "\tlast P: " + lastPValue
-					+ "\tlastObservedRejections: " + lastObservedRejections
-					+ "\tlastFDR: " + lastFDR);
-*/		}
+		}
+		System.out.println("Done after " + processed + " samples!");
 
 		return rawP;
 	}
 
-	public void setNumberOfResamplingSteps(int n)
-	{
-		numberOfResamplingSteps = n;
-	}
-
-	public int getNumberOfResamplingSteps()
-	{
-		return numberOfResamplingSteps;
-	}
-
 	public void resetCache()
 	{
 		// no cache, nothing to do here!
@@ -1,19 +1,27 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
 
 /**
+ * The FDR controlling MTC as proposed by Sharan/Yekutieli that keeps the
+ * sampled p-values of each study set size. The samples are kept sorted in
+ * a PvalueSetStore, whose p-values are accessed directly, i.e., without
+ * creating PValue objects.
  *
  * @author grossman
  *
  */
-public class FDRBySteffenCached extends AbstractTestCorrection
-						   implements IResampling
+public class FDRBySteffenCached extends AbstractResamplingTestCorrection
 {
-	/** Specifies the number of resampling steps */
-	private int numberOfResamplingSteps = 1000;
-	private HashMap<Integer,PvalueSetStore> sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+	private PvalueSetStoreCache sampledPValuesPerSize = new PvalueSetStoreCache();
+
+	public FDRBySteffenCached()
+	{
+		numberOfResamplingSteps = 1000;
+	}
 
 	public String getDescription()
 	{
@@ -39,121 +47,69 @@ public class FDRBySteffenCached extends AbstractTestCorrection
 		int studySetSize = pvalues.currentStudySetSize();
 
 		/* holds the sampled random p values for the current study set size */
-		PvalueSetStore randomSampledPValues;
+		PvalueSetStore randomSampledPValues = sampledPValuesPerSize.get(studySetSize);
 
-		if (sampledPValuesPerSize.containsKey(studySetSize)) {
+		if (randomSampledPValues != null) {
 			System.out.println("Using available samples for study set size " + studySetSize);
-			randomSampledPValues = sampledPValuesPerSize.get(studySetSize);
 		} else {
 			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
-			randomSampledPValues = new PvalueSetStore(numberOfResamplingSteps,m);
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* Compute raw p values of "permuted" data */
-				PValue [] randomRawP = pvalues.calculateRandomPValues(null);
-				Arrays.sort(randomRawP);
-
-				assert(randomRawP.length == m);
-				randomSampledPValues.add(randomRawP);
-
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
-			}
-			System.out.println();
+			final PvalueSetStore store = new PvalueSetStore(numberOfResamplingSteps,m);
+
+			/* Each thread sorts the p-values of its samples outside of the lock.
+			 * The order of the samples depends on the scheduling of the threads
+			 * but the estimates don't */
+			resample(pvalues, new ISampleProcessorFactory<ISampleProcessor>()
+			{
+				public ISampleProcessor create()
+				{
+					return new ISampleProcessor()
+					{
+						private final long [] sorted = new long[store.getSetSize()];
+
+						public void process(int sample, PValueBuffer randomRawP)
+						{
+							int n = PvalueSetStore.sort(randomRawP, sorted);
+							synchronized (store)
+							{
+								store.addSorted(sorted, n);
+							}
+						}
+					};
+				}
+			});
+			randomSampledPValues = store;
 			sampledPValuesPerSize.put(studySetSize,randomSampledPValues);
 		}
 
 		/* For every P-value determine the adjusted P-value */
+		double [] sortedRawP = new double[m];
+		for (i=0; i < m; i++)
+			sortedRawP[i] = rawP[i].p;
 
-		// we go along the sorted p-values
-		int lastObservedRejections = 0;
-		double lastPValue = rawP[0].p;
-
-		/* This will hold the number of rejected tests in the samples at the current level.
-		 * We assume that sampled p-values are sorted! */
-		int [] lastSampleRejects = new int[numberOfResamplingSteps];
-		int lastTotalSampleRejects = 0;
-		// initializing
-		int b=0;
-		for (PValue [] randomRawP : randomSampledPValues) {
-			lastSampleRejects[b] = 0;
-			while (randomRawP[lastSampleRejects[b]].p < lastPValue) {
-				lastSampleRejects[b]++;
-			}
-			lastTotalSampleRejects += lastSampleRejects[b];
-			b++;
-		}
-
-		double lastFDR = 0.0;
-		for (b=0; b < numberOfResamplingSteps; b++) {
-			lastFDR +=
-				((double)lastSampleRejects[b])/(lastSampleRejects[b] + lastObservedRejections - ((double)lastTotalSampleRejects)/numberOfResamplingSteps);
-		}
-		if (Double.isNaN(lastFDR)) lastFDR = 0;
-		else lastFDR /= numberOfResamplingSteps;
+		double [] fdr = new double[m];
+		FDREstimator.estimate(sortedRawP, new FDREstimator.StoredSamples(randomSampledPValues), randomSampledPValues.size(), fdr, null);
 
-
-		i=0;
-
-		while (i < m) // we increment i++ in the loop
-		{
-			//System.out.println("Before: m: " + m + "\ti: " + i + "\tlast P: " + lastPValue + "\tlastObservedRejections : " + lastObservedRejections);
-			// we take old values until something happens
-			int lc = 0;
-			while (i < m && rawP[i].p <= lastPValue)
-			{
-				rawP[i].p_adjusted = lastFDR;
-				lc++;
-				i++;
-			}
-
-			// we need an emergency exit...
-			if (i == m) break;
-
-			// update p-value
-			lastPValue = rawP[i].p;
-
-			// update counts
-			lastObservedRejections += lc;
-			lastTotalSampleRejects = 0;
-			b=0;
-			for (PValue [] randomRawP : randomSampledPValues) {
-				while (randomRawP[lastSampleRejects[b]].p < lastPValue) {
-					lastSampleRejects[b]++;
-				}
-				lastTotalSampleRejects += lastSampleRejects[b];
-				b++;
-			}
-
-			// update FDR
-			lastFDR = 0.0;
-			for (b=0; b < numberOfResamplingSteps; b++) {
-				lastFDR +=
-					(double)lastSampleRejects[b]/(lastSampleRejects[b] + lastObservedRejections - (double)lastTotalSampleRejects/numberOfResamplingSteps);
-			}
-			if (Double.isNaN(lastFDR)) lastFDR = 0;
-			else lastFDR /= numberOfResamplingSteps;
-/*			System.out.println("After: m: " + m
-					+ "\ti: " + i
-					+ "\tlast P: " + lastPValue
-					+ "\tlastObservedRejections: " + lastObservedRejections
-					+ "\tlastFDR: " + lastFDR);
-*/		}
+		for (i=0; i < m; i++)
+			rawP[i].p_adjusted = fdr[i];
 
 		return rawP;
 	}
 
+	@Override
 	public void setNumberOfResamplingSteps(int n)
 	{
-		numberOfResamplingSteps = n;
-	}
+		if (n != numberOfResamplingSteps)
+		{
+			numberOfResamplingSteps = n;
 
-	public int getNumberOfResamplingSteps()
-	{
-		return numberOfResamplingSteps;
+			/* Clear the cache */
+			sampledPValuesPerSize.clear();
+		}
 	}
 
 	public void resetCache()
 	{
-		sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+		sampledPValuesPerSize.clear();
 	}
 
 	public int getSizeTolerance()
@@ -0,0 +1,254 @@
+package ontologizer.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the resampling based FDR as proposed by Sharan/Yekutieli from
+ * the sampled p-values. The p-values of each sample must be sorted, so the
+ * number of rejections of a sample at increasing thresholds can be
+ * determined by advancing a single position per sample.
+ */
+final class FDREstimator
+{
+	/**
+	 * The p-values of the samples, each sample sorted in ascending order.
+	 */
+	static abstract class SortedSamples
+	{
+		/**
+		 * @param sample the index of the sample
+		 * @return the number of p-values of the sample.
+		 */
+		abstract int getNumberOfEntries(int sample);
+
+		/**
+		 * @param sample the index of the sample
+		 * @param entry the index of the entry within the sample
+		 * @return the p-value
+		 */
+		abstract double getP(int sample, int entry);
+
+		/**
+		 * Returns the number of p-values of the sample that are smaller than
+		 * the threshold. The search starts at the given entry by doubling the
+		 * distance until the threshold is passed and is finished by a binary
+		 * search, so a large jump costs only logarithmic time.
+		 *
+		 * @param sample the index of the sample
+		 * @param from the number of p-values that are known to be smaller.
+		 * @param threshold the threshold
+		 * @return the number of p-values smaller than the threshold
+		 */
+		int countBelow(int sample, int from, double threshold)
+		{
+			int n = getNumberOfEntries(sample);
+			int lo = from;
+			int hi = from;
+			int step = 1;
+
+			/* All entries before lo are below the threshold, the one at hi is not (if any) */
+			while (hi < n && getP(sample, hi) < threshold)
+			{
+				lo = hi + 1;
+				hi += step;
+				step <<= 1;
+			}
+			if (hi > n) hi = n;
+
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (getP(sample, mid) < threshold) lo = mid + 1;
+				else hi = mid;
+			}
+			return lo;
+		}
+	}
+
+	/**
+	 * Samples of equal size whose p-values are pooled into arrays. Room for
+	 * the samples is made batch by batch, so the memory follows the number
+	 * of samples that are actually drawn.
+	 */
+	static final class PooledSamples extends SortedSamples
+	{
+		private final int setSize;
+
+		/** The pool of each sample */
+		private double [][] pools = new double[0][];
+
+		/** The entry of the pool at which each sample starts */
+		private int [] offsets = new int[0];
+
+		/**
+		 * @param setSize the number of p-values per sample
+		 */
+		PooledSamples(int setSize)
+		{
+			this.setSize = setSize;
+		}
+
+		/**
+		 * Makes room for the given number of further samples. The samples
+		 * share a single pool unless the pool would exceed the maximal size
+		 * of an array. This must not be called while samples are set.
+		 *
+		 * @param numberOfSamples the number of further samples
+		 */
+		void grow(int numberOfSamples)
+		{
+			int capacity = pools.length;
+			int newCapacity = capacity + numberOfSamples;
+			int samplesPerPool = Math.max(1, Integer.MAX_VALUE / Math.max(1, setSize));
+
+			pools = Arrays.copyOf(pools, newCapacity);
+			offsets = Arrays.copyOf(offsets, newCapacity);
+
+			for (int start = capacity; start < newCapacity; start += samplesPerPool)
+			{
+				int n = Math.min(samplesPerPool, newCapacity - start);
+				double [] pool = new double[n * setSize];
+				for (int i = 0; i < n; i++)
+				{
+					pools[start + i] = pool;
+					offsets[start + i] = i * setSize;
+				}
+			}
+		}
+
+		/**
+		 * Sets the p-values of a sample for which room has been made. Different
+		 * samples can be set by different threads at the same time.
+		 *
+		 * @param sample the index of the sample
+		 * @param p the p-values, which don't need to be sorted.
+		 */
+		void set(int sample, double [] p)
+		{
+			double [] pool = pools[sample];
+			int offset = offsets[sample];
+			System.arraycopy(p, 0, pool, offset, setSize);
+			Arrays.sort(pool, offset, offset + setSize);
+		}
+
+		@Override
+		int getNumberOfEntries(int sample)
+		{
+			return setSize;
+		}
+
+		@Override
+		double getP(int sample, int entry)
+		{
+			return pools[sample][offsets[sample] + entry];
+		}
+	}
+
+	/**
+	 * Samples of a PvalueSetStore. As the p-values are kept with a lower
+	 * precision, the thresholds are brought to the same precision.
+	 */
+	static final class StoredSamples extends SortedSamples
+	{
+		private final PvalueSetStore store;
+
+		StoredSamples(PvalueSetStore store)
+		{
+			this.store = store;
+		}
+
+		@Override
+		int getNumberOfEntries(int sample)
+		{
+			return store.getNumberOfEntries(sample);
+		}
+
+		@Override
+		double getP(int sample, int entry)
+		{
+			return store.getP(sample, entry);
+		}
+
+		@Override
+		int countBelow(int sample, int from, double threshold)
+		{
+			return super.countBelow(sample, from, PvalueSetStore.round(threshold));
+		}
+	}
+
+	private FDREstimator()
+	{
+	}
+
+	/**
+	 * Estimates the FDR for each of the sorted raw p-values based on the
+	 * given number of samples. The FDR at a threshold is the mean over the
+	 * samples of the ratio of the sample's rejections to the sum of the
+	 * sample's rejections and the observed rejections minus the expected
+	 * number of false rejections.
+	 *
+	 * @param sortedRawP the raw p-values in ascending order
+	 * @param samples the sorted p-values of the samples
+	 * @param n the number of samples to consider
+	 * @param fdr the array to which the estimated FDRs are written.
+	 * @param standardError the array to which the standard errors of the
+	 *  estimates are written. May be null.
+	 */
+	static void estimate(double [] sortedRawP, SortedSamples samples, int n, double [] fdr, double [] standardError)
+	{
+		int m = sortedRawP.length;
+
+		/* This will hold the number of rejected tests in the samples at the current level */
+		int [] sampleRejects = new int[n];
+
+		/* The number of observed rejections at each threshold is the number of smaller raw p-values */
+		int i = 0;
+		while (i < m)
+		{
+			double threshold = sortedRawP[i];
+
+			// update counts
+			long totalSampleRejects = 0;
+			for (int b=0; b < n; b++)
+			{
+				sampleRejects[b] = samples.countBelow(b, sampleRejects[b], threshold);
+				totalSampleRejects += sampleRejects[b];
+			}
+
+			// update FDR, which is the mean of the per sample ratios
+			double meanSampleRejects = (double)totalSampleRejects/n;
+			double sum = 0.0;
+			double sumOfSquares = 0.0;
+			for (int b=0; b < n; b++)
+			{
+				double ratio = (double)sampleRejects[b]/(sampleRejects[b] + i - meanSampleRejects);
+				sum += ratio;
+				sumOfSquares += ratio * ratio;
+			}
+
+			double currentFDR;
+			double currentStandardError;
+			if (Double.isNaN(sum))
+			{
+				currentFDR = 0;
+				currentStandardError = 0;
+			} else
+			{
+				currentFDR = sum / n;
+				if (n > 1)
+					currentStandardError = Math.sqrt(Math.max(0, (sumOfSquares - n * currentFDR * currentFDR) / (n - 1)) / n);
+				else
+					currentStandardError = Double.NaN;
+			}
+
+			// all raw p-values up to the threshold share the estimate
+			while (i < m && sortedRawP[i] <= threshold)
+			{
+				fdr[i] = currentFDR;
+				if (standardError != null)
+					standardError[i] = currentStandardError;
+				i++;
+			}
+		}
+	}
+}
@@ -1,8 +1,9 @@
 package ontologizer.statistics;
 
-import java.util.Vector;
 import java.lang.Math;
 
+import ontologizer.calculation.util.Gamma;
+
 /**
  * Class with static methods to calculate probabilities according to the
  * hypergeometric distribution.
@@ -13,11 +14,19 @@ import java.lang.Math;
 public class Hypergeometric
 {
 
+	/** The initial size of the log factorial table if no size was specified */
+	private static final int DEFAULT_TABLE_SIZE = 1024;
+
 	/**
-	 * This Vector contains log factorials for each index value and acts as a
-	 * cache.
+	 * This array contains log factorials for each index value and acts as a
+	 * cache. The array is never modified once it has been published, it is only
+	 * replaced by a larger one if this instance is allowed to grow. Hence it can
+	 * be read by several threads without any locking.
 	 */
-	private Vector<Double> lfactorial;
+	private volatile double [] lfactorial;
+
+	/** Whether the table is grown on demand or whether lgamma is used for large values */
+	private final boolean growable;
 
 	/**
 	 * <P>
@@ -73,7 +82,23 @@ public class Hypergeometric
 		int np = (int) java.lang.Math.round(n * p); // Round to nearest int
 		int nq = (int) java.lang.Math.round(n * q);
 
-		double log_n_choose_k = lNchooseK(n, k);
+		return upperTail(np, nq, k, r, lNchooseK(n, k));
+	}
+
+	/**
+	 * Calculates the upper tail of the hypergeometric distribution, i.e.,
+	 * the probability to get r or more white balls when drawing k balls
+	 * without replacement from an urn with np white and nq black balls.
+	 *
+	 * @param np number of white balls in the urn
+	 * @param nq number of black balls in the urn
+	 * @param k number of balls drawn
+	 * @param r minimum number of white balls drawn
+	 * @param log_n_choose_k log of (np + nq choose k)
+	 * @return the probability
+	 */
+	private double upperTail(int np, int nq, int k, int r, double log_n_choose_k)
+	{
 		int top = k;
 		if (np < k)
 		{
@@ -96,7 +121,79 @@ public class Hypergeometric
 			}
 		}
 		return sum;
+	}
+
+	/**
+	 * Calculates the term-for-term p-values and the minimal attainable
+	 * p-values for many groups at once. The sizes of the population and
+	 * the study set are shared by all groups, hence all quantities that
+	 * depend only on them are calculated only once. No objects are
+	 * allocated, the results are written to the supplied arrays.
+	 *
+	 * The p-value of group i is the same as the one returned by
+	 * phypergeometric(n, annotatedPop[i] / n, k, annotatedStudy[i]), the
+	 * minimal p-value is the same as dhyper(annotatedPop[i], n,
+	 * annotatedPop[i], annotatedPop[i]).
+	 *
+	 * @param n number of population genes
+	 * @param k number of study genes
+	 * @param annotatedPop number of population genes in each group
+	 * @param annotatedStudy number of study genes in each group
+	 * @param p the array to which the p-values are written. May be null.
+	 * @param pMin the array to which the minimal attainable p-values are
+	 *  written. May be null.
+	 * @param length the number of groups to consider
+	 */
+	public void phypergeometric(int n, int k, int [] annotatedPop, int [] annotatedStudy, double [] p, double [] pMin, int length)
+	{
+		phypergeometric(n, k, annotatedPop, annotatedStudy, p, pMin, 0, length);
+	}
+
+	/**
+	 * Same as phypergeometric(int, int, int[], int[], double[], double[], int)
+	 * but considers only the groups within the given range.
+	 *
+	 * @param n number of population genes
+	 * @param k number of study genes
+	 * @param annotatedPop number of population genes in each group
+	 * @param annotatedStudy number of study genes in each group
+	 * @param p the array to which the p-values are written. May be null.
+	 * @param pMin the array to which the minimal attainable p-values are
+	 *  written. May be null.
+	 * @param from index of the first group to consider (inclusive)
+	 * @param to index of the last group to consider (exclusive)
+	 */
+	public void phypergeometric(int n, int k, int [] annotatedPop, int [] annotatedStudy, double [] p, double [] pMin, int from, int to)
+	{
+		if (p != null)
+		{
+			if (k >= n)
+			{
+				/* See phypergeometric() */
+				for (int i = from; i < to; i++)
+					p[i] = 1.0;
+			} else
+			{
+				double log_n_choose_k = lNchooseK(n, k);
 
+				for (int i = from; i < to; i++)
+				{
+					int np = annotatedPop[i];
+					int r = annotatedStudy[i];
+
+					if (r < 1) p[i] = 1.0;
+					else p[i] = upperTail(np, n - np, k, r, log_n_choose_k);
+				}
+			}
+		}
+
+		if (pMin != null)
+		{
+			/* Equals dhyper(M,n,M,M) as the first two binomial
+			 * coefficients are one */
+			for (int i = from; i < to; i++)
+				pMin[i] = Math.exp(-lNchooseK(n, annotatedPop[i]));
+		}
 	}
 
 	/**
@@ -135,6 +232,28 @@ public class Hypergeometric
 		return Math.exp(lNchooseK(M,x)+lNchooseK(N-M,n-x)-lNchooseK(N,n));
 	}
 
+	/**
+	 * Returns the smallest p-value that phypergeometric() can yield for the
+	 * given population, regardless of the number of study genes in the group.
+	 *
+	 * @param n number of population genes
+	 * @param np number of population genes in the group
+	 * @param k number of study genes
+	 * @return the minimal attainable p-value
+	 */
+	public double minimalAttainablePValue(int n, int np, int k)
+	{
+		if (k >= n)
+			return 1.0;
+
+		int top = Math.min(np, k);
+		if (top < 1)
+			return 1.0;
+
+		/* The upper tail at the maximum consists of a single term */
+		return dhyper(top, n, np, k);
+	}
+
 	/**
 	 * Calculates P(X &gt; x) where X is the hypergeometric distribution
 	 * with indices N,M,n. If lowerTail is set to true, then P(X &lt;= x)
@@ -183,41 +302,84 @@ public class Hypergeometric
 	}
 
 	/**
-	 * return the log factorial of i. Use a cache to avoid repeatedly
-	 * calculating this. If we have a cache miss, fill up all values from the
-	 * last valid cache value to the value we currently need.
+	 * Return the log factorial of i. The value is taken from a precomputed
+	 * table. If i is outside the table, the table is either extended or,
+	 * if the size of the table has been fixed at construction time, the
+	 * value is calculated via the lgamma function.
 	 */
 	public double logfact(int i)
 	{
-		/*
-		 * Make sure value is already in lfactorial. If not, calculate all
-		 * values up to that for i
-		 */
-		if (i > (lfactorial.size() - 1))
+		double [] lf = lfactorial;
+		if (i < lf.length)
+			return lf[i];
+		return logfactOutOfTable(i);
+	}
+
+	/**
+	 * Handle the case of logfact() in which the value is not within the
+	 * current table.
+	 *
+	 * @param i the argument
+	 * @return log(i!)
+	 */
+	private double logfactOutOfTable(int i)
+	{
+		if (!growable)
+			return Gamma.lgamma(i + 1.0);
+
+		/* Build a larger table and publish it. Concurrent callers may do the
+		 * same, in which case the work is simply done twice. */
+		double [] lf = lfactorial;
+		if (i >= lf.length)
 		{
-			for (int j = lfactorial.size(); j <= i; j++)
-			{
-				double lf = lfactorial.get(j - 1).doubleValue()
-						+ java.lang.Math.log(j);
-				lfactorial.add(j, new Double(lf));
-			}
+			lf = createTable(Math.max(i, lf.length * 2));
+			lfactorial = lf;
 		}
+		return lf[i];
+	}
+
+	/**
+	 * Creates a table of log factorials.
+	 *
+	 * @param maxN the maximum argument that should be covered by the table.
+	 * @return the table of size maxN + 1
+	 */
+	private static double [] createTable(int maxN)
+	{
+		double [] lf = new double[Math.max(maxN, 1) + 1];
 
-		return lfactorial.get(i).doubleValue();
+		/* 0! = 1, therefore let log(0)=0 */
+		lf[0] = 0.0;
+		lf[1] = 0.0;
+		for (int j = 2; j < lf.length; j++)
+			lf[j] = lf[j - 1] + java.lang.Math.log(j);
+		return lf;
 	}
 
 	/**
 	 * Initialize the object lfactorial, which will act as a cache for log
-	 * factorial calculations.
+	 * factorial calculations. The cache is extended when larger values are
+	 * requested.
 	 */
 	public Hypergeometric()
 	{
-
-		lfactorial = new Vector<Double>();
-		lfactorial.add(0, new Double(0.0)); /* 0! = 1, therefore let log(0)=0 */
-		lfactorial.add(1, new Double(0.0));
-
+		lfactorial = createTable(DEFAULT_TABLE_SIZE);
+		growable = true;
 	}
 
+	/**
+	 * Initialize the object with a table that covers all values up to
+	 * the given maximum, for instance the size of the population. The
+	 * table is never changed afterwards, values beyond the maximum are
+	 * calculated via the lgamma function. Such an instance can be shared
+	 * by all threads without any locking.
+	 *
+	 * @param maxN the largest argument for which the log factorial should
+	 *  be precomputed.
+	 */
+	public Hypergeometric(int maxN)
+	{
+		lfactorial = createTable(maxN);
+		growable = false;
+	}
 }
-
@@ -0,0 +1,37 @@
+package ontologizer.statistics;
+
+import java.util.Random;
+
+/**
+ * A p-value calculation that is able to write the p-values of random
+ * data sets into a reusable buffer rather than into newly created PValue
+ * objects. Resampling based multiple test corrections use this interface
+ * if available.
+ */
+public interface IBufferedPValueCalculation extends IPValueCalculation
+{
+	/**
+	 * Calculate the p values using a random dataset and store them in the
+	 * given buffer. The indices match the ones of
+	 * {@link IPValueCalculation#calculateRandomPValues(IPValueCalculationProgress)}.
+	 *
+	 * @param buffer the buffer to which the p-values are written. Its size
+	 *  must match {@link IPValueCalculation#getNumberOfPValues()}.
+	 * @param progress the interface for updating the progress
+	 */
+	void calculateRandomPValues(PValueBuffer buffer, IPValueCalculationProgress progress);
+
+	/**
+	 * Calculate the p values using a random dataset that is drawn with the
+	 * given source of randomness and store them in the given buffer. The
+	 * same state of the source leads to the same p-values. Implementations
+	 * must allow several threads to call this method at the same time as
+	 * long as each thread supplies its own buffer and source.
+	 *
+	 * @param rnd the source of randomness
+	 * @param buffer the buffer to which the p-values are written. Its size
+	 *  must match {@link IPValueCalculation#getNumberOfPValues()}.
+	 * @param progress the interface for updating the progress
+	 */
+	void calculateRandomPValues(Random rnd, PValueBuffer buffer, IPValueCalculationProgress progress);
+}
@@ -0,0 +1,19 @@
+package ontologizer.statistics;
+
+/**
+ * A p-value calculation that can describe the inputs on which its random
+ * p-values depend. Resampling based multiple test corrections can use
+ * this to reuse random p-values that have been stored by earlier runs.
+ */
+public interface IFingerprintedPValueCalculation extends IPValueCalculation
+{
+	/**
+	 * Returns a hash of everything the distribution of random p-values
+	 * depends on, e.g., the method, the population and the annotations. The
+	 * size of the study set and the source of randomness are not part of the
+	 * fingerprint.
+	 *
+	 * @return the fingerprint
+	 */
+	String getFingerprint();
+}
@@ -0,0 +1,61 @@
+package ontologizer.statistics;
+
+import java.util.Random;
+
+/**
+ * A p-value calculation that is able to calculate the p-values of random
+ * study sets of several sizes from a single random permutation of the
+ * population. The study set of size k consists of the first k genes of the
+ * permutation, so the study sets of the different sizes are nested and the
+ * annotation counts of a larger study set can be derived from the ones of
+ * the next smaller study set. Resampling based multiple test corrections
+ * that keep samples for each study set size use this interface to sample
+ * all sizes they are going to need in a single pass.
+ */
+public interface INestedPValueCalculation extends IBufferedPValueCalculation
+{
+	/**
+	 * Receives the p-values of the study sets derived from a permutation.
+	 */
+	public static interface ISizeProcessor
+	{
+		/**
+		 * Process the p-values of the study set of a size. The buffer is
+		 * reused for the next size.
+		 *
+		 * @param sizeIndex the index of the size within the array of sizes.
+		 * @param randomP the p-values of the study set.
+		 */
+		void process(int sizeIndex, PValueBuffer randomP);
+	}
+
+	/**
+	 * Returns whether nested sampling is possible. This is only the case if
+	 * the p-values of a random study set depend on nothing but the size of
+	 * the study set, in particular not on properties of the observed
+	 * study set.
+	 *
+	 * @return whether calculateNestedRandomPValues() can be called.
+	 */
+	boolean supportsNestedSampling();
+
+	/**
+	 * Draws a random permutation of the population with the given source of
+	 * randomness and calculates the p-values of the study sets that are
+	 * formed by the prefixes of the given sizes. For a single size, the
+	 * p-values are the same as the ones of
+	 * {@link IBufferedPValueCalculation#calculateRandomPValues(Random, PValueBuffer, IPValueCalculationProgress)}
+	 * for the same state of the source. Implementations must allow several
+	 * threads to call this method at the same time as long as each thread
+	 * supplies its own buffer and source.
+	 *
+	 * @param rnd the source of randomness
+	 * @param sizes the sizes of the study sets in ascending order.
+	 * @param buffer the buffer to which the p-values are written. Its size
+	 *  must match {@link IPValueCalculation#getNumberOfPValues()}.
+	 * @param processor receives the p-values of each size in the order of
+	 *  the sizes.
+	 * @param progress the interface for updating the progress
+	 */
+	void calculateNestedRandomPValues(Random rnd, int [] sizes, PValueBuffer buffer, ISizeProcessor processor, IPValueCalculationProgress progress);
+}
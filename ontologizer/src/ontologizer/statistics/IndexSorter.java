@@ -0,0 +1,138 @@
+package ontologizer.statistics;
+
+/**
+ * Sorts indices by double keys without creating an object per entry and
+ * without any comparator. Larger arrays are sorted by a least significant
+ * digit radix sort on the IEEE 754 bits of the keys, which are transformed
+ * such that their unsigned order matches the numerical order. Passes for
+ * digits that are the same for all keys, e.g., the exponent bits of
+ * p-values of similar magnitude, are skipped. Small arrays are sorted by
+ * insertion.
+ *
+ * The sort is stable, so indices of equal keys retain their relative order
+ * as is the case when sorting objects via Arrays.sort(). NaN keys are
+ * placed last.
+ */
+public final class IndexSorter
+{
+	/** Arrays up to this size are sorted by insertion */
+	private static final int INSERTION_SORT_THRESHOLD = 48;
+
+	private static final int BITS_PER_DIGIT = 8;
+	private static final int RADIX = 1 << BITS_PER_DIGIT;
+	private static final int NUMBER_OF_DIGITS = 64 / BITS_PER_DIGIT;
+
+	private IndexSorter()
+	{
+	}
+
+	/**
+	 * Transforms the bits of the given key such that the unsigned order of
+	 * the result is the numerical order of the keys.
+	 *
+	 * @param key the key
+	 * @return the sortable bits
+	 */
+	private static long sortableBits(double key)
+	{
+		long bits = Double.doubleToLongBits(key);
+		return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Returns the indices of the given keys in ascending order of the keys.
+	 *
+	 * @param keys the keys
+	 * @return the permutation, i.e., the index of the smallest key is
+	 *  the first element.
+	 */
+	public static int [] sort(double [] keys)
+	{
+		int [] index = new int[keys.length];
+		for (int i = 0; i < index.length; i++)
+			index[i] = i;
+		sort(keys, index, index.length);
+		return index;
+	}
+
+	/**
+	 * Sorts the first n entries of the given index array in ascending
+	 * order of the keys they refer to.
+	 *
+	 * @param keys the keys, which are not modified.
+	 * @param index the indices into keys, of which the first n are sorted.
+	 * @param n the number of indices to sort.
+	 */
+	public static void sort(double [] keys, int [] index, int n)
+	{
+		if (n <= INSERTION_SORT_THRESHOLD)
+		{
+			insertionSort(keys, index, n);
+			return;
+		}
+
+		/* Count the digits of all passes at once */
+		int [][] counts = new int[NUMBER_OF_DIGITS][RADIX];
+		for (int i = 0; i < n; i++)
+		{
+			long bits = sortableBits(keys[index[i]]);
+			for (int d = 0; d < NUMBER_OF_DIGITS; d++)
+				counts[d][(int)(bits >>> (d * BITS_PER_DIGIT)) & (RADIX - 1)]++;
+		}
+
+		int [] from = index;
+		int [] to = new int[n];
+
+		for (int d = 0; d < NUMBER_OF_DIGITS; d++)
+		{
+			int [] count = counts[d];
+			int shift = d * BITS_PER_DIGIT;
+
+			/* Nothing to do if all keys share this digit */
+			int first = (int)(sortableBits(keys[from[0]]) >>> shift) & (RADIX - 1);
+			if (count[first] == n)
+				continue;
+
+			/* Turn the counts into start positions */
+			int position = 0;
+			for (int r = 0; r < RADIX; r++)
+			{
+				int c = count[r];
+				count[r] = position;
+				position += c;
+			}
+
+			for (int i = 0; i < n; i++)
+			{
+				int idx = from[i];
+				int digit = (int)(sortableBits(keys[idx]) >>> shift) & (RADIX - 1);
+				to[count[digit]++] = idx;
+			}
+
+			int [] tmp = from;
+			from = to;
+			to = tmp;
+		}
+
+		if (from != index)
+			System.arraycopy(from, 0, index, 0, n);
+	}
+
+	private static void insertionSort(double [] keys, int [] index, int n)
+	{
+		for (int i = 1; i < n; i++)
+		{
+			int idx = index[i];
+			long bits = sortableBits(keys[idx]);
+			int j = i - 1;
+
+			/* Unsigned comparison of the bits, which keeps equal keys in order */
+			while (j >= 0 && sortableBits(keys[index[j]]) + Long.MIN_VALUE > bits + Long.MIN_VALUE)
+			{
+				index[j + 1] = index[j];
+				j--;
+			}
+			index[j + 1] = idx;
+		}
+	}
+}
@@ -14,6 +14,12 @@ public class PValue implements Cloneable, Comparable<PValue>
 	public double p_adjusted;
 	public double p_min;
 
+	/**
+	 * The number of random samples on which p_adjusted is based, or 0
+	 * if the correction is not resampling based.
+	 */
+	public int samples;
+
 	/**
 	 * Indicates whether the p value should be ignored my a mtc
 	 * (and hence no adjusted p value will be applied)
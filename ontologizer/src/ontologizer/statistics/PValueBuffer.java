@@ -0,0 +1,90 @@
+package ontologizer.statistics;
+
+/**
+ * Holds the raw p-values, the minimal attainable p-values and the
+ * ignoreAtMTC flags of a p-value calculation in primitive arrays that are
+ * indexed like the array returned by
+ * {@link IPValueCalculation#calculateRawPValues(IPValueCalculationProgress)}.
+ *
+ * In contrast to an array of PValue objects, a buffer can be reused for
+ * many calculations, which avoids creating a large number of short-lived
+ * objects during resampling.
+ */
+public class PValueBuffer
+{
+	/** The raw p-values */
+	public final double [] p;
+
+	/** The minimal attainable p-values */
+	public final double [] p_min;
+
+	/** Whether the p-value should be ignored by a mtc */
+	public final boolean [] ignoreAtMTC;
+
+	/**
+	 * Constructs a buffer for the given number of p-values.
+	 *
+	 * @param size the number of p-values.
+	 */
+	public PValueBuffer(int size)
+	{
+		p = new double[size];
+		p_min = new double[size];
+		ignoreAtMTC = new boolean[size];
+	}
+
+	/**
+	 * @return the number of p-values that can be stored in this buffer.
+	 */
+	public int size()
+	{
+		return p.length;
+	}
+
+	/**
+	 * Overwrites the contents of the buffer with the values
+	 * of the given p-values.
+	 *
+	 * @param values the p-values, must have the size of the buffer.
+	 */
+	public void set(PValue [] values)
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			p[i] = values[i].p;
+			p_min[i] = values[i].p_min;
+			ignoreAtMTC[i] = values[i].ignoreAtMTC;
+		}
+	}
+
+	/**
+	 * Sets the given entry of the buffer.
+	 *
+	 * @param index the index of the entry
+	 * @param p the raw p-value
+	 * @param p_min the minimal attainable p-value
+	 * @param ignoreAtMTC whether the p-value should be ignored by a mtc
+	 */
+	public void set(int index, double p, double p_min, boolean ignoreAtMTC)
+	{
+		this.p[index] = p;
+		this.p_min[index] = p_min;
+		this.ignoreAtMTC[index] = ignoreAtMTC;
+	}
+
+	/**
+	 * @return the contents of the buffer as newly created PValue objects.
+	 */
+	public PValue [] toPValues()
+	{
+		PValue [] values = new PValue[p.length];
+		for (int i = 0; i < p.length; i++)
+		{
+			values[i] = new PValue();
+			values[i].p = p[i];
+			values[i].p_min = p_min[i];
+			values[i].ignoreAtMTC = ignoreAtMTC[i];
+		}
+		return values;
+	}
+}
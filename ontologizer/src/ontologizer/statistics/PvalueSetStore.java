@@ -1,8 +1,15 @@
 package ontologizer.statistics;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  *
@@ -13,12 +20,19 @@ import java.util.Iterator;
  * "ignoreAtMTC" attributes and the "p" value itself, nothing else gets stored.
  * Especially, the "p_min" and "p_adjusted" entries get lost.
  *
+ * The remaining (term index, p-value) pairs of all sets are packed into a
+ * single contiguous buffer, eight bytes per pair, and the p-values are stored
+ * with single precision. Use round() to bring other p-values to the same
+ * precision before comparing them. Within a set, the pairs are sorted by
+ * ascending p-value, which is what most resampling based procedures need.
+ * The buffer can be allocated outside of the Java heap or be mapped from
+ * a file that has been written by an earlier store.
+ *
  * @author grossman
  *
  */
 public class PvalueSetStore implements Iterable<PValue[]>
 {
-
 	/**
 	 *
 	 * The iterator to conveniently hide the inflation process.
@@ -28,28 +42,49 @@ public class PvalueSetStore implements Iterable<PValue[]>
 	 */
 	public class PValueSetStoreIterator implements Iterator<PValue[]>
 	{
-		private Iterator<HashMap<Integer, Double>> reducedIterator = reducedStoredSets.iterator();
+		private int set;
 
 		public boolean hasNext()
 		{
-			return reducedIterator.hasNext();
+			return set < numberOfSets;
 		}
 
 		public PValue[] next()
 		{
-			return inflate_pvals(reducedIterator.next());
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return inflate_pvals(set++);
 		}
 
 		public void remove()
 		{
-			reducedIterator.remove();
+			throw new UnsupportedOperationException();
 		}
-
 	}
 
-	private ArrayList<HashMap<Integer, Double>> reducedStoredSets;
+	/** Number of bytes occupied by a single (term index, p-value) pair */
+	private static final int BYTES_PER_ENTRY = 8;
+
+	/** Identifies files written by write(), "PVS1" */
+	private static final int MAGIC = 0x50565331;
+
+	/** Number of bytes occupied by the store besides the entries, estimated */
+	private static final int OVERHEAD_BYTES = 64;
+
+	private final int setSize;
+
+	private final boolean offHeap;
+
+	/** Contains the (term index, p-value) pairs of all sets */
+	private ByteBuffer entries;
+
+	/** The entry at which a set starts, the last element is the total number of entries */
+	private int [] setStarts;
 
-	private int setSize;
+	private int numberOfSets;
+
+	/** Temporary storage used for sorting the pairs of a set */
+	private long [] sortBuffer;
 
 	/**
 	 *
@@ -58,29 +93,327 @@ public class PvalueSetStore implements Iterable<PValue[]>
 	 */
 	public PvalueSetStore(int numberOfResamplingSteps, int setSize)
 	{
-		reducedStoredSets = new ArrayList<HashMap<Integer, Double>>(numberOfResamplingSteps);
+		this(numberOfResamplingSteps, setSize, false);
+	}
+
+	/**
+	 * @param numberOfResamplingSteps the expected number of sets.
+	 * @param setSize the size of each set.
+	 * @param offHeap whether the entries should be stored outside of the
+	 *  Java heap.
+	 */
+	public PvalueSetStore(int numberOfResamplingSteps, int setSize, boolean offHeap)
+	{
 		this.setSize = setSize;
+		this.offHeap = offHeap;
+		this.setStarts = new int[Math.max(1, numberOfResamplingSteps) + 1];
+		this.entries = allocate(Math.max(1024, numberOfResamplingSteps * 16));
+		this.sortBuffer = new long[setSize];
 	}
 
-	public void add(PValue[] values)
+	/**
+	 * Constructs a store from already packed entries.
+	 */
+	private PvalueSetStore(int setSize, int [] setStarts, ByteBuffer entries)
 	{
-		reducedStoredSets.add(deflate_pvals(values));
+		this.setSize = setSize;
+		this.offHeap = entries.isDirect();
+		this.setStarts = setStarts;
+		this.numberOfSets = setStarts.length - 1;
+		this.entries = entries;
+		this.sortBuffer = new long[0];
 	}
 
-	private HashMap<Integer, Double> deflate_pvals(PValue[] values)
+	private ByteBuffer allocate(int numberOfEntries)
 	{
-		HashMap<Integer, Double> reducedSet = new HashMap<Integer, Double>();
+		ByteBuffer buffer;
+		if (offHeap) buffer = ByteBuffer.allocateDirect(numberOfEntries * BYTES_PER_ENTRY);
+		else buffer = ByteBuffer.allocate(numberOfEntries * BYTES_PER_ENTRY);
+		return buffer.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Brings the given p-value to the precision in which p-values are stored.
+	 *
+	 * @param p the p-value
+	 * @return the p-value in storage precision.
+	 */
+	public static float round(double p)
+	{
+		return (float)p;
+	}
+
+	public void add(PValue[] values)
+	{
+		if (sortBuffer.length < setSize)
+			sortBuffer = new long[setSize];
+
+		int n = 0;
 		for (int i = 0; i < values.length; i++)
 		{
 			if (!values[i].ignoreAtMTC)
-			{
-				reducedSet.put(i, values[i].p);
-			}
+				sortBuffer[n++] = pack(i, values[i].p);
 		}
-		return reducedSet;
+		Arrays.sort(sortBuffer, 0, n);
+		addSorted(sortBuffer, n);
+	}
+
+	/**
+	 * Adds the p-values of the given buffer. The buffer
+	 * can be reused afterwards.
+	 *
+	 * @param values the p-values to be added
+	 */
+	public void add(PValueBuffer values)
+	{
+		if (sortBuffer.length < setSize)
+			sortBuffer = new long[setSize];
+
+		addSorted(sortBuffer, sort(values, sortBuffer));
+	}
+
+	/**
+	 * Packs the p-values of the given buffer that are not ignored into the
+	 * given array and sorts them as they are stored. No store is involved,
+	 * so threads that sample into a shared store can prepare their sets
+	 * concurrently and only need to synchronize the call of addSorted().
+	 *
+	 * @param values the p-values to be packed
+	 * @param sorted the array to which the packed p-values are written. It
+	 *  must be able to hold all p-values of the buffer.
+	 * @return the number of packed p-values
+	 */
+	public static int sort(PValueBuffer values, long [] sorted)
+	{
+		int n = 0;
+		for (int i = 0; i < values.size(); i++)
+		{
+			if (!values.ignoreAtMTC[i])
+				sorted[n++] = pack(i, values.p[i]);
+		}
+		Arrays.sort(sorted, 0, n);
+		return n;
+	}
+
+	/**
+	 * Packs the pair such that the natural order of the result is the order
+	 * of the p-values. This works as the bit patterns of non-negative floats
+	 * are ordered like their values.
+	 */
+	private static long pack(int term, double p)
+	{
+		return ((long)Float.floatToIntBits(round(p)) << 32) | term;
+	}
+
+	/**
+	 * Adds a set that has been prepared by sort().
+	 *
+	 * @param sorted the packed and sorted p-values of the set
+	 * @param n the number of p-values of the set
+	 */
+	public void addSorted(long [] sorted, int n)
+	{
+		int start = setStarts[numberOfSets];
+		int end = start + n;
+
+		if ((long)end * BYTES_PER_ENTRY > entries.capacity())
+		{
+			int newCapacity = (int)Math.min(Integer.MAX_VALUE / BYTES_PER_ENTRY, Math.max((long)end, entries.capacity() / BYTES_PER_ENTRY * 2L));
+			if (newCapacity < end)
+				throw new IllegalStateException("Too many p-values to be stored");
+			resize(newCapacity);
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			int pos = (start + i) * BYTES_PER_ENTRY;
+			entries.putInt(pos, (int)sorted[i]);
+			entries.putFloat(pos + 4, Float.intBitsToFloat((int)(sorted[i] >>> 32)));
+		}
+
+		if (numberOfSets + 1 == setStarts.length)
+			setStarts = Arrays.copyOf(setStarts, setStarts.length * 2);
+		setStarts[++numberOfSets] = end;
+	}
+
+	private void resize(int numberOfEntries)
+	{
+		ByteBuffer newEntries = allocate(Math.max(1, numberOfEntries));
+		ByteBuffer used = entries.duplicate();
+		used.position(0);
+		used.limit(setStarts[numberOfSets] * BYTES_PER_ENTRY);
+		newEntries.put(used);
+		entries = newEntries;
+	}
+
+	/**
+	 * Releases the memory that has been reserved for further sets.
+	 */
+	public void trim()
+	{
+		int numberOfEntries = Math.max(1, setStarts[numberOfSets]);
+
+		/* Mapped stores are already trimmed, don't copy them */
+		if (entries.capacity() > numberOfEntries * BYTES_PER_ENTRY)
+			resize(numberOfEntries);
+		if (setStarts.length > numberOfSets + 1)
+			setStarts = Arrays.copyOf(setStarts, numberOfSets + 1);
+		sortBuffer = new long[0];
+	}
+
+	/**
+	 * Writes the store to the given file such that it can be mapped
+	 * by map(). The file uses the native byte order.
+	 *
+	 * @param file the file to write
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException
+	{
+		int numberOfEntries = setStarts[numberOfSets];
+
+		ByteBuffer header = ByteBuffer.allocate((numberOfSets + 4) * 4).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC);
+		header.putInt(setSize);
+		header.putInt(numberOfSets);
+		for (int i = 0; i <= numberOfSets; i++)
+			header.putInt(setStarts[i]);
+		header.flip();
+
+		ByteBuffer used = entries.duplicate();
+		used.position(0);
+		used.limit(numberOfEntries * BYTES_PER_ENTRY);
+
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			FileChannel channel = out.getChannel();
+			while (header.hasRemaining())
+				channel.write(header);
+			while (used.hasRemaining())
+				channel.write(used);
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps a store that has been written by write(). The entries are not
+	 * read before they are accessed. Sets can still be added to the returned
+	 * store, in which case the entries are copied to the heap.
+	 *
+	 * @param file the file to map
+	 * @return the store
+	 * @throws IOException if the file couldn't be read or has not been
+	 *  written by write() on a machine with the same byte order.
+	 */
+	public static PvalueSetStore map(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.nativeOrder());
+
+			if (buf.remaining() < 12 || buf.getInt() != MAGIC)
+				throw new IOException("\"" + file + "\" is not a p-value store");
+
+			int setSize = buf.getInt();
+			int numberOfSets = buf.getInt();
+			if (setSize < 0 || numberOfSets < 0 || buf.remaining() < (numberOfSets + 1) * 4L)
+				throw new IOException("\"" + file + "\" is corrupted");
+
+			int [] setStarts = new int[numberOfSets + 1];
+			buf.asIntBuffer().get(setStarts);
+			buf.position(buf.position() + setStarts.length * 4);
+
+			if (buf.remaining() != (long)setStarts[numberOfSets] * BYTES_PER_ENTRY)
+				throw new IOException("\"" + file + "\" is corrupted");
+
+			return new PvalueSetStore(setSize, setStarts, buf.slice().order(ByteOrder.nativeOrder()));
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the approximate number of bytes a store would occupy, if
+	 * none of the p-values of the sets are ignored.
+	 *
+	 * @param numberOfSets the number of sets
+	 * @param setSize the size of each set
+	 * @return the number of bytes.
+	 */
+	public static long estimateMemoryUsage(int numberOfSets, int setSize)
+	{
+		return (long)numberOfSets * setSize * BYTES_PER_ENTRY + (numberOfSets + 1) * 4L + setSize * 8L + OVERHEAD_BYTES;
+	}
+
+	/**
+	 * @return the number of sets that have been added.
+	 */
+	public int size()
+	{
+		return numberOfSets;
+	}
+
+	/**
+	 * @return the size of the sets.
+	 */
+	public int getSetSize()
+	{
+		return setSize;
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied by this store.
+	 */
+	public long getMemoryUsage()
+	{
+		return (long)entries.capacity() + setStarts.length * 4L + sortBuffer.length * 8L + OVERHEAD_BYTES;
+	}
+
+	/**
+	 * Returns the number of p-values of the given set that have not been
+	 * marked as ignoreAtMTC.
+	 *
+	 * @param set the index of the set
+	 * @return the number of p-values.
+	 */
+	public int getNumberOfEntries(int set)
+	{
+		return setStarts[set + 1] - setStarts[set];
+	}
+
+	/**
+	 * Returns the term index of the given entry of the given set. Entries
+	 * are sorted by ascending p-values.
+	 *
+	 * @param set the index of the set
+	 * @param entry the index of the entry within the set
+	 * @return the term index, i.e., the index of the p-value when it was added.
+	 */
+	public int getTerm(int set, int entry)
+	{
+		return entries.getInt((setStarts[set] + entry) * BYTES_PER_ENTRY);
+	}
+
+	/**
+	 * Returns the p-value of the given entry of the given set. Entries
+	 * are sorted by ascending p-values.
+	 *
+	 * @param set the index of the set
+	 * @param entry the index of the entry within the set
+	 * @return the p-value in storage precision
+	 */
+	public float getP(int set, int entry)
+	{
+		return entries.getFloat((setStarts[set] + entry) * BYTES_PER_ENTRY + 4);
 	}
 
-	private PValue[] inflate_pvals(HashMap<Integer, Double> reducedSet)
+	private PValue[] inflate_pvals(int set)
 	{
 		PValue[] pvals = new PValue[setSize];
 
@@ -93,10 +426,11 @@ public class PvalueSetStore implements Iterable<PValue[]>
 		}
 
 		// set old values
-		for (int k : reducedSet.keySet())
+		for (int i = 0, n = getNumberOfEntries(set); i < n; i++)
 		{
+			int k = getTerm(set, i);
 			pvals[k].ignoreAtMTC = false;
-			pvals[k].p = reducedSet.get(k);
+			pvals[k].p = getP(set, i);
 		}
 
 		return pvals;
@@ -0,0 +1,145 @@
+package ontologizer.statistics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches stores of sampled p-values keyed by the size of the study set for
+ * which they were sampled. The memory occupied by all stores is limited by
+ * a budget. If a new store exceeds the budget, the stores of the least
+ * recently used study set sizes are evicted as a whole.
+ */
+public class PvalueSetStoreCache
+{
+	/** The default budget, a quarter of the maximal heap size */
+	public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+	/** The stores in the order of their last access */
+	private final LinkedHashMap<Integer,PvalueSetStore> stores = new LinkedHashMap<Integer,PvalueSetStore>(16, 0.75f, true);
+
+	private long memoryBudget;
+
+	private long memoryUsage;
+
+	public PvalueSetStoreCache()
+	{
+		this(DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * @param memoryBudget the maximal number of bytes occupied by the stores.
+	 */
+	public PvalueSetStoreCache(long memoryBudget)
+	{
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Returns the store for the given study set size.
+	 *
+	 * @param studySetSize the size of the study set
+	 * @return the store or null if there is no such store.
+	 */
+	public PvalueSetStore get(int studySetSize)
+	{
+		return stores.get(studySetSize);
+	}
+
+	/**
+	 * Returns whether there is a store for the given study set size. Unlike
+	 * get(), this doesn't count as an access.
+	 *
+	 * @param studySetSize the size of the study set
+	 * @return whether the store is cached.
+	 */
+	public boolean contains(int studySetSize)
+	{
+		return stores.containsKey(studySetSize);
+	}
+
+	/**
+	 * Adds the store for the given study set size. The store is trimmed
+	 * and other stores are evicted if the budget would be exceeded otherwise.
+	 * A store that alone exceeds the budget is not added at all.
+	 *
+	 * @param studySetSize the size of the study set
+	 * @param store the store
+	 */
+	public void put(int studySetSize, PvalueSetStore store)
+	{
+		remove(studySetSize);
+
+		store.trim();
+		if (store.getMemoryUsage() > memoryBudget)
+			return;
+
+		stores.put(studySetSize, store);
+		memoryUsage += store.getMemoryUsage();
+		evict();
+	}
+
+	private void remove(int studySetSize)
+	{
+		PvalueSetStore old = stores.remove(studySetSize);
+		if (old != null)
+			memoryUsage -= old.getMemoryUsage();
+	}
+
+	/**
+	 * Evicts the least recently used stores until the memory budget is met.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<Integer,PvalueSetStore>> iter = stores.entrySet().iterator();
+		while (memoryUsage > memoryBudget && iter.hasNext())
+		{
+			memoryUsage -= iter.next().getValue().getMemoryUsage();
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Sets the memory budget. Stores are evicted if necessary.
+	 *
+	 * @param memoryBudget the maximal number of bytes occupied by the stores.
+	 */
+	public void setMemoryBudget(long memoryBudget)
+	{
+		this.memoryBudget = memoryBudget;
+		evict();
+	}
+
+	/**
+	 * @return the maximal number of bytes occupied by the stores.
+	 */
+	public long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * @return the number of bytes occupied by the stores.
+	 */
+	public long getMemoryUsage()
+	{
+		return memoryUsage;
+	}
+
+	/**
+	 * @return the number of cached stores.
+	 */
+	public int size()
+	{
+		return stores.size();
+	}
+
+	/**
+	 * Removes all stores.
+	 */
+	public void clear()
+	{
+		stores.clear();
+		memoryUsage = 0;
+	}
+}
@@ -0,0 +1,242 @@
+package ontologizer.statistics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import ontologizer.util.Util;
+
+/**
+ * Stores random p-values of resampling based test corrections in a
+ * directory, so they can be reused by later runs. Files are named after
+ * a key, which is a content hash of everything the samples depend on, and
+ * the size of the study set for which the samples were drawn. Files are
+ * memory-mapped when they are loaded.
+ *
+ * As the cache is only an optimization, i/o errors are reported but
+ * otherwise treated like a cache miss.
+ */
+public class ResamplingDiskCache
+{
+	/** Suffix of files containing a PvalueSetStore */
+	private static final String STORE_SUFFIX = ".pvs";
+
+	/** Suffix of files containing an array of doubles */
+	private static final String VALUES_SUFFIX = ".dbl";
+
+	/** Identifies files containing an array of doubles, "DBL1" */
+	private static final int VALUES_MAGIC = 0x44424c31;
+
+	private final File directory;
+
+	/**
+	 * @param directory the directory in which the files are stored. It is
+	 *  created if it doesn't exist yet.
+	 */
+	public ResamplingDiskCache(File directory)
+	{
+		this.directory = directory;
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Creates the key for samples of the given correction and calculation.
+	 *
+	 * @param correction the correction for which the samples are drawn.
+	 * @param pValueCalculation the calculation of the p-values.
+	 * @return the key or null if the calculation can not be fingerprinted.
+	 */
+	public static String createKey(AbstractResamplingTestCorrection correction, IPValueCalculation pValueCalculation)
+	{
+		if (!(pValueCalculation instanceof IFingerprintedPValueCalculation))
+			return null;
+
+		ContentHash hash = new ContentHash();
+		hash.add(correction.getName());
+		hash.add(correction.getNumberOfResamplingSteps());
+		hash.add(correction.getSeed());
+		hash.add(((IFingerprintedPValueCalculation)pValueCalculation).getFingerprint());
+		return hash.finish();
+	}
+
+	private File getFile(String key, int studySetSize, String suffix)
+	{
+		return new File(directory, key + "-" + studySetSize + suffix);
+	}
+
+	/**
+	 * Loads the store for the given key and study set size.
+	 *
+	 * @param key the key
+	 * @param studySetSize the size of the study set
+	 * @return the mapped store or null if there is no such store.
+	 */
+	public PvalueSetStore loadStore(String key, int studySetSize)
+	{
+		File file = getFile(key, studySetSize, STORE_SUFFIX);
+		if (!file.exists())
+			return null;
+
+		try
+		{
+			return PvalueSetStore.map(file);
+		} catch (IOException e)
+		{
+			System.err.println("Unable to load cached samples: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether a store for the given key and study set size has
+	 * been saved.
+	 *
+	 * @param key the key
+	 * @param studySetSize the size of the study set
+	 * @return whether the store exists.
+	 */
+	public boolean containsStore(String key, int studySetSize)
+	{
+		return getFile(key, studySetSize, STORE_SUFFIX).exists();
+	}
+
+	/**
+	 * Saves the store for the given key and study set size.
+	 *
+	 * @param key the key
+	 * @param studySetSize the size of the study set
+	 * @param store the store to be saved.
+	 */
+	public void saveStore(String key, int studySetSize, PvalueSetStore store)
+	{
+		try
+		{
+			File tmp = Util.createTempFile("samples", directory);
+			store.write(tmp);
+			Util.commitTempFile(tmp, getFile(key, studySetSize, STORE_SUFFIX));
+		} catch (IOException e)
+		{
+			System.err.println("Unable to cache samples: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads the values for the given key and study set size.
+	 *
+	 * @param key the key
+	 * @param studySetSize the size of the study set
+	 * @return the values or null if there are no such values.
+	 */
+	public double [] loadValues(String key, int studySetSize)
+	{
+		File file = getFile(key, studySetSize, VALUES_SUFFIX);
+		if (!file.exists())
+			return null;
+
+		try
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				FileChannel channel = raf.getChannel();
+				ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.nativeOrder());
+				if (buf.remaining() < 8 || buf.getInt() != VALUES_MAGIC)
+					throw new IOException("\"" + file + "\" contains no values");
+
+				int n = buf.getInt();
+				if (n < 0 || buf.remaining() != n * 8L)
+					throw new IOException("\"" + file + "\" is corrupted");
+
+				double [] values = new double[n];
+				buf.asDoubleBuffer().get(values);
+				return values;
+			} finally
+			{
+				raf.close();
+			}
+		} catch (IOException e)
+		{
+			System.err.println("Unable to load cached samples: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the values for the given key and study set size.
+	 *
+	 * @param key the key
+	 * @param studySetSize the size of the study set
+	 * @param values the values to be saved.
+	 */
+	public void saveValues(String key, int studySetSize, double [] values)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(8 + values.length * 8).order(ByteOrder.nativeOrder());
+		buf.putInt(VALUES_MAGIC);
+		buf.putInt(values.length);
+		buf.asDoubleBuffer().put(values);
+		buf.position(0);
+
+		try
+		{
+			File tmp = Util.createTempFile("samples", directory);
+			FileOutputStream out = new FileOutputStream(tmp);
+			try
+			{
+				FileChannel channel = out.getChannel();
+				while (buf.hasRemaining())
+					channel.write(buf);
+			} finally
+			{
+				out.close();
+			}
+			Util.commitTempFile(tmp, getFile(key, studySetSize, VALUES_SUFFIX));
+		} catch (IOException e)
+		{
+			System.err.println("Unable to cache samples: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the study set sizes for which values are available under the
+	 * given key.
+	 *
+	 * @param key the key
+	 * @return the sizes in no particular order.
+	 */
+	public int [] getStudySetSizesOfValues(String key)
+	{
+		String [] names = directory.list();
+		if (names == null)
+			return new int[0];
+
+		String prefix = key + "-";
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (String name : names)
+		{
+			if (!name.startsWith(prefix) || !name.endsWith(VALUES_SUFFIX))
+				continue;
+
+			try
+			{
+				sizes.add(Integer.parseInt(name.substring(prefix.length(), name.length() - VALUES_SUFFIX.length())));
+			} catch (NumberFormatException e)
+			{
+			}
+		}
+
+		int [] result = new int[sizes.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = sizes.get(i);
+		return result;
+	}
+}
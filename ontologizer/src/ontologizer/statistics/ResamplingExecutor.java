@@ -0,0 +1,350 @@
+package ontologizer.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates the p-values of random study sets for resampling based test
+ * corrections, possibly by several threads.
+ *
+ * The source of randomness of each sample is derived solely from a master
+ * seed and the index of the sample. Hence, a sample doesn't depend on the
+ * number of threads nor on the order in which the samples are processed.
+ * Each thread owns a processor to which the p-values of its samples are
+ * passed. Once all samples have been processed, the processors are
+ * returned so the caller can merge their state, e.g., by adding up counts.
+ */
+public class ResamplingExecutor
+{
+	/**
+	 * Processes the p-values of random samples. An instance is used by
+	 * a single thread only.
+	 */
+	public static interface ISampleProcessor
+	{
+		/**
+		 * Process the p-values of a sample. The buffer is reused for the next
+		 * sample of the same thread.
+		 *
+		 * @param sample the index of the sample.
+		 * @param randomP the p-values of the sample.
+		 */
+		void process(int sample, PValueBuffer randomP);
+	}
+
+	/**
+	 * Creates the processors for the threads.
+	 *
+	 * @param <T> the type of the processors
+	 */
+	public static interface ISampleProcessorFactory<T extends ISampleProcessor>
+	{
+		T create();
+	}
+
+	/**
+	 * Processes the p-values of the nested study sets of random samples.
+	 * An instance is used by a single thread only.
+	 */
+	public static interface INestedSampleProcessor
+	{
+		/**
+		 * Process the p-values of the study set of a size of a sample. The
+		 * sizes of a sample are processed in ascending order. The buffer
+		 * is reused for the next size and sample of the same thread.
+		 *
+		 * @param sample the index of the sample.
+		 * @param sizeIndex the index of the size within the array of sizes.
+		 * @param randomP the p-values of the study set.
+		 */
+		void process(int sample, int sizeIndex, PValueBuffer randomP);
+	}
+
+	/**
+	 * Creates the processors of nested samples for the threads.
+	 *
+	 * @param <T> the type of the processors
+	 */
+	public static interface INestedSampleProcessorFactory<T extends INestedSampleProcessor>
+	{
+		T create();
+	}
+
+	/**
+	 * Calculates the p-values of a single sample and passes them to the
+	 * processor of the thread.
+	 *
+	 * @param <T> the type of the processors
+	 */
+	private static interface ISampleTask<T>
+	{
+		T createProcessor();
+
+		void calculate(int sample, PValueBuffer randomP, T processor);
+	}
+
+	/**
+	 * Receives the number of processed samples.
+	 */
+	public static interface ISampleProgress
+	{
+		void update(int processedSamples);
+	}
+
+	/** Constant used to spread the sample indices, 2^64 divided by the golden ratio */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final int numberOfThreads;
+
+	/**
+	 * Constructs an executor.
+	 *
+	 * @param numberOfThreads the number of threads. A value below 2 lets
+	 *  the calling thread process all samples.
+	 */
+	public ResamplingExecutor(int numberOfThreads)
+	{
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	/**
+	 * @return the number of threads used.
+	 */
+	public int getNumberOfThreads()
+	{
+		return numberOfThreads;
+	}
+
+	/**
+	 * Returns the seed that is used for the given sample. Seeds of
+	 * subsequent samples are scrambled (using the SplitMix64 finalizer) such
+	 * that the resulting random sequences are not correlated.
+	 *
+	 * @param masterSeed the master seed
+	 * @param sample the index of the sample
+	 * @return the seed for the sample
+	 */
+	public static long getSampleSeed(long masterSeed, int sample)
+	{
+		long z = masterSeed + (sample + 1) * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Calculates the p-values of the given number of random samples and
+	 * passes them to the processors.
+	 *
+	 * If the p-value calculation doesn't implement the IBufferedPValueCalculation
+	 * interface, the random study sets cannot be derived from the seed and
+	 * the samples are processed by the calling thread in ascending order.
+	 *
+	 * @param pValueCalculation the calculation
+	 * @param numberOfSamples the number of samples
+	 * @param masterSeed the seed from which the seeds of the samples are derived.
+	 * @param factory creates the processors, one per thread.
+	 * @param progress receives the number of processed samples. May be null.
+	 * @return the processors that were involved.
+	 */
+	public <T extends ISampleProcessor> List<T> execute(IPValueCalculation pValueCalculation, int numberOfSamples,
+			long masterSeed, ISampleProcessorFactory<T> factory, ISampleProgress progress)
+	{
+		return execute(pValueCalculation, 0, numberOfSamples, masterSeed, factory, progress);
+	}
+
+	/**
+	 * Calculates the p-values of a range of random samples and passes them to
+	 * the processors. Drawing the samples of a larger range in several calls
+	 * gives the same samples as a single call.
+	 *
+	 * @param pValueCalculation the calculation
+	 * @param firstSample the index of the first sample
+	 * @param numberOfSamples the number of samples
+	 * @param masterSeed the seed from which the seeds of the samples are derived.
+	 * @param factory creates the processors, one per thread.
+	 * @param progress receives the number of samples processed by this call. May be null.
+	 * @return the processors that were involved.
+	 */
+	public <T extends ISampleProcessor> List<T> execute(final IPValueCalculation pValueCalculation, int firstSample, int numberOfSamples,
+			final long masterSeed, final ISampleProcessorFactory<T> factory, ISampleProgress progress)
+	{
+		boolean parallel = pValueCalculation instanceof IBufferedPValueCalculation;
+
+		return run(pValueCalculation.getNumberOfPValues(), firstSample, numberOfSamples, parallel, new ISampleTask<T>()
+		{
+			public T createProcessor()
+			{
+				return factory.create();
+			}
+
+			public void calculate(int sample, PValueBuffer randomP, T processor)
+			{
+				calculateRandomPValues(pValueCalculation, masterSeed, sample, randomP);
+				processor.process(sample, randomP);
+			}
+		}, progress);
+	}
+
+	/**
+	 * Calculates the p-values of the nested study sets of the given sizes for
+	 * the given number of random samples and passes them to the processors.
+	 * All study sets of a sample are derived from the same random permutation
+	 * of the population, which depends only on the master seed and the index
+	 * of the sample. Hence, the study sets of a single size are the same as
+	 * the ones drawn by execute() with the same master seed.
+	 *
+	 * @param pValueCalculation the calculation, which must support nested sampling.
+	 * @param sizes the sizes of the study sets in ascending order.
+	 * @param numberOfSamples the number of samples
+	 * @param masterSeed the seed from which the seeds of the samples are derived.
+	 * @param factory creates the processors, one per thread.
+	 * @param progress receives the number of processed samples. May be null.
+	 * @return the processors that were involved.
+	 */
+	public <T extends INestedSampleProcessor> List<T> executeNested(final INestedPValueCalculation pValueCalculation, final int [] sizes,
+			int numberOfSamples, final long masterSeed, final INestedSampleProcessorFactory<T> factory, ISampleProgress progress)
+	{
+		return run(pValueCalculation.getNumberOfPValues(), 0, numberOfSamples, true, new ISampleTask<T>()
+		{
+			public T createProcessor()
+			{
+				return factory.create();
+			}
+
+			public void calculate(final int sample, PValueBuffer randomP, final T processor)
+			{
+				pValueCalculation.calculateNestedRandomPValues(new Random(getSampleSeed(masterSeed, sample)), sizes, randomP,
+					new INestedPValueCalculation.ISizeProcessor()
+					{
+						public void process(int sizeIndex, PValueBuffer p)
+						{
+							processor.process(sample, sizeIndex, p);
+						}
+					}, null);
+			}
+		}, progress);
+	}
+
+	/**
+	 * Runs the task for a range of samples, possibly by several threads.
+	 *
+	 * @param m the number of p-values of a sample
+	 * @param firstSample the index of the first sample
+	 * @param numberOfSamples the number of samples
+	 * @param parallel whether the samples may be calculated by several threads.
+	 * @param task calculates and processes a sample
+	 * @param progress receives the number of samples processed by this call. May be null.
+	 * @return the processors that were involved.
+	 */
+	private <T> List<T> run(final int m, final int firstSample, int numberOfSamples, boolean parallel,
+			final ISampleTask<T> task, final ISampleProgress progress)
+	{
+		final int endSample = firstSample + numberOfSamples;
+		final List<T> processors = new ArrayList<T>();
+		final AtomicInteger nextSample = new AtomicInteger(firstSample);
+		final AtomicInteger processedSamples = new AtomicInteger();
+		final Throwable [] failure = new Throwable[1];
+
+		int threads = Math.min(numberOfThreads, numberOfSamples);
+
+		if (!parallel || threads < 2)
+		{
+			T processor = task.createProcessor();
+			PValueBuffer randomP = new PValueBuffer(m);
+			processors.add(processor);
+
+			for (int b = firstSample; b < endSample; b++)
+			{
+				task.calculate(b, randomP, processor);
+				if (progress != null)
+					progress.update(b - firstSample + 1);
+			}
+			return processors;
+		}
+
+		Thread [] workers = new Thread[threads];
+
+		for (int i = 0; i < threads; i++)
+		{
+			final T processor = task.createProcessor();
+			processors.add(processor);
+
+			workers[i] = new Thread("Resampling worker " + i)
+			{
+				@Override
+				public void run()
+				{
+					PValueBuffer randomP = new PValueBuffer(m);
+					int b;
+
+					try
+					{
+						while ((b = nextSample.getAndIncrement()) < endSample)
+						{
+							synchronized (failure)
+							{
+								if (failure[0] != null)
+									return;
+							}
+
+							task.calculate(b, randomP, processor);
+
+							int processed = processedSamples.incrementAndGet();
+							if (progress != null)
+							{
+								synchronized (progress)
+								{
+									progress.update(processed);
+								}
+							}
+						}
+					} catch (Throwable t)
+					{
+						synchronized (failure)
+						{
+							if (failure[0] == null)
+								failure[0] = t;
+						}
+					}
+				}
+			};
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+
+		try
+		{
+			for (int i = 0; i < threads; i++)
+				workers[i].join();
+		} catch (InterruptedException e)
+		{
+			/* Let the workers finish early */
+			nextSample.set(endSample);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while resampling", e);
+		}
+
+		if (failure[0] instanceof RuntimeException)
+			throw (RuntimeException)failure[0];
+		if (failure[0] instanceof Error)
+			throw (Error)failure[0];
+		if (failure[0] != null)
+			throw new RuntimeException(failure[0]);
+
+		return processors;
+	}
+
+	private static void calculateRandomPValues(IPValueCalculation pValueCalculation, long masterSeed, int sample, PValueBuffer randomP)
+	{
+		if (pValueCalculation instanceof IBufferedPValueCalculation)
+		{
+			((IBufferedPValueCalculation)pValueCalculation).calculateRandomPValues(new Random(getSampleSeed(masterSeed, sample)), randomP, null);
+		} else
+		{
+			randomP.set(pValueCalculation.calculateRandomPValues(null));
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package ontologizer.statistics;
+
+/**
+ * Decides when the resampling for a term can be stopped early, following
+ * the sequential Monte Carlo scheme of Besag and Clifford (1991). Samples
+ * are drawn in batches. A term is decided once the number of samples that
+ * are at least as extreme as the observed data (exceedances) reaches a
+ * threshold h, as then the adjusted p-value is known to be large and its
+ * estimate count/samples has a relative error of about 1/sqrt(h).
+ *
+ * Optionally, terms are also decided once their adjusted p-value is almost
+ * certainly below a given significance level. Resampling stops if all
+ * terms are decided or the maximal number of samples has been drawn.
+ */
+public class SequentialStopping
+{
+	/** Number of samples of the first batch */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/** Quantile of the standard normal distribution for a one-sided confidence of 99.95% */
+	private static final double Z = 3.29;
+
+	/** The number of exceedances after which a term is decided */
+	private final int exceedances;
+
+	/** The significance level, 0 if terms shall not be decided as significant */
+	private final double alpha;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * @param exceedances the number of exceedances (h) after which the
+	 *  adjusted p-value of a term is considered as known.
+	 * @param alpha the significance level below which terms are decided
+	 *  early, or 0 if terms should be decided by exceedances only.
+	 */
+	public SequentialStopping(int exceedances, double alpha)
+	{
+		if (exceedances < 1)
+			throw new IllegalArgumentException("The number of exceedances must be positive");
+		if (alpha < 0 || alpha >= 1)
+			throw new IllegalArgumentException("The significance level must be in [0,1)");
+
+		this.exceedances = exceedances;
+		this.alpha = alpha;
+	}
+
+	public int getExceedances()
+	{
+		return exceedances;
+	}
+
+	public double getAlpha()
+	{
+		return alpha;
+	}
+
+	/**
+	 * Sets the size of the first batch. Each following batch is as large
+	 * as all previous batches together.
+	 *
+	 * @param batchSize the size of the first batch
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * Returns the number of samples of the next batch.
+	 *
+	 * @param processedSamples the number of samples drawn so far
+	 * @param maxSamples the maximal number of samples
+	 * @return the number of samples to draw next.
+	 */
+	public int getNextBatchSize(int processedSamples, int maxSamples)
+	{
+		return Math.min(maxSamples - processedSamples, Math.max(batchSize, processedSamples));
+	}
+
+	/**
+	 * Decides a term whose adjusted p-value is estimated as count/samples.
+	 *
+	 * @param count the number of exceedances
+	 * @param samples the number of samples
+	 * @return whether no further samples are needed for the term.
+	 */
+	public boolean isDecided(int count, int samples)
+	{
+		if (count >= exceedances)
+			return true;
+		return alpha > 0 && getUpperBound(count, samples) < alpha;
+	}
+
+	/**
+	 * Decides a term whose adjusted value is estimated as the mean of
+	 * per-sample values between 0 and 1 rather than by counting.
+	 *
+	 * @param estimate the mean
+	 * @param standardError the standard error of the mean
+	 * @param samples the number of samples
+	 * @return whether no further samples are needed for the term.
+	 */
+	public boolean isDecided(double estimate, double standardError, int samples)
+	{
+		if (Double.isNaN(standardError))
+			return false;
+
+		/* Same relative precision as a count of h exceedances */
+		if (estimate > 0 && standardError * Math.sqrt(exceedances) <= estimate)
+			return true;
+
+		/* The last term keeps the bound meaningful if no sample contributed yet */
+		return alpha > 0 && estimate + Z * standardError + Z * Z / samples < alpha;
+	}
+
+	/**
+	 * Returns the upper bound of the Wilson score interval for a proportion.
+	 *
+	 * @param count the number of successes
+	 * @param samples the number of trials
+	 * @return the upper bound
+	 */
+	static double getUpperBound(int count, int samples)
+	{
+		if (samples == 0)
+			return 1;
+
+		double p = (double)count / samples;
+		double z2 = Z * Z;
+		double center = p + z2 / (2 * samples);
+		double spread = Z * Math.sqrt(p * (1 - p) / samples + z2 / (4.0 * samples * samples));
+		return Math.min(1, (center + spread) / (1 + z2 / samples));
+	}
+}
@@ -5,150 +5,208 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Based upon algorithm decribed in "Statistical significance for
- * genomewide studies"
+ * genomewide studies". The q-value of a p-value is the minimal FDR at
+ * which the p-value is called significant. Other than Benjamini-Hochberg,
+ * the proportion pi0 of true null hypotheses among all hypotheses is
+ * estimated from the p-values rather than assumed to be 1.
+ *
+ * For each lambda of a grid, pi0 is estimated as the number of p-values
+ * above lambda divided by the number that is expected under the null
+ * hypothesis. The lambda is then chosen by the bootstrap method of
+ * Storey, Taylor and Siegmund (2004), i.e., such that the bootstrapped mean
+ * squared error of the estimate is minimal. The grid index of each p-value
+ * is determined once by a pass over the sorted p-values, so the estimates
+ * of all lambdas of a sample are obtained from a single histogram and the
+ * costs are linear in the number of p-values.
  *
  * @author Sebastian Bauer
  */
-public class Storey implements ITestCorrectionOld
+public class Storey extends AbstractSimpleTestCorrection implements ITestCorrectionOld
 {
-	/**
-	 *
-	 * @author Sebastian Bauer
-	 *
-	 * Class models a double value entry and its index of
-	 * a source array.
-	 *
-	 */
-	private class Entry implements Comparable<Entry>
-	{
-		public double value;
-		public int index;
+	/** The number of lambdas, which are 0, 0.01, ..., 0.95 */
+	private static final int NUMBER_OF_LAMBDAS = 96;
 
-		public int compareTo(Entry o)
-		{
-			if (value < o.value) return -1;
-			if (value == o.value) return 0;
-			return 1;
-		}
-	};
+	/** The distance of two lambdas */
+	private static final double LAMBDA_STEP = 0.01;
+
+	/** The number of bootstrap samples used for choosing lambda */
+	private static final int NUMBER_OF_BOOTSTRAP_SAMPLES = 100;
+
+	/** The seed of the bootstrap samples, so q-values are reproducible */
+	private static final long BOOTSTRAP_SEED = 1;
+
+	@Override
+	protected PValue[] adjustPValues(IPValueCalculation pValueCalculation, IPValueCalculationProgress progress)
+	{
+		PValue [] p = pValueCalculation.calculateRawPValues(progress);
+		PValue [] relevantP = getRelevantRawPValues(p);
+
+		double [] pValues = new double[relevantP.length];
+		for (int i=0;i<relevantP.length;i++)
+			pValues[i] = relevantP[i].p;
+
+		/* Note that all object within relevantP also are objects within p! */
+		double [] qValues = correctPValues(pValues, 0);
+		for (int i=0;i<relevantP.length;i++)
+			relevantP[i].p_adjusted = qValues[i];
+		return p;
+	}
 
 	public double[] correctPValues(double[] pValues, double alpha)
 	{
 		double [] qValues;		/* Resulting array of qvalues */
-		double [] rank;			/* Rank of the pvalues (ranks will start from 1) */
-		Entry [] sortedPValues; /* sorted PValues associated with their index */
+		int [] order;			/* indices of the pvalues in ascending order */
 
 		int m; /* number of tests */
 		int i;
 
 		m = pValues.length;
 		qValues = new double[pValues.length];
-		rank = new double[pValues.length];
+		if (m == 0)
+			return qValues;
 
-		/* Create sortedPValues Array */
-		sortedPValues = new Entry[m];
-		for (i=0;i<m;i++)
-			sortedPValues[i] = new Entry();
+		order = IndexSorter.sort(pValues);
 
-		for (i=0;i<m;i++)
-		{
-			sortedPValues[i].index = i;
-			sortedPValues[i].value = pValues[i];
-		}
-		Arrays.sort(sortedPValues);
+		/* Calculate the pi0 value */
+		double pi0 = calculatePI0(pValues, order);
 
-		/* Now fill the rank array by using the additional stored
-		 * index within an sortedPValue entry */
+		/* Calculate the q values. Equal p values share the largest of
+		 * their ranks (ranks start from 1) */
 		i = 0;
 		while (i<m)
 		{
 			int end = i + 1;
+			double curValue = pValues[order[i]];
 
-			double curValue = sortedPValues[i].value;
-			double curRank =  i + 1;
-
-			while ((end < m) && (curValue == sortedPValues[end].value))
-			{
-				curRank += end + 1;
+			while ((end < m) && (curValue == pValues[order[end]]))
 				end++;
-			}
-
-			/* now average the rank */
-			curRank /= end - i;
 
 			for (;i<end;i++)
-				rank[sortedPValues[i].index] = curRank;
+				qValues[order[i]] = pi0 * m * curValue / end;
 
 			/* Note that i=end and end is at least i+1 */
 		}
 
-		/* Calculate the pi0 value */
-		double pi0 = calculatePI0(sortedPValues);
-
-		for (i=0;i<m;i++)
-		{
-			/* Calculate q value and overwrite p value */
-			qValues[i] = pi0 * m * pValues[i] / rank[i];
-		}
-
 		/* TODO: qvalue <- pi0*m*p/(v*(1-(1-p)^m)) for the r
 		        remark <- c(remark, "The robust version of the q-value was calculated. See Storey JD (2002) JRSS-B 64: 479-498.")
 */
 
 		/* "Fix" the values */
-		qValues[sortedPValues[m-1].index] = Math.min(qValues[sortedPValues[m-1].index],1);
+		qValues[order[m-1]] = Math.min(qValues[order[m-1]],1);
 		for (i=m-2;i>=0;i--)
-			qValues[sortedPValues[i].index] = Math.min(qValues[sortedPValues[i].index],qValues[sortedPValues[i+1].index]);
+			qValues[order[i]] = Math.min(qValues[order[i]],qValues[order[i+1]]);
 
 		return qValues;
 	}
 
+	/**
+	 * Returns the lambda of the given grid index.
+	 *
+	 * @param k the index
+	 * @return the lambda
+	 */
+	private static double getLambda(int k)
+	{
+		return k * LAMBDA_STEP;
+	}
+
+	/**
+	 * Calculates the pi0 estimates of all lambdas.
+	 *
+	 * @param histogram the number of p values for each grid index, i.e.,
+	 *        for each number of lambdas that are smaller than the p value.
+	 * @param m the number of p values
+	 * @param pi0 the array to which the estimate of each lambda is written.
+	 */
+	private static void calculatePI0s(int [] histogram, int m, double [] pi0)
+	{
+		/* The number of p values above lambda k are the ones whose grid
+		 * index is larger than k */
+		int count = 0;
+		for (int k=NUMBER_OF_LAMBDAS-1;k>=0;k--)
+		{
+			count += histogram[k+1];
+			pi0[k] = count / (m * (1 - getLambda(k)));
+		}
+	}
+
 	/**
 	 * Calculates the pi0 value (= m0/m i.e. the proportion of true
 	 * null hypothesis and all null hypothesis)
 	 *
-	 * @param sortedPValues
-	 *        specifies the p values which must be sorted increasingly.
+	 * @param pValues
+	 *        specifies the p values.
+	 * @param order
+	 *        specifies the indices of the p values in ascending order.
 	 *
-	 * @return
+	 * @return the estimate, which is at most 1.
 	 */
-	private double calculatePI0(Entry[] sortedPValues)
+	private double calculatePI0(double [] pValues, int [] order)
 	{
-		double [] pi = new double[96];
-		double lamda = 0.00;
-		int i;
-		int m = sortedPValues.length;
+		int m = order.length;
+
+		/* Determine the grid index of each p value. As the p values are
+		 * sorted, the lambdas are passed only once */
+		int [] gridIndex = new int[m];
+		int [] histogram = new int[NUMBER_OF_LAMBDAS + 1];
+		int k = 0;
+		for (int i=0;i<m;i++)
+		{
+			double p = pValues[order[i]];
+			while (k < NUMBER_OF_LAMBDAS && getLambda(k) < p)
+				k++;
+			gridIndex[i] = k;
+			histogram[k]++;
+		}
+
+		double [] pi0 = new double[NUMBER_OF_LAMBDAS];
+		calculatePI0s(histogram, m, pi0);
+
+		/* Lambdas above all p values would give an estimate of 0 */
+		int numberOfLambdas = k;
+		if (numberOfLambdas == 0)
+			return 1;
 
-		System.out.println("------------ " + m);
-		for (i=0;i<pi.length;i++)
+		double minPi0 = pi0[0];
+		for (k=1;k<numberOfLambdas;k++)
+			minPi0 = Math.min(minPi0, pi0[k]);
+
+		/* Bootstrap the mean squared error of the estimates */
+		Random rnd = new Random(BOOTSTRAP_SEED);
+		double [] mse = new double[NUMBER_OF_LAMBDAS];
+		double [] bootstrapPi0 = new double[NUMBER_OF_LAMBDAS];
+
+		for (int b=0;b<NUMBER_OF_BOOTSTRAP_SAMPLES;b++)
 		{
-			int count = 0;
+			Arrays.fill(histogram, 0);
+			for (int i=0;i<m;i++)
+				histogram[gridIndex[rnd.nextInt(m)]]++;
 
-			/* TODO: Since the array is sorted and lamda is increasing
-			 * this can be optimized */
-			for (int j=0;j<m;j++)
+			calculatePI0s(histogram, m, bootstrapPi0);
+			for (k=0;k<numberOfLambdas;k++)
 			{
-				if (sortedPValues[j].value > lamda)
-					count++;
+				double d = bootstrapPi0[k] - minPi0;
+				mse[k] += d * d;
 			}
-
-			pi[i] = count / (m*(1 - lamda));
-
-			System.out.println("lamda = " + lamda + " " + count + " " + pi[i]);
-			lamda += 0.01;
 		}
 
-		/* We estimate 1 for now */
-		return 1;
+		/* Take the estimate of smallest error, the smaller one on ties */
+		int best = 0;
+		for (k=1;k<numberOfLambdas;k++)
+		{
+			if (mse[k] < mse[best] || (mse[k] == mse[best] && pi0[k] < pi0[best]))
+				best = k;
+		}
+		return Math.min(pi0[best], 1);
 	}
 
 	public String getDescription()
 	{
-		// TODO Auto-generated method stub
-		return null;
+		return "The Storey q-value procedure";
 	}
 
 	public String getName()
@@ -0,0 +1,65 @@
+package ontologizer.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Implements the pruning of untestable hypotheses according to Tarone
+ * (A modified Bonferroni method for discrete data, Biometrics 1990).
+ *
+ * For discrete tests such as the hypergeometric one, a hypothesis may not
+ * be able to reach a small p-value at all, regardless of the data. Given
+ * the minimal attainable p-value of each hypothesis, Tarone's procedure
+ * determines the smallest K such that the number of hypotheses whose
+ * minimal attainable p-value is not larger than alpha/K doesn't exceed K.
+ * Only these hypotheses need to be tested and to be counted by a multiple
+ * test correction, all others can never be rejected.
+ */
+public final class Tarone
+{
+	private Tarone()
+	{
+	}
+
+	/**
+	 * Determines the threshold of Tarone's procedure.
+	 *
+	 * @param minimalPValues the minimal attainable p-values of all hypotheses.
+	 * @param alpha the significance level.
+	 * @return the threshold alpha/K. Hypotheses whose minimal attainable p-value
+	 *  is larger than the threshold are untestable.
+	 */
+	public static double getThreshold(double [] minimalPValues, double alpha)
+	{
+		double [] sorted = minimalPValues.clone();
+		Arrays.sort(sorted);
+
+		/* Number of hypotheses whose minimal p-value is at most alpha/K */
+		int testable = sorted.length;
+
+		for (int k = 1; k <= sorted.length; k++)
+		{
+			double threshold = alpha / k;
+			while (testable > 0 && sorted[testable - 1] > threshold)
+				testable--;
+			if (testable <= k)
+				return threshold;
+		}
+		return alpha;
+	}
+
+	/**
+	 * Determines which hypotheses are testable according to Tarone's procedure.
+	 *
+	 * @param minimalPValues the minimal attainable p-values of all hypotheses.
+	 * @param alpha the significance level.
+	 * @return an array that indicates for each hypothesis whether it is testable.
+	 */
+	public static boolean [] getTestable(double [] minimalPValues, double alpha)
+	{
+		double threshold = getThreshold(minimalPValues, alpha);
+		boolean [] testable = new boolean[minimalPValues.length];
+		for (int i = 0; i < minimalPValues.length; i++)
+			testable[i] = minimalPValues[i] <= threshold;
+		return testable;
+	}
+}
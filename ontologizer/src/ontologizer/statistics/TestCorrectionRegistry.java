@@ -93,6 +93,6 @@ public class TestCorrectionRegistry
 //		registerCorrection(new FDR());
 //		registerCorrection(new FDRBySteffen());
 
-//		registerCorrection(new Storey());
+		registerCorrection(new Storey());
 	}
 }
@@ -2,6 +2,10 @@ package ontologizer.statistics;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
 
 public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 {
@@ -38,13 +42,53 @@ public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 		}
 	};
 
+	/**
+	 * Counts for each sorted raw p-value how often the minimum of the
+	 * random p-values is not larger. Each resampling thread has its own
+	 * counter.
+	 */
+	static class MinimumCounter implements ISampleProcessor
+	{
+		private final double [] sortedRawP;
+
+		/** Counts the samples whose minimum belongs to a sorted raw p-value, i.e., the differences of the counts */
+		private final int [] minima;
+
+		MinimumCounter(double [] sortedRawP)
+		{
+			this.sortedRawP = sortedRawP;
+			this.minima = new int[sortedRawP.length];
+		}
+
+		public void process(int sample, PValueBuffer randomRawP)
+		{
+			int m = sortedRawP.length;
+			if (m == 0) return;
+
+			double min = randomRawP.p[0];
+			for (int j=1; j < m; j++)
+				min = Math.min(min,randomRawP.p[j]);
+
+			/* Find the first sorted raw p-value that is not smaller */
+			int i = Arrays.binarySearch(sortedRawP, min);
+			if (i < 0) i = -i - 1;
+			else while (i > 0 && sortedRawP[i-1] == min) i--;
+
+			if (i < m)
+				minima[i]++;
+		}
+	}
+
 	public PValue[] adjustPValues(IPValueCalculation pvalues, ITestCorrectionProgress progress)
 	{
+		if (sequentialStopping != null)
+			return adjustPValuesSequentially(pvalues);
+
 		int i;
 
 		/* Calculate raw P-values */
 		PValue [] rawP = pvalues.calculateRawPValues(null);
-		int m = rawP.length;
+		final int m = rawP.length;
 
 		/* Sort the raw P-values and remember their original index */
 		Entry [] sortedRawPValues = new Entry[m];
@@ -68,25 +112,28 @@ public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 		} else {        // we have to sample
 			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
 
-			initProgress(numberOfResamplingSteps);
-
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* create random sample */
-				PValue [] randomRawP = pvalues.calculateRandomPValues(null);
-
-				if (randomRawP.length > 0)
+			/* determine minimal p-value of each sample */
+			final double [] minP = sampledMinP;
+			resample(pvalues, new ISampleProcessorFactory<ISampleProcessor>()
+			{
+				public ISampleProcessor create()
 				{
-					/* determine minimal p-value in sample */
-					double minP = randomRawP[0].p;
-					for (i=1; i < randomRawP.length; i++) {
-						minP = Math.min(minP,randomRawP[i].p);
-					}
-					sampledMinP[b] = minP;
+					return new ISampleProcessor()
+					{
+						public void process(int sample, PValueBuffer randomRawP)
+						{
+							if (m > 0)
+							{
+								double min = randomRawP.p[0];
+								for (int j=1; j < m; j++)
+									min = Math.min(min,randomRawP.p[j]);
+								minP[sample] = min;
+							}
+						}
+					};
 				}
+			});
 
-				updateProgress(b);
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
-			}
 			/* sort sampled minimal p-values according to size */
 			Arrays.sort(sampledMinP);
 
@@ -116,6 +163,92 @@ public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 		for (i=0;i<m;i++)
 		{
 			rawP[sortedRawPValues[i].index].p_adjusted = ((double)count[i])/numberOfResamplingSteps;
+			rawP[sortedRawPValues[i].index].samples = numberOfResamplingSteps;
+		}
+		return rawP;
+	}
+
+	/**
+	 * Adjusts the p-values drawing only as many samples as needed according
+	 * to the sequential stopping rule. The samples are not cached.
+	 */
+	private PValue[] adjustPValuesSequentially(IPValueCalculation pvalues)
+	{
+		int i;
+
+		PValue [] rawP = pvalues.calculateRawPValues(null);
+		int m = rawP.length;
+
+		Entry [] sortedRawPValues = new Entry[m];
+		for (i=0;i<m;i++)
+		{
+			sortedRawPValues[i] = new Entry();
+			sortedRawPValues[i].value = rawP[i].p;
+			sortedRawPValues[i].index = i;
+		}
+		Arrays.sort(sortedRawPValues);
+
+		final double [] sortedRawP = new double[m];
+		for (i=0;i<m;i++)
+			sortedRawP[i] = sortedRawPValues[i].value;
+
+		ISampleProcessorFactory<MinimumCounter> factory = new ISampleProcessorFactory<MinimumCounter>()
+		{
+			public MinimumCounter create()
+			{
+				return new MinimumCounter(sortedRawP);
+			}
+		};
+
+		/* Counts and number of samples, indexed like the sorted raw p-values */
+		int [] count = new int[m];
+		int [] samples = new int[m];
+		int [] minima = new int[m];
+		boolean [] decided = new boolean[m];
+		int undecided = m;
+		int processed = 0;
+		long masterSeed = createMasterSeed();
+
+		System.out.println("Sampling up to " + numberOfResamplingSteps + " random study sets\nThis may take a while...");
+		initProgress(numberOfResamplingSteps);
+
+		while (processed < numberOfResamplingSteps && undecided > 0)
+		{
+			int batch = sequentialStopping.getNextBatchSize(processed, numberOfResamplingSteps);
+			List<MinimumCounter> counters = resample(pvalues, processed, batch, masterSeed, factory);
+			processed += batch;
+
+			for (MinimumCounter counter : counters)
+			{
+				for (i=0;i<m;i++)
+					minima[i] += counter.minima[i];
+			}
+
+			/* The count of a sorted raw p-value is the number of minima up to it */
+			int c = 0;
+			for (i=0;i<m;i++)
+			{
+				c += minima[i];
+				if (decided[i]) continue;
+
+				count[i] = c;
+				samples[i] = processed;
+				if (sequentialStopping.isDecided(c, processed))
+				{
+					decided[i] = true;
+					undecided--;
+				}
+			}
+		}
+		System.out.println("Done after " + processed + " samples!");
+
+		double lastP = 0;
+		for (i=0;i<m;i++)
+		{
+			double p = Math.max(lastP, ((double)count[i])/samples[i]);
+			rawP[sortedRawPValues[i].index].p_adjusted = p;
+			rawP[sortedRawPValues[i].index].samples = samples[i];
+			lastP = p;
 		}
 		return rawP;
 	}
@@ -2,6 +2,14 @@ package ontologizer.statistics;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import ontologizer.statistics.ResamplingExecutor.INestedSampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.INestedSampleProcessorFactory;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
 
 public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCorrection
 {
@@ -45,7 +53,7 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 
 		/* Calculate raw P-values */
 		PValue [] rawP = pvalues.calculateRawPValues(null);
-		int m = rawP.length;
+		final int m = rawP.length;
 
 		/* Sort the raw P-values and remember their original index */
 		Entry [] sortedRawPValues = new Entry[m];
@@ -59,16 +67,25 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 		Arrays.sort(sortedRawPValues);
 
 		/* this will hold the minima of the sampled p-values */
-		double [] sampledMinP = new double[numberOfResamplingSteps];
+		double [] sampledMinP = null;
 
 		int studySetSize = pvalues.currentStudySetSize();
 
+		/* samples may also be available from earlier runs */
+		String diskCacheKey = getDiskCacheKey(pvalues);
+		Set<Integer> availableSizes = new HashSet<Integer>(sampledMinPPerSize.keySet());
+		if (diskCacheKey != null)
+		{
+			for (int s : getDiskCache().getStudySetSizesOfValues(diskCacheKey))
+				availableSizes.add(s);
+		}
+
 		// determine optimal optimal studyset size for which samples are available
 		int bestStudysetSize = 0;
 		double bestStudysetRatio = 0.0;
 
 
-		for (int s : sampledMinPPerSize.keySet()) {
+		for (int s : availableSizes) {
 			double curRatio;
 			if (s >= studySetSize) {
 				curRatio = ((double) s)/studySetSize;
@@ -82,37 +99,70 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 		}
 		double ratioCutoff = 1 + 0.01 * sizeTolerance;
 
-
 		if (bestStudysetSize != 0 && bestStudysetRatio <= ratioCutoff) {  // use approximate samples
+			sampledMinP = sampledMinPPerSize.get(bestStudysetSize);
+			if (sampledMinP == null)
+			{
+				sampledMinP = getDiskCache().loadValues(diskCacheKey, bestStudysetSize);
+				if (sampledMinP != null && sampledMinP.length == numberOfResamplingSteps)
+					sampledMinPPerSize.put(bestStudysetSize, sampledMinP);
+				else
+					sampledMinP = null;
+			}
+		}
+
+		if (sampledMinP != null) {
 			System.out.println("Needing samples for study set size " + studySetSize);
 			System.out.println("Using available samples made for study set size " + bestStudysetSize);
-			sampledMinP = sampledMinPPerSize.get(bestStudysetSize);
 		} else {        // we have to sample
-			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
-
-			initProgress(numberOfResamplingSteps);
+			int [] sizes = getSizesToSample(pvalues, studySetSize, availableSizes);
+			final double [][] minP = new double[sizes.length][numberOfResamplingSteps];
 
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* create random sample */
-				PValue [] randomRawP = pvalues.calculateRandomPValues(null);
-
-				if (randomRawP.length > 0)
+			if (sizes.length == 1)
+			{
+				System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
+				resample(pvalues, new ISampleProcessorFactory<ISampleProcessor>()
 				{
-					/* determine minimal p-value in sample */
-					double minP = randomRawP[0].p;
-					for (i=1; i < randomRawP.length; i++) {
-						minP = Math.min(minP,randomRawP[i].p);
+					public ISampleProcessor create()
+					{
+						return new ISampleProcessor()
+						{
+							public void process(int sample, PValueBuffer randomRawP)
+							{
+								minP[0][sample] = getMinimum(randomRawP, m);
+							}
+						};
 					}
-					sampledMinP[b] = minP;
-				}
-
-				updateProgress(b);
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+				});
+			} else
+			{
+				System.out.println("Sampling for " + sizes.length + " study set sizes including " + studySetSize + "\nThis may take a while...");
+				resampleNested(pvalues, sizes, new INestedSampleProcessorFactory<INestedSampleProcessor>()
+				{
+					public INestedSampleProcessor create()
+					{
+						return new INestedSampleProcessor()
+						{
+							public void process(int sample, int sizeIndex, PValueBuffer randomRawP)
+							{
+								minP[sizeIndex][sample] = getMinimum(randomRawP, m);
+							}
+						};
+					}
+				});
 			}
-			/* sort sampled minimal p-values according to size */
-			Arrays.sort(sampledMinP);
 
-			sampledMinPPerSize.put(studySetSize,sampledMinP);
+			for (i=0; i < sizes.length; i++)
+			{
+				/* sort sampled minimal p-values according to size */
+				Arrays.sort(minP[i]);
+				if (sizes[i] == studySetSize)
+					sampledMinP = minP[i];
+
+				sampledMinPPerSize.put(sizes[i],minP[i]);
+				if (diskCacheKey != null)
+					getDiskCache().saveValues(diskCacheKey, sizes[i], minP[i]);
+			}
 		}
 
 		/*
@@ -142,6 +192,55 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 		return rawP;
 	}
 
+	/**
+	 * Returns the minimal p-value of a sample.
+	 *
+	 * @param randomRawP the p-values of the sample
+	 * @param m the number of p-values
+	 * @return the minimum or 0 if there are no p-values.
+	 */
+	private static double getMinimum(PValueBuffer randomRawP, int m)
+	{
+		if (m == 0)
+			return 0;
+
+		/* determine minimal p-value in sample */
+		double p = randomRawP.p[0];
+		for (int j=1; j < m; j++)
+			p = Math.min(p,randomRawP.p[j]);
+		return p;
+	}
+
+	/**
+	 * Determines the study set sizes whose samples are drawn together with
+	 * the ones of the current size. These are the announced sizes for which
+	 * no samples of exactly this size are available yet.
+	 *
+	 * @param pvalues the p-value calculation
+	 * @param studySetSize the size of the current study set
+	 * @param availableSizes the sizes for which samples are available.
+	 * @return the sizes in ascending order, which include the current one.
+	 */
+	private int [] getSizesToSample(IPValueCalculation pvalues, int studySetSize, Set<Integer> availableSizes)
+	{
+		if (!supportsNestedSampling(pvalues))
+			return new int[]{studySetSize};
+
+		TreeSet<Integer> sizes = new TreeSet<Integer>();
+		sizes.add(studySetSize);
+		for (int size : getStudySetSizes())
+		{
+			if (!availableSizes.contains(size))
+				sizes.add(size);
+		}
+
+		int [] result = new int[sizes.size()];
+		int i = 0;
+		for (int size : sizes)
+			result[i++] = size;
+		return result;
+	}
+
 	public void resetCache()
 	{
 		sampledMinPPerSize = new HashMap<Integer,double[]>();
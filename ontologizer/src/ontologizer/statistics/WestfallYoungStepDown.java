@@ -1,12 +1,17 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
+import java.util.List;
 
-public class WestfallYoungStepDown extends AbstractTestCorrection
-						   implements IResampling
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
+
+public class WestfallYoungStepDown extends AbstractResamplingTestCorrection
 {
-	/** Specifies the number of resampling steps */
-	private int numberOfResamplingSteps = 1000;
+	public WestfallYoungStepDown()
+	{
+		numberOfResamplingSteps = 1000;
+	}
 
 	public String getDescription()
 	{
@@ -40,6 +45,67 @@ public class WestfallYoungStepDown extends AbstractTestCorrection
 		}
 	};
 
+	/**
+	 * Counts for each sorted raw p-value how often the successive minimum
+	 * of the random p-values is not larger. Each resampling thread has its
+	 * own counter. The successive minima are determined on the fly while
+	 * the random p-values are visited in the reverse order of the sorted raw
+	 * p-values, so a sample is never kept beyond its processing and the
+	 * memory is linear in the number of terms, regardless of the number of
+	 * samples.
+	 */
+	static class SuccessiveMinimaCounter implements ISampleProcessor
+	{
+		private final int [] r;
+		private final double [] sortedRawP;
+
+		/** Whether the random p-values are compared like stored ones */
+		private final boolean storagePrecision;
+
+		/** The counts, indexed like the sorted raw p-values */
+		final int [] count;
+
+		SuccessiveMinimaCounter(int [] r, double [] sortedRawP)
+		{
+			this(r, sortedRawP, false);
+		}
+
+		/**
+		 * @param r the indices of the raw p-values in ascending order of them
+		 * @param sortedRawP the sorted raw p-values
+		 * @param storagePrecision if true, the random p-values are brought to
+		 *  the precision of a PvalueSetStore and the ones that are ignored
+		 *  count as 1.0, as if they had been taken from a store.
+		 */
+		SuccessiveMinimaCounter(int [] r, double [] sortedRawP, boolean storagePrecision)
+		{
+			this.r = r;
+			this.sortedRawP = sortedRawP;
+			this.storagePrecision = storagePrecision;
+			this.count = new int[r.length];
+		}
+
+		public void process(int sample, PValueBuffer randomRawP)
+		{
+			double [] p = randomRawP.p;
+			boolean [] ignoreAtMTC = randomRawP.ignoreAtMTC;
+			double q = Double.POSITIVE_INFINITY;
+
+			/* q is the successive minimum of the raw p values of the terms
+			 * whose observed p-value is not smaller than the current one */
+			for (int i=r.length-1;i>=0;i--)
+			{
+				double pi;
+				if (!storagePrecision) pi = p[r[i]];
+				else if (ignoreAtMTC[r[i]]) pi = 1.0;
+				else pi = PvalueSetStore.round(p[r[i]]);
+				if (pi < q) q = pi;
+				if (q <= sortedRawP[i])
+					count[i]++;
+			}
+		}
+	}
+
 	public PValue[] adjustPValues(IPValueCalculation pvalues, ITestCorrectionProgress progress)
 	{
 		int i;
@@ -47,12 +113,12 @@ public class WestfallYoungStepDown extends AbstractTestCorrection
 		/* Calculate raw P-values */
 		PValue [] rawP = pvalues.calculateRawPValues(null);
 
-		double [] q = new double[rawP.length];
 		int [] count = new int[rawP.length];
 
 		/* Sort the raw P-values and remember their original index */
 		int m = rawP.length;
-		int r[] = new int[m];
+		final int r[] = new int[m];
+		final double [] sortedRawP = new double[m];
 		Entry [] sortedRawPValues = new Entry[m];
 
 		for (i=0;i<m;i++)
@@ -65,56 +131,69 @@ public class WestfallYoungStepDown extends AbstractTestCorrection
 
 		/* build up r, this info is redundant but using r is more convenient */
 		for (i=0;i<m;i++)
+		{
 			r[i] = sortedRawPValues[i].index;
+			sortedRawP[i] = sortedRawPValues[i].value;
+		}
 
-		/* Now "permute" */
+		/* Now "permute", each thread counts on its own. Without sequential
+		 * stopping, all samples are drawn in a single batch */
 		System.out.println("Sampling " + numberOfResamplingSteps + " random study sets\nThis may take a while...");
-		for (int b=0; b < numberOfResamplingSteps; b++)
+		ISampleProcessorFactory<SuccessiveMinimaCounter> factory = new ISampleProcessorFactory<SuccessiveMinimaCounter>()
 		{
-			/* Compute raw p values of "permuted" data */
-			PValue [] randomRawP = pvalues.calculateRandomPValues(null);
+			public SuccessiveMinimaCounter create()
+			{
+				return new SuccessiveMinimaCounter(r, sortedRawP);
+			}
+		};
 
-			assert(randomRawP.length == rawP.length);
+		/* The number of samples on which the count of each sorted raw p-value is based */
+		int [] samples = new int[m];
+		boolean [] decided = new boolean[m];
+		int undecided = m;
+		int processed = 0;
+		long masterSeed = createMasterSeed();
 
-			/* Compute the successive minima of raw p values */
-			q[m-1] = randomRawP[r[m-1]].p;
-			for (i=m-2;i>=0;i--)
-				q[i] = Math.min(q[i+1],randomRawP[r[i]].p);
+		initProgress(numberOfResamplingSteps);
+		while (processed < numberOfResamplingSteps && undecided > 0)
+		{
+			int batch = numberOfResamplingSteps - processed;
+			if (sequentialStopping != null)
+				batch = sequentialStopping.getNextBatchSize(processed, numberOfResamplingSteps);
+
+			List<SuccessiveMinimaCounter> counters = resample(pvalues, processed, batch, masterSeed, factory);
+			processed += batch;
 
-			/* Count up */
 			for (i=0;i<m;i++)
 			{
-				if (q[i] <= rawP[r[i]].p) // = sortedRawPValues[i].value
-					count[i]++;
-			}
+				if (decided[i]) continue;
 
-			System.out.print(b + "\r");
-		}
-		System.out.println("Done!");
+				for (SuccessiveMinimaCounter counter : counters)
+					count[i] += counter.count[i];
+				samples[i] = processed;
 
-		/* Enforce monotony contraints */
-		int c = count[0];
-		for (i=1;i<m;i++)
-			c = count[i] = Math.max(1,Math.max(c,count[i]));
+				if (sequentialStopping != null && sequentialStopping.isDecided(count[i], processed))
+				{
+					decided[i] = true;
+					undecided--;
+				}
+			}
+		}
+		System.out.println("Done after " + processed + " samples!");
 
-		/* Calculate the adjusted p values */
+		/* Calculate the adjusted p values and enforce monotony contraints */
+		double lastP = 0;
 		for (i=0;i<m;i++)
 		{
-			rawP[r[i]].p_adjusted = ((double)count[i])/numberOfResamplingSteps;
+			int c = i == 0 ? count[i] : Math.max(1, count[i]);
+			double p = Math.max(lastP, ((double)c)/samples[i]);
+			rawP[r[i]].p_adjusted = p;
+			rawP[r[i]].samples = samples[i];
+			lastP = p;
 		}
 		return rawP;
 	}
 
-	public void setNumberOfResamplingSteps(int n)
-	{
-		numberOfResamplingSteps = n;
-	}
-
-	public int getNumberOfResamplingSteps()
-	{
-		return numberOfResamplingSteps;
-	}
-
 	public void resetCache()
 	{
 		// no cache here, nothing to do
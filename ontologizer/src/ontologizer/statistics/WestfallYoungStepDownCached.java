@@ -1,15 +1,43 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
 
-public class WestfallYoungStepDownCached extends AbstractTestCorrection
-						   implements IResampling
+import ontologizer.statistics.ResamplingExecutor.INestedSampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.INestedSampleProcessorFactory;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessor;
+import ontologizer.statistics.ResamplingExecutor.ISampleProcessorFactory;
+import ontologizer.statistics.WestfallYoungStepDown.SuccessiveMinimaCounter;
+
+/**
+ * Westfall-Young step-down procedure that keeps the sampled p-values of each
+ * study set size, so further study sets of the same size don't need to be
+ * sampled again. If the samples of a study set size would exceed the
+ * memory budget, they are not kept. Instead, the successive minima of
+ * each sample are counted as soon as the sample has been drawn, which needs
+ * memory linear in the number of terms only. The counting compares the
+ * p-values in the precision of the store, so the adjusted p-values don't
+ * depend on the memory budget.
+ *
+ * If the sizes of the study sets have been announced and the p-value
+ * calculation supports nested sampling, the samples of all announced sizes
+ * that fit into the memory budget are drawn in a single pass when the first
+ * of them is needed. The samples of a size are the same as if they were
+ * drawn separately.
+ */
+public class WestfallYoungStepDownCached extends AbstractResamplingTestCorrection
 {
-	/** Specifies the number of resampling steps */
-	private int numberOfResamplingSteps = 1000;
+	/** The sampled p-values, keyed by the study set size */
+	private PvalueSetStoreCache sampledPValuesPerSize = new PvalueSetStoreCache();
+
+	/** Whether the sampled p-values are stored outside of the Java heap */
+	private boolean offHeap;
 
-	private HashMap<Integer,PvalueSetStore> sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+	public WestfallYoungStepDownCached()
+	{
+		numberOfResamplingSteps = 1000;
+	}
 
 	public String getDescription()
 	{
@@ -50,7 +78,6 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 		/* Calculate raw P-values */
 		PValue [] rawP = pvalueCalc.calculateRawPValues(null);
 
-		double [] q = new double[rawP.length];
 		int [] count = new int[rawP.length];
 
 		/* Sort the raw P-values and remember their original index */
@@ -66,46 +93,140 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 		}
 		Arrays.sort(sortedRawPValues);
 
-		/* build up r, this info is redundant but using r is more convenient */
+		/* build up r, this info is redundant but using r is more convenient.
+		 * Also remember the rank of each term and the sorted raw p-values
+		 * in the precision of the store */
+		int [] rank = new int[m];
+		float [] sortedRawP = new float[m];
 		for (i=0;i<m;i++)
+		{
 			r[i] = sortedRawPValues[i].index;
+			rank[r[i]] = i;
+			sortedRawP[i] = PvalueSetStore.round(sortedRawPValues[i].value);
+		}
 
 		int studySetSize = pvalueCalc.currentStudySetSize();
 
 		/* holds the sampled random p values for the current study set size */
-		PvalueSetStore randomSampledPValues;
+		PvalueSetStore randomSampledPValues = sampledPValuesPerSize.get(studySetSize);
+		String diskCacheKey = null;
 
-		if (sampledPValuesPerSize.containsKey(studySetSize)) {
+		if (randomSampledPValues == null && (diskCacheKey = getDiskCacheKey(pvalueCalc)) != null) {
+			randomSampledPValues = getDiskCache().loadStore(diskCacheKey, studySetSize);
+			if (randomSampledPValues != null && randomSampledPValues.getSetSize() != m)
+				randomSampledPValues = null;
+			if (randomSampledPValues != null) {
+				System.out.println("Using persisted samples for study set size " + studySetSize);
+				sampledPValuesPerSize.put(studySetSize,randomSampledPValues);
+			}
+		}
+
+		if (randomSampledPValues == null && PvalueSetStore.estimateMemoryUsage(numberOfResamplingSteps, m) > getMemoryBudget()) {
+			System.out.println("Streaming samples for study set size " + studySetSize + " as they exceed the memory budget\nThis may take a while...");
+			/* Compare in the precision of the store, so the result doesn't
+			 * depend on whether the samples fit into the budget */
+			double [] storedSortedRawP = new double[m];
+			for (i=0;i<m;i++)
+				storedSortedRawP[i] = sortedRawP[i];
+			countSuccessiveMinima(pvalueCalc, r, storedSortedRawP, count);
+		} else if (randomSampledPValues != null) {
 			System.out.println("Using available samples for study set size " + studySetSize);
-			randomSampledPValues = sampledPValuesPerSize.get(studySetSize);
 		} else {
-			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
-			randomSampledPValues = new PvalueSetStore(numberOfResamplingSteps,m);
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* Compute raw p values of "permuted" data */
-				randomSampledPValues.add(pvalueCalc.calculateRandomPValues(null));
+			int [] sizes = getSizesToSample(pvalueCalc, studySetSize, m, diskCacheKey);
+			final PvalueSetStore [] stores = new PvalueSetStore[sizes.length];
+			for (i=0;i<sizes.length;i++)
+				stores[i] = new PvalueSetStore(numberOfResamplingSteps,m,offHeap);
+
+			/* Each thread sorts its samples itself and only the appending to
+			 * the store is synchronized. The order of the samples within the
+			 * store depends on the scheduling of the threads but the counts
+			 * below don't */
+			if (sizes.length == 1)
+			{
+				System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
+				resample(pvalueCalc, new ISampleProcessorFactory<ISampleProcessor>()
+				{
+					public ISampleProcessor create()
+					{
+						return new ISampleProcessor()
+						{
+							private final long [] sorted = new long[stores[0].getSetSize()];
+
+							public void process(int sample, PValueBuffer randomRawP)
+							{
+								int n = PvalueSetStore.sort(randomRawP, sorted);
+								synchronized (stores[0])
+								{
+									stores[0].addSorted(sorted, n);
+								}
+							}
+						};
+					}
+				});
+			} else
+			{
+				System.out.println("Sampling for " + sizes.length + " study set sizes including " + studySetSize + "\nThis may take a while...");
+				resampleNested(pvalueCalc, sizes, new INestedSampleProcessorFactory<INestedSampleProcessor>()
+				{
+					public INestedSampleProcessor create()
+					{
+						return new INestedSampleProcessor()
+						{
+							private final long [] sorted = new long[stores[0].getSetSize()];
+
+							public void process(int sample, int sizeIndex, PValueBuffer randomRawP)
+							{
+								int n = PvalueSetStore.sort(randomRawP, sorted);
+								synchronized (stores[sizeIndex])
+								{
+									stores[sizeIndex].addSorted(sorted, n);
+								}
+							}
+						};
+					}
+				});
+			}
 
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+			/* Add the store of the current size last, so it is the most recently used one */
+			for (i=0;i<sizes.length;i++)
+			{
+				if (sizes[i] == studySetSize)
+					randomSampledPValues = stores[i];
+				else
+					sampledPValuesPerSize.put(sizes[i],stores[i]);
+				if (diskCacheKey != null)
+					getDiskCache().saveStore(diskCacheKey, sizes[i], stores[i]);
 			}
 			sampledPValuesPerSize.put(studySetSize,randomSampledPValues);
 		}
 
-		/* Now "permute" */
-		for (PValue [] randomRawP : randomSampledPValues)
+		/* Now "permute". The p-values of a sample are sorted, so the successive
+		 * minima can be determined by a single pass: the first entry whose rank
+		 * is beyond the ranks seen so far is the minimum for all ranks in
+		 * between. Ranks that remain have been ignored and thus are 1.0 */
+		for (int b=0; randomSampledPValues != null && b < randomSampledPValues.size(); b++)
 		{
-			/* Compute raw p values of "permuted" data */
-//			PValue [] randomRawP = randomSampledPValues[b];
+			int n = randomSampledPValues.getNumberOfEntries(b);
+			int assigned = 0;
 
-			/* Compute the successive minima of raw p values */
-			q[m-1] = randomRawP[r[m-1]].p;
-			for (i=m-2;i>=0;i--)
-				q[i] = Math.min(q[i+1],randomRawP[r[i]].p);
+			for (int e=0; e < n && assigned < m; e++)
+			{
+				int k = rank[randomSampledPValues.getTerm(b, e)];
+				if (k < assigned)
+					continue;
 
-			/* Count up */
-			for (i=0;i<m;i++)
+				float q = randomSampledPValues.getP(b, e);
+				for (; assigned <= k; assigned++)
+				{
+					if (q <= sortedRawP[assigned])
+						count[assigned]++;
+				}
+			}
+
+			for (; assigned < m; assigned++)
 			{
-				if (q[i] <= rawP[r[i]].p) // = sortedRawPValues[i].value
-					count[i]++;
+				if (1.0f <= sortedRawP[assigned])
+					count[assigned]++;
 			}
 		}
 
@@ -122,6 +243,76 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 		return rawP;
 	}
 
+	/**
+	 * Determines the study set sizes whose samples are drawn together with
+	 * the ones of the current size. These are the announced sizes for which
+	 * no samples are available yet, as long as the samples of all sizes fit
+	 * into the memory budget.
+	 *
+	 * @param pvalueCalc the p-value calculation
+	 * @param studySetSize the size of the current study set
+	 * @param m the number of p-values
+	 * @param diskCacheKey the key of the samples in the disk cache or null.
+	 * @return the sizes in ascending order, which include the current one.
+	 */
+	private int [] getSizesToSample(IPValueCalculation pvalueCalc, int studySetSize, int m, String diskCacheKey)
+	{
+		if (!supportsNestedSampling(pvalueCalc))
+			return new int[]{studySetSize};
+
+		long storeMemoryUsage = PvalueSetStore.estimateMemoryUsage(numberOfResamplingSteps, m);
+		long remainingBudget = getMemoryBudget() - storeMemoryUsage;
+		TreeSet<Integer> sizes = new TreeSet<Integer>();
+		sizes.add(studySetSize);
+
+		for (int size : getStudySetSizes())
+		{
+			if (remainingBudget < storeMemoryUsage)
+				break;
+			if (sizes.contains(size) || sampledPValuesPerSize.contains(size))
+				continue;
+			if (diskCacheKey != null && getDiskCache().containsStore(diskCacheKey, size))
+				continue;
+
+			sizes.add(size);
+			remainingBudget -= storeMemoryUsage;
+		}
+
+		int [] result = new int[sizes.size()];
+		int i = 0;
+		for (int size : sizes)
+			result[i++] = size;
+		return result;
+	}
+
+	/**
+	 * Draws the samples and counts for each sorted raw p-value how often
+	 * the successive minimum of the random p-values is not larger, without
+	 * keeping the samples. The random p-values are compared in the precision
+	 * of the store.
+	 *
+	 * @param pvalueCalc the p-value calculation
+	 * @param r the indices of the raw p-values in ascending order of the p-values
+	 * @param sortedRawP the raw p-values in ascending order and in the
+	 *  precision of the store
+	 * @param count the counts, indexed like r, to which the counts are added
+	 */
+	private void countSuccessiveMinima(IPValueCalculation pvalueCalc, final int [] r, final double [] sortedRawP, int [] count)
+	{
+		List<SuccessiveMinimaCounter> counters = resample(pvalueCalc, new ISampleProcessorFactory<SuccessiveMinimaCounter>()
+		{
+			public SuccessiveMinimaCounter create()
+			{
+				return new SuccessiveMinimaCounter(r, sortedRawP, true);
+			}
+		});
+
+		for (SuccessiveMinimaCounter counter : counters)
+			for (int i = 0; i < r.length; i++)
+				count[i] += counter.count[i];
+	}
+
+	@Override
 	public void setNumberOfResamplingSteps(int n)
 	{
 		if (n != numberOfResamplingSteps)
@@ -129,18 +320,44 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 			numberOfResamplingSteps = n;
 
 			/* Clear the cache */
-			sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+			sampledPValuesPerSize.clear();
 		}
 	}
 
-	public int getNumberOfResamplingSteps()
+	public void resetCache()
 	{
-		return numberOfResamplingSteps;
+		sampledPValuesPerSize.clear();
 	}
 
-	public void resetCache()
+	/**
+	 * Limits the memory that is occupied by the sampled p-values of all
+	 * study set sizes. If exceeded, the samples of the least recently used
+	 * sizes are discarded.
+	 *
+	 * @param bytes the maximal number of bytes.
+	 */
+	public void setMemoryBudget(long bytes)
+	{
+		sampledPValuesPerSize.setMemoryBudget(bytes);
+	}
+
+	/**
+	 * @return the maximal number of bytes occupied by the sampled p-values.
+	 */
+	public long getMemoryBudget()
+	{
+		return sampledPValuesPerSize.getMemoryBudget();
+	}
+
+	/**
+	 * Specifies whether sampled p-values that are created from now on are
+	 * stored outside of the Java heap.
+	 *
+	 * @param offHeap whether the p-values are stored off the heap.
+	 */
+	public void setOffHeap(boolean offHeap)
 	{
-		sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+		this.offHeap = offHeap;
 	}
 
 	public int getSizeTolerance()
@@ -7,7 +7,7 @@
 package ontologizer.util;
 
 import java.io.File;
-import java.util.Arrays;
+import java.io.IOException;
 
 /**
  *
@@ -56,6 +56,47 @@ public final class Util
 		return null;
 	}
 
+	/**
+	 * Creates a temporary file in the given directory, which is created
+	 * if it doesn't exist. Files that are written this way should be moved
+	 * to their final place by commitTempFile().
+	 *
+	 * @param prefix the prefix of the name of the file
+	 * @param directory the directory, usually the one of the final file.
+	 * @return the temporary file
+	 * @throws IOException
+	 */
+	public static File createTempFile(String prefix, File directory) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Unable to create directory \"" + directory + "\"");
+		return File.createTempFile(prefix, ".tmp", directory);
+	}
+
+	/**
+	 * Moves the completely written temporary file to its final place, so
+	 * a crash or other processes never see partial files. An existing
+	 * file is replaced.
+	 *
+	 * @param tmp the temporary file as created by createTempFile()
+	 * @param file the final file
+	 * @throws IOException if the file couldn't be moved, in which case
+	 *  the temporary file is deleted.
+	 */
+	public static void commitTempFile(File tmp, File file) throws IOException
+	{
+		if (!tmp.renameTo(file))
+		{
+			/* Some platforms don't replace existing files */
+			file.delete();
+			if (!tmp.renameTo(file))
+			{
+				tmp.delete();
+				throw new IOException("Unable to create \"" + file + "\"");
+			}
+		}
+	}
+
 	 /**
      * Wraps a single line of text.
      * Called by wrapText() to do the real work of wrapping.
@@ -194,12 +235,128 @@ public final class Util
 		if (a.length == 1) return a[0].length;
 		if (a.length == 2) return commonIntsWithResult(a[0], a[1], null);
 
-		/* Slice array */
-		int [][] newA = Arrays.copyOfRange(a, 1, a.length);
-		int [] tmp = new int[Math.max(a[0].length, a[1].length)];
-		int tmpLen = commonIntsWithResult(a[0], a[1], tmp);
-		newA[0] = Arrays.copyOf(tmp, tmpLen);
-		return commonInts(newA);
+		int minLength = a[0].length;
+		for (int i = 1; i < a.length; i++)
+			minLength = Math.min(minLength, a[i].length);
+
+		return intersect(a.clone(), a.length, new int[minLength]);
+	}
+
+	/**
+	 * Returns the smallest index i &gt;= from for which b[i] &gt;= key holds.
+	 * The search first doubles the step width until the key is passed
+	 * and then performs a binary search.
+	 *
+	 * @param b sorted array
+	 * @param from the index to start from
+	 * @param key the key to search for
+	 * @return the index or b.length if all elements starting at from are smaller.
+	 */
+	private static int gallop(int [] b, int from, int key)
+	{
+		int n = b.length;
+		if (from >= n || b[from] >= key) return from;
+
+		/* Invariant: b[lo] < key */
+		int lo = from;
+		int step = 1;
+		int hi = lo + 1;
+		while (hi < n && b[hi] < key)
+		{
+			lo = hi;
+			step <<= 1;
+			hi = lo + step;
+		}
+		if (hi > n) hi = n;
+
+		/* Now b[lo] < key and either hi == n or b[hi] >= key */
+		while (lo + 1 < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (b[mid] < key) lo = mid;
+			else hi = mid;
+		}
+		return hi;
+	}
+
+	/**
+	 * Intersects the first aLen elements of a with b. For each element of a,
+	 * the matching position in b is searched via galloping, hence a
+	 * should be the smaller array.
+	 *
+	 * @param a sorted array
+	 * @param aLen the number of valid elements in a
+	 * @param b sorted array
+	 * @param c destination array or null. May be the same as a.
+	 * @return the number of common elements.
+	 */
+	private static int gallopIntersect(int [] a, int aLen, int [] b, int [] c)
+	{
+		int numCommon = 0;
+		for (int i = 0, j = 0; i < aLen; i++)
+		{
+			int x = a[i];
+			j = gallop(b, j, x);
+			if (j == b.length) break;
+			if (b[j] == x)
+			{
+				if (c != null)
+				{
+					c[numCommon] = x;
+				}
+				numCommon++;
+				j++;
+			}
+		}
+		return numCommon;
+	}
+
+	/**
+	 * Determine the number of integer values that are common in the first
+	 * aLen elements of a and in b. No objects are allocated.
+	 *
+	 * @param a sorted array, preferably the smaller one
+	 * @param aLen the number of valid elements in a
+	 * @param b sorted array
+	 * @return number of ints that are common.
+	 */
+	public static int countCommonInts(int [] a, int aLen, int [] b)
+	{
+		return gallopIntersect(a, aLen, b, null);
+	}
+
+	/**
+	 * Determine the intersection of the given sorted arrays. The arrays are
+	 * processed from the smallest to the largest one and the processing stops
+	 * as soon as the intersection is empty. No objects are allocated.
+	 *
+	 * @param a sorted arrays. Only the first n arrays are considered. Note
+	 *  that their order within a is changed.
+	 * @param n the number of arrays to consider
+	 * @param result the array to which the intersection is written. It must
+	 *  be at least as large as the smallest array.
+	 * @return the number of elements of the intersection.
+	 */
+	public static int intersect(int [][] a, int n, int [] result)
+	{
+		if (n == 0) return 0;
+
+		/* Sort by length, n is usually small */
+		for (int i = 1; i < n; i++)
+		{
+			int [] ai = a[i];
+			int j = i - 1;
+			for (; j >= 0 && a[j].length > ai.length; j--)
+				a[j + 1] = a[j];
+			a[j + 1] = ai;
+		}
+
+		int len = a[0].length;
+		System.arraycopy(a[0], 0, result, 0, len);
+
+		for (int i = 1; i < n && len > 0; i++)
+			len = gallopIntersect(result, len, a[i], result);
+		return len;
 	}
 
 	/**